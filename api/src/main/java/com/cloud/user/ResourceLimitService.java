@@ -30,6 +30,10 @@ public interface ResourceLimitService {
     static final ConfigKey<Long> ResourceCountCheckInterval = new ConfigKey<Long>("Advanced", Long.class, "resourcecount.check.interval", "300",
             "Time (in seconds) to wait before running resource recalculation and fixing task. Default is 300 seconds, Setting this to 0 disables execution of the task", false);
 
+    static final ConfigKey<Integer> ResourceCountCheckBatchSize = new ConfigKey<Integer>("Advanced", Integer.class, "resourcecount.check.batch.size", "0",
+            "Number of accounts whose resource counts are recalculated by each run of the resource recalculation task, continuing from where the previous run stopped. "
+                    + "Domain counts are rolled up from the stored account counts on every run. Default is 0, which recalculates all accounts on every run", true);
+
     /**
      * Updates an existing resource limit with the specified details. If a limit doesn't exist, will create one.
      *
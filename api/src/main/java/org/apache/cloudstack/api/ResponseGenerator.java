@@ -254,6 +254,12 @@ public interface ResponseGenerator {
 
     IPAddressResponse createIPAddressResponse(ResponseView view, IpAddress ipAddress);
 
+    /**
+     * Creates the responses for a page of IP addresses, loading the objects they share (zone, VLAN, networks, owner)
+     * once for the whole page and their tags in a single query.
+     */
+    List<IPAddressResponse> createIPAddressResponses(ResponseView view, List<? extends IpAddress> ipAddresses);
+
     GuestVlanRangeResponse createDedicatedGuestVlanRangeResponse(GuestVlan result);
 
     GlobalLoadBalancerResponse createGlobalLoadBalancerResponse(GlobalLoadBalancerRule globalLoadBalancerRule);
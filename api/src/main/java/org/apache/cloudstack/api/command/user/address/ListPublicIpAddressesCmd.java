@@ -16,7 +16,6 @@
 // under the License.
 package org.apache.cloudstack.api.command.user.address;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.log4j.Logger;
@@ -193,11 +192,9 @@ public class ListPublicIpAddressesCmd extends BaseListTaggedResourcesCmd impleme
     public void execute() {
         Pair<List<? extends IpAddress>, Integer> result = _mgr.searchForIPAddresses(this);
         ListResponse<IPAddressResponse> response = new ListResponse<IPAddressResponse>();
-        List<IPAddressResponse> ipAddrResponses = new ArrayList<IPAddressResponse>();
-        for (IpAddress ipAddress : result.first()) {
-            IPAddressResponse ipResponse = _responseGenerator.createIPAddressResponse(getResponseView(), ipAddress);
+        List<IPAddressResponse> ipAddrResponses = _responseGenerator.createIPAddressResponses(getResponseView(), result.first());
+        for (IPAddressResponse ipResponse : ipAddrResponses) {
             ipResponse.setObjectName("publicipaddress");
-            ipAddrResponses.add(ipResponse);
         }
 
         response.setResponses(ipAddrResponses, result.second());
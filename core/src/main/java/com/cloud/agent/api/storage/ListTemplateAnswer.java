@@ -20,6 +20,7 @@
 package com.cloud.agent.api.storage;
 
 import java.util.Map;
+import java.util.Set;
 
 import com.cloud.agent.api.Answer;
 import com.cloud.storage.template.TemplateProp;
@@ -27,6 +28,13 @@ import com.cloud.storage.template.TemplateProp;
 public class ListTemplateAnswer extends Answer {
     private String secUrl;
     private Map<String, TemplateProp> templateInfos;
+    private String manifestId;
+    private long sequence;
+    /* when set, templateInfos only holds the templates that changed since the requested sequence */
+    private boolean incremental;
+    private Set<String> removedTemplates;
+    /* the name of the last template of the page, when more templates follow it */
+    private String lastTemplateName;
 
     public ListTemplateAnswer() {
         super();
@@ -53,4 +61,41 @@ public class ListTemplateAnswer extends Answer {
     public String getSecUrl() {
         return secUrl;
     }
+
+    public String getManifestId() {
+        return manifestId;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setManifest(String manifestId, long sequence) {
+        this.manifestId = manifestId;
+        this.sequence = sequence;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public Set<String> getRemovedTemplates() {
+        return removedTemplates;
+    }
+
+    public void setRemovedTemplates(Set<String> removedTemplates) {
+        this.removedTemplates = removedTemplates;
+    }
+
+    public String getLastTemplateName() {
+        return lastTemplateName;
+    }
+
+    public void setLastTemplateName(String lastTemplateName) {
+        this.lastTemplateName = lastTemplateName;
+    }
 }
@@ -23,6 +23,12 @@ import com.cloud.agent.api.to.DataStoreTO;
 
 public class ListTemplateCommand extends StorageCommand {
     private DataStoreTO store;
+    /* the manifest and the sequence the caller synced to, to only list the changes after it */
+    private String manifestId;
+    private long sinceSequence = -1;
+    /* to list the store in pages, ordered by template name */
+    private String startAfter;
+    private int pageSize;
 
     public ListTemplateCommand() {
     }
@@ -45,4 +51,30 @@ public class ListTemplateCommand extends StorageCommand {
         return store;
     }
 
+    public String getManifestId() {
+        return manifestId;
+    }
+
+    public long getSinceSequence() {
+        return sinceSequence;
+    }
+
+    public void setChangesSince(String manifestId, long sinceSequence) {
+        this.manifestId = manifestId;
+        this.sinceSequence = sinceSequence;
+    }
+
+    public String getStartAfter() {
+        return startAfter;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPage(String startAfter, int pageSize) {
+        this.startAfter = startAfter;
+        this.pageSize = pageSize;
+    }
+
 }
@@ -0,0 +1,146 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.cloud.storage.template;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * The templates of an image store as last seen by the secondary storage resource, with a journal of the changes.
+ * Every template that was added, changed or removed gets the next sequence number, so a caller that knows the
+ * id of the manifest and the sequence it synced to only needs the changes after that sequence.
+ * The manifest lives in memory, a new one (with a new id) means the caller has to list the store in full.
+ */
+public class TemplateManifest {
+    /* the number of removed templates that are remembered, older removals can only be synced by a full listing */
+    private static final int MAX_REMOVED_TEMPLATES = 10000;
+
+    private final String id = UUID.randomUUID().toString();
+    private final TreeMap<String, Entry> templates = new TreeMap<String, Entry>();
+    /* removed templates in the order they were removed, so by sequence */
+    private final LinkedHashMap<String, Long> removedTemplates = new LinkedHashMap<String, Long>();
+    private long sequence = 0;
+    /* the changes up to this sequence are no longer all in the journal */
+    private long prunedSequence = 0;
+
+    private static class Entry {
+        final TemplateProp template;
+        final long sequence;
+
+        Entry(TemplateProp template, long sequence) {
+            this.template = template;
+            this.sequence = sequence;
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Records the templates that are on the store now, every template that differs from the previous update is journaled.
+     */
+    public synchronized void update(Map<String, TemplateProp> templateInfos) {
+        for (Map.Entry<String, TemplateProp> templateInfo : templateInfos.entrySet()) {
+            Entry entry = templates.get(templateInfo.getKey());
+            if (entry == null || !isSame(entry.template, templateInfo.getValue())) {
+                templates.put(templateInfo.getKey(), new Entry(templateInfo.getValue(), ++sequence));
+                removedTemplates.remove(templateInfo.getKey());
+            }
+        }
+
+        for (Iterator<String> it = templates.keySet().iterator(); it.hasNext();) {
+            String name = it.next();
+            if (!templateInfos.containsKey(name)) {
+                it.remove();
+                removedTemplates.put(name, ++sequence);
+            }
+        }
+
+        for (Iterator<Long> it = removedTemplates.values().iterator(); it.hasNext() && removedTemplates.size() > MAX_REMOVED_TEMPLATES;) {
+            prunedSequence = it.next();
+            it.remove();
+        }
+    }
+
+    /**
+     * @return whether all the changes after the sequence are still in the journal
+     */
+    public synchronized boolean hasChangesSince(long sinceSequence) {
+        return sinceSequence >= prunedSequence && sinceSequence <= sequence;
+    }
+
+    public synchronized Map<String, TemplateProp> getChangedTemplates(long sinceSequence) {
+        Map<String, TemplateProp> changed = new HashMap<String, TemplateProp>();
+        for (Map.Entry<String, Entry> entry : templates.entrySet()) {
+            if (entry.getValue().sequence > sinceSequence) {
+                changed.put(entry.getKey(), entry.getValue().template);
+            }
+        }
+        return changed;
+    }
+
+    public synchronized Set<String> getRemovedTemplates(long sinceSequence) {
+        Set<String> removed = new HashSet<String>();
+        for (Map.Entry<String, Long> entry : removedTemplates.entrySet()) {
+            if (entry.getValue() > sinceSequence) {
+                removed.add(entry.getKey());
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * @param startAfter the name of the last template of the previous page, or null for the first page
+     * @param pageSize the maximum number of templates of the page, or 0 for all of them
+     * @return the templates of the page, ordered by name
+     */
+    public synchronized Map<String, TemplateProp> getTemplates(String startAfter, int pageSize) {
+        Map<String, TemplateProp> page = new LinkedHashMap<String, TemplateProp>();
+        for (Map.Entry<String, Entry> entry : (startAfter == null ? templates : templates.tailMap(startAfter, false)).entrySet()) {
+            if (pageSize > 0 && page.size() >= pageSize) {
+                break;
+            }
+            page.put(entry.getKey(), entry.getValue().template);
+        }
+        return page;
+    }
+
+    public synchronized boolean hasTemplatesAfter(String name) {
+        return templates.higherKey(name) != null;
+    }
+
+    private static boolean isSame(TemplateProp template, TemplateProp other) {
+        return Objects.equals(template.getInstallPath(), other.getInstallPath()) && template.getSize() == other.getSize()
+                && template.getPhysicalSize() == other.getPhysicalSize() && template.isPublic() == other.isPublic()
+                && template.isCorrupted() == other.isCorrupted();
+    }
+}
@@ -0,0 +1,91 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.cloud.storage.template;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TemplateManifestTest {
+
+    private static TemplateProp template(String name, long size) {
+        return new TemplateProp(name, "template/tmpl/1/" + name + "/" + name + ".qcow2", size, size, true, false);
+    }
+
+    @Test
+    public void testChangesSinceSequence() {
+        TemplateManifest manifest = new TemplateManifest();
+        Map<String, TemplateProp> templateInfos = new HashMap<String, TemplateProp>();
+        templateInfos.put("a", template("a", 1));
+        templateInfos.put("b", template("b", 2));
+        manifest.update(templateInfos);
+        long sequence = manifest.getSequence();
+        assertEquals(2, manifest.getChangedTemplates(0).size());
+
+        // an update without changes leaves the sequence as it is
+        manifest.update(new HashMap<String, TemplateProp>(templateInfos));
+        assertEquals(sequence, manifest.getSequence());
+
+        templateInfos.remove("a");
+        templateInfos.put("b", template("b", 3));
+        templateInfos.put("c", template("c", 4));
+        manifest.update(templateInfos);
+
+        assertTrue(manifest.hasChangesSince(sequence));
+        assertEquals(new HashSet<String>(Arrays.asList("b", "c")), manifest.getChangedTemplates(sequence).keySet());
+        assertEquals(3, manifest.getChangedTemplates(sequence).get("b").getSize());
+        assertEquals(Collections.singleton("a"), manifest.getRemovedTemplates(sequence));
+        assertTrue(manifest.getChangedTemplates(manifest.getSequence()).isEmpty());
+    }
+
+    @Test
+    public void testUnknownSequence() {
+        TemplateManifest manifest = new TemplateManifest();
+        manifest.update(Collections.singletonMap("a", template("a", 1)));
+
+        assertFalse(manifest.hasChangesSince(-1));
+        assertFalse(manifest.hasChangesSince(manifest.getSequence() + 1));
+    }
+
+    @Test
+    public void testPages() {
+        TemplateManifest manifest = new TemplateManifest();
+        Map<String, TemplateProp> templateInfos = new HashMap<String, TemplateProp>();
+        for (String name : Arrays.asList("d", "b", "a", "c", "e")) {
+            templateInfos.put(name, template(name, 1));
+        }
+        manifest.update(templateInfos);
+
+        assertEquals(Arrays.asList("a", "b"), Arrays.asList(manifest.getTemplates(null, 2).keySet().toArray()));
+        assertTrue(manifest.hasTemplatesAfter("b"));
+        assertEquals(Arrays.asList("c", "d"), Arrays.asList(manifest.getTemplates("b", 2).keySet().toArray()));
+        assertEquals(Arrays.asList("e"), Arrays.asList(manifest.getTemplates("d", 2).keySet().toArray()));
+        assertFalse(manifest.hasTemplatesAfter("e"));
+        assertEquals(5, manifest.getTemplates(null, 0).size());
+    }
+}
@@ -16,6 +16,7 @@
 // under the License.
 package com.cloud.capacity;
 
+import java.util.List;
 import java.util.Map;
 
 import org.apache.cloudstack.framework.config.ConfigKey;
@@ -88,6 +89,16 @@ public interface CapacityManager {
                     true,
                     ConfigKey.Scope.ImageStore,
                     null);
+    static final ConfigKey<Integer> ClusterCapacitySnapshotInterval =
+            new ConfigKey<Integer>(
+                    "Advanced",
+                    Integer.class,
+                    "cluster.capacity.snapshot.interval",
+                    "5",
+                    "Time (in seconds) for which deployment planners reuse the per cluster CPU and memory consumption loaded to check the cluster disable thresholds. "
+                            + "Capacity changes made by this management server discard it immediately. 0 loads it for every deployment.",
+                    true,
+                    ConfigKey.Scope.Global);
 
     public boolean releaseVmCapacity(VirtualMachine vm, boolean moveFromReserved, boolean moveToReservered, Long hostId);
 
@@ -138,6 +149,16 @@ public interface CapacityManager {
      */
     boolean checkIfClusterCrossesThreshold(Long clusterId, Integer cpuRequested, long ramRequested);
 
+    /**
+     * List the clusters of a zone that would cross their disable threshold if the requested capacity were allocated.
+     * The per cluster consumption is reused for {@link #ClusterCapacitySnapshotInterval} seconds.
+     * @param capacityType Capacity.CAPACITY_TYPE_CPU or Capacity.CAPACITY_TYPE_MEMORY
+     * @param zoneId the zone to check
+     * @param computeRequested cpu (MHz) or memory (bytes) requested
+     * @return ids of the clusters crossing the threshold
+     */
+    List<Long> listClustersCrossingThreshold(short capacityType, long zoneId, long computeRequested);
+
     float getClusterOverProvisioningFactor(Long clusterId, short capacityType);
 
     long getUsedBytes(StoragePoolVO pool);
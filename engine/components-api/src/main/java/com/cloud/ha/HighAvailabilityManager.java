@@ -38,6 +38,22 @@ public interface HighAvailabilityManager extends Manager {
     ConfigKey<Integer> HAWorkers = new ConfigKey<>("Advanced", Integer.class, "ha.workers", "5",
         "The number of High-Availability worker threads.", true, Cluster);
 
+    ConfigKey<Integer> HAWorkBatchSize = new ConfigKey<>("Advanced", Integer.class, "ha.work.batch.size", "10",
+        "The maximum number of High-Availability work items taken from the database (table: op_ha_work) in one pass. "
+        + "Taken work items are processed concurrently by the High-Availability worker threads.", true, Cluster);
+
+    ConfigKey<Integer> HAWorkersPerHost = new ConfigKey<>("Advanced", Integer.class, "ha.workers.per.host", "0",
+        "The maximum number of High-Availability work items processed at the same time for the VMs of one host. "
+        + "Setting this to 0 only limits them by ha.workers.", true, Cluster);
+
+    ConfigKey<Integer> HAWorkersPerCluster = new ConfigKey<>("Advanced", Integer.class, "ha.workers.per.cluster", "0",
+        "The maximum number of High-Availability work items processed at the same time for the VMs of the hosts of one cluster. "
+        + "Setting this to 0 only limits them by ha.workers.", true, Cluster);
+
+    ConfigKey<Integer> InvestigatorTimeout = new ConfigKey<>("Advanced", Integer.class, "ha.investigator.timeout",
+        "120", "The time (in seconds) to wait for the investigators, which are consulted in parallel, to determine whether a VM is alive. "
+        + "When an investigator has not answered by then, the state of the VM is left undetermined unless an investigator before it answered.", true, Cluster);
+
     ConfigKey<Integer> InvestigateRetryInterval = new ConfigKey<>("Advanced", Integer.class, "investigate.retry.interval",
         "60", "The time (in seconds) between VM pings when the agent is disconnected.", true, Cluster);
 
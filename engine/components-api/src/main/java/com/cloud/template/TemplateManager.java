@@ -49,6 +49,17 @@ public interface TemplateManager {
     static final ConfigKey<Integer> TemplatePreloaderPoolSize = new ConfigKey<Integer>("Advanced", Integer.class, TemplatePreloaderPoolSizeCK, "8",
             "Size of the TemplateManager threadpool", false, ConfigKey.Scope.Global);
 
+    static final ConfigKey<Integer> TemplatePrefetchThreshold = new ConfigKey<Integer>("Advanced", Integer.class, "template.prefetch.threshold", "0",
+            "Number of volumes created from a template in a zone within template.prefetch.interval after which the template is preloaded into the other primary storage pools "
+                    + "of the zone that can use it. Setting this to 0 disables template prefetching", true, ConfigKey.Scope.Zone);
+
+    static final ConfigKey<Integer> TemplatePrefetchInterval = new ConfigKey<Integer>("Advanced", Integer.class, "template.prefetch.interval", "600",
+            "Interval (in seconds) between the runs of the template prefetch task, and over which the volumes created from each template are counted", false, ConfigKey.Scope.Global);
+
+    static final ConfigKey<Integer> TemplateSyncPageSize = new ConfigKey<Integer>("Advanced", Integer.class, "template.sync.page.size", "5000",
+            "Number of templates listed per command when the templates of an image store are listed in full during template sync. "
+                    + "Setting this to 0 lists all the templates of the store in a single answer", true, ConfigKey.Scope.Global);
+
 
 
     /**
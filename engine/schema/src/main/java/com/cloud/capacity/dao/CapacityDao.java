@@ -20,6 +20,7 @@ import java.util.List;
 import java.util.Map;
 
 import com.cloud.capacity.CapacityVO;
+import com.cloud.capacity.dao.CapacityDaoImpl.ClusterConsumption;
 import com.cloud.capacity.dao.CapacityDaoImpl.SummedCapacity;
 import com.cloud.utils.Pair;
 import com.cloud.utils.db.GenericDao;
@@ -54,6 +55,12 @@ public interface CapacityDao extends GenericDao<CapacityVO, Long> {
 
     List<Long> listClustersCrossingThreshold(short capacityType, Long zoneId, String configName, long computeRequested);
 
+    /**
+     * Lists the consumption of every cluster in the zone together with its disable threshold, so that
+     * {@link #listClustersCrossingThreshold} can be evaluated for any requested capacity without another query.
+     */
+    List<ClusterConsumption> listClustersConsumptionAndThreshold(short capacityType, Long zoneId, String configName);
+
     float findClusterConsumption(Long clusterId, short capacityType, long computeRequested);
 
     List<Long> orderHostsByFreeCapacity(Long zoneId, Long clusterId, short capacityType);
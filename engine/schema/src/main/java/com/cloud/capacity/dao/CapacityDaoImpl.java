@@ -36,6 +36,7 @@ import com.cloud.capacity.Capacity;
 import com.cloud.capacity.CapacityVO;
 import com.cloud.dc.ClusterDetailsDao;
 import com.cloud.storage.Storage;
+import com.cloud.utils.NumbersUtil;
 import com.cloud.utils.Pair;
 import com.cloud.utils.db.GenericDaoBase;
 import com.cloud.utils.db.GenericSearchBuilder;
@@ -183,6 +184,24 @@ public class CapacityDaoImpl extends GenericDaoBase<CapacityVO, Long> implements
         "GROUP BY cluster.cluster_id)  clusterList " +
         "WHERE clusterList.ratio > clusterList.value; ";
 
+    /* Same per cluster aggregation as LIST_CLUSTERS_CROSSING_THRESHOLD, without the requested capacity, so that the
+     * threshold check can be evaluated for any requested amount from one result set. */
+    private static final String LIST_CLUSTERS_CONSUMPTION_AND_THRESHOLD = "SELECT cluster.cluster_id, sum(cluster.used) + sum(cluster.reserved), sum(cluster.total), cluster.configValue "
+            +
+            "FROM (SELECT capacity.cluster_id cluster_id, capacity.used_capacity used, capacity.reserved_capacity reserved, capacity.total_capacity * overcommit.value total, "
+            +
+            "CASE (SELECT count(*) FROM `cloud`.`cluster_details` details WHERE details.cluster_id = capacity.cluster_id AND details.name = ? ) "
+            +
+            "WHEN 1 THEN (CASE WHEN (SELECT details.value FROM `cloud`.`cluster_details` details WHERE details.cluster_id = capacity.cluster_id AND details.name = ?) is NULL "
+            +
+            "THEN (SELECT config.value FROM `cloud`.`configuration` config WHERE config.name = ?)" +
+            "ELSE (SELECT details.value FROM `cloud`.`cluster_details` details WHERE details.cluster_id = capacity.cluster_id AND details.name = ? ) END )" +
+            "ELSE (SELECT config.value FROM `cloud`.`configuration` config WHERE config.name = ?) " +
+            "END configValue " +
+            "FROM `cloud`.`op_host_capacity` capacity INNER JOIN `cloud`.`cluster_details` overcommit ON overcommit.cluster_id = capacity.cluster_id " +
+            "WHERE capacity.data_center_id = ? AND capacity.capacity_type = ? AND capacity.total_capacity > 0 AND overcommit.name = ? AND capacity.capacity_state='Enabled') cluster " +
+            "GROUP BY cluster.cluster_id";
+
     private static final String FIND_CLUSTER_CONSUMPTION_RATIO = "select ( (sum(capacity.used_capacity) + sum(capacity.reserved_capacity) + ?)/sum(capacity.total_capacity) ) "
             +
             "from op_host_capacity capacity where cluster_id = ? and capacity_type = ?;";
@@ -257,6 +276,41 @@ public class CapacityDaoImpl extends GenericDaoBase<CapacityVO, Long> implements
         }
     }
 
+    @Override
+    public List<ClusterConsumption> listClustersConsumptionAndThreshold(short capacityType, Long zoneId, String configName) {
+
+        TransactionLegacy txn = TransactionLegacy.currentTxn();
+        PreparedStatement pstmt = null;
+        List<ClusterConsumption> result = new ArrayList<ClusterConsumption>();
+        StringBuilder sql = new StringBuilder(LIST_CLUSTERS_CONSUMPTION_AND_THRESHOLD);
+        try {
+            pstmt = txn.prepareAutoCloseStatement(sql.toString());
+            pstmt.setString(1, configName);
+            pstmt.setString(2, configName);
+            pstmt.setString(3, configName);
+            pstmt.setString(4, configName);
+            pstmt.setString(5, configName);
+            pstmt.setLong(6, zoneId);
+            pstmt.setShort(7, capacityType);
+            if (capacityType == 0) {
+                pstmt.setString(8, "memoryOvercommitRatio");
+            } else if (capacityType == 1) {
+                pstmt.setString(8, "cpuOvercommitRatio");
+            }
+
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                String threshold = rs.getString(4);
+                result.add(new ClusterConsumption(rs.getLong(1), rs.getDouble(2), rs.getDouble(3), threshold == null ? null : NumbersUtil.parseFloat(threshold, 0F)));
+            }
+            return result;
+        } catch (SQLException e) {
+            throw new CloudRuntimeException("DB Exception on: " + sql, e);
+        } catch (Throwable e) {
+            throw new CloudRuntimeException("Caught: " + sql, e);
+        }
+    }
+
     /*public static String preparePlaceHolders(int length) {
         StringBuilder builder = new StringBuilder();
         for (int i = 0; i < length;) {
@@ -741,6 +795,47 @@ public class CapacityDaoImpl extends GenericDaoBase<CapacityVO, Long> implements
         }
     }
 
+    /**
+     * Used and reserved capacity of a cluster, its total capacity after overcommit and its disable threshold.
+     */
+    public static class ClusterConsumption {
+        private final long clusterId;
+        private final double usedAndReserved;
+        private final double total;
+        private final Float disableThreshold;
+
+        public ClusterConsumption(long clusterId, double usedAndReserved, double total, Float disableThreshold) {
+            this.clusterId = clusterId;
+            this.usedAndReserved = usedAndReserved;
+            this.total = total;
+            this.disableThreshold = disableThreshold;
+        }
+
+        public long getClusterId() {
+            return clusterId;
+        }
+
+        public double getUsedAndReserved() {
+            return usedAndReserved;
+        }
+
+        public double getTotal() {
+            return total;
+        }
+
+        public Float getDisableThreshold() {
+            return disableThreshold;
+        }
+
+        /**
+         * @return true if allocating the requested capacity would take the cluster above its disable threshold,
+         * the same condition as listClustersCrossingThreshold.
+         */
+        public boolean crossesThreshold(long computeRequested) {
+            return disableThreshold != null && total > 0 && (usedAndReserved + computeRequested) / total > disableThreshold;
+        }
+    }
+
     @Override
     public List<SummedCapacity> findByClusterPodZone(Long zoneId, Long podId, Long clusterId) {
 
@@ -16,6 +16,7 @@
 // under the License.
 package com.cloud.host.dao;
 
+import java.util.List;
 import java.util.Map;
 
 import com.cloud.host.DetailVO;
@@ -28,5 +29,13 @@ public interface HostDetailsDao extends GenericDao<DetailVO, Long> {
 
     DetailVO findDetail(long hostId, String name);
 
+    /**
+     * Finds the value of the named detail for several hosts with a single query.
+     * @param name the detail name
+     * @param hostIds the hosts
+     * @return map of host id to detail value; hosts without the detail are not in the map
+     */
+    Map<Long, String> findDetailByHostIds(String name, List<Long> hostIds);
+
     void deleteDetails(long hostId);
 }
@@ -68,6 +68,11 @@ public interface VolumeDao extends GenericDao<VolumeVO, Long>, StateDao<Volume.S
 
     boolean isAnyVolumeActivelyUsingTemplateOnPool(long templateId, long poolId);
 
+    /**
+     * @return the template id of every volume created from a template in the zone after the given date, once per volume
+     */
+    List<Long> listTemplateIdsOfVolumesCreatedAfter(long dcId, Date date);
+
     List<VolumeVO> findCreatedByInstance(long id);
 
     List<VolumeVO> findByPoolId(long poolId);
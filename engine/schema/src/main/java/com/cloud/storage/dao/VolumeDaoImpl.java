@@ -59,6 +59,7 @@ public class VolumeDaoImpl extends GenericDaoBase<VolumeVO, Long> implements Vol
     protected final GenericSearchBuilder<VolumeVO, SumCount> TotalSizeByPoolSearch;
     protected final GenericSearchBuilder<VolumeVO, SumCount> TotalVMSnapshotSizeByPoolSearch;
     protected final GenericSearchBuilder<VolumeVO, Long> ActiveTemplateSearch;
+    protected final GenericSearchBuilder<VolumeVO, Long> TemplateIdsCreatedAfterSearch;
     protected final SearchBuilder<VolumeVO> InstanceStatesSearch;
     protected final SearchBuilder<VolumeVO> AllFieldsSearch;
     protected GenericSearchBuilder<VolumeVO, Long> CountByAccount;
@@ -400,6 +401,13 @@ public class VolumeDaoImpl extends GenericDaoBase<VolumeVO, Long> implements Vol
         ActiveTemplateSearch.select(null, Func.COUNT, null);
         ActiveTemplateSearch.done();
 
+        TemplateIdsCreatedAfterSearch = createSearchBuilder(Long.class);
+        TemplateIdsCreatedAfterSearch.selectFields(TemplateIdsCreatedAfterSearch.entity().getTemplateId());
+        TemplateIdsCreatedAfterSearch.and("dcId", TemplateIdsCreatedAfterSearch.entity().getDataCenterId(), Op.EQ);
+        TemplateIdsCreatedAfterSearch.and("created", TemplateIdsCreatedAfterSearch.entity().getCreated(), Op.GT);
+        TemplateIdsCreatedAfterSearch.and("template", TemplateIdsCreatedAfterSearch.entity().getTemplateId(), Op.NNULL);
+        TemplateIdsCreatedAfterSearch.done();
+
         InstanceStatesSearch = createSearchBuilder();
         InstanceStatesSearch.and("instance", InstanceStatesSearch.entity().getInstanceId(), Op.EQ);
         InstanceStatesSearch.and("states", InstanceStatesSearch.entity().getState(), Op.IN);
@@ -515,6 +523,15 @@ public class VolumeDaoImpl extends GenericDaoBase<VolumeVO, Long> implements Vol
         return listBy(sc);
     }
 
+    @Override
+    public List<Long> listTemplateIdsOfVolumesCreatedAfter(long dcId, Date date) {
+        SearchCriteria<Long> sc = TemplateIdsCreatedAfterSearch.create();
+        sc.setParameters("dcId", dcId);
+        sc.setParameters("created", date);
+
+        return customSearchIncludingRemoved(sc, null);
+    }
+
     @Override
     public List<VolumeVO> listVolumesToBeDestroyed(Date date) {
         SearchCriteria<VolumeVO> sc = AllFieldsSearch.create();
@@ -38,6 +38,14 @@ public interface ResourceTagDao extends GenericDao<ResourceTagVO, Long> {
 
     List<? extends ResourceTag> listBy(long resourceId, ResourceObjectType resourceType);
 
+    /**
+     * List the tags of several resources of the same type in one query
+     * @param resourceIds the ids of the resources
+     * @param resourceType the resource type
+     * @return the tags of all the given resources
+     */
+    List<? extends ResourceTag> listBy(List<Long> resourceIds, ResourceObjectType resourceType);
+
     /**
      * Find a resource tag based on the resource id, resource type and key
      * @param resourceId the id of the resource you want to find
@@ -16,6 +16,7 @@
 // under the License.
 package com.cloud.tags.dao;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.Map;
@@ -36,6 +37,7 @@ import com.cloud.utils.db.SearchCriteria.Op;
 @Component
 public class ResourceTagsDaoImpl extends GenericDaoBase<ResourceTagVO, Long> implements ResourceTagDao {
     final SearchBuilder<ResourceTagVO> AllFieldsSearch;
+    final SearchBuilder<ResourceTagVO> ResourceIdsSearch;
 
     public ResourceTagsDaoImpl() {
         AllFieldsSearch = createSearchBuilder();
@@ -45,6 +47,11 @@ public class ResourceTagsDaoImpl extends GenericDaoBase<ResourceTagVO, Long> imp
         AllFieldsSearch.and("key", AllFieldsSearch.entity().getKey(), Op.EQ);
         AllFieldsSearch.and("resourceUuid", AllFieldsSearch.entity().getResourceUuid(), Op.EQ);
         AllFieldsSearch.done();
+
+        ResourceIdsSearch = createSearchBuilder();
+        ResourceIdsSearch.and("resourceIds", ResourceIdsSearch.entity().getResourceId(), Op.IN);
+        ResourceIdsSearch.and("resourceType", ResourceIdsSearch.entity().getResourceType(), Op.EQ);
+        ResourceIdsSearch.done();
     }
 
     @Override
@@ -64,6 +71,17 @@ public class ResourceTagsDaoImpl extends GenericDaoBase<ResourceTagVO, Long> imp
         return listBy(sc);
     }
 
+    @Override
+    public List<? extends ResourceTag> listBy(List<Long> resourceIds, ResourceObjectType resourceType) {
+        if (resourceIds == null || resourceIds.isEmpty()) {
+            return new ArrayList<ResourceTagVO>();
+        }
+        SearchCriteria<ResourceTagVO> sc = ResourceIdsSearch.create();
+        sc.setParameters("resourceIds", resourceIds.toArray());
+        sc.setParameters("resourceType", resourceType);
+        return listBy(sc);
+    }
+
     @Override
     public ResourceTag findByKey(long resourceId, ResourceObjectType resourceType, String key) {
         SearchCriteria<ResourceTagVO> sc = AllFieldsSearch.create();
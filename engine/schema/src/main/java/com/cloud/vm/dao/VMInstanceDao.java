@@ -153,6 +153,13 @@ public interface VMInstanceDao extends GenericDao<VMInstanceVO, Long>, StateDao<
 
     HashMap<String, Long> countVgpuVMs(Long dcId, Long podId, Long clusterId);
 
+    /**
+     * Counts the user VMs placed on each of the given hosts.
+     *
+     * @return map of host id to the pair of running and total user VMs; hosts without user VMs are not included
+     */
+    Map<Long, Pair<Long, Long>> countUserVmsByHostIds(List<Long> hostIds);
+
     VMInstanceVO findVMByHostNameInZone(String hostName, long zoneId);
 
     boolean isPowerStateUpToDate(long instanceId);
@@ -126,6 +126,9 @@ public class VMInstanceDaoImpl extends GenericDaoBase<VMInstanceVO, Long> implem
     private static final String COUNT_VMS_BASED_ON_VGPU_TYPES2 =
             "GROUP BY offering.service_offering_id) results GROUP BY pci, type";
 
+    private static final String COUNT_USER_VMS_BY_HOSTS = "SELECT host_id, SUM(IF(state = 'Running', 1, 0)), COUNT(id) FROM `cloud`.`vm_instance` " +
+            "WHERE type = 'User' AND removed IS NULL AND host_id IN (%s) GROUP BY host_id";
+
     @Inject
     protected HostDao _hostDao;
 
@@ -787,6 +790,33 @@ public class VMInstanceDaoImpl extends GenericDaoBase<VMInstanceVO, Long> implem
         }
     }
 
+    @Override
+    public Map<Long, Pair<Long, Long>> countUserVmsByHostIds(List<Long> hostIds) {
+        Map<Long, Pair<Long, Long>> result = new HashMap<>();
+        if (hostIds == null || hostIds.isEmpty()) {
+            return result;
+        }
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < hostIds.size(); i++) {
+            placeholders.append(i == 0 ? "?" : ", ?");
+        }
+        String sql = String.format(COUNT_USER_VMS_BY_HOSTS, placeholders);
+        TransactionLegacy txn = TransactionLegacy.currentTxn();
+        try (PreparedStatement pstmt = txn.prepareStatement(sql)) {
+            for (int i = 0; i < hostIds.size(); i++) {
+                pstmt.setLong(i + 1, hostIds.get(i));
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    result.put(rs.getLong(1), new Pair<>(rs.getLong(2), rs.getLong(3)));
+                }
+            }
+            return result;
+        } catch (SQLException e) {
+            throw new CloudRuntimeException("DB Exception on: " + sql, e);
+        }
+    }
+
     @Override
     public Long countRunningAndStartingByAccount(long accountId) {
         SearchCriteria<Long> sc = CountRunningAndStartingByAccount.create();
@@ -0,0 +1,61 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.tags.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import com.cloud.server.ResourceTag.ResourceObjectType;
+import com.cloud.tags.ResourceTagVO;
+import com.cloud.utils.db.Filter;
+import com.cloud.utils.db.SearchCriteria;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ResourceTagsDaoImplTest {
+
+    @Spy
+    ResourceTagsDaoImpl resourceTagsDao = new ResourceTagsDaoImpl();
+
+    @Test
+    public void listByResourceIdsWithoutIdsSkipsTheQuery() {
+        Assert.assertTrue(resourceTagsDao.listBy(new ArrayList<Long>(), ResourceObjectType.PublicIpAddress).isEmpty());
+        Assert.assertTrue(resourceTagsDao.listBy((List<Long>)null, ResourceObjectType.PublicIpAddress).isEmpty());
+
+        Mockito.verify(resourceTagsDao, Mockito.never()).searchIncludingRemoved(Mockito.any(SearchCriteria.class), Mockito.isNull(Filter.class),
+                Mockito.isNull(Boolean.class), Mockito.eq(false));
+    }
+
+    @Test
+    public void listByResourceIdsRunsOneQuery() {
+        List<ResourceTagVO> tags = Arrays.asList(Mockito.mock(ResourceTagVO.class), Mockito.mock(ResourceTagVO.class));
+        Mockito.doReturn(tags).when(resourceTagsDao).searchIncludingRemoved(Mockito.any(SearchCriteria.class), Mockito.isNull(Filter.class),
+                Mockito.isNull(Boolean.class), Mockito.eq(false));
+
+        Assert.assertEquals(tags, resourceTagsDao.listBy(Arrays.asList(1L, 2L, 3L), ResourceObjectType.PublicIpAddress));
+
+        Mockito.verify(resourceTagsDao).searchIncludingRemoved(Mockito.any(SearchCriteria.class), Mockito.isNull(Filter.class),
+                Mockito.isNull(Boolean.class), Mockito.eq(false));
+    }
+}
@@ -18,12 +18,25 @@
 package com.cloud.vm.dao;
 
 import com.cloud.utils.Pair;
+import com.cloud.utils.db.TransactionLegacy;
 import com.cloud.vm.VirtualMachine;
 import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.Assert;
+import org.junit.runner.RunWith;
 import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
 
 import static com.cloud.vm.VirtualMachine.State.Running;
 import static com.cloud.vm.VirtualMachine.State.Stopped;
@@ -37,6 +50,9 @@ import org.mockito.Spy;
  * Created by sudharma_jain on 3/2/17.
  */
 
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(TransactionLegacy.class)
+@PowerMockIgnore("javax.management.*")
 public class VMInstanceDaoImplTest {
 
     @Spy
@@ -45,6 +61,15 @@ public class VMInstanceDaoImplTest {
     @Mock
     VMInstanceVO vm;
 
+    @Mock
+    TransactionLegacy txn;
+
+    @Mock
+    PreparedStatement pstmt;
+
+    @Mock
+    ResultSet rs;
+
     @Before
     public void setUp() throws Exception {
         MockitoAnnotations.initMocks(this);
@@ -67,6 +92,37 @@ public class VMInstanceDaoImplTest {
         Assert.assertEquals(vmInstanceDao.ifStateUnchanged(Stopped, Running, null, null), false);
     }
 
-}
+    @Test
+    public void testCountUserVmsByHostIdsWithoutHosts() throws Exception {
+        PowerMockito.mockStatic(TransactionLegacy.class);
+
+        Assert.assertTrue(vmInstanceDao.countUserVmsByHostIds(new ArrayList<Long>()).isEmpty());
+
+        PowerMockito.verifyStatic(TransactionLegacy.class, Mockito.never());
+        TransactionLegacy.currentTxn();
+    }
 
+    @Test
+    public void testCountUserVmsByHostIds() throws Exception {
+        PowerMockito.mockStatic(TransactionLegacy.class);
+        when(TransactionLegacy.currentTxn()).thenReturn(txn);
+        when(txn.prepareStatement(Mockito.anyString())).thenReturn(pstmt);
+        when(pstmt.executeQuery()).thenReturn(rs);
+        // host 2 has no user VMs, so it has no row
+        when(rs.next()).thenReturn(true, true, false);
+        when(rs.getLong(1)).thenReturn(1L, 3L);
+        when(rs.getLong(2)).thenReturn(2L, 0L);
+        when(rs.getLong(3)).thenReturn(4L, 1L);
+
+        Map<Long, Pair<Long, Long>> counts = vmInstanceDao.countUserVmsByHostIds(Arrays.asList(1L, 2L, 3L));
 
+        Mockito.verify(txn).prepareStatement(Mockito.contains("host_id IN (?, ?, ?)"));
+        Mockito.verify(pstmt).setLong(1, 1L);
+        Mockito.verify(pstmt).setLong(2, 2L);
+        Mockito.verify(pstmt).setLong(3, 3L);
+        Assert.assertEquals(2, counts.size());
+        Assert.assertEquals(new Pair<Long, Long>(2L, 4L), counts.get(1L));
+        Assert.assertNull(counts.get(2L));
+        Assert.assertEquals(new Pair<Long, Long>(0L, 1L), counts.get(3L));
+    }
+}
@@ -26,7 +26,9 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 
 import javax.inject.Inject;
@@ -157,6 +159,23 @@ public class TemplateServiceImpl implements TemplateService {
     @Inject
     TemplateDataFactory imageFactory;
 
+    /* the templates of each image store as of its last sync, to only list the changes since then on the next one */
+    private final Map<Long, StoreTemplates> _storeTemplates = new ConcurrentHashMap<Long, StoreTemplates>();
+
+    private static class StoreTemplates {
+        final long endPointId;
+        final String manifestId;
+        final long sequence;
+        final Map<String, TemplateProp> templateInfos;
+
+        StoreTemplates(long endPointId, String manifestId, long sequence, Map<String, TemplateProp> templateInfos) {
+            this.endPointId = endPointId;
+            this.manifestId = manifestId;
+            this.sequence = sequence;
+            this.templateInfos = templateInfos;
+        }
+    }
+
     class TemplateOpContext<T> extends AsyncRpcContext<T> {
         final TemplateObject template;
         final AsyncCallFuture<TemplateApiResult> future;
@@ -670,27 +689,76 @@ public class TemplateServiceImpl implements TemplateService {
         return null;
     }
 
-    private Map<String, TemplateProp> listTemplate(DataStore ssStore) {
+    protected Map<String, TemplateProp> listTemplate(DataStore ssStore) {
         String nfsVersion = imageStoreDetailsUtil.getNfsVersion(ssStore.getId());
-        ListTemplateCommand cmd = new ListTemplateCommand(ssStore.getTO(), nfsVersion);
+        // all the commands of a listing go to the same endpoint, as the manifest they are answered from is kept there
         EndPoint ep = _epSelector.select(ssStore);
-        Answer answer = null;
         if (ep == null) {
-            String errMsg = "No remote endpoint to send command, check if host or ssvm is down?";
-            s_logger.error(errMsg);
-            answer = new Answer(cmd, false, errMsg);
-        } else {
-            answer = ep.sendMessage(cmd);
+            s_logger.error("No remote endpoint to send command, check if host or ssvm is down?");
+            return null;
         }
-        if (answer != null && answer.getResult()) {
-            ListTemplateAnswer tanswer = (ListTemplateAnswer)answer;
-            return tanswer.getTemplateInfo();
-        } else {
+
+        StoreTemplates storeTemplates = _storeTemplates.remove(ssStore.getId());
+        if (storeTemplates != null && storeTemplates.endPointId != ep.getId()) {
+            storeTemplates = null;
+        }
+        int pageSize = TemplateManager.TemplateSyncPageSize.value();
+
+        ListTemplateCommand cmd = new ListTemplateCommand(ssStore.getTO(), nfsVersion);
+        if (storeTemplates != null) {
+            cmd.setChangesSince(storeTemplates.manifestId, storeTemplates.sequence);
+        }
+        cmd.setPage(null, pageSize);
+        ListTemplateAnswer answer = sendListTemplateCommand(ep, cmd, ssStore);
+        if (answer == null || answer.getTemplateInfo() == null) {
+            return null;
+        }
+
+        Map<String, TemplateProp> templateInfos;
+        if (answer.isIncremental()) {
+            templateInfos = storeTemplates.templateInfos;
+            if (answer.getRemovedTemplates() != null) {
+                templateInfos.keySet().removeAll(answer.getRemovedTemplates());
+            }
+            templateInfos.putAll(answer.getTemplateInfo());
             if (s_logger.isDebugEnabled()) {
-                s_logger.debug("can not list template for secondary storage host " + ssStore.getId());
+                s_logger.debug("Listed " + answer.getTemplateInfo().size() + " changed and " + (answer.getRemovedTemplates() == null ? 0 : answer.getRemovedTemplates().size())
+                        + " removed templates on image store " + ssStore.getId() + " since its last sync");
+            }
+        } else {
+            templateInfos = new HashMap<String, TemplateProp>(answer.getTemplateInfo());
+            final String manifestId = answer.getManifestId();
+            final long sequence = answer.getSequence();
+            while (answer.getLastTemplateName() != null) {
+                cmd = new ListTemplateCommand(ssStore.getTO(), nfsVersion);
+                cmd.setPage(answer.getLastTemplateName(), pageSize);
+                answer = sendListTemplateCommand(ep, cmd, ssStore);
+                if (answer == null || answer.getTemplateInfo() == null) {
+                    return null;
+                }
+                if (!Objects.equals(manifestId, answer.getManifestId()) || sequence != answer.getSequence()) {
+                    s_logger.warn("The templates on image store " + ssStore.getId() + " changed while they were listed, skipping this template sync");
+                    return null;
+                }
+                templateInfos.putAll(answer.getTemplateInfo());
             }
         }
 
+        if (answer.getManifestId() != null) {
+            _storeTemplates.put(ssStore.getId(), new StoreTemplates(ep.getId(), answer.getManifestId(), answer.getSequence(), templateInfos));
+        }
+        // template sync takes the templates it finds out of the map, so it gets a copy of the one that is kept
+        return new HashMap<String, TemplateProp>(templateInfos);
+    }
+
+    private ListTemplateAnswer sendListTemplateCommand(EndPoint ep, ListTemplateCommand cmd, DataStore ssStore) {
+        Answer answer = ep.sendMessage(cmd);
+        if (answer != null && answer.getResult()) {
+            return (ListTemplateAnswer)answer;
+        }
+        if (s_logger.isDebugEnabled()) {
+            s_logger.debug("can not list template for secondary storage host " + ssStore.getId());
+        }
         return null;
     }
 
@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cloudstack.storage.image;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.cloudstack.engine.subsystem.api.storage.DataStore;
+import org.apache.cloudstack.engine.subsystem.api.storage.EndPoint;
+import org.apache.cloudstack.engine.subsystem.api.storage.EndPointSelector;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import com.cloud.agent.api.Command;
+import com.cloud.agent.api.storage.ListTemplateAnswer;
+import com.cloud.agent.api.storage.ListTemplateCommand;
+import com.cloud.storage.ImageStoreDetailsUtil;
+import com.cloud.storage.template.TemplateProp;
+import com.cloud.template.TemplateManager;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TemplateServiceImplTest {
+
+    private static final long STORE_ID = 1L;
+
+    @InjectMocks
+    private TemplateServiceImpl templateService = new TemplateServiceImpl();
+    @Mock
+    private EndPointSelector _epSelector;
+    @Mock
+    private ImageStoreDetailsUtil imageStoreDetailsUtil;
+    @Mock
+    private DataStore store;
+    @Mock
+    private EndPoint endPoint;
+
+    @Before
+    public void setUp() {
+        Mockito.when(store.getId()).thenReturn(STORE_ID);
+        Mockito.when(_epSelector.select(store)).thenReturn(endPoint);
+        Mockito.lenient().when(endPoint.getId()).thenReturn(2L);
+    }
+
+    private ListTemplateAnswer answer(String manifestId, long sequence, String lastTemplateName, String... templateNames) {
+        Map<String, TemplateProp> templateInfos = new HashMap<String, TemplateProp>();
+        for (String templateName : templateNames) {
+            templateInfos.put(templateName, new TemplateProp(templateName, "template/tmpl/" + templateName, false, false));
+        }
+        ListTemplateAnswer answer = new ListTemplateAnswer("nfs://store", templateInfos);
+        answer.setManifest(manifestId, sequence);
+        answer.setLastTemplateName(lastTemplateName);
+        return answer;
+    }
+
+    private ListTemplateAnswer changes(String manifestId, long sequence, String[] removedTemplateNames, String... templateNames) {
+        ListTemplateAnswer answer = answer(manifestId, sequence, null, templateNames);
+        answer.setIncremental(true);
+        answer.setRemovedTemplates(new HashSet<String>(Arrays.asList(removedTemplateNames)));
+        return answer;
+    }
+
+    private List<Command> sentCommands(int count) {
+        ArgumentCaptor<Command> cmds = ArgumentCaptor.forClass(Command.class);
+        Mockito.verify(endPoint, Mockito.times(count)).sendMessage(cmds.capture());
+        return cmds.getAllValues();
+    }
+
+    @Test
+    public void listTemplateMergesThePages() {
+        Mockito.when(endPoint.sendMessage(Mockito.any(Command.class))).thenReturn(answer("m1", 3, "b", "a", "b"), answer("m1", 3, null, "c"));
+
+        Map<String, TemplateProp> templates = templateService.listTemplate(store);
+
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("a", "b", "c")), templates.keySet());
+        List<Command> cmds = sentCommands(2);
+        ListTemplateCommand first = (ListTemplateCommand)cmds.get(0);
+        Assert.assertNull(first.getStartAfter());
+        Assert.assertNull(first.getManifestId());
+        Assert.assertEquals(TemplateManager.TemplateSyncPageSize.value().intValue(), first.getPageSize());
+        Assert.assertEquals("b", ((ListTemplateCommand)cmds.get(1)).getStartAfter());
+    }
+
+    @Test
+    public void listTemplateMergesTheChangesIntoThePreviousListing() {
+        Mockito.when(endPoint.sendMessage(Mockito.any(Command.class))).thenReturn(answer("m1", 3, null, "a", "b", "c"),
+                changes("m1", 5, new String[] {"b"}, "c", "d"));
+
+        templateService.listTemplate(store);
+        Map<String, TemplateProp> templates = templateService.listTemplate(store);
+
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("a", "c", "d")), templates.keySet());
+        ListTemplateCommand second = (ListTemplateCommand)sentCommands(2).get(1);
+        Assert.assertEquals("m1", second.getManifestId());
+        Assert.assertEquals(3, second.getSinceSequence());
+    }
+
+    @Test
+    public void listTemplateContinuesFromTheSequenceOfTheLastChanges() {
+        Mockito.when(endPoint.sendMessage(Mockito.any(Command.class))).thenReturn(answer("m1", 3, null, "a", "b"),
+                changes("m1", 5, new String[] {"a"}), changes("m1", 6, new String[0], "e"));
+
+        templateService.listTemplate(store);
+        templateService.listTemplate(store);
+        Map<String, TemplateProp> templates = templateService.listTemplate(store);
+
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("b", "e")), templates.keySet());
+        Assert.assertEquals(5, ((ListTemplateCommand)sentCommands(3).get(2)).getSinceSequence());
+    }
+
+    @Test
+    public void listTemplateKeepsTheListingWhenTheCallerChangesTheReturnedMap() {
+        Mockito.when(endPoint.sendMessage(Mockito.any(Command.class))).thenReturn(answer("m1", 3, null, "a", "b"),
+                changes("m1", 3, new String[0]));
+
+        templateService.listTemplate(store).remove("a");
+        Map<String, TemplateProp> templates = templateService.listTemplate(store);
+
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("a", "b")), templates.keySet());
+    }
+
+    @Test
+    public void listTemplateSkipsTheSyncWhenTheManifestChangesBetweenPages() {
+        Mockito.when(endPoint.sendMessage(Mockito.any(Command.class))).thenReturn(answer("m1", 3, "b", "a", "b"), answer("m1", 4, null, "c"),
+                answer("m1", 4, null, "a", "c"));
+
+        Assert.assertNull(templateService.listTemplate(store));
+
+        // nothing is kept from the skipped listing, so the next one lists the whole store again
+        Map<String, TemplateProp> templates = templateService.listTemplate(store);
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("a", "c")), templates.keySet());
+        Assert.assertNull(((ListTemplateCommand)sentCommands(3).get(2)).getManifestId());
+    }
+
+    @Test
+    public void listTemplateListsTheWholeStoreWhenTheEndpointChanges() {
+        Mockito.when(endPoint.sendMessage(Mockito.any(Command.class))).thenReturn(answer("m1", 3, null, "a"), answer("m2", 1, null, "b"));
+
+        templateService.listTemplate(store);
+        Mockito.when(endPoint.getId()).thenReturn(3L);
+        Map<String, TemplateProp> templates = templateService.listTemplate(store);
+
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("b")), templates.keySet());
+        Assert.assertNull(((ListTemplateCommand)sentCommands(2).get(1)).getManifestId());
+    }
+
+    @Test
+    public void listTemplateReturnsNullWhenTheListingFails() {
+        Mockito.when(endPoint.sendMessage(Mockito.any(Command.class))).thenReturn(null);
+
+        Assert.assertNull(templateService.listTemplate(store));
+    }
+}
@@ -129,7 +129,7 @@ public class DefaultSnapshotStrategy extends SnapshotStrategyBase {
         SnapshotDataStoreVO parentSnapshotOnBackupStore = snapshotStoreDao.findLatestSnapshotForVolume(snapshot.getVolumeId(), DataStoreRole.Image);
         SnapshotDataStoreVO parentSnapshotOnPrimaryStore = snapshotStoreDao.findLatestSnapshotForVolume(snapshot.getVolumeId(), DataStoreRole.Primary);
         HypervisorType hypervisorType = snapshot.getBaseVolume().getHypervisorType();
-        if (parentSnapshotOnPrimaryStore != null && parentSnapshotOnBackupStore != null && hypervisorType == Hypervisor.HypervisorType.XenServer) { // CS does incremental backup only for XenServer
+        if (parentSnapshotOnPrimaryStore != null && parentSnapshotOnBackupStore != null && supportsIncrementalBackup(snapshot, hypervisorType)) {
 
             // In case of volume migration from one pool to other pool, CS should take full snapshot to avoid any issues with delta chain,
             // to check if this is a migrated volume, compare the current pool id of volume and store_id of oldest snapshot on primary for this volume.
@@ -171,6 +171,19 @@ public class DefaultSnapshotStrategy extends SnapshotStrategyBase {
         return snapshotSvr.backupSnapshot(snapshot);
     }
 
+    /**
+     * CS does incremental backup for XenServer, and for KVM volumes on RBD when kvm.incremental.snapshot is enabled,
+     * as RBD keeps the snapshots on primary storage to diff against.
+     */
+    protected boolean supportsIncrementalBackup(SnapshotInfo snapshot, HypervisorType hypervisorType) {
+        if (hypervisorType == Hypervisor.HypervisorType.XenServer) {
+            return true;
+        }
+        DataStore primaryStore = snapshot.getDataStore();
+        return hypervisorType == Hypervisor.HypervisorType.KVM && SnapshotManager.KvmIncrementalSnapshot.value() &&
+                primaryStore instanceof PrimaryDataStoreImpl && ((PrimaryDataStoreImpl)primaryStore).getPoolType() == StoragePoolType.RBD;
+    }
+
     protected boolean deleteSnapshotChain(SnapshotInfo snapshot) {
         s_logger.debug("delete snapshot chain for snapshot: " + snapshot.getId());
         boolean result = false;
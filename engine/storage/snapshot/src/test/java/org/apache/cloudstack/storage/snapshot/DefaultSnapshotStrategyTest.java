@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cloudstack.storage.snapshot;
+
+import org.apache.cloudstack.engine.subsystem.api.storage.SnapshotInfo;
+import org.apache.cloudstack.framework.config.ConfigKey;
+import org.apache.cloudstack.framework.config.dao.ConfigurationDao;
+import org.apache.cloudstack.framework.config.impl.ConfigDepotImpl;
+import org.apache.cloudstack.framework.config.impl.ConfigurationVO;
+import org.apache.cloudstack.storage.datastore.PrimaryDataStoreImpl;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.cloud.hypervisor.Hypervisor.HypervisorType;
+import com.cloud.storage.Storage.StoragePoolType;
+import com.cloud.storage.snapshot.SnapshotManager;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DefaultSnapshotStrategyTest {
+
+    @InjectMocks
+    private DefaultSnapshotStrategy defaultSnapshotStrategy;
+    @Mock
+    private SnapshotInfo snapshot;
+    @Mock
+    private PrimaryDataStoreImpl primaryStore;
+    @Mock
+    private ConfigDepotImpl configDepot;
+    @Mock
+    private ConfigurationDao configurationDao;
+    @Mock
+    private ConfigurationVO kvmIncrementalSnapshot;
+
+    @Before
+    public void setUp() {
+        Mockito.when(snapshot.getDataStore()).thenReturn(primaryStore);
+        Mockito.when(configDepot.global()).thenReturn(configurationDao);
+        Mockito.when(configurationDao.findById(SnapshotManager.KvmIncrementalSnapshot.key())).thenReturn(kvmIncrementalSnapshot);
+        ConfigKey.init(configDepot);
+    }
+
+    @After
+    public void tearDown() {
+        ConfigKey.init(null);
+    }
+
+    private boolean supportsIncrementalBackup(HypervisorType hypervisorType, StoragePoolType poolType, String kvmIncrementalSnapshotEnabled) {
+        Mockito.when(primaryStore.getPoolType()).thenReturn(poolType);
+        Mockito.when(kvmIncrementalSnapshot.getValue()).thenReturn(kvmIncrementalSnapshotEnabled);
+        return defaultSnapshotStrategy.supportsIncrementalBackup(snapshot, hypervisorType);
+    }
+
+    @Test
+    public void testSupportsIncrementalBackupXenServer() {
+        Assert.assertTrue(supportsIncrementalBackup(HypervisorType.XenServer, StoragePoolType.NetworkFilesystem, "false"));
+    }
+
+    @Test
+    public void testSupportsIncrementalBackupKvmOnRbd() {
+        Assert.assertTrue(supportsIncrementalBackup(HypervisorType.KVM, StoragePoolType.RBD, "true"));
+    }
+
+    @Test
+    public void testSupportsIncrementalBackupKvmOnRbdDisabled() {
+        Assert.assertFalse(supportsIncrementalBackup(HypervisorType.KVM, StoragePoolType.RBD, "false"));
+    }
+
+    @Test
+    public void testSupportsIncrementalBackupKvmOnNfs() {
+        Assert.assertFalse(supportsIncrementalBackup(HypervisorType.KVM, StoragePoolType.NetworkFilesystem, "true"));
+    }
+
+    @Test
+    public void testSupportsIncrementalBackupVmwareOnRbd() {
+        Assert.assertFalse(supportsIncrementalBackup(HypervisorType.VMware, StoragePoolType.RBD, "true"));
+    }
+}
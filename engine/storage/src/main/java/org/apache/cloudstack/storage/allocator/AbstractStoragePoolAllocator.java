@@ -183,7 +183,38 @@ public abstract class AbstractStoragePoolAllocator extends AdapterBase implement
         return pools;
     }
 
+    /**
+     * Filters the candidate pools in order until returnUpTo suitable pools are found. Pools that are not suitable
+     * are added to the avoid set when {@link #canAddStoragePoolToAvoidSet(StoragePoolVO)} allows it. The requested
+     * volume, the hypervisor type of each cluster and the datastore cluster parents are looked up once for the whole
+     * candidate list rather than once per pool.
+     */
+    protected List<StoragePool> filterPools(List<StoragePoolVO> pools, ExcludeList avoid, DiskProfile dskCh, DeploymentPlan plan, int returnUpTo) {
+        List<StoragePool> suitablePools = new ArrayList<>();
+        PoolFilterContext context = new PoolFilterContext(volumeDao.findById(dskCh.getVolumeId()));
+        for (StoragePoolVO pool : pools) {
+            if (suitablePools.size() == returnUpTo) {
+                break;
+            }
+            StoragePool storagePool = (StoragePool)dataStoreMgr.getPrimaryDataStore(pool.getId());
+            if (filter(avoid, storagePool, dskCh, plan, context)) {
+                suitablePools.add(storagePool);
+            } else if (canAddStoragePoolToAvoidSet(pool)) {
+                avoid.addPool(pool.getId());
+            }
+        }
+        return suitablePools;
+    }
+
+    protected boolean canAddStoragePoolToAvoidSet(StoragePoolVO pool) {
+        return true;
+    }
+
     protected boolean filter(ExcludeList avoid, StoragePool pool, DiskProfile dskCh, DeploymentPlan plan) {
+        return filter(avoid, pool, dskCh, plan, new PoolFilterContext(volumeDao.findById(dskCh.getVolumeId())));
+    }
+
+    private boolean filter(ExcludeList avoid, StoragePool pool, DiskProfile dskCh, DeploymentPlan plan, PoolFilterContext context) {
 
         if (s_logger.isDebugEnabled()) {
             s_logger.debug("Checking if storage pool is suitable, name: " + pool.getName() + " ,poolId: " + pool.getId());
@@ -197,8 +228,7 @@ public abstract class AbstractStoragePoolAllocator extends AdapterBase implement
 
         Long clusterId = pool.getClusterId();
         if (clusterId != null) {
-            ClusterVO cluster = clusterDao.findById(clusterId);
-            if (!(cluster.getHypervisorType() == dskCh.getHypervisorType())) {
+            if (!(context.getClusterHypervisorType(clusterId) == dskCh.getHypervisorType())) {
                 if (s_logger.isDebugEnabled()) {
                     s_logger.debug("StoragePool's Cluster does not have required hypervisorType, skipping this pool");
                 }
@@ -215,7 +245,7 @@ public abstract class AbstractStoragePoolAllocator extends AdapterBase implement
             return false;
         }
 
-        Volume volume = volumeDao.findById(dskCh.getVolumeId());
+        Volume volume = context.volume;
         if(!storageMgr.storagePoolCompatibleWithVolumePool(pool, volume)) {
             return false;
         }
@@ -234,7 +264,7 @@ public abstract class AbstractStoragePoolAllocator extends AdapterBase implement
             }
             // Skip the storage pool whose parent datastore cluster is not in UP state.
             if (pool.getParent() != 0L) {
-                StoragePoolVO datastoreCluster = storagePoolDao.findById(pool.getParent());
+                StoragePoolVO datastoreCluster = context.getDatastoreCluster(pool.getParent());
                 if (datastoreCluster == null || (datastoreCluster != null && datastoreCluster.getStatus() != StoragePoolStatus.Up)) {
                     return false;
                 }
@@ -275,4 +305,34 @@ public abstract class AbstractStoragePoolAllocator extends AdapterBase implement
         }
         return true;
     }
+
+    /**
+     * Lookups shared by all the candidate pools checked for one disk.
+     */
+    private class PoolFilterContext {
+        private final Volume volume;
+        private final Map<Long, HypervisorType> clusterHypervisorTypes = new HashMap<>();
+        private final Map<Long, StoragePoolVO> datastoreClusters = new HashMap<>();
+
+        PoolFilterContext(Volume volume) {
+            this.volume = volume;
+        }
+
+        HypervisorType getClusterHypervisorType(long clusterId) {
+            HypervisorType hypervisorType = clusterHypervisorTypes.get(clusterId);
+            if (hypervisorType == null) {
+                ClusterVO cluster = clusterDao.findById(clusterId);
+                hypervisorType = cluster.getHypervisorType();
+                clusterHypervisorTypes.put(clusterId, hypervisorType);
+            }
+            return hypervisorType;
+        }
+
+        StoragePoolVO getDatastoreCluster(long poolId) {
+            if (!datastoreClusters.containsKey(poolId)) {
+                datastoreClusters.put(poolId, storagePoolDao.findById(poolId));
+            }
+            return datastoreClusters.get(poolId);
+        }
+    }
 }
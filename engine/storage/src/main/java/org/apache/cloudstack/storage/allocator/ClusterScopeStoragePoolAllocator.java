@@ -100,17 +100,7 @@ public class ClusterScopeStoragePoolAllocator extends AbstractStoragePoolAllocat
             return suitablePools;
         }
 
-        for (StoragePoolVO pool : pools) {
-            if (suitablePools.size() == returnUpTo) {
-                break;
-            }
-            StoragePool storagePool = (StoragePool)dataStoreMgr.getPrimaryDataStore(pool.getId());
-            if (filter(avoid, storagePool, dskCh, plan)) {
-                suitablePools.add(storagePool);
-            } else {
-                avoid.addPool(pool.getId());
-            }
-        }
+        suitablePools.addAll(filterPools(pools, avoid, dskCh, plan, returnUpTo));
 
         if (s_logger.isDebugEnabled()) {
             s_logger.debug("ClusterScopeStoragePoolAllocator returning " + suitablePools.size() + " suitable storage pools");
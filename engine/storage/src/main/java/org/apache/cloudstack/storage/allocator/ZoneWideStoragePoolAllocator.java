@@ -26,7 +26,6 @@ import javax.inject.Inject;
 import org.apache.log4j.Logger;
 import org.springframework.stereotype.Component;
 
-import org.apache.cloudstack.engine.subsystem.api.storage.DataStoreManager;
 import org.apache.cloudstack.storage.datastore.db.StoragePoolVO;
 
 import com.cloud.capacity.Capacity;
@@ -44,8 +43,6 @@ import com.cloud.vm.VirtualMachineProfile;
 public class ZoneWideStoragePoolAllocator extends AbstractStoragePoolAllocator {
     private static final Logger LOGGER = Logger.getLogger(ZoneWideStoragePoolAllocator.class);
     @Inject
-    private DataStoreManager dataStoreMgr;
-    @Inject
     private CapacityDao capacityDao;
 
     @Override
@@ -66,8 +63,6 @@ public class ZoneWideStoragePoolAllocator extends AbstractStoragePoolAllocator {
             }
         }
 
-        List<StoragePool> suitablePools = new ArrayList<>();
-
         List<StoragePoolVO> storagePools = storagePoolDao.findZoneWideStoragePoolsByTags(plan.getDataCenterId(), dskCh.getTags());
         if (storagePools == null) {
             storagePools = new ArrayList<>();
@@ -91,24 +86,12 @@ public class ZoneWideStoragePoolAllocator extends AbstractStoragePoolAllocator {
             avoid.addPool(pool.getId());
         }
 
-        for (StoragePoolVO storage : storagePools) {
-            if (suitablePools.size() == returnUpTo) {
-                break;
-            }
-            StoragePool storagePool = (StoragePool)this.dataStoreMgr.getPrimaryDataStore(storage.getId());
-            if (filter(avoid, storagePool, dskCh, plan)) {
-                suitablePools.add(storagePool);
-            } else {
-                if (canAddStoragePoolToAvoidSet(storage)) {
-                    avoid.addPool(storagePool.getId());
-                }
-            }
-        }
-        return suitablePools;
+        return filterPools(storagePools, avoid, dskCh, plan, returnUpTo);
     }
 
     // Don't add zone-wide, managed storage to the avoid list because it may be usable for another cluster.
-    private boolean canAddStoragePoolToAvoidSet(StoragePoolVO storagePoolVO) {
+    @Override
+    protected boolean canAddStoragePoolToAvoidSet(StoragePoolVO storagePoolVO) {
         return !ScopeType.ZONE.equals(storagePoolVO.getScope()) || !storagePoolVO.isManaged();
     }
 
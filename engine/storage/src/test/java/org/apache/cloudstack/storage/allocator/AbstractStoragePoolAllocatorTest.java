@@ -0,0 +1,174 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.storage.allocator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.cloudstack.engine.subsystem.api.storage.DataStoreManager;
+import org.apache.cloudstack.engine.subsystem.api.storage.PrimaryDataStore;
+import org.apache.cloudstack.storage.datastore.db.PrimaryDataStoreDao;
+import org.apache.cloudstack.storage.datastore.db.StoragePoolVO;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import com.cloud.dc.ClusterVO;
+import com.cloud.dc.dao.ClusterDao;
+import com.cloud.deploy.DeploymentPlan;
+import com.cloud.deploy.DeploymentPlanner.ExcludeList;
+import com.cloud.exception.StorageUnavailableException;
+import com.cloud.hypervisor.Hypervisor.HypervisorType;
+import com.cloud.storage.Storage;
+import com.cloud.storage.StorageManager;
+import com.cloud.storage.StoragePool;
+import com.cloud.storage.StoragePoolStatus;
+import com.cloud.storage.Volume;
+import com.cloud.storage.VolumeVO;
+import com.cloud.storage.dao.VolumeDao;
+import com.cloud.vm.DiskProfile;
+import com.cloud.vm.VirtualMachineProfile;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AbstractStoragePoolAllocatorTest {
+
+    @Mock
+    DataStoreManager dataStoreMgr;
+    @Mock
+    PrimaryDataStoreDao storagePoolDao;
+    @Mock
+    VolumeDao volumeDao;
+    @Mock
+    ClusterDao clusterDao;
+    @Mock
+    StorageManager storageMgr;
+    @Mock
+    DeploymentPlan plan;
+
+    @InjectMocks
+    MockStorapoolAllocater allocator = new MockStorapoolAllocater();
+
+    List<StoragePoolVO> pools;
+
+    @Before
+    public void setUp() {
+        pools = new ArrayList<>();
+        allocator.pools = pools;
+        ClusterVO cluster = Mockito.mock(ClusterVO.class);
+        Mockito.when(cluster.getHypervisorType()).thenReturn(HypervisorType.VMware);
+        Mockito.when(clusterDao.findById(10L)).thenReturn(cluster);
+    }
+
+    private StoragePool addPool(long id, long parentId) {
+        StoragePoolVO poolVO = Mockito.mock(StoragePoolVO.class);
+        Mockito.when(poolVO.getId()).thenReturn(id);
+        pools.add(poolVO);
+
+        PrimaryDataStore pool = Mockito.mock(PrimaryDataStore.class);
+        Mockito.when(pool.getClusterId()).thenReturn(10L);
+        Mockito.when(pool.getPoolType()).thenReturn(Storage.StoragePoolType.NetworkFilesystem);
+        Mockito.when(pool.getParent()).thenReturn(parentId);
+        Mockito.when(dataStoreMgr.getPrimaryDataStore(id)).thenReturn(pool);
+        return pool;
+    }
+
+    private DiskProfile diskProfile(long volumeId) {
+        DiskProfile dskCh = Mockito.mock(DiskProfile.class);
+        Mockito.when(dskCh.getVolumeId()).thenReturn(volumeId);
+        Mockito.when(dskCh.getHypervisorType()).thenReturn(HypervisorType.VMware);
+        Mockito.when(dskCh.getType()).thenReturn(Volume.Type.ROOT);
+        Mockito.when(volumeDao.findById(volumeId)).thenReturn(Mockito.mock(VolumeVO.class));
+        return dskCh;
+    }
+
+    private void allPoolsSuitable() throws StorageUnavailableException {
+        Mockito.when(storageMgr.storagePoolCompatibleWithVolumePool(Mockito.any(StoragePool.class), Mockito.any(Volume.class))).thenReturn(true);
+        Mockito.when(storageMgr.isStoragePoolComplaintWithStoragePolicy(Mockito.anyList(), Mockito.any(StoragePool.class))).thenReturn(true);
+        Mockito.when(storageMgr.storagePoolHasEnoughIops(Mockito.anyList(), Mockito.any(StoragePool.class))).thenReturn(true);
+        Mockito.when(storageMgr.storagePoolHasEnoughSpace(Mockito.anyList(), Mockito.any(StoragePool.class), Mockito.any())).thenReturn(true);
+    }
+
+    @Test
+    public void filterPoolsLooksUpSharedDataOncePerDisk() throws StorageUnavailableException {
+        StoragePoolVO datastoreCluster = Mockito.mock(StoragePoolVO.class);
+        Mockito.when(datastoreCluster.getStatus()).thenReturn(StoragePoolStatus.Up);
+        Mockito.when(storagePoolDao.findById(50L)).thenReturn(datastoreCluster);
+        List<StoragePool> storagePools = Arrays.asList(addPool(1L, 50L), addPool(2L, 50L), addPool(3L, 50L));
+        allPoolsSuitable();
+
+        List<StoragePool> suitablePools = allocator.filterPools(pools, new ExcludeList(), diskProfile(100L), plan, 3);
+
+        assertEquals(storagePools, suitablePools);
+        Mockito.verify(volumeDao, Mockito.times(1)).findById(100L);
+        Mockito.verify(clusterDao, Mockito.times(1)).findById(10L);
+        Mockito.verify(storagePoolDao, Mockito.times(1)).findById(50L);
+        for (StoragePool pool : storagePools) {
+            Mockito.verify(storageMgr, Mockito.times(1)).storagePoolHasEnoughIops(Mockito.anyList(), Mockito.eq(pool));
+            Mockito.verify(storageMgr, Mockito.times(1)).storagePoolHasEnoughSpace(Mockito.anyList(), Mockito.eq(pool), Mockito.any());
+        }
+    }
+
+    @Test
+    public void filterPoolsChecksCapacityOncePerPoolForEachVolume() throws StorageUnavailableException {
+        List<StoragePool> storagePools = Arrays.asList(addPool(1L, 0L), addPool(2L, 0L));
+        allPoolsSuitable();
+
+        allocator.filterPools(pools, new ExcludeList(), diskProfile(100L), plan, 2);
+        allocator.filterPools(pools, new ExcludeList(), diskProfile(101L), plan, 2);
+
+        Mockito.verify(volumeDao, Mockito.times(1)).findById(100L);
+        Mockito.verify(volumeDao, Mockito.times(1)).findById(101L);
+        // the cluster is looked up again for each volume, as its hypervisor type can be updated in between
+        Mockito.verify(clusterDao, Mockito.times(2)).findById(10L);
+        for (StoragePool pool : storagePools) {
+            Mockito.verify(storageMgr, Mockito.times(2)).storagePoolHasEnoughSpace(Mockito.anyList(), Mockito.eq(pool), Mockito.any());
+        }
+    }
+
+    @Test
+    public void filterPoolsStopsAtReturnUpToAndAvoidsUnsuitablePools() throws StorageUnavailableException {
+        StoragePool full = addPool(1L, 0L);
+        StoragePool suitable = addPool(2L, 0L);
+        pools.add(Mockito.mock(StoragePoolVO.class));
+        allPoolsSuitable();
+        Mockito.when(storageMgr.storagePoolHasEnoughSpace(Mockito.anyList(), Mockito.eq(full), Mockito.any())).thenReturn(false);
+        ExcludeList avoid = new ExcludeList();
+
+        List<StoragePool> suitablePools = allocator.filterPools(pools, avoid, diskProfile(100L), plan, 1);
+
+        assertEquals(Arrays.asList(suitable), suitablePools);
+        assertTrue(avoid.getPoolsToAvoid().contains(1L));
+        Mockito.verify(dataStoreMgr, Mockito.never()).getPrimaryDataStore(0L);
+    }
+
+    static class MockStorapoolAllocater extends AbstractStoragePoolAllocator {
+        List<StoragePoolVO> pools;
+
+        @Override
+        protected List<StoragePool> select(DiskProfile dskCh, VirtualMachineProfile vmProfile, DeploymentPlan plan, ExcludeList avoid, int returnUpTo, boolean bypassStorageTypeCheck) {
+            return filterPools(pools, avoid, dskCh, plan, returnUpTo);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.StandardMBean;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListenerAdapter;
+
+public class EntityCacheMBeanImpl extends StandardMBean implements EntityCacheMBean {
+
+    private final Ehcache _cache;
+    private final AtomicLong _hits = new AtomicLong();
+    private final AtomicLong _misses = new AtomicLong();
+    private final AtomicLong _evictions = new AtomicLong();
+    private final AtomicLong _invalidations = new AtomicLong();
+    private final AtomicLong _stalePutsSkipped = new AtomicLong();
+
+    public EntityCacheMBeanImpl(Ehcache cache) {
+        super(EntityCacheMBean.class, false);
+        _cache = cache;
+        _cache.getCacheEventNotificationService().registerListener(new CacheEventListenerAdapter() {
+            @Override
+            public void notifyElementEvicted(Ehcache cache, Element element) {
+                _evictions.incrementAndGet();
+            }
+        });
+    }
+
+    public void recordHit() {
+        _hits.incrementAndGet();
+    }
+
+    public void recordMiss() {
+        _misses.incrementAndGet();
+    }
+
+    public void recordInvalidation() {
+        _invalidations.incrementAndGet();
+    }
+
+    public void recordStalePutSkipped() {
+        _stalePutsSkipped.incrementAndGet();
+    }
+
+    @Override
+    public String getName() {
+        return _cache.getName();
+    }
+
+    @Override
+    public long getSize() {
+        return _cache.getSize();
+    }
+
+    @Override
+    public int getMaxSize() {
+        return (int)_cache.getCacheConfiguration().getMaxEntriesLocalHeap();
+    }
+
+    @Override
+    public long getHits() {
+        return _hits.get();
+    }
+
+    @Override
+    public long getMisses() {
+        return _misses.get();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hits = _hits.get();
+        long total = hits + _misses.get();
+        return total == 0 ? 0 : (double)hits / total;
+    }
+
+    @Override
+    public long getEvictions() {
+        return _evictions.get();
+    }
+
+    @Override
+    public long getInvalidations() {
+        return _invalidations.get();
+    }
+
+    @Override
+    public long getStalePutsSkipped() {
+        return _stalePutsSkipped.get();
+    }
+
+    @Override
+    public void clear() {
+        _cache.removeAll();
+    }
+}
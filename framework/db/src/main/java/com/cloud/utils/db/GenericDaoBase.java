@@ -45,6 +45,7 @@ import java.util.Map;
 import java.util.TimeZone;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.naming.ConfigurationException;
 import javax.persistence.AttributeOverride;
@@ -68,6 +69,7 @@ import com.cloud.utils.component.ComponentMethodInterceptable;
 import com.cloud.utils.crypt.DBEncryptionUtil;
 import com.cloud.utils.db.SearchCriteria.SelectType;
 import com.cloud.utils.exception.CloudRuntimeException;
+import com.cloud.utils.mgmt.JmxUtil;
 import com.cloud.utils.net.Ip;
 import com.cloud.utils.net.NetUtils;
 import com.google.common.base.Strings;
@@ -414,9 +416,14 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
             if (s_logger.isDebugEnabled() && lock != null) {
                 txn.registerLock(pstmt.toString());
             }
+            final long cacheVersion = _cacheVersion.get();
             final ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
-                result.add(toEntityBean(rs, cache));
+                final T entity = toEntityBean(rs, false);
+                if (cache) {
+                    putInCache(entity, cacheVersion);
+                }
+                result.add(entity);
             }
             return result;
         } catch (final SQLException e) {
@@ -782,9 +789,7 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
     }
 
     protected int update(ID id, UpdateBuilder ub, T entity) {
-        if (_cache != null) {
-            _cache.remove(id);
-        }
+        invalidateCache(id);
         SearchCriteria<T> sc = createSearchCriteria();
         sc.addAnd(_idAttributes.get(_table)[0], SearchCriteria.Op.EQ, id);
         TransactionLegacy txn = TransactionLegacy.currentTxn();
@@ -798,14 +803,75 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
             throw new CloudRuntimeException("Unable to persist element collection", e);
         }
 
-        int rowsUpdated = update(ub, sc, null);
+        int rowsUpdated = executeUpdate(ub, sc, null);
 
         txn.commit();
+        // Rows read between the first invalidation and the commit may have been cached again. Inside an outer
+        // transaction the commit above is not the real one, so wait for the outermost commit.
+        invalidateCacheAfterCompletion(txn, Collections.singletonList(id));
 
         return rowsUpdated;
     }
 
     public int update(UpdateBuilder ub, final SearchCriteria<?> sc, Integer rows) {
+        if (_cache == null) {
+            return executeUpdate(ub, sc, rows);
+        }
+
+        final TransactionLegacy txn = TransactionLegacy.currentTxn();
+        txn.start();
+        // Lock the matching rows first so that exactly the cached entries of the updated rows can be dropped.
+        final List<ID> ids = lockIdsForUpdate(txn, sc);
+        final int rowsUpdated = executeUpdate(ub, sc, rows);
+        txn.commit();
+
+        if (rowsUpdated > 0) {
+            if (ids == null) {
+                invalidateCache();
+            } else {
+                for (final ID id : ids) {
+                    invalidateCache(id);
+                }
+                invalidateCacheAfterCompletion(txn, ids);
+            }
+        }
+        return rowsUpdated;
+    }
+
+    /**
+     * Selects the ids of the rows matching the criteria with FOR UPDATE, or returns null if the entity has a
+     * composite id, in which case the caller has to clear the whole cache.
+     */
+    @SuppressWarnings("unchecked")
+    private List<ID> lockIdsForUpdate(final TransactionLegacy txn, final SearchCriteria<?> sc) {
+        if (_idField == null || _idField.getAnnotation(EmbeddedId.class) != null) {
+            return null;
+        }
+
+        final StringBuilder sql = new StringBuilder("SELECT ");
+        sql.append(_table).append(".").append(DbUtil.getColumnName(_idField, null));
+        sql.append(" FROM ").append(_tables).append(" WHERE ").append(sc.getWhereClause()).append(FOR_UPDATE_CLAUSE);
+
+        PreparedStatement pstmt = null;
+        try {
+            pstmt = txn.prepareAutoCloseStatement(sql.toString());
+            int i = 1;
+            for (Pair<Attribute, Object> value : sc.getValues()) {
+                prepareAttribute(i++, pstmt, value.first(), value.second());
+            }
+
+            final List<ID> ids = new ArrayList<ID>();
+            final ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                ids.add((ID)getObject(_idField.getType(), rs, 1));
+            }
+            return ids;
+        } catch (final SQLException e) {
+            throw new CloudRuntimeException("DB Exception on: " + pstmt, e);
+        }
+    }
+
+    private int executeUpdate(UpdateBuilder ub, final SearchCriteria<?> sc, Integer rows) {
         StringBuilder sql = null;
         PreparedStatement pstmt = null;
         final TransactionLegacy txn = TransactionLegacy.currentTxn();
@@ -939,20 +1005,12 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
 
     @Override
     @DB()
-    @SuppressWarnings("unchecked")
     public T findById(final ID id) {
-        T result = null;
-        if (_cache != null) {
-            final Element element = _cache.get(id);
-            if (element == null) {
-                result = lockRow(id, null);
-            } else {
-                result = (T)element.getObjectValue();
-            }
-        } else {
-            result = lockRow(id, null);
+        final T result = getFromCache(id);
+        if (result != null) {
+            return result;
         }
-        return result;
+        return lockRow(id, null);
     }
 
     @Override
@@ -974,18 +1032,11 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
     @Override
     @DB()
     public T findByIdIncludingRemoved(final ID id) {
-        T result = null;
-        if (_cache != null) {
-            final Element element = _cache.get(id);
-            if (element == null) {
-                result = findById(id, true, null);
-            } else {
-                result = (T)element.getObjectValue();
-            }
-        } else {
-            result = findById(id, true, null);
+        final T result = getFromCache(id);
+        if (result != null) {
+            return result;
         }
-        return result;
+        return findById(id, true, null);
     }
 
     @Override
@@ -995,9 +1046,7 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
             return findById(id);
         }
 
-        if (_cache != null) {
-            _cache.remove(id);
-        }
+        invalidateCache(id);
         return lockRow(id, null);
     }
 
@@ -1024,8 +1073,14 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
                 prepareAttribute(1, pstmt, _idAttributes.get(_table)[0], id);
             }
 
+            final long cacheVersion = _cacheVersion.get();
             ResultSet rs = pstmt.executeQuery();
-            return rs.next() ? toEntityBean(rs, true) : null;
+            if (!rs.next()) {
+                return null;
+            }
+            final T entity = toEntityBean(rs, false);
+            putInCache(entity, cacheVersion);
+            return entity;
         } catch (SQLException e) {
             throw new CloudRuntimeException("DB Exception on: " + pstmt, e);
         }
@@ -1136,9 +1191,12 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
                 pstmt.setObject(++i, param);
             }
 
+            final long cacheVersion = _cacheVersion.get();
             final ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
-                result.add(toEntityBean(rs, true));
+                final T entity = toEntityBean(rs, false);
+                putInCache(entity, cacheVersion);
+                result.add(entity);
             }
             return result;
         } catch (final SQLException e) {
@@ -1188,9 +1246,7 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
             }
 
             txn.commit();
-            if (_cache != null) {
-                _cache.remove(id);
-            }
+            invalidateCache(id);
             return true;
         } catch (final SQLException e) {
             throw new CloudRuntimeException("DB Exception on: " + pstmt, e);
@@ -1222,7 +1278,11 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
             for (final Pair<Attribute, Object> value : sc.getValues()) {
                 prepareAttribute(++i, pstmt, value.first(), value.second());
             }
-            return pstmt.executeUpdate();
+            final int rowsExpunged = pstmt.executeUpdate();
+            if (rowsExpunged > 0) {
+                invalidateCache();
+            }
+            return rowsExpunged;
         } catch (final SQLException e) {
             throw new CloudRuntimeException("DB Exception on: " + pstmt, e);
         } catch (final Throwable e) {
@@ -1642,12 +1702,8 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
 
         toEntityBean(result, entity);
 
-        if (cache && _cache != null) {
-            try {
-                _cache.put(new Element(_idField.get(entity), entity));
-            } catch (final Exception e) {
-                s_logger.debug("Can't put it in the cache", e);
-            }
+        if (cache) {
+            putInCache(entity, _cacheVersion.get());
         }
 
         return entity;
@@ -1664,12 +1720,8 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
             throw new CloudRuntimeException("Illegal Access", e1);
         }
         toEntityBean(result, entity);
-        if (cache && _cache != null) {
-            try {
-                _cache.put(new Element(_idField.get(entity), entity));
-            } catch (final Exception e) {
-                s_logger.debug("Can't put it in the cache", e);
-            }
+        if (cache) {
+            putInCache(entity, _cacheVersion.get());
         }
 
         return entity;
@@ -1797,9 +1849,7 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
 
             final int result = pstmt.executeUpdate();
             txn.commit();
-            if (_cache != null) {
-                _cache.remove(id);
-            }
+            invalidateCache(id);
             return result > 0;
         } catch (final SQLException e) {
             throw new CloudRuntimeException("DB Exception on: " + pstmt, e);
@@ -1840,9 +1890,7 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
 
             final int result = pstmt.executeUpdate();
             txn.commit();
-            if (_cache != null) {
-                _cache.remove(id);
-            }
+            invalidateCache(id);
             return result > 0;
         } catch (final SQLException e) {
             throw new CloudRuntimeException("DB Exception on: " + pstmt, e);
@@ -1863,6 +1911,83 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
     }
 
     protected Cache _cache;
+    protected EntityCacheMBeanImpl _cacheStats;
+    /**
+     * Bumped on every invalidation. A row is only cached if no invalidation happened since it was read,
+     * so a reader that raced with an update cannot put the old version of the row back in the cache.
+     */
+    private final AtomicLong _cacheVersion = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    protected T getFromCache(final ID id) {
+        if (_cache == null) {
+            return null;
+        }
+        final Element element = _cache.get(id);
+        if (element == null) {
+            _cacheStats.recordMiss();
+            return null;
+        }
+        _cacheStats.recordHit();
+        return (T)element.getObjectValue();
+    }
+
+    protected void putInCache(final T entity, final long cacheVersion) {
+        if (_cache == null || entity == null) {
+            return;
+        }
+        if (_cacheVersion.get() != cacheVersion) {
+            _cacheStats.recordStalePutSkipped();
+            return;
+        }
+        try {
+            final Object id = _idField.get(entity);
+            _cache.put(new Element(id, entity));
+            if (_cacheVersion.get() != cacheVersion) {
+                // an invalidation slipped in between the check and the put
+                _cache.remove(id);
+                _cacheStats.recordStalePutSkipped();
+            }
+        } catch (final Exception e) {
+            s_logger.debug("Can't put it in the cache", e);
+        }
+    }
+
+    protected void invalidateCache(final ID id) {
+        if (_cache == null) {
+            return;
+        }
+        _cacheVersion.incrementAndGet();
+        _cache.remove(id);
+        _cacheStats.recordInvalidation();
+    }
+
+    /**
+     * Drops the entries again once the outermost transaction is over, as rows read by other threads before the
+     * commit may have put the old versions back in the cache.
+     */
+    protected void invalidateCacheAfterCompletion(final TransactionLegacy txn, final Collection<ID> ids) {
+        if (_cache == null) {
+            return;
+        }
+        txn.afterCompletion(new Runnable() {
+            @Override
+            public void run() {
+                for (final ID id : ids) {
+                    invalidateCache(id);
+                }
+            }
+        });
+    }
+
+    protected void invalidateCache() {
+        if (_cache == null) {
+            return;
+        }
+        _cacheVersion.incrementAndGet();
+        _cache.removeAll();
+        _cacheStats.recordInvalidation();
+    }
 
     @DB()
     protected void createCache(final Map<String, ? extends Object> params) {
@@ -1875,9 +2000,16 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
             final int idle = NumbersUtil.parseInt((String)params.get("cache.time.to.idle"), 300);
             _cache = new Cache(getName(), maxElements, false, live == -1, live == -1 ? Integer.MAX_VALUE : live, idle);
             cm.addCache(_cache);
+            _cacheStats = new EntityCacheMBeanImpl(_cache);
+            try {
+                JmxUtil.registerMBean("EntityCache", getName(), _cacheStats);
+            } catch (final Exception e) {
+                s_logger.warn("Unable to register mbean for the cache of " + getName(), e);
+            }
             s_logger.info("Cache created: " + _cache.toString());
         } else {
             _cache = null;
+            _cacheStats = null;
         }
     }
 
@@ -96,6 +96,7 @@ public class TransactionLegacy implements Closeable {
     private long _id;
 
     private final LinkedList<Pair<String, Long>> _lockTimes = new LinkedList<Pair<String, Long>>();
+    private final LinkedList<Runnable> _completionTasks = new LinkedList<Runnable>();
 
     private String _name;
     private Connection _conn;
@@ -639,6 +640,7 @@ public class TransactionLegacy implements Closeable {
             rollbackTransaction();
         }
         _txn = false;
+        runCompletionTasks();
         _name = null;
 
         closeConnection();
@@ -703,6 +705,30 @@ public class TransactionLegacy implements Closeable {
         }
     }
 
+    /**
+     * Runs the task once the outermost transaction has been committed or rolled back, or right away if no
+     * transaction is in progress. Commits of nested transactions do not run it, as their changes are not
+     * visible to other connections yet.
+     */
+    public void afterCompletion(final Runnable task) {
+        if (_txn) {
+            _completionTasks.add(task);
+        } else {
+            task.run();
+        }
+    }
+
+    protected void runCompletionTasks() {
+        while (!_completionTasks.isEmpty()) {
+            final Runnable task = _completionTasks.removeFirst();
+            try {
+                task.run();
+            } catch (final Exception e) {
+                s_logger.warn("Unable to run a task at the end of the transaction " + _name, e);
+            }
+        }
+    }
+
     public boolean commit() {
         if (!_txn) {
             s_logger.warn("txn: Commit called when it is not a transaction: " + buildName());
@@ -737,6 +763,8 @@ public class TransactionLegacy implements Closeable {
         } catch (final SQLException e) {
             rollbackTransaction();
             throw new CloudRuntimeException("Unable to commit or close the connection. ", e);
+        } finally {
+            runCompletionTasks();
         }
     }
 
@@ -853,6 +881,8 @@ public class TransactionLegacy implements Closeable {
             closeConnection();
         } catch (final SQLException e) {
             s_logger.warn("Unable to rollback", e);
+        } finally {
+            runCompletionTasks();
         }
     }
 
@@ -867,6 +897,7 @@ public class TransactionLegacy implements Closeable {
 
         if (!hasTxnInStack()) {
             _txn = false;
+            runCompletionTasks();
             closeConnection();
         }
     }
@@ -918,6 +949,7 @@ public class TransactionLegacy implements Closeable {
 
         if (!hasTxnInStack()) {
             _txn = false;
+            runCompletionTasks();
             closeConnection();
         }
     }
@@ -0,0 +1,80 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GenericDaoBaseCacheTest {
+
+    private DbTestDao createDao(String name) throws Exception {
+        DbTestDao dao = new DbTestDao();
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("cache.size", "10");
+        dao.configure(name, params);
+        return dao;
+    }
+
+    private DbTestVO createVO(long id) {
+        DbTestVO vo = new DbTestVO();
+        vo.id = id;
+        return vo;
+    }
+
+    @Test
+    public void cachedEntityIsReturnedAndCounted() throws Exception {
+        DbTestDao dao = createDao("cachedEntityIsReturnedAndCounted");
+        DbTestVO vo = createVO(1L);
+
+        Assert.assertNull(dao.getFromCache(1L));
+        dao.putInCache(vo, 0);
+
+        Assert.assertSame(vo, dao.getFromCache(1L));
+        Assert.assertEquals(1, dao._cacheStats.getHits());
+        Assert.assertEquals(1, dao._cacheStats.getMisses());
+        Assert.assertEquals(1, dao._cacheStats.getSize());
+    }
+
+    @Test
+    public void rowReadBeforeInvalidationIsNotCached() throws Exception {
+        DbTestDao dao = createDao("rowReadBeforeInvalidationIsNotCached");
+
+        // the row was read while the cache was at version 0, then an update invalidated it
+        dao.invalidateCache(1L);
+        dao.putInCache(createVO(1L), 0);
+
+        Assert.assertNull(dao.getFromCache(1L));
+        Assert.assertEquals(1, dao._cacheStats.getInvalidations());
+        Assert.assertEquals(1, dao._cacheStats.getStalePutsSkipped());
+    }
+
+    @Test
+    public void invalidateAllClearsTheCache() throws Exception {
+        DbTestDao dao = createDao("invalidateAllClearsTheCache");
+        dao.putInCache(createVO(1L), 0);
+        dao.putInCache(createVO(2L), 0);
+
+        dao.invalidateCache();
+
+        Assert.assertNull(dao.getFromCache(1L));
+        Assert.assertNull(dao.getFromCache(2L));
+        Assert.assertEquals(0, dao._cacheStats.getSize());
+    }
+}
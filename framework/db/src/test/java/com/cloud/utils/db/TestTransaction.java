@@ -127,4 +127,46 @@ public class TestTransaction {
         verify(conn, times(0)).rollback();
         verify(conn, times(1)).close();
     }
+
+    @Test
+    public void testAfterCompletionWaitsForOutermostCommit() throws Exception {
+        final AtomicInteger i = new AtomicInteger(0);
+        final Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                i.incrementAndGet();
+            }
+        };
+
+        txn.start();
+        txn.start();
+        txn.afterCompletion(task);
+        txn.commit();
+        assertEquals(0, i.get());
+
+        txn.commit();
+        assertEquals(1, i.get());
+        verify(conn, times(1)).commit();
+
+        // outside of a transaction the task runs right away
+        txn.afterCompletion(task);
+        assertEquals(2, i.get());
+    }
+
+    @Test
+    public void testAfterCompletionRunsOnRollback() throws Exception {
+        final AtomicInteger i = new AtomicInteger(0);
+
+        txn.start();
+        txn.afterCompletion(new Runnable() {
+            @Override
+            public void run() {
+                i.incrementAndGet();
+            }
+        });
+        txn.rollback();
+
+        assertEquals(1, i.get());
+        verify(conn, times(0)).commit();
+    }
 }
@@ -21,10 +21,10 @@ package org.apache.cloudstack.framework.messagebus;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.log4j.Logger;
 
@@ -33,10 +33,16 @@ import org.apache.cloudstack.framework.serializer.MessageSerializer;
 import com.cloud.utils.db.TransactionLegacy;
 import com.cloud.utils.exception.CloudRuntimeException;
 
+/**
+ * Subscriptions are kept in a tree of subject path tokens. Changes to the tree are serialized on a single lock,
+ * while publishers walk it without locking: children are held in concurrent maps and subscriber lists are
+ * copy-on-write, so a publish sees a consistent snapshot of each node's subscribers and any number of threads
+ * can publish at the same time. Subscribers may subscribe or unsubscribe from within their own callback; the
+ * change does not affect deliveries of the message already in flight.
+ */
 public class MessageBusBase implements MessageBus {
 
-    private final Gate _gate;
-    private final List<ActionRecord> _pendingActions;
+    private final Object _subscriptionLock = new Object();
 
     private final SubscriptionNode _subscriberRoot;
     private MessageSerializer _messageSerializer;
@@ -44,9 +50,6 @@ public class MessageBusBase implements MessageBus {
     private static final Logger s_logger = Logger.getLogger(MessageBusBase.class);
 
     public MessageBusBase() {
-        _gate = new Gate();
-        _pendingActions = new ArrayList<ActionRecord>();
-
         _subscriberRoot = new SubscriptionNode(null, "/", null);
     }
 
@@ -64,82 +67,38 @@ public class MessageBusBase implements MessageBus {
     public void subscribe(String subject, MessageSubscriber subscriber) {
         assert (subject != null);
         assert (subscriber != null);
-        if (_gate.enter()) {
-            if (s_logger.isTraceEnabled()) {
-                s_logger.trace("Enter gate in message bus subscribe");
-            }
-            try {
-                SubscriptionNode current = locate(subject, null, true);
-                assert (current != null);
-                current.addSubscriber(subscriber);
-            } finally {
-                _gate.leave();
-            }
-        } else {
-            synchronized (_pendingActions) {
-                _pendingActions.add(new ActionRecord(ActionType.Subscribe, subject, subscriber));
-            }
+        synchronized (_subscriptionLock) {
+            SubscriptionNode current = locate(subject, null, true);
+            assert (current != null);
+            current.addSubscriber(subscriber);
         }
     }
 
     @Override
     public void unsubscribe(String subject, MessageSubscriber subscriber) {
-        if (_gate.enter()) {
-            if (s_logger.isTraceEnabled()) {
-                s_logger.trace("Enter gate in message bus unsubscribe");
-            }
-            try {
-                if (subject != null) {
-                    SubscriptionNode current = locate(subject, null, false);
-                    if (current != null)
-                        current.removeSubscriber(subscriber, false);
-                } else {
-                    _subscriberRoot.removeSubscriber(subscriber, true);
-                }
-            } finally {
-                _gate.leave();
-            }
-        } else {
-            synchronized (_pendingActions) {
-                _pendingActions.add(new ActionRecord(ActionType.Unsubscribe, subject, subscriber));
+        synchronized (_subscriptionLock) {
+            if (subject != null) {
+                SubscriptionNode current = locate(subject, null, false);
+                if (current != null)
+                    current.removeSubscriber(subscriber, false);
+            } else {
+                _subscriberRoot.removeSubscriber(subscriber, true);
             }
         }
     }
 
     @Override
     public void clearAll() {
-        if (_gate.enter()) {
-            if (s_logger.isTraceEnabled()) {
-                s_logger.trace("Enter gate in message bus clearAll");
-            }
-            try {
-                _subscriberRoot.clearAll();
-                doPrune();
-            } finally {
-                _gate.leave();
-            }
-        } else {
-            synchronized (_pendingActions) {
-                _pendingActions.add(new ActionRecord(ActionType.ClearAll, null, null));
-            }
+        synchronized (_subscriptionLock) {
+            _subscriberRoot.clearAll();
+            doPrune();
         }
     }
 
     @Override
     public void prune() {
-        if (_gate.enter()) {
-            if (s_logger.isTraceEnabled()) {
-                s_logger.trace("Enter gate in message bus prune");
-            }
-            try {
-                doPrune();
-            } finally {
-                _gate.leave();
-            }
-        } else {
-            synchronized (_pendingActions) {
-                _pendingActions.add(new ActionRecord(ActionType.Prune, null, null));
-            }
+        synchronized (_subscriptionLock) {
+            doPrune();
         }
     }
 
@@ -166,64 +125,18 @@ public class MessageBusBase implements MessageBus {
             String errMsg = "NO EVENT PUBLISH CAN BE WRAPPED WITHIN DB TRANSACTION!";
             s_logger.error(errMsg, new CloudRuntimeException(errMsg));
         }
-        if (_gate.enter(true)) {
-            if (s_logger.isTraceEnabled()) {
-                s_logger.trace("Enter gate in message bus publish");
-            }
-            try {
-                List<SubscriptionNode> chainFromTop = new ArrayList<SubscriptionNode>();
-                SubscriptionNode current = locate(subject, chainFromTop, false);
-
-                if (current != null)
-                    current.notifySubscribers(senderAddress, subject, args);
-
-                Collections.reverse(chainFromTop);
-                for (SubscriptionNode node : chainFromTop)
-                    node.notifySubscribers(senderAddress, subject, args);
-            } finally {
-                _gate.leave();
-            }
+        if (s_logger.isTraceEnabled()) {
+            s_logger.trace("Publish " + subject + " on message bus");
         }
-    }
 
-    private void onGateOpen() {
-        synchronized (_pendingActions) {
-            ActionRecord record = null;
-            while (_pendingActions.size() > 0) {
-                record = _pendingActions.remove(0);
-                switch (record.getType()) {
-                    case Subscribe: {
-                        SubscriptionNode current = locate(record.getSubject(), null, true);
-                        assert (current != null);
-                        current.addSubscriber(record.getSubscriber());
-                    }
-                        break;
-
-                    case Unsubscribe:
-                        if (record.getSubject() != null) {
-                            SubscriptionNode current = locate(record.getSubject(), null, false);
-                            if (current != null)
-                                current.removeSubscriber(record.getSubscriber(), false);
-                        } else {
-                            _subscriberRoot.removeSubscriber(record.getSubscriber(), true);
-                        }
-                        break;
-
-                    case ClearAll:
-                        _subscriberRoot.clearAll();
-                        break;
-
-                    case Prune:
-                        doPrune();
-                        break;
-
-                    default:
-                        assert (false);
-                        break;
+        List<SubscriptionNode> chainFromTop = new ArrayList<SubscriptionNode>();
+        SubscriptionNode current = locate(subject, chainFromTop, false);
 
-                }
-            }
-        }
+        if (current != null)
+            current.notifySubscribers(senderAddress, subject, args);
+
+        for (int i = chainFromTop.size() - 1; i >= 0; i--)
+            chainFromTop.get(i).notifySubscribers(senderAddress, subject, args);
     }
 
     private SubscriptionNode locate(String subject, List<SubscriptionNode> chainFromTop, boolean createPath) {
@@ -271,98 +184,9 @@ public class MessageBusBase implements MessageBus {
     //
     // Support inner classes
     //
-    private static enum ActionType {
-        Subscribe, Unsubscribe, ClearAll, Prune
-    }
-
-    private static class ActionRecord {
-        private final ActionType _type;
-        private final String _subject;
-        private final MessageSubscriber _subscriber;
-
-        public ActionRecord(ActionType type, String subject, MessageSubscriber subscriber) {
-            _type = type;
-            _subject = subject;
-            _subscriber = subscriber;
-        }
-
-        public ActionType getType() {
-            return _type;
-        }
-
-        public String getSubject() {
-            return _subject;
-        }
-
-        public MessageSubscriber getSubscriber() {
-            return _subscriber;
-        }
-    }
-
-    private class Gate {
-        private int _reentranceCount;
-        private Thread _gateOwner;
-
-        public Gate() {
-            _reentranceCount = 0;
-            _gateOwner = null;
-        }
-
-        public boolean enter() {
-            return enter(false);
-        }
-
-        public boolean enter(boolean wait) {
-            while (true) {
-                synchronized (this) {
-                    if (_reentranceCount == 0) {
-                        assert (_gateOwner == null);
-
-                        _reentranceCount++;
-                        _gateOwner = Thread.currentThread();
-                        return true;
-                    } else {
-                        if (wait) {
-                            try {
-                                wait();
-                            } catch (InterruptedException e) {
-                                s_logger.debug("[ignored] interupted while guarding re-entrance on message bus.");
-                            }
-                        } else {
-                            break;
-                        }
-                    }
-                }
-            }
-
-            return false;
-        }
-
-        public void leave() {
-            synchronized (this) {
-                if (_reentranceCount > 0) {
-                    try {
-                        assert (_gateOwner == Thread.currentThread());
-
-                        onGateOpen();
-                    } finally {
-                        if (s_logger.isTraceEnabled()) {
-                            s_logger.trace("Open gate of message bus");
-                        }
-                        _reentranceCount--;
-                        assert (_reentranceCount == 0);
-                        _gateOwner = null;
-
-                        notifyAll();
-                    }
-                }
-            }
-        }
-    }
-
     private static class SubscriptionNode {
         private final String _nodeKey;
-        private final List<MessageSubscriber> _subscribers;
+        private final CopyOnWriteArrayList<MessageSubscriber> _subscribers;
         private final Map<String, SubscriptionNode> _children;
         private final SubscriptionNode _parent;
 
@@ -370,12 +194,12 @@ public class MessageBusBase implements MessageBus {
             assert (nodeKey != null);
             _parent = parent;
             _nodeKey = nodeKey;
-            _subscribers = new ArrayList<MessageSubscriber>();
+            _subscribers = new CopyOnWriteArrayList<MessageSubscriber>();
 
             if (subscriber != null)
                 _subscribers.add(subscriber);
 
-            _children = new HashMap<String, SubscriptionNode>();
+            _children = new ConcurrentHashMap<String, SubscriptionNode>();
         }
 
         public SubscriptionNode getParent() {
@@ -392,8 +216,7 @@ public class MessageBusBase implements MessageBus {
         }
 
         public void addSubscriber(MessageSubscriber subscriber) {
-            if (!_subscribers.contains(subscriber))
-                _subscribers.add(subscriber);
+            _subscribers.addIfAbsent(subscriber);
         }
 
         public void removeSubscriber(MessageSubscriber subscriber, boolean recursively) {
@@ -18,6 +18,12 @@
  */
 package org.apache.cloudstack.messagebus;
 
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import javax.inject.Inject;
 
 import junit.framework.TestCase;
@@ -118,6 +124,59 @@ public class TestMessageBus extends TestCase {
         _messageBus.clearAll();
     }
 
+    @Test
+    public void testConcurrentPublish() throws InterruptedException {
+        // each delivery waits for the other publisher to be inside the bus as well, which only completes
+        // when publishes are not serialized
+        final CyclicBarrier barrier = new CyclicBarrier(2);
+        final AtomicInteger delivered = new AtomicInteger();
+        _messageBus.subscribe("Host", new MessageSubscriber() {
+            @Override
+            public void onPublishMessage(String senderAddress, String subject, Object args) {
+                try {
+                    barrier.await(10, TimeUnit.SECONDS);
+                    delivered.incrementAndGet();
+                } catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+                    s_logger.debug("[ignored] publish was not concurrent.");
+                }
+            }
+        });
+
+        Runnable publisher = new Runnable() {
+            @Override
+            public void run() {
+                _messageBus.publish(null, "Host", PublishScope.LOCAL, null);
+            }
+        };
+        Thread first = new Thread(publisher);
+        Thread second = new Thread(publisher);
+        first.start();
+        second.start();
+        first.join();
+        second.join();
+
+        Assert.assertEquals(2, delivered.get());
+        _messageBus.clearAll();
+    }
+
+    @Test
+    public void testSubscribeFromSubscriber() {
+        final MessageSubscriber lateSubscriber = Mockito.mock(MessageSubscriber.class);
+        _messageBus.subscribe("Host", new MessageSubscriber() {
+            @Override
+            public void onPublishMessage(String senderAddress, String subject, Object args) {
+                _messageBus.subscribe("Host", lateSubscriber);
+            }
+        });
+
+        _messageBus.publish(null, "Host", PublishScope.LOCAL, null);
+        Mockito.verify(lateSubscriber, Mockito.times(0)).onPublishMessage(null, "Host", null);
+
+        _messageBus.publish(null, "Host", PublishScope.LOCAL, null);
+        Mockito.verify(lateSubscriber).onPublishMessage(null, "Host", null);
+        _messageBus.clearAll();
+    }
+
     public void testMessageDetector() {
         MessageDetector detector = new MessageDetector();
         detector.open(_messageBus, new String[] {"VM", "Host"});
@@ -50,4 +50,8 @@ public interface AsyncJobMBean {
     public String getSyncQueueContentType();
 
     public String getSyncQueueContentId();
+
+    public long getQueueWaitTime();
+
+    public long getExecutionTime();
 }
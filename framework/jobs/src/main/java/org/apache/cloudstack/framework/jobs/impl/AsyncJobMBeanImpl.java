@@ -28,11 +28,21 @@ import com.cloud.utils.DateUtil;
 
 public class AsyncJobMBeanImpl extends StandardMBean implements AsyncJobMBean {
     private final AsyncJob _job;
+    private final long _queueWaitTime;
+    private final long _startTime = System.currentTimeMillis();
 
     public AsyncJobMBeanImpl(AsyncJob job) {
+        this(job, 0);
+    }
+
+    /**
+     * @param queueWaitTime milliseconds the job waited for an executor thread after it was scheduled
+     */
+    public AsyncJobMBeanImpl(AsyncJob job, long queueWaitTime) {
         super(AsyncJobMBean.class, false);
 
         _job = job;
+        _queueWaitTime = queueWaitTime;
     }
 
     @Override
@@ -162,4 +172,14 @@ public class AsyncJobMBeanImpl extends StandardMBean implements AsyncJobMBean {
         }
         return "N/A";
     }
+
+    @Override
+    public long getQueueWaitTime() {
+        return _queueWaitTime;
+    }
+
+    @Override
+    public long getExecutionTime() {
+        return System.currentTimeMillis() - _startTime;
+    }
 }
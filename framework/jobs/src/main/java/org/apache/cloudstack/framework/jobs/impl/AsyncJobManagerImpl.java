@@ -24,7 +24,6 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
@@ -75,6 +74,7 @@ import com.cloud.utils.Predicate;
 import com.cloud.utils.StringUtils;
 import com.cloud.utils.component.ComponentLifecycle;
 import com.cloud.utils.component.ManagerBase;
+import com.cloud.utils.concurrency.FairShareJobExecutor;
 import com.cloud.utils.concurrency.NamedThreadFactory;
 import com.cloud.utils.db.DB;
 import com.cloud.utils.db.DbProperties;
@@ -107,6 +107,8 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
             Integer.class, "vm.job.lock.timeout", "1800",
             "Time in seconds to wait in acquiring lock to submit a vm worker job", false);
     private static final ConfigKey<Boolean> HidePassword = new ConfigKey<Boolean>("Advanced", Boolean.class, "log.hide.password", "true", "If set to true, the password is hidden", true, ConfigKey.Scope.Global);
+    private static final ConfigKey<Integer> ApiJobAccountConcurrency = new ConfigKey<Integer>("Advanced", Integer.class, "api.job.account.concurrency", "0",
+        "Maximum number of API jobs of a single account that run at the same time on a management server, 0 for no limit other than the API job pool size", true, ConfigKey.Scope.Global);
 
     private static final Logger s_logger = Logger.getLogger(AsyncJobManagerImpl.class);
 
@@ -152,8 +154,9 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
     private volatile long _executionRunNumber = 1;
 
     private final ScheduledExecutorService _heartbeatScheduler = Executors.newScheduledThreadPool(1, new NamedThreadFactory("AsyncJobMgr-Heartbeat"));
-    private ExecutorService _apiJobExecutor;
-    private ExecutorService _workerJobExecutor;
+    // jobs are queued per account, so that the jobs of one account cannot starve those of other accounts
+    private FairShareJobExecutor _apiJobExecutor;
+    private FairShareJobExecutor _workerJobExecutor;
 
     @Override
     public String getConfigComponentName() {
@@ -162,7 +165,7 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
 
     @Override
     public ConfigKey<?>[] getConfigKeys() {
-        return new ConfigKey<?>[] {JobExpireMinutes, JobCancelThresholdMinutes, VmJobLockTimeout, HidePassword};
+        return new ConfigKey<?>[] {JobExpireMinutes, JobCancelThresholdMinutes, VmJobLockTimeout, HidePassword, ApiJobAccountConcurrency};
     }
 
     @Override
@@ -503,10 +506,13 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
         if (executeInContext) {
             runnable.run();
         } else {
-            if (job.getDispatcher() == null || job.getDispatcher().equalsIgnoreCase("ApiAsyncJobDispatcher"))
-                _apiJobExecutor.submit(runnable);
-            else
-                _workerJobExecutor.submit(runnable);
+            if (job.getDispatcher() == null || job.getDispatcher().equalsIgnoreCase("ApiAsyncJobDispatcher")) {
+                // only API jobs are capped, a capped work job could hold up the API job waiting for it
+                _apiJobExecutor.setLaneConcurrencyLimit(ApiJobAccountConcurrency.value());
+                _apiJobExecutor.submit(job.getAccountId(), runnable);
+            } else {
+                _workerJobExecutor.submit(job.getAccountId(), runnable);
+            }
         }
     }
 
@@ -544,6 +550,7 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
     }
 
     private Runnable getExecutorRunnable(final AsyncJob job) {
+        final long scheduledAt = System.currentTimeMillis();
         return new ManagedContextRunnable() {
 
             @Override
@@ -580,7 +587,7 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
                     // setup execution environment
                     //
                     try {
-                        JmxUtil.registerMBean("AsyncJobManager", "Active Job " + job.getId(), new AsyncJobMBeanImpl(job));
+                        JmxUtil.registerMBean("AsyncJobManager", "Active Job " + job.getId(), new AsyncJobMBeanImpl(job, System.currentTimeMillis() - scheduledAt));
                     } catch (Exception e) {
                         // Due to co-existence of normal-dispatched-job/wakeup-dispatched-job, MBean register() call
                         // is expected to fail under situations
@@ -1020,14 +1027,21 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
             int workPoolSize = (cloudMaxActive * 2) / 3;
 
             s_logger.info("Start AsyncJobManager API executor thread pool in size " + apiPoolSize);
-            _apiJobExecutor = Executors.newFixedThreadPool(apiPoolSize, new NamedThreadFactory(AsyncJobManager.API_JOB_POOL_THREAD_PREFIX));
+            _apiJobExecutor = new FairShareJobExecutor(apiPoolSize, AsyncJobManager.API_JOB_POOL_THREAD_PREFIX);
 
             s_logger.info("Start AsyncJobManager Work executor thread pool in size " + workPoolSize);
-            _workerJobExecutor = Executors.newFixedThreadPool(workPoolSize, new NamedThreadFactory(AsyncJobManager.WORK_JOB_POOL_THREAD_PREFIX));
+            _workerJobExecutor = new FairShareJobExecutor(workPoolSize, AsyncJobManager.WORK_JOB_POOL_THREAD_PREFIX);
         } catch (final Exception e) {
             throw new ConfigurationException("Unable to load db.properties to configure AsyncJobManagerImpl");
         }
 
+        try {
+            JmxUtil.registerMBean("AsyncJobManager", "API Job Executor", _apiJobExecutor);
+            JmxUtil.registerMBean("AsyncJobManager", "Work Job Executor", _workerJobExecutor);
+        } catch (final Exception e) {
+            s_logger.warn("Unable to register the job executors to JMX monitoring", e);
+        }
+
         JoinJobSearch = _joinMapDao.createSearchBuilder(Long.class);
         JoinJobSearch.and(JoinJobSearch.entity().getJoinJobId(), Op.EQ, "joinJobId");
         JoinJobSearch.selectFields(JoinJobSearch.entity().getJobId());
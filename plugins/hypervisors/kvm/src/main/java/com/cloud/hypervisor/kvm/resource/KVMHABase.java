@@ -17,6 +17,13 @@
 package com.cloud.hypervisor.kvm.resource;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 import org.apache.log4j.Logger;
 import org.libvirt.LibvirtException;
@@ -160,6 +167,48 @@ public class KVMHABase {
         return mountPoint + File.separator + "KVMHA" + File.separator;
     }
 
+    /**
+     * Checks that the pool is mounted over NFS on its mount path, as kvmheartbeat.sh does before it touches the heartbeat file.
+     */
+    protected boolean isNfsMounted(NfsStoragePool pool) {
+        String mountPath = pool._mountDestPath.replaceAll("/+$", "");
+        try {
+            for (String mount : Files.readAllLines(Paths.get("/proc/mounts"))) {
+                String[] fields = mount.split(" ");
+                if (fields.length > 2 && fields[1].equals(mountPath) && fields[2].startsWith("nfs")) {
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            s_logger.debug("Failed to read /proc/mounts: " + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Writes the heartbeat timestamp, in seconds, in the same format as kvmheartbeat.sh. The write is synchronous,
+     * so the heartbeat is on the storage once this returns.
+     */
+    protected static void writeHeartBeatFile(File hbFile, long timestamp) throws IOException {
+        Files.createDirectories(hbFile.getParentFile().toPath());
+        ByteBuffer heartBeat = ByteBuffer.wrap((timestamp + "\n").getBytes(StandardCharsets.US_ASCII));
+        try (FileChannel channel = FileChannel.open(hbFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.DSYNC)) {
+            while (heartBeat.hasRemaining()) {
+                channel.write(heartBeat, heartBeat.position());
+            }
+            channel.truncate(heartBeat.limit());
+        }
+    }
+
+    protected static long readHeartBeatFile(File hbFile) throws IOException {
+        String heartBeat = new String(Files.readAllBytes(hbFile.toPath()), StandardCharsets.US_ASCII).trim();
+        try {
+            return Long.parseLong(heartBeat);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid heartbeat '" + heartBeat + "' in " + hbFile);
+        }
+    }
+
     protected String runScriptRetry(String cmdString, OutputInterpreter interpreter) {
         String result = null;
         for (int i = 0; i < 3; i++) {
@@ -16,17 +16,28 @@
 // under the License.
 package com.cloud.hypervisor.kvm.resource;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.log4j.Logger;
 
+import com.cloud.utils.concurrency.NamedThreadFactory;
 import com.cloud.utils.script.OutputInterpreter;
 import com.cloud.utils.script.Script;
 
 public class KVMHAChecker extends KVMHABase implements Callable<Boolean> {
     private static final Logger s_logger = Logger.getLogger(KVMHAChecker.class);
+    // a read that hangs on an unresponsive NFS server can't be interrupted, it is left behind on its own thread
+    private static final ExecutorService s_heartBeatReader = Executors.newCachedThreadPool(new NamedThreadFactory("KVMHA-HeartBeatReader"));
     private List<NfsStoragePool> _pools;
     private String _hostIP;
     private long _heartBeatCheckerTimeout = 360000; /* 6 minutes */
@@ -36,6 +47,11 @@ public class KVMHAChecker extends KVMHABase implements Callable<Boolean> {
         this._hostIP = host;
     }
 
+    protected KVMHAChecker(List<NfsStoragePool> pools, String host, long heartBeatCheckerTimeout) {
+        this(pools, host);
+        this._heartBeatCheckerTimeout = heartBeatCheckerTimeout;
+    }
+
     /*
      * True means heartbeaing is on going, or we can't get it's status. False
      * means heartbeating is stopped definitely
@@ -44,6 +60,12 @@ public class KVMHAChecker extends KVMHABase implements Callable<Boolean> {
     public Boolean checkingHeartBeat() {
         List<Boolean> results = new ArrayList<Boolean>();
         for (NfsStoragePool pool : _pools) {
+            if (isNfsMounted(pool)) {
+                results.add(checkHeartBeatFile(pool));
+                continue;
+            }
+
+            // kvmheartbeat.sh remounts the pool before it reads the heartbeat
             Script cmd = new Script(s_heartBeatPath, _heartBeatCheckerTimeout, s_logger);
             cmd.add("-i", pool._poolIp);
             cmd.add("-p", pool._poolMountSourcePath);
@@ -73,6 +95,36 @@ public class KVMHAChecker extends KVMHABase implements Callable<Boolean> {
         return false;
     }
 
+    protected boolean checkHeartBeatFile(NfsStoragePool pool) {
+        File hbFile = new File(getHBFile(pool._mountDestPath, _hostIP));
+        Future<Long> heartBeat = s_heartBeatReader.submit(() -> readHeartBeat(hbFile));
+        try {
+            long age = System.currentTimeMillis() / 1000 - heartBeat.get(_heartBeatCheckerTimeout, TimeUnit.MILLISECONDS);
+            s_logger.debug("KVMHAChecker pool: " + pool._poolIp + ", heartbeat of " + _hostIP + " is " + age + " seconds old");
+            if (age > _heartBeatUpdateFreq / 1000) {
+                s_logger.debug("read heartbeat failed: ");
+                return false;
+            }
+        } catch (TimeoutException e) {
+            // as with kvmheartbeat.sh, a heartbeat that can't be read in time doesn't mean the host is dead
+            heartBeat.cancel(true);
+            s_logger.debug("Timed out reading heartbeat file " + hbFile + " after " + _heartBeatCheckerTimeout + " ms");
+        } catch (ExecutionException e) {
+            // a missing or unreadable heartbeat file is reported as DEAD by kvmheartbeat.sh
+            s_logger.debug("read heartbeat failed: unable to read heartbeat file " + hbFile + ": " + e.getCause().getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            s_logger.debug("Interrupted while reading heartbeat file " + hbFile);
+            return false;
+        }
+        return true;
+    }
+
+    protected long readHeartBeat(File hbFile) throws IOException {
+        return readHeartBeatFile(hbFile);
+    }
+
     @Override
     public Boolean call() throws Exception {
         // s_logger.addAppender(new org.apache.log4j.ConsoleAppender(new
@@ -16,6 +16,7 @@
 // under the License.
 package com.cloud.hypervisor.kvm.resource;
 
+import com.cloud.utils.concurrency.NamedThreadFactory;
 import com.cloud.utils.script.Script;
 import org.apache.cloudstack.managed.context.ManagedContextRunnable;
 import org.apache.log4j.Logger;
@@ -24,12 +25,21 @@ import org.libvirt.LibvirtException;
 import org.libvirt.StoragePool;
 import org.libvirt.StoragePoolInfo.StoragePoolState;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class KVMHAMonitor extends KVMHABase implements Runnable {
     private static final Logger s_logger = Logger.getLogger(KVMHAMonitor.class);
@@ -37,6 +47,10 @@ public class KVMHAMonitor extends KVMHABase implements Runnable {
 
     private final String _hostIP; /* private ip address */
 
+    /* the heartbeats of the pools are written in parallel, so a slow pool doesn't delay the heartbeats of the others */
+    private final ExecutorService _heartBeatExecutor = Executors.newCachedThreadPool(new NamedThreadFactory("KVMHA-HeartBeat"));
+    private final Map<String, Future<String>> _heartBeats = new ConcurrentHashMap<String, Future<String>>();
+
     public KVMHAMonitor(NfsStoragePool pool, String host, String scriptPath) {
         if (pool != null) {
             _storagePool.put(pool._poolUUID, pool);
@@ -83,8 +97,9 @@ public class KVMHAMonitor extends KVMHABase implements Runnable {
         protected void runInContext() {
             synchronized (_storagePool) {
                 Set<String> removedPools = new HashSet<String>();
+                Map<NfsStoragePool, Future<String>> heartBeats = new HashMap<NfsStoragePool, Future<String>>();
                 for (String uuid : _storagePool.keySet()) {
-                    NfsStoragePool primaryStoragePool = _storagePool.get(uuid);
+                    final NfsStoragePool primaryStoragePool = _storagePool.get(uuid);
 
                     // check for any that have been deregistered with libvirt and
                     // skip,remove them
@@ -118,25 +133,25 @@ public class KVMHAMonitor extends KVMHABase implements Runnable {
                         }
                     }
 
-                    String result = null;
-                    // Try multiple times, but sleep in between tries to ensure it isn't a short lived transient error
-                    for (int i = 1; i <= _heartBeatUpdateMaxTries; i++) {
-                        Script cmd = new Script(s_heartBeatPath, _heartBeatUpdateTimeout, s_logger);
-                        cmd.add("-i", primaryStoragePool._poolIp);
-                        cmd.add("-p", primaryStoragePool._poolMountSourcePath);
-                        cmd.add("-m", primaryStoragePool._mountDestPath);
-                        cmd.add("-h", _hostIP);
-                        result = cmd.execute();
-                        if (result != null) {
-                            s_logger.warn("write heartbeat failed: " + result + ", try: " + i + " of " + _heartBeatUpdateMaxTries);
-                            try {
-                                Thread.sleep(_heartBeatUpdateRetrySleep);
-                            } catch (InterruptedException e) {
-                                s_logger.debug("[ignored] interupted between heartbeat retries.");
-                            }
-                        } else {
-                            break;
-                        }
+                    // a heartbeat that is still hanging on the storage since the previous run is waited for, not written again
+                    Future<String> heartBeat = _heartBeats.get(uuid);
+                    if (heartBeat == null || heartBeat.isDone()) {
+                        heartBeat = _heartBeatExecutor.submit(() -> writeHeartBeat(primaryStoragePool));
+                        _heartBeats.put(uuid, heartBeat);
+                    }
+                    heartBeats.put(primaryStoragePool, heartBeat);
+                }
+
+                final long deadline = System.currentTimeMillis() + _heartBeatUpdateMaxTries * (_heartBeatUpdateTimeout + _heartBeatUpdateRetrySleep);
+                for (Map.Entry<NfsStoragePool, Future<String>> heartBeat : heartBeats.entrySet()) {
+                    NfsStoragePool primaryStoragePool = heartBeat.getKey();
+                    String result;
+                    try {
+                        result = heartBeat.getValue().get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+                    } catch (TimeoutException e) {
+                        result = "timed out writing the heartbeat";
+                    } catch (InterruptedException | ExecutionException e) {
+                        result = e.toString();
                     }
 
                     if (result != null) {
@@ -162,6 +177,56 @@ public class KVMHAMonitor extends KVMHABase implements Runnable {
         }
     }
 
+    /**
+     * Writes the heartbeat of the host to the pool, trying multiple times with a sleep in between
+     * to ensure a failure isn't a short lived transient error.
+     *
+     * @return null if the heartbeat was written, the last error otherwise
+     */
+    private String writeHeartBeat(NfsStoragePool primaryStoragePool) {
+        String result = null;
+        for (int i = 1; i <= _heartBeatUpdateMaxTries; i++) {
+            final long startTime = System.currentTimeMillis();
+            result = writeHeartBeatOnce(primaryStoragePool);
+            final long latency = System.currentTimeMillis() - startTime;
+            if (result == null) {
+                if (latency > _heartBeatUpdateTimeout / 2) {
+                    s_logger.warn("Writing the heartbeat to pool " + primaryStoragePool._poolUUID + " took " + latency + " ms");
+                } else if (s_logger.isTraceEnabled()) {
+                    s_logger.trace("Wrote the heartbeat to pool " + primaryStoragePool._poolUUID + " in " + latency + " ms");
+                }
+                break;
+            }
+
+            s_logger.warn("write heartbeat failed: " + result + ", try: " + i + " of " + _heartBeatUpdateMaxTries);
+            try {
+                Thread.sleep(_heartBeatUpdateRetrySleep);
+            } catch (InterruptedException e) {
+                s_logger.debug("[ignored] interupted between heartbeat retries.");
+            }
+        }
+        return result;
+    }
+
+    private String writeHeartBeatOnce(NfsStoragePool primaryStoragePool) {
+        if (!isNfsMounted(primaryStoragePool)) {
+            // kvmheartbeat.sh remounts the pool and destroys the VMs that were running on it before it writes the heartbeat
+            Script cmd = new Script(s_heartBeatPath, _heartBeatUpdateTimeout, s_logger);
+            cmd.add("-i", primaryStoragePool._poolIp);
+            cmd.add("-p", primaryStoragePool._poolMountSourcePath);
+            cmd.add("-m", primaryStoragePool._mountDestPath);
+            cmd.add("-h", _hostIP);
+            return cmd.execute();
+        }
+
+        try {
+            writeHeartBeatFile(new File(getHBFile(primaryStoragePool._mountDestPath, _hostIP)), System.currentTimeMillis() / 1000);
+            return null;
+        } catch (IOException e) {
+            return e.toString();
+        }
+    }
+
     @Override
     public void run() {
         // s_logger.addAppender(new org.apache.log4j.ConsoleAppender(new
@@ -24,6 +24,18 @@ public class KVMPhysicalDisk {
     private KVMStoragePool pool;
 
     public static String RBDStringBuilder(String monHost, int monPort, String authUserName, String authSecret, String image) {
+        return buildRBDString(monHost, monPort, authUserName, ":key=" + authSecret, image);
+    }
+
+    /**
+     * Builds an RBD string that points at a keyring file instead of holding the cephx secret, for strings that are
+     * written to files readable by other hosts, such as the backing file in a qcow2 header.
+     */
+    public static String RBDStringBuilderWithKeyring(String monHost, int monPort, String authUserName, String keyringPath, String image) {
+        return buildRBDString(monHost, monPort, authUserName, ":keyring=" + keyringPath, image);
+    }
+
+    private static String buildRBDString(String monHost, int monPort, String authUserName, String authOption, String image) {
         String rbdOpts;
 
         rbdOpts = "rbd:" + image;
@@ -37,7 +49,7 @@ public class KVMPhysicalDisk {
         } else {
             rbdOpts += ":auth_supported=cephx";
             rbdOpts += ":id=" + authUserName;
-            rbdOpts += ":key=" + authSecret;
+            rbdOpts += authOption;
         }
 
         rbdOpts += ":rbd_default_format=2";
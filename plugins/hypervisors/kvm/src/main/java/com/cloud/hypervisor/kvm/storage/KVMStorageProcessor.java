@@ -26,6 +26,8 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.text.DateFormat;
 import java.text.MessageFormat;
 import java.text.SimpleDateFormat;
@@ -939,6 +941,7 @@ public class KVMStorageProcessor implements StorageProcessor {
             primaryPool = snapshotDisk.getPool();
 
             long size = 0;
+            String parentSnapshotPath = null;
             /**
              * Since Ceph version Dumpling (0.67.X) librbd / Qemu supports converting RBD
              * snapshots to RAW/QCOW2 files directly.
@@ -955,17 +958,29 @@ public class KVMStorageProcessor implements StorageProcessor {
                     s_logger.debug("Attempting to create " + snapDir.getAbsolutePath() + " recursively for snapshot storage");
                     FileUtils.forceMkdir(snapDir);
 
-                    final QemuImgFile srcFile =
-                            new QemuImgFile(KVMPhysicalDisk.RBDStringBuilder(primaryPool.getSourceHost(), primaryPool.getSourcePort(), primaryPool.getAuthUserName(),
-                                    primaryPool.getAuthSecret(), rbdSnapshot));
-                    srcFile.setFormat(snapshotDisk.getFormat());
+                    final Map<String, String> options = cmd.getOptions();
+                    final boolean fullSnapshot = options == null || options.get("fullSnapshot") == null || Boolean.parseBoolean(options.get("fullSnapshot"));
+                    if (!fullSnapshot && destSnapshot.getParentSnapshotPath() != null) {
+                        final File parentBackupFile = new File(ssPmountPath + File.separator + destSnapshot.getParentSnapshotPath());
+                        if (parentBackupFile.exists() && parentBackupFile.getParentFile().equals(snapDir)
+                                && backupRbdSnapshotIncrementally(primaryPool, snapshotDisk, snapshotName, snapshotFile, parentBackupFile, cmd.getWaitInMillSeconds())) {
+                            parentSnapshotPath = destSnapshot.getParentSnapshotPath();
+                        }
+                    }
 
-                    final QemuImgFile destFile = new QemuImgFile(snapshotFile);
-                    destFile.setFormat(PhysicalDiskFormat.QCOW2);
+                    if (parentSnapshotPath == null) {
+                        final QemuImgFile srcFile =
+                                new QemuImgFile(KVMPhysicalDisk.RBDStringBuilder(primaryPool.getSourceHost(), primaryPool.getSourcePort(), primaryPool.getAuthUserName(),
+                                        primaryPool.getAuthSecret(), rbdSnapshot));
+                        srcFile.setFormat(snapshotDisk.getFormat());
 
-                    s_logger.debug("Backing up RBD snapshot " + rbdSnapshot + " to " + snapshotFile);
-                    final QemuImg q = new QemuImg(cmd.getWaitInMillSeconds());
-                    q.convert(srcFile, destFile);
+                        final QemuImgFile destFile = new QemuImgFile(snapshotFile);
+                        destFile.setFormat(PhysicalDiskFormat.QCOW2);
+
+                        s_logger.debug("Backing up RBD snapshot " + rbdSnapshot + " to " + snapshotFile);
+                        final QemuImg q = new QemuImg(cmd.getWaitInMillSeconds());
+                        q.convert(srcFile, destFile);
+                    }
 
                     final File snapFile = new File(snapshotFile);
                     if(snapFile.exists()) {
@@ -1007,6 +1022,7 @@ public class KVMStorageProcessor implements StorageProcessor {
             final SnapshotObjectTO newSnapshot = new SnapshotObjectTO();
             newSnapshot.setPath(snapshotRelPath + File.separator + descName);
             newSnapshot.setPhysicalSize(size);
+            newSnapshot.setParentSnapshotPath(parentSnapshotPath);
             return new CopyCmdAnswer(newSnapshot);
         } catch (final LibvirtException e) {
             s_logger.debug("Failed to backup snapshot: ", e);
@@ -1073,6 +1089,62 @@ public class KVMStorageProcessor implements StorageProcessor {
         }
     }
 
+    /**
+     * Backs up an RBD snapshot as a qcow2 overlay of the backup of the previous snapshot of the volume, holding only
+     * the clusters that changed since that snapshot.
+     *
+     * The overlay is created empty on top of the RBD snapshot and rebased onto the previous RBD snapshot, so qemu-img
+     * compares both snapshots on Ceph and writes only their differences to secondary storage. The previous backup holds
+     * the same data as the previous RBD snapshot, so the overlay is then pointed at that backup instead.
+     *
+     * @return false if the snapshot could not be backed up incrementally, in which case a full backup has to be taken
+     */
+    private boolean backupRbdSnapshotIncrementally(final KVMStoragePool primaryPool, final KVMPhysicalDisk snapshotDisk, final String snapshotName,
+            final String snapshotFile, final File parentBackupFile, final int timeout) {
+        final String rbdSnapshot = snapshotDisk.getPath() + "@" + snapshotName;
+        final String rbdParentSnapshot = snapshotDisk.getPath() + "@" + parentBackupFile.getName();
+        final QemuImgFile overlayFile = new QemuImgFile(snapshotFile, PhysicalDiskFormat.QCOW2);
+        final QemuImg q = new QemuImg(timeout);
+        File keyring = null;
+        try {
+            s_logger.debug("Backing up RBD snapshot " + rbdSnapshot + " to " + snapshotFile + " as the changes since " + rbdParentSnapshot);
+            // the RBD snapshots are the backing files of the overlay on secondary storage until the last rebase, so the
+            // cephx secret is handed to qemu-img in a keyring file on the local disk rather than in the RBD strings
+            keyring = createRbdKeyring(primaryPool);
+            q.create(overlayFile, new QemuImgFile(getRbdStringWithKeyring(primaryPool, keyring, rbdSnapshot), PhysicalDiskFormat.RAW), null);
+            q.rebase(overlayFile, new QemuImgFile(getRbdStringWithKeyring(primaryPool, keyring, rbdParentSnapshot), PhysicalDiskFormat.RAW),
+                    PhysicalDiskFormat.RAW.toString(), true);
+            // the backing file is relative, the backups of a volume are kept in the same directory
+            q.rebase(overlayFile, new QemuImgFile(parentBackupFile.getName(), PhysicalDiskFormat.QCOW2), PhysicalDiskFormat.QCOW2.toString(), false);
+            return true;
+        } catch (final QemuImgException | IOException e) {
+            s_logger.warn("Failed to backup RBD snapshot " + rbdSnapshot + " incrementally, taking a full backup instead. The error was: " + e.getMessage());
+            FileUtils.deleteQuietly(new File(snapshotFile));
+            return false;
+        } finally {
+            FileUtils.deleteQuietly(keyring);
+        }
+    }
+
+    /**
+     * Writes the cephx secret of the pool to a keyring file in the local temporary directory, readable by the owner only.
+     *
+     * @return the keyring file, or null if the pool does not use cephx
+     */
+    private File createRbdKeyring(final KVMStoragePool pool) throws IOException {
+        if (pool.getAuthUserName() == null) {
+            return null;
+        }
+        final File keyring = Files.createTempFile("rbd-", ".keyring").toFile();
+        FileUtils.writeStringToFile(keyring, "[client." + pool.getAuthUserName() + "]\n\tkey = " + pool.getAuthSecret() + "\n", StandardCharsets.UTF_8);
+        return keyring;
+    }
+
+    private String getRbdStringWithKeyring(final KVMStoragePool pool, final File keyring, final String image) {
+        return KVMPhysicalDisk.RBDStringBuilderWithKeyring(pool.getSourceHost(), pool.getSourcePort(), pool.getAuthUserName(),
+                keyring != null ? keyring.getAbsolutePath() : null, image);
+    }
+
     private void deleteSnapshotViaManageSnapshotScript(final String snapshotName, KVMPhysicalDisk snapshotDisk) {
         final Script command = new Script(_manageSnapshotPath, _cmdsTimeout, s_logger);
         command.add(MANAGE_SNAPSTHOT_DESTROY_OPTION, snapshotDisk.getPath());
@@ -19,6 +19,7 @@ package org.apache.cloudstack.utils.qemu;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.cloud.hypervisor.kvm.resource.LibvirtConnection;
 import com.cloud.storage.Storage;
@@ -28,6 +29,11 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.NotImplementedException;
 import org.libvirt.LibvirtException;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
 public class QemuImg {
     public final static String BACKING_FILE = "backing_file";
     public final static String BACKING_FILE_FORMAT = "backing_file_format";
@@ -36,6 +42,20 @@ public class QemuImg {
     public final static String IMAGE = "image";
     public final static String VIRTUAL_SIZE = "virtual_size";
 
+    /* The keys of 'qemu-img info --output=json' that are returned under a different name by info() */
+    private final static Map<String, String> INFO_JSON_KEYS = new HashMap<String, String>();
+    static {
+        INFO_JSON_KEYS.put("filename", IMAGE);
+        INFO_JSON_KEYS.put("format", FILE_FORMAT);
+        INFO_JSON_KEYS.put("full-backing-filename", BACKING_FILE);
+        INFO_JSON_KEYS.put("backing-filename-format", BACKING_FILE_FORMAT);
+        INFO_JSON_KEYS.put("actual-size", "disk_size");
+    }
+
+    /* The libvirt version and the resolved qemu-img binaries don't change while the agent runs, look them up once */
+    private static volatile Long s_libvirtVersion;
+    private static final Map<String, String> s_resolvedQemuImgPaths = new ConcurrentHashMap<String, String>();
+
     /* The qemu-img binary. We expect this to be in $PATH */
     public String _qemuImgPath = "qemu-img";
     private String cloudQemuImgPath = "cloud-qemu-img";
@@ -156,7 +176,8 @@ public class QemuImg {
          */
         s.add("-f");
         if (backingFile != null) {
-            s.add(backingFile.getFormat().toString());
+            // a raw image can't have a backing file, an overlay of a raw image is created in the format of the file
+            s.add(backingFile.getFormat() == PhysicalDiskFormat.RAW ? file.getFormat().toString() : backingFile.getFormat().toString());
             s.add("-F");
             s.add(backingFile.getFormat().toString());
             s.add("-b");
@@ -244,13 +265,12 @@ public class QemuImg {
                         final Map<String, String> options, final String snapshotName) throws QemuImgException, LibvirtException {
         Script script = new Script(_qemuImgPath, timeout);
         if (StringUtils.isNotBlank(snapshotName)) {
-            String qemuPath = Script.runSimpleBashScript(getQemuImgPathScript);
+            String qemuPath = s_resolvedQemuImgPaths.computeIfAbsent(getQemuImgPathScript, Script::runSimpleBashScript);
             script = new Script(qemuPath, timeout);
         }
 
         script.add("convert");
-        Long version  = LibvirtConnection.getConnection().getVersion();
-        if (version >= 2010000) {
+        if (supportsForceShare()) {
             script.add("-U");
         }
 
@@ -344,10 +364,10 @@ public class QemuImg {
     /**
      * Execute qemu-img info for the given file
      *
-     * Qemu-img returns human readable output, but this method does it's best
-     * to turn that into machine readeable data.
+     * The JSON output of qemu-img is turned into the same flat keys as
+     * its human readable output used to be.
      *
-     * Spaces in keys are replaced by underscores (_).
+     * Dashes in keys are replaced by underscores (_).
      * Sizes (virtual_size and disk_size) are returned in bytes
      * Paths (image and backing_file) are the absolute path to the file
      *
@@ -358,10 +378,10 @@ public class QemuImg {
     public Map<String, String> info(final QemuImgFile file) throws QemuImgException, LibvirtException {
         final Script s = new Script(_qemuImgPath);
         s.add("info");
-        Long version  = LibvirtConnection.getConnection().getVersion();
-        if (version >= 2010000) {
+        if (supportsForceShare()) {
             s.add("-U");
         }
+        s.add("--output=json");
         s.add(file.getFileName());
 
         final OutputInterpreter.AllLinesParser parser = new OutputInterpreter.AllLinesParser();
@@ -370,26 +390,48 @@ public class QemuImg {
             throw new QemuImgException(result);
         }
 
-        final HashMap<String, String> info = new HashMap<String, String>();
-        final String[] outputBuffer = parser.getLines().trim().split("\n");
-        for (int i = 0; i < outputBuffer.length; i++) {
-            final String[] lineBuffer = outputBuffer[i].split(":", 2);
-            if (lineBuffer.length == 2) {
-                final String key = lineBuffer[0].trim().replace(" ", "_");
-                String value = null;
-
-                if (key.equals("virtual_size")) {
-                    value = lineBuffer[1].trim().replaceAll("^.*\\(([0-9]+).*$", "$1");
-                } else {
-                    value = lineBuffer[1].trim();
-                }
+        return parseInfo(parser.getLines());
+    }
+
+    /**
+     * Flattens the output of 'qemu-img info --output=json'. Nested values, like the
+     * format specific data and the snapshots, are left out.
+     */
+    protected static Map<String, String> parseInfo(final String json) throws QemuImgException {
+        final JsonObject output;
+        try {
+            output = new JsonParser().parse(json).getAsJsonObject();
+        } catch (JsonParseException | IllegalStateException e) {
+            throw new QemuImgException("Unable to parse the output of qemu-img info: " + e.getMessage());
+        }
 
-                info.put(key, value);
+        final HashMap<String, String> info = new HashMap<String, String>();
+        for (final Map.Entry<String, JsonElement> entry : output.entrySet()) {
+            if (!entry.getValue().isJsonPrimitive()) {
+                continue;
+            }
+            String key = INFO_JSON_KEYS.get(entry.getKey());
+            if (key == null) {
+                key = entry.getKey().replace('-', '_');
             }
+            info.put(key, entry.getValue().getAsString());
+        }
+        if (!info.containsKey(BACKING_FILE) && output.has("backing-filename")) {
+            info.put(BACKING_FILE, output.get("backing-filename").getAsString());
         }
         return info;
     }
 
+    /* qemu-img needs -U (--force-share) to read images that are in use by a running VM */
+    private static boolean supportsForceShare() throws LibvirtException {
+        Long version = s_libvirtVersion;
+        if (version == null) {
+            version = LibvirtConnection.getConnection().getVersion();
+            s_libvirtVersion = version;
+        }
+        return version >= 2010000;
+    }
+
     /* List, apply, create or delete snapshots in image */
     public void snapshot() throws QemuImgException {
 
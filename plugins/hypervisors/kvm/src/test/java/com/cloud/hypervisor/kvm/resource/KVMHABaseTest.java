@@ -0,0 +1,54 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.hypervisor.kvm.resource;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class KVMHABaseTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteAndReadHeartBeatFile() throws IOException {
+        File hbFile = new File(folder.getRoot(), "KVMHA" + File.separator + "hb-10.1.1.1");
+
+        KVMHABase.writeHeartBeatFile(hbFile, 1600000120L);
+        assertEquals("1600000120\n", new String(Files.readAllBytes(hbFile.toPath()), StandardCharsets.US_ASCII));
+
+        // a shorter timestamp mustn't leave the tail of the previous one behind
+        KVMHABase.writeHeartBeatFile(hbFile, 42L);
+        assertEquals(42L, KVMHABase.readHeartBeatFile(hbFile));
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadInvalidHeartBeatFile() throws IOException {
+        File hbFile = folder.newFile("hb-10.1.1.1");
+        Files.write(hbFile.toPath(), "not a timestamp".getBytes(StandardCharsets.US_ASCII));
+
+        KVMHABase.readHeartBeatFile(hbFile);
+    }
+}
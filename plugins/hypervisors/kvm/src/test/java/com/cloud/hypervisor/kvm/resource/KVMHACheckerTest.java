@@ -0,0 +1,104 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.hypervisor.kvm.resource;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.cloud.hypervisor.kvm.resource.KVMHABase.NfsStoragePool;
+import com.cloud.hypervisor.kvm.resource.KVMHABase.PoolType;
+
+public class KVMHACheckerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private NfsStoragePool createPool() {
+        return new NfsStoragePool("pool-uuid", "10.1.1.2", "/export/primary", folder.getRoot().getAbsolutePath(), PoolType.PrimaryStorage);
+    }
+
+    @Test
+    public void testCheckRecentHeartBeat() throws IOException {
+        NfsStoragePool pool = createPool();
+        KVMHAChecker checker = new KVMHAChecker(Collections.singletonList(pool), "10.1.1.1");
+        KVMHABase.writeHeartBeatFile(new File(checker.getHBFile(pool._mountDestPath, "10.1.1.1")), System.currentTimeMillis() / 1000);
+
+        assertTrue(checker.checkHeartBeatFile(pool));
+    }
+
+    @Test
+    public void testCheckStaleHeartBeat() throws IOException {
+        NfsStoragePool pool = createPool();
+        KVMHAChecker checker = new KVMHAChecker(Collections.singletonList(pool), "10.1.1.1");
+        KVMHABase.writeHeartBeatFile(new File(checker.getHBFile(pool._mountDestPath, "10.1.1.1")), System.currentTimeMillis() / 1000 - 3600);
+
+        assertFalse(checker.checkHeartBeatFile(pool));
+    }
+
+    @Test
+    public void testCheckMissingHeartBeat() {
+        NfsStoragePool pool = createPool();
+        KVMHAChecker checker = new KVMHAChecker(Collections.singletonList(pool), "10.1.1.1");
+
+        assertFalse("A missing heartbeat is reported as dead, as kvmheartbeat.sh does", checker.checkHeartBeatFile(pool));
+    }
+
+    @Test
+    public void testCheckInvalidHeartBeat() throws IOException {
+        NfsStoragePool pool = createPool();
+        KVMHAChecker checker = new KVMHAChecker(Collections.singletonList(pool), "10.1.1.1");
+        File hbFile = new File(checker.getHBFile(pool._mountDestPath, "10.1.1.1"));
+        hbFile.getParentFile().mkdirs();
+        Files.write(hbFile.toPath(), "not a timestamp".getBytes(StandardCharsets.US_ASCII));
+
+        assertFalse("A heartbeat that can't be parsed is reported as dead", checker.checkHeartBeatFile(pool));
+    }
+
+    @Test
+    public void testCheckHeartBeatTimesOut() {
+        final CountDownLatch storageResponds = new CountDownLatch(1);
+        NfsStoragePool pool = createPool();
+        KVMHAChecker checker = new KVMHAChecker(Collections.singletonList(pool), "10.1.1.1", 100) {
+            @Override
+            protected long readHeartBeat(File hbFile) throws IOException {
+                try {
+                    storageResponds.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return 0;
+            }
+        };
+
+        try {
+            assertTrue("A heartbeat that can't be read in time doesn't mean the host is dead", checker.checkHeartBeatFile(pool));
+        } finally {
+            storageResponds.countDown();
+        }
+    }
+}
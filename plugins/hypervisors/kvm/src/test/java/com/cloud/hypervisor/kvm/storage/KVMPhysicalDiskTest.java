@@ -28,6 +28,11 @@ public class KVMPhysicalDiskTest extends TestCase {
                      "rbd:volume1:mon_host=ceph-monitor\\:8000:auth_supported=cephx:id=admin:key=supersecret:rbd_default_format=2:client_mount_timeout=30");
     }
 
+    public void testRBDStringBuilderWithKeyring() {
+        assertEquals(KVMPhysicalDisk.RBDStringBuilderWithKeyring("ceph-monitor", 8000, "admin", "/tmp/rbd.keyring", "volume1@snap1"),
+                     "rbd:volume1@snap1:mon_host=ceph-monitor\\:8000:auth_supported=cephx:id=admin:keyring=/tmp/rbd.keyring:rbd_default_format=2:client_mount_timeout=30");
+    }
+
     public void testAttributes() {
         String name = "3bc186e0-6c29-45bf-b2b0-ddef6f91f5ef";
         String path = "/" + name;
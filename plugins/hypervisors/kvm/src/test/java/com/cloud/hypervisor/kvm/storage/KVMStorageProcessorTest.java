@@ -18,14 +18,35 @@
  */
 package com.cloud.hypervisor.kvm.storage;
 
+import com.cloud.agent.api.to.NfsTO;
 import com.cloud.hypervisor.kvm.resource.LibvirtComputingResource;
+import com.cloud.hypervisor.kvm.resource.LibvirtConnection;
+import com.cloud.storage.DataStoreRole;
+import com.cloud.storage.Storage.StoragePoolType;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
 import javax.naming.ConfigurationException;
 
 import com.cloud.utils.script.Script;
+import org.apache.cloudstack.storage.command.CopyCmdAnswer;
+import org.apache.cloudstack.storage.command.CopyCommand;
+import org.apache.cloudstack.storage.to.PrimaryDataStoreTO;
+import org.apache.cloudstack.storage.to.SnapshotObjectTO;
+import org.apache.cloudstack.storage.to.VolumeObjectTO;
+import org.apache.cloudstack.utils.qemu.QemuImg;
+import org.apache.cloudstack.utils.qemu.QemuImg.PhysicalDiskFormat;
+import org.apache.cloudstack.utils.qemu.QemuImgException;
+import org.apache.cloudstack.utils.qemu.QemuImgFile;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Matchers;
 import org.mockito.Mock;
@@ -35,20 +56,35 @@ import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
-@PrepareForTest({ Script.class })
+@PrepareForTest({ Script.class, KVMStorageProcessor.class, LibvirtConnection.class })
 @RunWith(PowerMockRunner.class)
 public class KVMStorageProcessorTest {
 
+    @Rule
+    public TemporaryFolder secondaryStorage = new TemporaryFolder();
+
     @Mock
     KVMStoragePoolManager storagePoolManager;
     @Mock
     LibvirtComputingResource resource;
+    @Mock
+    KVMStoragePool primaryPool;
+    @Mock
+    KVMStoragePool secondaryPool;
+    @Mock
+    KVMPhysicalDisk snapshotDisk;
+    @Mock
+    PrimaryDataStoreTO primaryStore;
+    @Mock
+    QemuImg qemuImg;
 
     @InjectMocks
     private KVMStorageProcessor storageProcessor;
 
     private static final String directDownloadTemporaryPath = "/var/lib/libvirt/images/dd";
     private static final long templateSize = 80000L;
+    private static final String snapshotDir = "snapshots/2/3";
+    private static final String authSecret = "supersecret";
 
     @Before
     public void setUp() throws ConfigurationException {
@@ -87,4 +123,109 @@ public class KVMStorageProcessorTest {
         boolean result = storageProcessor.isEnoughSpaceForDownloadTemplateOnTemporaryLocation(templateSize);
         Assert.assertFalse(result);
     }
+
+    private CopyCommand prepareRbdSnapshotBackup(String parentSnapshotPath) throws Exception {
+        PowerMockito.mockStatic(LibvirtConnection.class);
+        PowerMockito.whenNew(QemuImg.class).withAnyArguments().thenReturn(qemuImg);
+
+        Mockito.when(primaryStore.getPoolType()).thenReturn(StoragePoolType.RBD);
+        Mockito.when(primaryStore.getUuid()).thenReturn("primary");
+        Mockito.when(storagePoolManager.getStoragePoolByURI("nfs://secondary/export")).thenReturn(secondaryPool);
+        Mockito.when(secondaryPool.getLocalPath()).thenReturn(secondaryStorage.getRoot().getAbsolutePath());
+        Mockito.when(storagePoolManager.getPhysicalDisk(StoragePoolType.RBD, "primary", "volume")).thenReturn(snapshotDisk);
+        Mockito.when(snapshotDisk.getPool()).thenReturn(primaryPool);
+        Mockito.when(snapshotDisk.getPath()).thenReturn("cloudstack/volume");
+        Mockito.when(snapshotDisk.getFormat()).thenReturn(PhysicalDiskFormat.RAW);
+        Mockito.when(primaryPool.getType()).thenReturn(StoragePoolType.RBD);
+        Mockito.when(primaryPool.getSourceHost()).thenReturn("ceph-monitor");
+        Mockito.when(primaryPool.getAuthUserName()).thenReturn("admin");
+        Mockito.when(primaryPool.getAuthSecret()).thenReturn(authSecret);
+
+        VolumeObjectTO volume = new VolumeObjectTO();
+        volume.setPath("volume");
+        SnapshotObjectTO snapshot = new SnapshotObjectTO();
+        snapshot.setPath("cloudstack/volume/snap2");
+        snapshot.setVolume(volume);
+        snapshot.setDataStore(primaryStore);
+
+        SnapshotObjectTO destSnapshot = new SnapshotObjectTO();
+        destSnapshot.setPath(snapshotDir);
+        destSnapshot.setParentSnapshotPath(parentSnapshotPath);
+        destSnapshot.setDataStore(new NfsTO("nfs://secondary/export", DataStoreRole.Image));
+
+        CopyCommand cmd = new CopyCommand(snapshot, destSnapshot, 0, true);
+        Map<String, String> options = new HashMap<String, String>();
+        options.put("fullSnapshot", "false");
+        cmd.setOptions(options);
+        return cmd;
+    }
+
+    private void createBackup(String path) throws Exception {
+        File backup = new File(secondaryStorage.getRoot(), path);
+        backup.getParentFile().mkdirs();
+        backup.createNewFile();
+    }
+
+    private String getParentSnapshotPath(CopyCmdAnswer answer) {
+        Assert.assertTrue(answer.getResult());
+        return ((SnapshotObjectTO)answer.getNewData()).getParentSnapshotPath();
+    }
+
+    @Test
+    public void testBackupRbdSnapshotIncrementally() throws Exception {
+        createBackup(snapshotDir + "/snap1");
+        CopyCommand cmd = prepareRbdSnapshotBackup(snapshotDir + "/snap1");
+
+        CopyCmdAnswer answer = (CopyCmdAnswer)storageProcessor.backupSnapshot(cmd);
+
+        Assert.assertEquals(snapshotDir + "/snap1", getParentSnapshotPath(answer));
+        ArgumentCaptor<QemuImgFile> backingFile = ArgumentCaptor.forClass(QemuImgFile.class);
+        Mockito.verify(qemuImg).create(Matchers.any(QemuImgFile.class), backingFile.capture(), Mockito.isNull());
+        Mockito.verify(qemuImg).rebase(Matchers.any(QemuImgFile.class), Matchers.any(QemuImgFile.class), Matchers.eq("raw"), Matchers.eq(true));
+        Mockito.verify(qemuImg).rebase(Matchers.any(QemuImgFile.class), Matchers.any(QemuImgFile.class), Matchers.eq("qcow2"), Matchers.eq(false));
+        Mockito.verify(qemuImg, Mockito.never()).convert(Matchers.any(QemuImgFile.class), Matchers.any(QemuImgFile.class));
+
+        // the backing file is written to the overlay header on secondary storage, it must not hold the cephx secret
+        String rbdSnapshot = backingFile.getValue().getFileName();
+        Assert.assertTrue(rbdSnapshot.startsWith("rbd:cloudstack/volume@snap2:"));
+        Assert.assertFalse(rbdSnapshot.contains(authSecret));
+        String keyring = rbdSnapshot.replaceAll(".*:keyring=([^:]*):.*", "$1");
+        Assert.assertFalse(new File(keyring).exists());
+    }
+
+    @Test
+    public void testBackupRbdSnapshotFullWhenParentBackupIsMissing() throws Exception {
+        CopyCommand cmd = prepareRbdSnapshotBackup(snapshotDir + "/snap1");
+
+        CopyCmdAnswer answer = (CopyCmdAnswer)storageProcessor.backupSnapshot(cmd);
+
+        Assert.assertNull(getParentSnapshotPath(answer));
+        Mockito.verify(qemuImg, Mockito.never()).create(Matchers.any(QemuImgFile.class), Matchers.any(QemuImgFile.class), Mockito.isNull());
+        Mockito.verify(qemuImg).convert(Matchers.any(QemuImgFile.class), Matchers.any(QemuImgFile.class));
+    }
+
+    @Test
+    public void testBackupRbdSnapshotFullWhenParentBackupIsInAnotherDirectory() throws Exception {
+        createBackup("snapshots/2/4/snap1");
+        CopyCommand cmd = prepareRbdSnapshotBackup("snapshots/2/4/snap1");
+
+        CopyCmdAnswer answer = (CopyCmdAnswer)storageProcessor.backupSnapshot(cmd);
+
+        Assert.assertNull(getParentSnapshotPath(answer));
+        Mockito.verify(qemuImg, Mockito.never()).create(Matchers.any(QemuImgFile.class), Matchers.any(QemuImgFile.class), Mockito.isNull());
+        Mockito.verify(qemuImg).convert(Matchers.any(QemuImgFile.class), Matchers.any(QemuImgFile.class));
+    }
+
+    @Test
+    public void testBackupRbdSnapshotFullWhenRebaseFails() throws Exception {
+        createBackup(snapshotDir + "/snap1");
+        CopyCommand cmd = prepareRbdSnapshotBackup(snapshotDir + "/snap1");
+        Mockito.doThrow(new QemuImgException("rbd snapshot snap1 not found")).when(qemuImg)
+                .rebase(Matchers.any(QemuImgFile.class), Matchers.any(QemuImgFile.class), Matchers.eq("raw"), Matchers.eq(true));
+
+        CopyCmdAnswer answer = (CopyCmdAnswer)storageProcessor.backupSnapshot(cmd);
+
+        Assert.assertNull(getParentSnapshotPath(answer));
+        Mockito.verify(qemuImg).convert(Matchers.any(QemuImgFile.class), Matchers.any(QemuImgFile.class));
+    }
 }
@@ -0,0 +1,77 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.utils.qemu;
+
+import org.apache.cloudstack.utils.qemu.QemuImg.PhysicalDiskFormat;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import com.cloud.utils.script.Script;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(QemuImg.class)
+public class QemuImgCreateTest {
+
+    private Script mockScript() throws Exception {
+        Script script = Mockito.mock(Script.class);
+        PowerMockito.whenNew(Script.class).withAnyArguments().thenReturn(script);
+        return script;
+    }
+
+    @Test
+    public void testCreateOverlayOfRawImage() throws Exception {
+        Script script = mockScript();
+        QemuImgFile overlay = new QemuImgFile("/mnt/secondary/snapshots/2/3/snap2", PhysicalDiskFormat.QCOW2);
+        QemuImgFile backingFile = new QemuImgFile("rbd:cloudstack/volume@snap2", PhysicalDiskFormat.RAW);
+
+        new QemuImg(0).create(overlay, backingFile, null);
+
+        // a raw image can't have a backing file, the overlay is created as qcow2 on top of the raw image
+        InOrder inOrder = Mockito.inOrder(script);
+        inOrder.verify(script).add("create");
+        inOrder.verify(script).add("-f");
+        inOrder.verify(script).add("qcow2");
+        inOrder.verify(script).add("-F");
+        inOrder.verify(script).add("raw");
+        inOrder.verify(script).add("-b");
+        inOrder.verify(script).add("rbd:cloudstack/volume@snap2");
+        inOrder.verify(script).add("/mnt/secondary/snapshots/2/3/snap2");
+        inOrder.verify(script).execute();
+    }
+
+    @Test
+    public void testCreateOverlayOfQcow2Image() throws Exception {
+        Script script = mockScript();
+        QemuImgFile overlay = new QemuImgFile("/var/lib/libvirt/images/volume", PhysicalDiskFormat.QCOW2);
+        QemuImgFile backingFile = new QemuImgFile("/var/lib/libvirt/images/template", PhysicalDiskFormat.QCOW2);
+
+        new QemuImg(0).create(overlay, backingFile, null);
+
+        InOrder inOrder = Mockito.inOrder(script);
+        inOrder.verify(script).add("-f");
+        inOrder.verify(script).add("qcow2");
+        inOrder.verify(script).add("-F");
+        inOrder.verify(script).add("qcow2");
+        inOrder.verify(script).add("-b");
+        inOrder.verify(script).add("/var/lib/libvirt/images/template");
+    }
+}
@@ -0,0 +1,59 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.utils.qemu;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+public class QemuImgInfoTest {
+
+    @Test
+    public void testParseInfo() throws QemuImgException {
+        String json = "{\"virtual-size\": 10737418240, \"filename\": \"/mnt/pool/volume.qcow2\", \"cluster-size\": 65536,"
+                + " \"format\": \"qcow2\", \"actual-size\": 200704, \"backing-filename\": \"template.qcow2\","
+                + " \"full-backing-filename\": \"/mnt/pool/template.qcow2\", \"backing-filename-format\": \"qcow2\","
+                + " \"format-specific\": {\"type\": \"qcow2\", \"data\": {\"compat\": \"1.1\"}}, \"dirty-flag\": false}";
+
+        Map<String, String> info = QemuImg.parseInfo(json);
+
+        assertEquals("10737418240", info.get(QemuImg.VIRTUAL_SIZE));
+        assertEquals("/mnt/pool/volume.qcow2", info.get(QemuImg.IMAGE));
+        assertEquals("65536", info.get(QemuImg.CLUSTER_SIZE));
+        assertEquals("qcow2", info.get(QemuImg.FILE_FORMAT));
+        assertEquals("200704", info.get("disk_size"));
+        assertEquals("/mnt/pool/template.qcow2", info.get(QemuImg.BACKING_FILE));
+        assertEquals("qcow2", info.get(QemuImg.BACKING_FILE_FORMAT));
+        assertEquals("false", info.get("dirty_flag"));
+        assertFalse(info.containsKey("format_specific"));
+    }
+
+    @Test
+    public void testParseInfoWithoutFullBackingFilename() throws QemuImgException {
+        Map<String, String> info = QemuImg.parseInfo("{\"format\": \"qcow2\", \"backing-filename\": \"/mnt/pool/template.qcow2\"}");
+
+        assertEquals("/mnt/pool/template.qcow2", info.get(QemuImg.BACKING_FILE));
+    }
+
+    @Test(expected = QemuImgException.class)
+    public void testParseInfoInvalidOutput() throws QemuImgException {
+        QemuImg.parseInfo("image: /mnt/pool/volume.qcow2");
+    }
+}
@@ -299,6 +299,7 @@ import com.vmware.vim25.HostCapability;
 import com.vmware.vim25.HostHostBusAdapter;
 import com.vmware.vim25.HostInternetScsiHba;
 import com.vmware.vim25.HostPortGroupSpec;
+import com.vmware.vim25.InvalidNameFaultMsg;
 import com.vmware.vim25.ManagedObjectReference;
 import com.vmware.vim25.NasDatastoreInfo;
 import com.vmware.vim25.ObjectContent;
@@ -362,6 +363,10 @@ public class VmwareResource implements StoragePoolResource, ServerResource, Vmwa
 
     private static final Random RANDOM = new Random(System.nanoTime());
 
+    // vCenter's advanced setting limiting the number of entity/metric pairs accepted in one historical perf query, and its default
+    protected static final String MAX_PERF_QUERY_METRICS_SETTING = "config.vpxd.stats.maxQueryMetrics";
+    protected static final int DEFAULT_MAX_PERF_QUERY_METRICS = 64;
+
     protected String _name;
 
     protected final long _opsTimeout = 900000;   // 15 minutes time out to time
@@ -404,6 +409,8 @@ public class VmwareResource implements StoragePoolResource, ServerResource, Vmwa
     protected Gson _gson;
 
     protected volatile long _cmdSequence = 1;
+    private volatile List<PerfCounterInfo> _perfCounterInfos;
+    private volatile Integer _maxPerfQueryMetrics;
 
     protected StorageSubsystemCommandHandler storageHandler;
     private VmwareStorageProcessor _storageProcessor;
@@ -3989,7 +3996,7 @@ public class VmwareResource implements StoragePoolResource, ServerResource, Vmwa
             PerfCounterInfo diskWriteKbsPerfCounterInfo = null;
 
             // https://pubs.vmware.com/vsphere-5-5/topic/com.vmware.wssdk.apiref.doc/virtual_disk_counters.html
-            List<PerfCounterInfo> cInfo = getServiceContext().getVimClient().getDynamicProperty(perfMgr, "perfCounter");
+            List<PerfCounterInfo> cInfo = getPerfCounterInfos(perfMgr);
             for (PerfCounterInfo info : cInfo) {
                 if ("virtualdisk".equalsIgnoreCase(info.getGroupInfo().getKey()) && "average".equalsIgnoreCase(info.getRollupType().value())) {
                     if ("numberReadAveraged".equalsIgnoreCase(info.getNameInfo().getKey())) {
@@ -5825,6 +5832,7 @@ public class VmwareResource implements StoragePoolResource, ServerResource, Vmwa
 
     @Override
     public void disconnected() {
+        resetPerfSettings();
     }
 
     @Override
@@ -6348,6 +6356,52 @@ public class VmwareResource implements StoragePoolResource, ServerResource, Vmwa
         return newStates;
     }
 
+    private List<PerfCounterInfo> getPerfCounterInfos(ManagedObjectReference perfMgr) throws Exception {
+        // the list of performance counters is large and the built-in counters used for VM stats keep their keys,
+        // so it is read once per connection rather than on every stats collection
+        List<PerfCounterInfo> perfCounterInfos = _perfCounterInfos;
+        if (perfCounterInfos == null) {
+            perfCounterInfos = getServiceContext().getVimClient().getDynamicProperty(perfMgr, "perfCounter");
+            _perfCounterInfos = perfCounterInfos;
+        }
+        return perfCounterInfos;
+    }
+
+    /**
+     * Returns the number of entity/metric pairs vCenter accepts in one historical perf query, as set by its
+     * vpxd.stats.maxQueryMetrics advanced setting. A negative value disables the limit.
+     */
+    protected int getMaxPerfQueryMetrics(VmwareContext context) {
+        Integer maxQueryMetrics = _maxPerfQueryMetrics;
+        if (maxQueryMetrics != null) {
+            return maxQueryMetrics;
+        }
+        maxQueryMetrics = DEFAULT_MAX_PERF_QUERY_METRICS;
+        try {
+            List<OptionValue> options = context.getService().queryOptions(context.getServiceContent().getSetting(), MAX_PERF_QUERY_METRICS_SETTING);
+            if (options != null && !options.isEmpty() && options.get(0).getValue() != null) {
+                int value = NumberUtils.toInt(options.get(0).getValue().toString(), 0);
+                if (value < 0) {
+                    maxQueryMetrics = Integer.MAX_VALUE;
+                } else if (value > 0) {
+                    maxQueryMetrics = value;
+                }
+            }
+        } catch (InvalidNameFaultMsg e) {
+            // the setting is not set on this vCenter, its default applies
+        } catch (Exception e) {
+            s_logger.warn("Unable to read " + MAX_PERF_QUERY_METRICS_SETTING + " from vCenter, using " + DEFAULT_MAX_PERF_QUERY_METRICS + ": " + e.getMessage());
+            return DEFAULT_MAX_PERF_QUERY_METRICS;
+        }
+        _maxPerfQueryMetrics = maxQueryMetrics;
+        return maxQueryMetrics;
+    }
+
+    private void resetPerfSettings() {
+        _perfCounterInfos = null;
+        _maxPerfQueryMetrics = null;
+    }
+
     private HashMap<String, VmStatsEntry> getVmStats(List<String> vmNames) throws Exception {
         VmwareHypervisorHost hyperHost = getHyperHost(getServiceContext());
         HashMap<String, VmStatsEntry> vmResponseMap = new HashMap<String, VmStatsEntry>();
@@ -6365,7 +6419,7 @@ public class VmwareResource implements StoragePoolResource, ServerResource, Vmwa
         final XMLGregorianCalendar startTime = VmwareHelper.getXMLGregorianCalendar(new Date(), intervalSeconds);
         final XMLGregorianCalendar endTime = VmwareHelper.getXMLGregorianCalendar(new Date(), 0);
 
-        List<PerfCounterInfo> cInfo = getServiceContext().getVimClient().getDynamicProperty(perfMgr, "perfCounter");
+        List<PerfCounterInfo> cInfo = getPerfCounterInfos(perfMgr);
         for (PerfCounterInfo info : cInfo) {
             if ("net".equalsIgnoreCase(info.getGroupInfo().getKey()) && "average".equalsIgnoreCase(info.getRollupType().value())) {
                 if ("transmitted".equalsIgnoreCase(info.getNameInfo().getKey())) {
@@ -6403,11 +6457,41 @@ public class VmwareResource implements StoragePoolResource, ServerResource, Vmwa
         final String memLimitStr = "resourceConfig.memoryAllocation.limit";
         final String memMbStr = "config.hardware.memoryMB";
         final String allocatedCpuStr = "summary.runtime.maxCpuUsage";
+        final String numDisksStr = "summary.config.numVirtualDisks";
 
         ObjectContent[] ocs = hyperHost.getVmPropertiesOnHyperHost(new String[]{
-                "name", numCpuStr, cpuUseStr, guestMemUseStr, memLimitStr, memMbStr, allocatedCpuStr, instanceNameCustomField
+                "name", numCpuStr, cpuUseStr, guestMemUseStr, memLimitStr, memMbStr, allocatedCpuStr, numDisksStr, instanceNameCustomField
         });
 
+        final ArrayList<PerfMetricId> perfMetricsIds = new ArrayList<PerfMetricId>();
+        // metrics of the "*" instance are expanded by vCenter into one metric per virtual disk of the VM
+        int perDiskMetrics = 0;
+        if (rxPerfCounterInfo != null) {
+            perfMetricsIds.add(VmwareHelper.createPerfMetricId(rxPerfCounterInfo, ""));
+        }
+        if (txPerfCounterInfo != null) {
+            perfMetricsIds.add(VmwareHelper.createPerfMetricId(txPerfCounterInfo, ""));
+        }
+        if (diskReadIOPerfCounterInfo != null) {
+            perfMetricsIds.add(VmwareHelper.createPerfMetricId(diskReadIOPerfCounterInfo, "*"));
+            perDiskMetrics++;
+        }
+        if (diskWriteIOPerfCounterInfo != null) {
+            perfMetricsIds.add(VmwareHelper.createPerfMetricId(diskWriteIOPerfCounterInfo, "*"));
+            perDiskMetrics++;
+        }
+        if (diskReadKbsPerfCounterInfo != null) {
+            perfMetricsIds.add(VmwareHelper.createPerfMetricId(diskReadKbsPerfCounterInfo, ""));
+        }
+        if (diskWriteKbsPerfCounterInfo != null) {
+            perfMetricsIds.add(VmwareHelper.createPerfMetricId(diskWriteKbsPerfCounterInfo, ""));
+        }
+
+        // VM stats keyed by the VM managed object reference value, so that the perf data of the VMs can be fetched in batched queries
+        final Map<String, VmStatsEntry> vmStatsByMor = new HashMap<String, VmStatsEntry>();
+        final List<PerfQuerySpec> qSpecs = new ArrayList<PerfQuerySpec>();
+        final List<Integer> qSpecMetrics = new ArrayList<Integer>();
+
         if (ocs != null && ocs.length > 0) {
             for (ObjectContent oc : ocs) {
                 List<DynamicProperty> objProps = oc.getPropSet();
@@ -6421,6 +6505,7 @@ public class VmwareResource implements StoragePoolResource, ServerResource, Vmwa
                     String vmNameOnVcenter = null;
                     String vmInternalCSName = null;
                     double allocatedCpu = 0;
+                    int numDisks = 0;
                     for (DynamicProperty objProp : objProps) {
                         if (objProp.getName().equals("name")) {
                             vmNameOnVcenter = objProp.getVal().toString();
@@ -6439,6 +6524,8 @@ public class VmwareResource implements StoragePoolResource, ServerResource, Vmwa
                             memkb = objProp.getVal().toString();
                         } else if (objProp.getName().equals(allocatedCpuStr)) {
                             allocatedCpu = NumberUtils.toDouble(objProp.getVal().toString());
+                        } else if (objProp.getName().equals(numDisksStr)) {
+                            numDisks = NumberUtils.toInt(objProp.getVal().toString());
                         }
                     }
 
@@ -6453,37 +6540,15 @@ public class VmwareResource implements StoragePoolResource, ServerResource, Vmwa
                         continue;
                     }
 
-                    ManagedObjectReference vmMor = hyperHost.findVmOnHyperHost(name).getMor();
-                    assert (vmMor != null);
-
-                    double networkReadKBs = 0;
-                    double networkWriteKBs = 0;
-                    double diskReadIops = 0;
-                    double diskWriteIops = 0;
-                    double diskReadKbs = 0;
-                    double diskWriteKbs = 0;
-
-                    final ArrayList<PerfMetricId> perfMetricsIds = new ArrayList<PerfMetricId>();
-                    if (rxPerfCounterInfo != null) {
-                        perfMetricsIds.add(VmwareHelper.createPerfMetricId(rxPerfCounterInfo, ""));
-                    }
-                    if (txPerfCounterInfo != null) {
-                        perfMetricsIds.add(VmwareHelper.createPerfMetricId(txPerfCounterInfo, ""));
-                    }
-                    if (diskReadIOPerfCounterInfo != null) {
-                        perfMetricsIds.add(VmwareHelper.createPerfMetricId(diskReadIOPerfCounterInfo, "*"));
-                    }
-                    if (diskWriteIOPerfCounterInfo != null) {
-                        perfMetricsIds.add(VmwareHelper.createPerfMetricId(diskWriteIOPerfCounterInfo, "*"));
-                    }
-                    if (diskReadKbsPerfCounterInfo != null) {
-                        perfMetricsIds.add(VmwareHelper.createPerfMetricId(diskReadKbsPerfCounterInfo, ""));
-                    }
-                    if (diskWriteKbsPerfCounterInfo != null) {
-                        perfMetricsIds.add(VmwareHelper.createPerfMetricId(diskWriteKbsPerfCounterInfo, ""));
-                    }
+                    final VmStatsEntry vmStats = new VmStatsEntry(NumberUtils.toDouble(memkb) * 1024, NumberUtils.toDouble(guestMemusage) * 1024, NumberUtils.toDouble(memlimit) * 1024,
+                            maxCpuUsage, 0, 0, NumberUtils.toInt(numberCPUs), "vm");
+                    vmResponseMap.put(name, vmStats);
 
+                    ManagedObjectReference vmMor = oc.getObj();
+                    assert (vmMor != null);
                     if (perfMetricsIds.size() > 0) {
+                        vmStatsByMor.put(vmMor.getValue(), vmStats);
+
                         final PerfQuerySpec qSpec = new PerfQuerySpec();
                         qSpec.setEntity(vmMor);
                         qSpec.setFormat("normal");
@@ -6491,58 +6556,114 @@ public class VmwareResource implements StoragePoolResource, ServerResource, Vmwa
                         qSpec.setStartTime(startTime);
                         qSpec.setEndTime(endTime);
                         qSpec.getMetricId().addAll(perfMetricsIds);
-                        final List<PerfEntityMetricBase> perfValues = service.queryPerf(perfMgr, Collections.singletonList(qSpec));
-                        for (final PerfEntityMetricBase perfValue : perfValues) {
-                            if (!(perfValue instanceof PerfEntityMetric)) {
-                                continue;
-                            }
-                            final List<PerfMetricSeries> seriesList = ((PerfEntityMetric) perfValue).getValue();
-                            for (final PerfMetricSeries series : seriesList) {
-                                if (!(series instanceof PerfMetricIntSeries)) {
-                                    continue;
-                                }
-                                final List<Long> values = ((PerfMetricIntSeries) series).getValue();
-                                double sum = 0;
-                                for (final Long value : values) {
-                                    sum += value;
-                                }
-                                double avg = sum / values.size();
-                                if (series.getId().getCounterId() == rxPerfCounterInfo.getKey()) {
-                                    networkReadKBs = avg;
-                                }
-                                if (series.getId().getCounterId() == txPerfCounterInfo.getKey()) {
-                                    networkWriteKBs = avg;
-                                }
-                                if (series.getId().getCounterId() == diskReadIOPerfCounterInfo.getKey()) {
-                                    diskReadIops += avg;
-                                }
-                                if (series.getId().getCounterId() == diskWriteIOPerfCounterInfo.getKey()) {
-                                    diskWriteIops += avg;
-                                }
-                                if (series.getId().getCounterId() == diskReadKbsPerfCounterInfo.getKey()) {
-                                    diskReadKbs = avg;
-                                }
-                                if (series.getId().getCounterId() == diskWriteKbsPerfCounterInfo.getKey()) {
-                                    diskWriteKbs = avg;
-                                }
-                            }
-                        }
+                        qSpecs.add(qSpec);
+                        qSpecMetrics.add(perfMetricsIds.size() + perDiskMetrics * (Math.max(1, numDisks) - 1));
                     }
+                }
+            }
+        }
 
-                    final VmStatsEntry vmStats = new VmStatsEntry(NumberUtils.toDouble(memkb) * 1024, NumberUtils.toDouble(guestMemusage) * 1024, NumberUtils.toDouble(memlimit) * 1024,
-                            maxCpuUsage, networkReadKBs, networkWriteKBs, NumberUtils.toInt(numberCPUs), "vm");
-                    vmStats.setDiskReadIOs(diskReadIops);
-                    vmStats.setDiskWriteIOs(diskWriteIops);
-                    vmStats.setDiskReadKBs(diskReadKbs);
-                    vmStats.setDiskWriteKBs(diskWriteKbs);
-                    vmResponseMap.put(name, vmStats);
+        if (qSpecs.isEmpty()) {
+            return vmResponseMap;
+        }
 
+        final List<PerfEntityMetricBase> perfValues = queryVmPerf(service, perfMgr, qSpecs, qSpecMetrics, getMaxPerfQueryMetrics(getServiceContext()));
+        for (final PerfEntityMetricBase perfValue : perfValues) {
+            if (!(perfValue instanceof PerfEntityMetric)) {
+                continue;
+            }
+            final VmStatsEntry vmStats = vmStatsByMor.get(perfValue.getEntity().getValue());
+            if (vmStats == null) {
+                continue;
+            }
+
+            double networkReadKBs = 0;
+            double networkWriteKBs = 0;
+            double diskReadIops = 0;
+            double diskWriteIops = 0;
+            double diskReadKbs = 0;
+            double diskWriteKbs = 0;
+
+            final List<PerfMetricSeries> seriesList = ((PerfEntityMetric) perfValue).getValue();
+            for (final PerfMetricSeries series : seriesList) {
+                if (!(series instanceof PerfMetricIntSeries)) {
+                    continue;
+                }
+                final List<Long> values = ((PerfMetricIntSeries) series).getValue();
+                double sum = 0;
+                for (final Long value : values) {
+                    sum += value;
+                }
+                double avg = sum / values.size();
+                if (series.getId().getCounterId() == rxPerfCounterInfo.getKey()) {
+                    networkReadKBs = avg;
+                }
+                if (series.getId().getCounterId() == txPerfCounterInfo.getKey()) {
+                    networkWriteKBs = avg;
+                }
+                if (series.getId().getCounterId() == diskReadIOPerfCounterInfo.getKey()) {
+                    diskReadIops += avg;
+                }
+                if (series.getId().getCounterId() == diskWriteIOPerfCounterInfo.getKey()) {
+                    diskWriteIops += avg;
+                }
+                if (series.getId().getCounterId() == diskReadKbsPerfCounterInfo.getKey()) {
+                    diskReadKbs = avg;
+                }
+                if (series.getId().getCounterId() == diskWriteKbsPerfCounterInfo.getKey()) {
+                    diskWriteKbs = avg;
                 }
             }
+
+            vmStats.setNetworkReadKBs(networkReadKBs);
+            vmStats.setNetworkWriteKBs(networkWriteKBs);
+            vmStats.setDiskReadIOs(diskReadIops);
+            vmStats.setDiskWriteIOs(diskWriteIops);
+            vmStats.setDiskReadKBs(diskReadKbs);
+            vmStats.setDiskWriteKBs(diskWriteKbs);
         }
         return vmResponseMap;
     }
 
+    /**
+     * Queries the perf data of the given VMs in batches, keeping every query under the number of entity/metric pairs
+     * vCenter accepts for historical stats (vpxd.stats.maxQueryMetrics). When a batch fails, e.g. because one of its
+     * VMs was removed while the stats were collected, its VMs are queried one at a time and the failing ones are skipped.
+     *
+     * @param qSpecMetrics the number of metrics each query spec expands to, in the order of the query specs
+     */
+    protected List<PerfEntityMetricBase> queryVmPerf(VimPortType service, ManagedObjectReference perfMgr, List<PerfQuerySpec> qSpecs, List<Integer> qSpecMetrics,
+            int maxQueryMetrics) {
+        final List<PerfEntityMetricBase> perfValues = new ArrayList<PerfEntityMetricBase>();
+        int batchEnd;
+        for (int i = 0; i < qSpecs.size(); i = batchEnd) {
+            int batchMetrics = qSpecMetrics.get(i);
+            batchEnd = i + 1;
+            while (batchEnd < qSpecs.size() && batchMetrics + qSpecMetrics.get(batchEnd) <= maxQueryMetrics) {
+                batchMetrics += qSpecMetrics.get(batchEnd);
+                batchEnd++;
+            }
+            final List<PerfQuerySpec> batch = qSpecs.subList(i, batchEnd);
+            try {
+                perfValues.addAll(service.queryPerf(perfMgr, batch));
+            } catch (Exception e) {
+                if (batch.size() == 1) {
+                    s_logger.warn("Unable to query perf data of VM " + batch.get(0).getEntity().getValue() + ": " + e.getMessage());
+                    continue;
+                }
+                s_logger.warn("Unable to query perf data of " + batch.size() + " VMs in one batch, querying them one at a time: " + e.getMessage());
+                for (final PerfQuerySpec qSpec : batch) {
+                    try {
+                        perfValues.addAll(service.queryPerf(perfMgr, Collections.singletonList(qSpec)));
+                    } catch (Exception ex) {
+                        s_logger.warn("Unable to query perf data of VM " + qSpec.getEntity().getValue() + ": " + ex.getMessage());
+                    }
+                }
+            }
+        }
+        return perfValues;
+    }
+
     protected String networkUsage(final String privateIpAddress, final String option, final String ethName) {
         String args = null;
         if (option.equals("get")) {
@@ -6855,6 +6976,8 @@ public class VmwareResource implements StoragePoolResource, ServerResource, Vmwa
         s_serviceContext.set(null);
         if (context != null)
             context.close();
+        // the vCenter may have been restarted or upgraded, read its perf counters and limits again on the next stats collection
+        resetPerfSettings();
     }
 
     private static void recycleServiceContext() {
@@ -22,6 +22,7 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -30,8 +31,10 @@ import static org.powermock.api.mockito.PowerMockito.whenNew;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.cloudstack.storage.command.CopyCommand;
@@ -71,7 +74,13 @@ import com.cloud.storage.resource.VmwareStorageSubsystemCommandHandler;
 import com.cloud.utils.exception.CloudRuntimeException;
 import com.cloud.vm.VmDetailConstants;
 import com.vmware.vim25.HostCapability;
+import com.vmware.vim25.InvalidNameFaultMsg;
 import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.OptionValue;
+import com.vmware.vim25.PerfEntityMetricBase;
+import com.vmware.vim25.PerfQuerySpec;
+import com.vmware.vim25.RuntimeFaultFaultMsg;
+import com.vmware.vim25.ServiceContent;
 import com.vmware.vim25.VimPortType;
 import com.vmware.vim25.VirtualDevice;
 import com.vmware.vim25.VirtualDeviceConfigSpec;
@@ -435,4 +444,107 @@ public class VmwareResourceTest {
         verify(vmMo, never()).getRunningHost();
     }
 
+    private List<PerfQuerySpec> createPerfQuerySpecs(int count) {
+        List<PerfQuerySpec> qSpecs = new ArrayList<PerfQuerySpec>();
+        for (int i = 0; i < count; i++) {
+            ManagedObjectReference vmMor = new ManagedObjectReference();
+            vmMor.setValue("vm-" + i);
+            PerfQuerySpec qSpec = new PerfQuerySpec();
+            qSpec.setEntity(vmMor);
+            qSpecs.add(qSpec);
+        }
+        return qSpecs;
+    }
+
+    @Test
+    public void testQueryVmPerfSplitsSpecsIntoBatches() throws Exception {
+        List<PerfQuerySpec> qSpecs = createPerfQuerySpecs(25);
+        PerfEntityMetricBase perfValue = new PerfEntityMetricBase();
+        when(vimService.queryPerf(Matchers.eq(mor), Matchers.anyListOf(PerfQuerySpec.class))).thenReturn(Collections.singletonList(perfValue));
+
+        List<PerfEntityMetricBase> perfValues = _resource.queryVmPerf(vimService, mor, qSpecs, Collections.nCopies(25, 6), 64);
+
+        // 64 / 6 metrics per VM = 10 VMs per query
+        verify(vimService).queryPerf(mor, qSpecs.subList(0, 10));
+        verify(vimService).queryPerf(mor, qSpecs.subList(10, 20));
+        verify(vimService).queryPerf(mor, qSpecs.subList(20, 25));
+        assertEquals(3, perfValues.size());
+    }
+
+    @Test
+    public void testQueryVmPerfCountsTheMetricsOfEveryDisk() throws Exception {
+        List<PerfQuerySpec> qSpecs = createPerfQuerySpecs(4);
+        PerfEntityMetricBase perfValue = new PerfEntityMetricBase();
+        when(vimService.queryPerf(Matchers.eq(mor), Matchers.anyListOf(PerfQuerySpec.class))).thenReturn(Collections.singletonList(perfValue));
+
+        // 4 metrics plus 2 per disk, for VMs with 1, 13, 13 and 1 disks
+        List<PerfEntityMetricBase> perfValues = _resource.queryVmPerf(vimService, mor, qSpecs, Arrays.asList(6, 30, 30, 6), 64);
+
+        verify(vimService).queryPerf(mor, qSpecs.subList(0, 2));
+        verify(vimService).queryPerf(mor, qSpecs.subList(2, 4));
+        assertEquals(2, perfValues.size());
+    }
+
+    private void mockMaxQueryMetricsSetting(Object value) throws Exception {
+        ServiceContent serviceContent = mock(ServiceContent.class);
+        when(context.getServiceContent()).thenReturn(serviceContent);
+        when(serviceContent.getSetting()).thenReturn(mor);
+        OptionValue option = new OptionValue();
+        option.setKey(VmwareResource.MAX_PERF_QUERY_METRICS_SETTING);
+        option.setValue(value);
+        when(vimService.queryOptions(mor, VmwareResource.MAX_PERF_QUERY_METRICS_SETTING)).thenReturn(Collections.singletonList(option));
+    }
+
+    @Test
+    public void testGetMaxPerfQueryMetricsReadsTheVCenterSetting() throws Exception {
+        mockMaxQueryMetricsSetting("256");
+
+        assertEquals(256, _resource.getMaxPerfQueryMetrics(context));
+        assertEquals(256, _resource.getMaxPerfQueryMetrics(context));
+        verify(vimService).queryOptions(mor, VmwareResource.MAX_PERF_QUERY_METRICS_SETTING);
+    }
+
+    @Test
+    public void testGetMaxPerfQueryMetricsWithoutLimit() throws Exception {
+        mockMaxQueryMetricsSetting(-1);
+
+        assertEquals(Integer.MAX_VALUE, _resource.getMaxPerfQueryMetrics(context));
+    }
+
+    @Test
+    public void testGetMaxPerfQueryMetricsDefault() throws Exception {
+        ServiceContent serviceContent = mock(ServiceContent.class);
+        when(context.getServiceContent()).thenReturn(serviceContent);
+        when(serviceContent.getSetting()).thenReturn(mor);
+        when(vimService.queryOptions(mor, VmwareResource.MAX_PERF_QUERY_METRICS_SETTING)).thenThrow(new InvalidNameFaultMsg("not set", null));
+
+        assertEquals(VmwareResource.DEFAULT_MAX_PERF_QUERY_METRICS, _resource.getMaxPerfQueryMetrics(context));
+    }
+
+    @Test
+    public void testGetMaxPerfQueryMetricsIsReadAgainAfterDisconnect() throws Exception {
+        mockMaxQueryMetricsSetting("128");
+        assertEquals(128, _resource.getMaxPerfQueryMetrics(context));
+
+        _resource.disconnected();
+        mockMaxQueryMetricsSetting("96");
+
+        assertEquals(96, _resource.getMaxPerfQueryMetrics(context));
+    }
+
+    @Test
+    public void testQueryVmPerfRetriesFailedBatchOneVmAtATime() throws Exception {
+        List<PerfQuerySpec> qSpecs = createPerfQuerySpecs(3);
+        PerfEntityMetricBase perfValue = new PerfEntityMetricBase();
+        when(vimService.queryPerf(mor, qSpecs)).thenThrow(new RuntimeFaultFaultMsg("vm-1 was removed", null));
+        when(vimService.queryPerf(mor, Collections.singletonList(qSpecs.get(0)))).thenReturn(Collections.singletonList(perfValue));
+        when(vimService.queryPerf(mor, Collections.singletonList(qSpecs.get(1)))).thenThrow(new RuntimeFaultFaultMsg("vm-1 was removed", null));
+        when(vimService.queryPerf(mor, Collections.singletonList(qSpecs.get(2)))).thenReturn(Collections.singletonList(perfValue));
+
+        List<PerfEntityMetricBase> perfValues = _resource.queryVmPerf(vimService, mor, qSpecs, Collections.nCopies(3, 6), 64);
+
+        verify(vimService, times(4)).queryPerf(Matchers.eq(mor), Matchers.anyListOf(PerfQuerySpec.class));
+        assertEquals(2, perfValues.size());
+    }
+
 }
@@ -46,8 +46,7 @@ import java.util.UUID;
 import java.util.concurrent.TimeoutException;
 
 import javax.naming.ConfigurationException;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 
 import org.apache.cloudstack.diagnostics.CopyToSecondaryStorageAnswer;
 import org.apache.cloudstack.diagnostics.CopyToSecondaryStorageCommand;
@@ -62,11 +61,6 @@ import org.apache.commons.lang3.BooleanUtils;
 import org.apache.log4j.Logger;
 import org.apache.xmlrpc.XmlRpcException;
 import org.joda.time.Duration;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
 
 import com.cloud.agent.IAgentControl;
 import com.cloud.agent.api.Answer;
@@ -2088,37 +2082,6 @@ public abstract class CitrixResourceBase implements ServerResource, HypervisorRe
         }
     }
 
-    protected double getDataAverage(final Node dataNode, final int col, final int numRows) {
-        double value = 0;
-        final double dummy = 0;
-        int numRowsUsed = 0;
-        for (int row = 0; row < numRows; row++) {
-            final Node data = dataNode.getChildNodes().item(numRows - 1 - row).getChildNodes().item(col + 1);
-            final Double currentDataAsDouble = Double.valueOf(getXMLNodeValue(data));
-            if (!currentDataAsDouble.equals(Double.NaN)) {
-                numRowsUsed += 1;
-                value += currentDataAsDouble;
-            }
-        }
-
-        if (numRowsUsed == 0) {
-            if (!Double.isInfinite(value) && !Double.isNaN(value)) {
-                return value;
-            } else {
-                s_logger.warn("Found an invalid value (infinity/NaN) in getDataAverage(), numRows=0");
-                return dummy;
-            }
-        } else {
-            if (!Double.isInfinite(value / numRowsUsed) && !Double.isNaN(value / numRowsUsed)) {
-                return value / numRowsUsed;
-            } else {
-                s_logger.warn("Found an invalid value (infinity/NaN) in getDataAverage(), numRows>0");
-                return dummy;
-            }
-        }
-
-    }
-
     public HashMap<String, HashMap<String, VgpuTypesInfo>> getGPUGroupDetails(final Connection conn) throws XenAPIException, XmlRpcException {
         return null;
     }
@@ -2245,30 +2208,16 @@ public abstract class CitrixResourceBase implements ServerResource, HypervisorRe
     public HostStatsEntry getHostStats(final Connection conn, final GetHostStatsCommand cmd, final String hostGuid, final long hostId) {
 
         final HostStatsEntry hostStats = new HostStatsEntry(hostId, 0, 0, 0, "host", 0, 0, 0, 0);
-        final Object[] rrdData = getRRDData(conn, 1); // call rrd method with 1
+        final XenServerRrdUpdates rrdData = getRRDData(conn, 1); // call rrd method with 1
         // for host
 
         if (rrdData == null) {
             return null;
         }
 
-        final Integer numRows = (Integer)rrdData[0];
-        final Integer numColumns = (Integer)rrdData[1];
-        final Node legend = (Node)rrdData[2];
-        final Node dataNode = (Node)rrdData[3];
-
-        final NodeList legendChildren = legend.getChildNodes();
-        for (int col = 0; col < numColumns; col++) {
-
-            if (legendChildren == null || legendChildren.item(col) == null) {
-                continue;
-            }
-
-            final String columnMetadata = getXMLNodeValue(legendChildren.item(col));
+        for (int col = 0; col < rrdData.getNumColumns(); col++) {
 
-            if (columnMetadata == null) {
-                continue;
-            }
+            final String columnMetadata = rrdData.getLegend(col);
 
             final String[] columnMetadataList = columnMetadata.split(":");
 
@@ -2282,22 +2231,22 @@ public abstract class CitrixResourceBase implements ServerResource, HypervisorRe
             if (type.equalsIgnoreCase("host")) {
 
                 if (param.matches("pif_eth0_rx")) {
-                    hostStats.setNetworkReadKBs(getDataAverage(dataNode, col, numRows) / 1000);
+                    hostStats.setNetworkReadKBs(rrdData.getAverage(col) / 1000);
                 } else if (param.matches("pif_eth0_tx")) {
-                    hostStats.setNetworkWriteKBs(getDataAverage(dataNode, col, numRows) / 1000);
+                    hostStats.setNetworkWriteKBs(rrdData.getAverage(col) / 1000);
                 } else if (param.contains("memory_total_kib")) {
-                    hostStats.setTotalMemoryKBs(getDataAverage(dataNode, col, numRows));
+                    hostStats.setTotalMemoryKBs(rrdData.getAverage(col));
                 } else if (param.contains("memory_free_kib")) {
-                    hostStats.setFreeMemoryKBs(getDataAverage(dataNode, col, numRows));
+                    hostStats.setFreeMemoryKBs(rrdData.getAverage(col));
                 } else if (param.matches("cpu_avg")) {
                     // hostStats.setNumCpus(hostStats.getNumCpus() + 1);
-                    hostStats.setCpuUtilization(hostStats.getCpuUtilization() + getDataAverage(dataNode, col, numRows));
+                    hostStats.setCpuUtilization(hostStats.getCpuUtilization() + rrdData.getAverage(col));
                 }
 
                 /*
                  * if (param.contains("loadavg")) {
                  * hostStats.setAverageLoad((hostStats.getAverageLoad() +
-                 * getDataAverage(dataNode, col, numRows))); }
+                 * rrdData.getAverage(col))); }
                  */
             }
         }
@@ -3037,47 +2986,19 @@ public abstract class CitrixResourceBase implements ServerResource, HypervisorRe
         return null;
     }
 
-    protected Object[] getRRDData(final Connection conn, final int flag) {
+    protected XenServerRrdUpdates getRRDData(final Connection conn, final int flag) {
 
         /*
          * Note: 1 => called from host, hence host stats 2 => called from vm,
          * hence vm stats
          */
-        Document doc = null;
-
         try {
-            doc = getStatsRawXML(conn, flag == 1 ? true : false);
+            // stats are null when the host plugin call fails (host down state)
+            return getStatsRawXML(conn, flag == 1 ? true : false);
         } catch (final Exception e1) {
             s_logger.warn("Error whilst collecting raw stats from plugin: ", e1);
             return null;
         }
-
-        if (doc == null) { // stats are null when the host plugin call fails
-            // (host down state)
-            return null;
-        }
-
-        final NodeList firstLevelChildren = doc.getChildNodes();
-        final NodeList secondLevelChildren = firstLevelChildren.item(0).getChildNodes();
-        final Node metaNode = secondLevelChildren.item(0);
-        final Node dataNode = secondLevelChildren.item(1);
-
-        Integer numRows = 0;
-        Integer numColumns = 0;
-        Node legend = null;
-        final NodeList metaNodeChildren = metaNode.getChildNodes();
-        for (int i = 0; i < metaNodeChildren.getLength(); i++) {
-            final Node n = metaNodeChildren.item(i);
-            if (n.getNodeName().equals("rows")) {
-                numRows = Integer.valueOf(getXMLNodeValue(n));
-            } else if (n.getNodeName().equals("columns")) {
-                numColumns = Integer.valueOf(getXMLNodeValue(n));
-            } else if (n.getNodeName().equals("legend")) {
-                legend = n;
-            }
-        }
-
-        return new Object[] {numRows, numColumns, legend, dataNode};
     }
 
     @Override
@@ -3135,7 +3056,7 @@ public abstract class CitrixResourceBase implements ServerResource, HypervisorRe
         return dynamicMinRam;
     }
 
-    protected Document getStatsRawXML(final Connection conn, final boolean host) {
+    protected XenServerRrdUpdates getStatsRawXML(final Connection conn, final boolean host) {
         final Date currentDate = new Date();
         String urlStr = "http://" + _host.getIp() + "/rrd_updates?";
         urlStr += "session_id=" + conn.getSessionReference();
@@ -3148,21 +3069,16 @@ public abstract class CitrixResourceBase implements ServerResource, HypervisorRe
         BufferedReader in = null;
         try {
             url = new URL(urlStr);
-            url.openConnection();
             final URLConnection uc = url.openConnection();
             in = new BufferedReader(new InputStreamReader(uc.getInputStream()));
-            final InputSource statsSource = new InputSource(in);
-            return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(statsSource);
+            return XenServerRrdUpdates.parse(in);
         } catch (final MalformedURLException e) {
             s_logger.warn("Malformed URL?  come on...." + urlStr);
             return null;
         } catch (final IOException e) {
             s_logger.warn("Problems getting stats using " + urlStr, e);
             return null;
-        } catch (final SAXException e) {
-            s_logger.warn("Problems getting stats using " + urlStr, e);
-            return null;
-        } catch (final ParserConfigurationException e) {
+        } catch (final XMLStreamException e) {
             s_logger.warn("Problems getting stats using " + urlStr, e);
             return null;
         } finally {
@@ -3427,30 +3343,16 @@ public abstract class CitrixResourceBase implements ServerResource, HypervisorRe
             vmResponseMap.put(vmUUID, new VmStatsEntry(0, 0, 0, 0, 0, 0, 0, "vm"));
         }
 
-        final Object[] rrdData = getRRDData(conn, 2); // call rrddata with 2 for
+        final XenServerRrdUpdates rrdData = getRRDData(conn, 2); // call rrddata with 2 for
         // vm
 
         if (rrdData == null) {
             return null;
         }
 
-        final Integer numRows = (Integer)rrdData[0];
-        final Integer numColumns = (Integer)rrdData[1];
-        final Node legend = (Node)rrdData[2];
-        final Node dataNode = (Node)rrdData[3];
+        for (int col = 0; col < rrdData.getNumColumns(); col++) {
 
-        final NodeList legendChildren = legend.getChildNodes();
-        for (int col = 0; col < numColumns; col++) {
-
-            if (legendChildren == null || legendChildren.item(col) == null) {
-                continue;
-            }
-
-            final String columnMetadata = getXMLNodeValue(legendChildren.item(col));
-
-            if (columnMetadata == null) {
-                continue;
-            }
+            final String columnMetadata = rrdData.getLegend(col);
 
             final String[] columnMetadataList = columnMetadata.split(":");
 
@@ -3469,21 +3371,21 @@ public abstract class CitrixResourceBase implements ServerResource, HypervisorRe
 
                 if (param.contains("cpu")) {
                     vmStatsAnswer.setNumCPUs(vmStatsAnswer.getNumCPUs() + 1);
-                    vmStatsAnswer.setCPUUtilization(vmStatsAnswer.getCPUUtilization() + getDataAverage(dataNode, col, numRows));
+                    vmStatsAnswer.setCPUUtilization(vmStatsAnswer.getCPUUtilization() + rrdData.getAverage(col));
                 } else if (param.matches("vif_\\d*_rx")) {
-                    vmStatsAnswer.setNetworkReadKBs(vmStatsAnswer.getNetworkReadKBs() + getDataAverage(dataNode, col, numRows) / BASE_TO_CONVERT_BYTES_INTO_KILOBYTES);
+                    vmStatsAnswer.setNetworkReadKBs(vmStatsAnswer.getNetworkReadKBs() + rrdData.getAverage(col) / BASE_TO_CONVERT_BYTES_INTO_KILOBYTES);
                 } else if (param.matches("vif_\\d*_tx")) {
-                    vmStatsAnswer.setNetworkWriteKBs(vmStatsAnswer.getNetworkWriteKBs() + getDataAverage(dataNode, col, numRows) / BASE_TO_CONVERT_BYTES_INTO_KILOBYTES);
+                    vmStatsAnswer.setNetworkWriteKBs(vmStatsAnswer.getNetworkWriteKBs() + rrdData.getAverage(col) / BASE_TO_CONVERT_BYTES_INTO_KILOBYTES);
                 } else if (param.matches("vbd_.*_read")) {
-                    vmStatsAnswer.setDiskReadKBs(vmStatsAnswer.getDiskReadKBs() + getDataAverage(dataNode, col, numRows) / BASE_TO_CONVERT_BYTES_INTO_KILOBYTES);
+                    vmStatsAnswer.setDiskReadKBs(vmStatsAnswer.getDiskReadKBs() + rrdData.getAverage(col) / BASE_TO_CONVERT_BYTES_INTO_KILOBYTES);
                 } else if (param.matches("vbd_.*_write")) {
-                    vmStatsAnswer.setDiskWriteKBs(vmStatsAnswer.getDiskWriteKBs() + getDataAverage(dataNode, col, numRows) / BASE_TO_CONVERT_BYTES_INTO_KILOBYTES);
+                    vmStatsAnswer.setDiskWriteKBs(vmStatsAnswer.getDiskWriteKBs() + rrdData.getAverage(col) / BASE_TO_CONVERT_BYTES_INTO_KILOBYTES);
                 } else if (param.contains("memory_internal_free")) {
-                    vmStatsAnswer.setIntFreeMemoryKBs(vmStatsAnswer.getIntFreeMemoryKBs() + getDataAverage(dataNode, col, numRows) / BASE_TO_CONVERT_BYTES_INTO_KILOBYTES);
+                    vmStatsAnswer.setIntFreeMemoryKBs(vmStatsAnswer.getIntFreeMemoryKBs() + rrdData.getAverage(col) / BASE_TO_CONVERT_BYTES_INTO_KILOBYTES);
                 } else if (param.contains("memory_target")) {
-                    vmStatsAnswer.setTargetMemoryKBs(vmStatsAnswer.getTargetMemoryKBs() + getDataAverage(dataNode, col, numRows) / BASE_TO_CONVERT_BYTES_INTO_KILOBYTES);
+                    vmStatsAnswer.setTargetMemoryKBs(vmStatsAnswer.getTargetMemoryKBs() + rrdData.getAverage(col) / BASE_TO_CONVERT_BYTES_INTO_KILOBYTES);
                 } else if (param.contains("memory")) {
-                    vmStatsAnswer.setMemoryKBs(vmStatsAnswer.getMemoryKBs() + getDataAverage(dataNode, col, numRows) / BASE_TO_CONVERT_BYTES_INTO_KILOBYTES);
+                    vmStatsAnswer.setMemoryKBs(vmStatsAnswer.getMemoryKBs() + rrdData.getAverage(col) / BASE_TO_CONVERT_BYTES_INTO_KILOBYTES);
                 }
 
             }
@@ -3535,10 +3437,6 @@ public abstract class CitrixResourceBase implements ServerResource, HypervisorRe
         return null;
     }
 
-    protected String getXMLNodeValue(final Node n) {
-        return n.getChildNodes().item(0).getNodeValue();
-    }
-
     public void handleSrAndVdiDetach(final String iqn, final Connection conn) throws Exception {
         final SR sr = getStorageRepository(conn, iqn);
 
@@ -0,0 +1,135 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.hypervisor.xenserver.resource;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.log4j.Logger;
+
+/**
+ * The legend and the samples of an rrd_updates export of a XenServer host, read in a single streaming pass.
+ * Each column keeps its samples in a primitive array, so no document tree is built for the whole export.
+ */
+public class XenServerRrdUpdates {
+    private static final Logger s_logger = Logger.getLogger(XenServerRrdUpdates.class);
+
+    private final List<String> legend;
+    private final double[][] samples;
+    private final int numRows;
+
+    private XenServerRrdUpdates(final List<String> legend, final double[][] samples, final int numRows) {
+        this.legend = legend;
+        this.samples = samples;
+        this.numRows = numRows;
+    }
+
+    /**
+     * Parses an rrd_updates export of the form
+     * {@code <xport><meta><rows/><columns/><legend><entry/>...</legend></meta><data><row><t/><v/>...</row>...</data></xport>}.
+     */
+    public static XenServerRrdUpdates parse(final Reader reader) throws XMLStreamException {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        final XMLStreamReader xml = factory.createXMLStreamReader(reader);
+        try {
+            final List<String> legend = new ArrayList<String>();
+            int numRows = 0;
+            int numColumns = 0;
+            double[][] samples = null;
+            int row = -1;
+            int col = 0;
+            while (xml.hasNext()) {
+                if (xml.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                final String element = xml.getLocalName();
+                if (element.equals("rows")) {
+                    numRows = Integer.parseInt(xml.getElementText().trim());
+                } else if (element.equals("columns")) {
+                    numColumns = Integer.parseInt(xml.getElementText().trim());
+                } else if (element.equals("entry")) {
+                    legend.add(xml.getElementText().trim());
+                } else if (element.equals("row")) {
+                    if (samples == null) {
+                        samples = new double[numColumns][numRows];
+                    }
+                    row++;
+                    col = 0;
+                } else if (element.equals("v")) {
+                    final String value = xml.getElementText().trim();
+                    if (row >= 0 && row < numRows && col < numColumns) {
+                        samples[col][row] = Double.parseDouble(value);
+                    }
+                    col++;
+                }
+            }
+            if (samples == null) {
+                samples = new double[numColumns][0];
+                numRows = 0;
+            }
+            return new XenServerRrdUpdates(legend, samples, Math.min(numRows, row + 1));
+        } finally {
+            xml.close();
+        }
+    }
+
+    public int getNumColumns() {
+        return Math.min(legend.size(), samples.length);
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * @return the legend of the column, as {@code cf:type:uuid:param}
+     */
+    public String getLegend(final int col) {
+        return legend.get(col);
+    }
+
+    /**
+     * @return the average of the samples of the column that are not NaN, or 0 when that average is not a finite number
+     */
+    public double getAverage(final int col) {
+        double value = 0;
+        int numRowsUsed = 0;
+        for (int row = 0; row < numRows; row++) {
+            final double sample = samples[col][row];
+            if (!Double.isNaN(sample)) {
+                numRowsUsed += 1;
+                value += sample;
+            }
+        }
+
+        final double average = numRowsUsed == 0 ? value : value / numRowsUsed;
+        if (Double.isInfinite(average) || Double.isNaN(average)) {
+            s_logger.warn("Found an invalid value (infinity/NaN) in the average of column " + getLegend(col) + ", numRows=" + numRowsUsed);
+            return 0;
+        }
+        return average;
+    }
+}
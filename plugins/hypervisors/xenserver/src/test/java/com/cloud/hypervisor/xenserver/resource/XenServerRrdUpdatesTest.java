@@ -0,0 +1,60 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.hypervisor.xenserver.resource;
+
+import java.io.StringReader;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class XenServerRrdUpdatesTest {
+
+    private static final String RRD_UPDATES = "<xport><meta><start>1600000000</start><step>60</step><end>1600000120</end>"
+            + "<rows>3</rows><columns>3</columns><legend>"
+            + "<entry>AVERAGE:host:6f5a0e3a:cpu_avg</entry>"
+            + "<entry>AVERAGE:vm:1c7b3f2e:vif_0_rx</entry>"
+            + "<entry>AVERAGE:vm:1c7b3f2e:memory</entry>"
+            + "</legend></meta><data>"
+            + "<row><t>1600000120</t><v>0.5</v><v>NaN</v><v>NaN</v></row>"
+            + "<row><t>1600000060</t><v>0.25</v><v>2000.0</v><v>NaN</v></row>"
+            + "<row><t>1600000000</t><v>0.0</v><v>1000.0</v><v>NaN</v></row>"
+            + "</data></xport>";
+
+    @Test
+    public void parseReadsLegendAndAveragesColumns() throws Exception {
+        XenServerRrdUpdates rrdUpdates = XenServerRrdUpdates.parse(new StringReader(RRD_UPDATES));
+
+        Assert.assertEquals(3, rrdUpdates.getNumColumns());
+        Assert.assertEquals(3, rrdUpdates.getNumRows());
+        Assert.assertEquals("AVERAGE:host:6f5a0e3a:cpu_avg", rrdUpdates.getLegend(0));
+        Assert.assertEquals("AVERAGE:vm:1c7b3f2e:vif_0_rx", rrdUpdates.getLegend(1));
+        Assert.assertEquals(0.25, rrdUpdates.getAverage(0), 0.0001);
+        // NaN samples are left out of the average
+        Assert.assertEquals(1500.0, rrdUpdates.getAverage(1), 0.0001);
+        Assert.assertEquals(0.0, rrdUpdates.getAverage(2), 0.0001);
+    }
+
+    @Test
+    public void parseWithoutRows() throws Exception {
+        XenServerRrdUpdates rrdUpdates = XenServerRrdUpdates.parse(new StringReader(
+                "<xport><meta><rows>0</rows><columns>1</columns><legend><entry>AVERAGE:host:6f5a0e3a:cpu_avg</entry></legend></meta><data></data></xport>"));
+
+        Assert.assertEquals(1, rrdUpdates.getNumColumns());
+        Assert.assertEquals(0, rrdUpdates.getNumRows());
+        Assert.assertEquals(0.0, rrdUpdates.getAverage(0), 0.0001);
+    }
+}
@@ -19,7 +19,11 @@ package org.apache.cloudstack.metrics;
 
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.inject.Inject;
 
@@ -67,6 +71,7 @@ import com.cloud.dc.dao.HostPodDao;
 import com.cloud.deploy.DeploymentClusterPlanner;
 import com.cloud.host.Host;
 import com.cloud.host.HostStats;
+import com.cloud.host.HostVO;
 import com.cloud.host.Status;
 import com.cloud.host.dao.HostDao;
 import com.cloud.network.router.VirtualRouter;
@@ -77,7 +82,6 @@ import com.cloud.user.Account;
 import com.cloud.user.AccountManager;
 import com.cloud.utils.Pair;
 import com.cloud.utils.component.ComponentLifecycleBase;
-import com.cloud.vm.VMInstanceVO;
 import com.cloud.vm.VirtualMachine;
 import com.cloud.vm.dao.DomainRouterDao;
 import com.cloud.vm.dao.VMInstanceDao;
@@ -135,6 +139,20 @@ public class MetricsServiceImpl extends ComponentLifecycleBase implements Metric
         }
     }
 
+    /**
+     * Lists the routing hosts of a cluster from host_view in one query. The view has a row per host tag,
+     * so the rows are reduced to one per host.
+     */
+    protected Collection<HostJoinVO> listRoutingHosts(final Long clusterId) {
+        final Map<Long, HostJoinVO> hosts = new LinkedHashMap<>();
+        for (final HostJoinVO host : hostJoinDao.findByClusterId(clusterId, Host.Type.Routing)) {
+            if (!hosts.containsKey(host.getId())) {
+                hosts.put(host.getId(), host);
+            }
+        }
+        return hosts.values();
+    }
+
     @Override
     public InfrastructureResponse listInfrastructure() {
         final InfrastructureResponse response = new InfrastructureResponse();
@@ -243,6 +261,19 @@ public class MetricsServiceImpl extends ComponentLifecycleBase implements Metric
     @Override
     public List<HostMetricsResponse> listHostMetrics(List<HostResponse> hostResponses) {
         final List<HostMetricsResponse> metricsResponses = new ArrayList<>();
+        final Map<String, HostVO> hosts = new HashMap<>();
+        for (final HostResponse hostResponse: hostResponses) {
+            final HostVO host = hostDao.findByUuid(hostResponse.getId());
+            if (host != null) {
+                hosts.put(hostResponse.getId(), host);
+            }
+        }
+        final List<Long> hostIds = new ArrayList<>();
+        for (final HostVO host : hosts.values()) {
+            hostIds.add(host.getId());
+        }
+        final Map<Long, Pair<Long, Long>> userVmCounts = vmInstanceDao.countUserVmsByHostIds(hostIds);
+
         for (final HostResponse hostResponse: hostResponses) {
             HostMetricsResponse metricsResponse = new HostMetricsResponse();
 
@@ -252,7 +283,7 @@ public class MetricsServiceImpl extends ComponentLifecycleBase implements Metric
                 throw new ServerApiException(ApiErrorCode.INTERNAL_ERROR, "Failed to generate host metrics response");
             }
 
-            final Host host = hostDao.findByUuid(hostResponse.getId());
+            final Host host = hosts.get(hostResponse.getId());
             if (host == null) {
                 continue;
             }
@@ -265,19 +296,9 @@ public class MetricsServiceImpl extends ComponentLifecycleBase implements Metric
             final Float cpuDisableThreshold = DeploymentClusterPlanner.ClusterCPUCapacityDisableThreshold.valueIn(clusterId);
             final Float memoryDisableThreshold = DeploymentClusterPlanner.ClusterMemoryCapacityDisableThreshold.valueIn(clusterId);
 
-            Long upInstances = 0L;
-            Long totalInstances = 0L;
-            for (final VMInstanceVO instance: vmInstanceDao.listByHostId(hostId)) {
-                if (instance == null) {
-                    continue;
-                }
-                if (instance.getType() == VirtualMachine.Type.User) {
-                    totalInstances++;
-                    if (instance.getState() == VirtualMachine.State.Running) {
-                        upInstances++;
-                    }
-                }
-            }
+            final Pair<Long, Long> userVmCount = userVmCounts.get(hostId);
+            final Long upInstances = userVmCount != null ? userVmCount.first() : 0L;
+            final Long totalInstances = userVmCount != null ? userVmCount.second() : 0L;
             metricsResponse.setPowerState(hostResponse.getOutOfBandManagementResponse().getPowerState());
             metricsResponse.setInstances(upInstances, totalInstances);
             metricsResponse.setCpuTotal(hostResponse.getCpuNumber(), hostResponse.getCpuSpeed());
@@ -341,15 +362,12 @@ public class MetricsServiceImpl extends ComponentLifecycleBase implements Metric
             final CapacityDaoImpl.SummedCapacity memoryCapacity = getCapacity((int) Capacity.CAPACITY_TYPE_MEMORY, null, clusterId);
             final Metrics metrics = new Metrics(cpuCapacity, memoryCapacity);
 
-            for (final Host host: hostDao.findByClusterId(clusterId)) {
-                if (host == null || host.getType() != Host.Type.Routing) {
-                    continue;
-                }
+            for (final HostJoinVO host: listRoutingHosts(clusterId)) {
                 if (host.getStatus() == Status.Up) {
                     metrics.incrUpResources();
                 }
                 metrics.incrTotalResources();
-                updateHostMetrics(metrics, hostJoinDao.findById(host.getId()));
+                updateHostMetrics(metrics, host);
             }
 
             metricsResponse.setState(clusterResponse.getAllocationState(), clusterResponse.getManagedState());
@@ -423,11 +441,8 @@ public class MetricsServiceImpl extends ComponentLifecycleBase implements Metric
                     metrics.incrUpResources();
                 }
 
-                for (final Host host: hostDao.findByClusterId(cluster.getId())) {
-                    if (host == null || host.getType() != Host.Type.Routing) {
-                        continue;
-                    }
-                    updateHostMetrics(metrics, hostJoinDao.findById(host.getId()));
+                for (final HostJoinVO host: listRoutingHosts(cluster.getId())) {
+                    updateHostMetrics(metrics, host);
                 }
             }
 
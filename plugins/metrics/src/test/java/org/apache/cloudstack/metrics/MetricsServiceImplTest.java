@@ -0,0 +1,103 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.metrics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.cloudstack.api.response.HostResponse;
+import org.apache.cloudstack.response.HostMetricsResponse;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.powermock.reflect.Whitebox;
+
+import com.cloud.api.query.dao.HostJoinDao;
+import com.cloud.api.query.vo.HostJoinVO;
+import com.cloud.host.Host;
+import com.cloud.host.HostVO;
+import com.cloud.host.dao.HostDao;
+import com.cloud.utils.Pair;
+import com.cloud.vm.dao.VMInstanceDao;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MetricsServiceImplTest {
+
+    @Mock
+    HostDao hostDao;
+    @Mock
+    HostJoinDao hostJoinDao;
+    @Mock
+    VMInstanceDao vmInstanceDao;
+
+    @InjectMocks
+    MetricsServiceImpl metricsService = new MetricsServiceImpl();
+
+    private HostResponse hostResponse(String uuid, long id) {
+        HostVO host = Mockito.mock(HostVO.class);
+        Mockito.when(host.getId()).thenReturn(id);
+        Mockito.when(hostDao.findByUuid(uuid)).thenReturn(host);
+        HostResponse response = new HostResponse();
+        response.setId(uuid);
+        response.setOutOfBandManagementResponse(null);
+        return response;
+    }
+
+    @Test
+    public void listHostMetricsCountsTheVmsOfAllHostsInOneQuery() {
+        List<HostResponse> hostResponses = Arrays.asList(hostResponse("host-1", 1L), hostResponse("host-2", 2L));
+        Map<Long, Pair<Long, Long>> userVmCounts = new HashMap<>();
+        userVmCounts.put(1L, new Pair<>(2L, 3L));
+        Mockito.when(vmInstanceDao.countUserVmsByHostIds(Mockito.anyList())).thenReturn(userVmCounts);
+
+        List<HostMetricsResponse> metrics = metricsService.listHostMetrics(hostResponses);
+
+        Mockito.verify(vmInstanceDao, Mockito.times(1)).countUserVmsByHostIds(Mockito.anyList());
+        assertEquals(2, metrics.size());
+        assertEquals("2 / 3", Whitebox.getInternalState(metrics.get(0), "instances"));
+        // a host without user VMs has no row in the counts
+        assertEquals("0 / 0", Whitebox.getInternalState(metrics.get(1), "instances"));
+    }
+
+    @Test
+    public void listHostMetricsWithoutHosts() {
+        Mockito.when(vmInstanceDao.countUserVmsByHostIds(new ArrayList<Long>())).thenReturn(new HashMap<Long, Pair<Long, Long>>());
+
+        assertEquals(0, metricsService.listHostMetrics(new ArrayList<HostResponse>()).size());
+    }
+
+    @Test
+    public void listRoutingHostsReturnsOneRowPerHost() {
+        HostJoinVO firstTag = Mockito.mock(HostJoinVO.class);
+        Mockito.when(firstTag.getId()).thenReturn(1L);
+        HostJoinVO secondTag = Mockito.mock(HostJoinVO.class);
+        Mockito.when(secondTag.getId()).thenReturn(1L);
+        HostJoinVO otherHost = Mockito.mock(HostJoinVO.class);
+        Mockito.when(otherHost.getId()).thenReturn(2L);
+        Mockito.when(hostJoinDao.findByClusterId(10L, Host.Type.Routing)).thenReturn(Arrays.asList(firstTag, secondTag, otherHost));
+
+        assertEquals(Arrays.asList(firstTag, otherHost), new ArrayList<>(metricsService.listRoutingHosts(10L)));
+    }
+}
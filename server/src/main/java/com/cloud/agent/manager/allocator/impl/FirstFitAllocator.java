@@ -39,7 +39,6 @@ import com.cloud.dc.dao.ClusterDao;
 import com.cloud.deploy.DeploymentPlan;
 import com.cloud.deploy.DeploymentPlanner.ExcludeList;
 import com.cloud.gpu.GPU;
-import com.cloud.host.DetailVO;
 import com.cloud.host.Host;
 import com.cloud.host.Host.Type;
 import com.cloud.host.HostVO;
@@ -182,7 +181,6 @@ public class FirstFitAllocator extends AdapterBase implements HostAllocator {
 
                 if (hasSvcOfferingTag && hasTemplateTag) {
                     hostsMatchingOfferingTag.retainAll(hostsMatchingTemplateTag);
-                    clusterHosts = _hostDao.listByHostTag(type, clusterId, podId, dcId, hostTagOnTemplate);
                     if (s_logger.isDebugEnabled()) {
                         s_logger.debug("Found " + hostsMatchingOfferingTag.size() + " Hosts satisfying both tags, host ids are:" + hostsMatchingOfferingTag);
                     }
@@ -303,7 +301,11 @@ public class FirstFitAllocator extends AdapterBase implements HostAllocator {
 
         long serviceOfferingId = offering.getId();
         List<Host> suitableHosts = new ArrayList<Host>();
-        ServiceOfferingDetailsVO offeringDetails = null;
+        ServiceOfferingDetailsVO offeringDetails = _serviceOfferingDetailsDao.findDetail(serviceOfferingId, GPU.Keys.vgpuType.toString());
+        ServiceOfferingDetailsVO groupName = null;
+        if (offeringDetails != null) {
+            groupName = _serviceOfferingDetailsDao.findDetail(serviceOfferingId, GPU.Keys.pciDevice.toString());
+        }
 
         for (Host host : hosts) {
             if (suitableHosts.size() == returnUpTo) {
@@ -327,8 +329,7 @@ public class FirstFitAllocator extends AdapterBase implements HostAllocator {
             }
 
             // Check if GPU device is required by offering and host has the availability
-            if ((offeringDetails   = _serviceOfferingDetailsDao.findDetail(serviceOfferingId, GPU.Keys.vgpuType.toString())) != null) {
-                ServiceOfferingDetailsVO groupName = _serviceOfferingDetailsDao.findDetail(serviceOfferingId, GPU.Keys.pciDevice.toString());
+            if (offeringDetails != null) {
                 if(!_resourceMgr.isGPUDeviceAvailable(host.getId(), groupName.getValue(), offeringDetails.getValue())){
                     s_logger.info("Host name: " + host.getName() + ", hostId: "+ host.getId() +" does not have required GPU devices available");
                     avoid.addHost(host.getId());
@@ -459,8 +460,9 @@ public class FirstFitAllocator extends AdapterBase implements HostAllocator {
         // If a host is tagged with a different guest OS category than the template, move it to a low priority list
         List<Host> highPriorityHosts = new ArrayList<Host>();
         List<Host> lowPriorityHosts = new ArrayList<Host>();
+        Map<Long, String> hostGuestOSCategories = getHostGuestOSCategories(hostsToCheck);
         for (Host host : hostsToCheck) {
-            String hostGuestOSCategory = getHostGuestOSCategory(host);
+            String hostGuestOSCategory = hostGuestOSCategories.get(host.getId());
             if (hostGuestOSCategory == null) {
                 continue;
             } else if (templateGuestOSCategory != null && templateGuestOSCategory.equals(hostGuestOSCategory)) {
@@ -526,28 +528,45 @@ public class FirstFitAllocator extends AdapterBase implements HostAllocator {
         return false;
     }
 
-    protected String getHostGuestOSCategory(Host host) {
-        DetailVO hostDetail = _hostDetailsDao.findDetail(host.getId(), "guest.os.category.id");
-        if (hostDetail != null) {
-            String guestOSCategoryIdString = hostDetail.getValue();
-            long guestOSCategoryId;
+    /**
+     * Loads the guest OS category detail of all the hosts with one query and resolves the category names
+     * from a single listing of the categories.
+     * @return map of host id to guest OS category name; hosts without a valid category are not in the map
+     */
+    protected Map<Long, String> getHostGuestOSCategories(List<? extends Host> hosts) {
+        Map<Long, String> hostGuestOSCategories = new HashMap<Long, String>();
+        if (hosts.isEmpty()) {
+            return hostGuestOSCategories;
+        }
+
+        List<Long> hostIds = new ArrayList<Long>(hosts.size());
+        for (Host host : hosts) {
+            hostIds.add(host.getId());
+        }
+        Map<Long, String> hostDetails = _hostDetailsDao.findDetailByHostIds("guest.os.category.id", hostIds);
+        if (hostDetails.isEmpty()) {
+            return hostGuestOSCategories;
+        }
 
+        Map<Long, String> guestOSCategoryNames = new HashMap<Long, String>();
+        for (GuestOSCategoryVO guestOSCategory : _guestOSCategoryDao.listAll()) {
+            guestOSCategoryNames.put(guestOSCategory.getId(), guestOSCategory.getName());
+        }
+
+        for (Map.Entry<Long, String> hostDetail : hostDetails.entrySet()) {
+            long guestOSCategoryId;
             try {
-                guestOSCategoryId = Long.parseLong(guestOSCategoryIdString);
+                guestOSCategoryId = Long.parseLong(hostDetail.getValue());
             } catch (Exception e) {
-                return null;
+                continue;
             }
 
-            GuestOSCategoryVO guestOSCategory = _guestOSCategoryDao.findById(guestOSCategoryId);
-
-            if (guestOSCategory != null) {
-                return guestOSCategory.getName();
-            } else {
-                return null;
+            String guestOSCategoryName = guestOSCategoryNames.get(guestOSCategoryId);
+            if (guestOSCategoryName != null) {
+                hostGuestOSCategories.put(hostDetail.getKey(), guestOSCategoryName);
             }
-        } else {
-            return null;
         }
+        return hostGuestOSCategories;
     }
 
     protected String getTemplateGuestOSCategory(VMTemplateVO template) {
@@ -291,6 +291,7 @@ import com.cloud.storage.dao.VMTemplateDao;
 import com.cloud.storage.dao.VMTemplateDetailsDao;
 import com.cloud.storage.dao.VolumeDao;
 import com.cloud.storage.snapshot.SnapshotPolicy;
+import com.cloud.tags.dao.ResourceTagDao;
 import com.cloud.template.TemplateManager;
 import com.cloud.template.VirtualMachineTemplate;
 import com.cloud.user.Account;
@@ -407,6 +408,7 @@ public class ApiDBUtils {
     static HighAvailabilityManager s_haMgr;
     static VpcManager s_vpcMgr;
     static TaggedResourceService s_taggedResourceService;
+    static ResourceTagDao s_resourceTagDao;
     static UserVmDetailsDao s_userVmDetailsDao;
     static SSHKeyPairDao s_sshKeyPairDao;
 
@@ -599,6 +601,8 @@ public class ApiDBUtils {
     @Inject
     private TaggedResourceService taggedResourceService;
     @Inject
+    private ResourceTagDao resourceTagDao;
+    @Inject
     private UserVmDetailsDao userVmDetailsDao;
     @Inject
     private SSHKeyPairDao sshKeyPairDao;
@@ -778,6 +782,7 @@ public class ApiDBUtils {
         s_haMgr = haMgr;
         s_vpcMgr = vpcMgr;
         s_taggedResourceService = taggedResourceService;
+        s_resourceTagDao = resourceTagDao;
         s_sshKeyPairDao = sshKeyPairDao;
         s_userVmDetailsDao = userVmDetailsDao;
         s_asConditionDao = asConditionDao;
@@ -1491,6 +1496,10 @@ public class ApiDBUtils {
         return s_taggedResourceService.listByResourceTypeAndId(type, resourceId);
     }
 
+    public static List<? extends ResourceTag> listByResourceTypeAndIds(ResourceObjectType type, List<Long> resourceIds) {
+        return s_resourceTagDao.listBy(resourceIds, type);
+    }
+
     public static List<ConditionVO> getAutoScalePolicyConditions(long policyId) {
         List<AutoScalePolicyConditionMapVO> vos = s_asPolicyConditionMapDao.listByAll(policyId, null);
         ArrayList<ConditionVO> conditions = new ArrayList<ConditionVO>(vos.size());
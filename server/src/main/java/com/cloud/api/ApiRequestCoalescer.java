@@ -0,0 +1,116 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.api;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Lets concurrent identical read-only API requests share one execution. The first request for a key runs it,
+ * requests arriving while it runs, or within the reuse window after it completed successfully, get its result.
+ * Failures are never shared with later requests.
+ */
+public class ApiRequestCoalescer<V> {
+
+    private final ConcurrentHashMap<String, Execution<V>> _executions = new ConcurrentHashMap<String, Execution<V>>();
+
+    private static class Execution<V> {
+        final FutureTask<V> task;
+        volatile long completedAt = -1;
+
+        Execution(final Callable<V> callable) {
+            task = new FutureTask<V>(callable);
+        }
+
+        boolean isReusable(final long now, final long reuseWindowMs) {
+            return completedAt < 0 || now - completedAt <= reuseWindowMs;
+        }
+    }
+
+    public V execute(final String key, final long reuseWindowMs, final Callable<V> callable) throws Exception {
+        final long now = System.currentTimeMillis();
+        Execution<V> execution = _executions.get(key);
+        if (execution == null || !execution.isReusable(now, reuseWindowMs)) {
+            final Execution<V> created = new Execution<V>(callable);
+            final boolean won = execution == null ? _executions.putIfAbsent(key, created) == null : _executions.replace(key, execution, created);
+            if (won) {
+                purgeExpired(now, reuseWindowMs);
+                return run(key, created, reuseWindowMs);
+            }
+            execution = _executions.get(key);
+            if (execution == null) {
+                // the execution we lost to already failed, or completed and was dropped
+                return callable.call();
+            }
+        }
+        return await(execution);
+    }
+
+    public int getInFlightCount() {
+        int count = 0;
+        for (final Execution<V> execution : _executions.values()) {
+            if (execution.completedAt < 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private V run(final String key, final Execution<V> execution, final long reuseWindowMs) throws Exception {
+        execution.task.run();
+        boolean succeeded = false;
+        try {
+            final V result = await(execution);
+            succeeded = true;
+            return result;
+        } finally {
+            execution.completedAt = System.currentTimeMillis();
+            if (!succeeded || reuseWindowMs <= 0) {
+                _executions.remove(key, execution);
+            }
+        }
+    }
+
+    private V await(final Execution<V> execution) throws Exception {
+        try {
+            return execution.task.get();
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw e;
+        }
+    }
+
+    private void purgeExpired(final long now, final long reuseWindowMs) {
+        final Iterator<Map.Entry<String, Execution<V>>> it = _executions.entrySet().iterator();
+        while (it.hasNext()) {
+            final Execution<V> execution = it.next().getValue();
+            if (execution.completedAt >= 0 && now - execution.completedAt > reuseWindowMs) {
+                it.remove();
+            }
+        }
+    }
+}
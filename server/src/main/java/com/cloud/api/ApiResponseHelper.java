@@ -29,6 +29,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import javax.inject.Inject;
@@ -835,7 +836,37 @@ public class ApiResponseHelper implements ResponseGenerator {
 
     @Override
     public IPAddressResponse createIPAddressResponse(ResponseView view, IpAddress ipAddr) {
-        VlanVO vlan = ApiDBUtils.findVlanById(ipAddr.getVlanId());
+        List<? extends ResourceTag> tags = ApiDBUtils.listByResourceTypeAndId(ResourceObjectType.PublicIpAddress, ipAddr.getId());
+        return createIPAddressResponse(view, ipAddr, new ResponseLookupCache(), tags);
+    }
+
+    @Override
+    public List<IPAddressResponse> createIPAddressResponses(ResponseView view, List<? extends IpAddress> ipAddrs) {
+        List<Long> ipIds = new ArrayList<Long>();
+        for (IpAddress ipAddr : ipAddrs) {
+            ipIds.add(ipAddr.getId());
+        }
+        Map<Long, List<ResourceTag>> tagsByIp = new HashMap<Long, List<ResourceTag>>();
+        for (ResourceTag tag : ApiDBUtils.listByResourceTypeAndIds(ResourceObjectType.PublicIpAddress, ipIds)) {
+            List<ResourceTag> tags = tagsByIp.get(tag.getResourceId());
+            if (tags == null) {
+                tags = new ArrayList<ResourceTag>();
+                tagsByIp.put(tag.getResourceId(), tags);
+            }
+            tags.add(tag);
+        }
+
+        ResponseLookupCache lookups = new ResponseLookupCache();
+        List<IPAddressResponse> responses = new ArrayList<IPAddressResponse>();
+        for (IpAddress ipAddr : ipAddrs) {
+            List<ResourceTag> tags = tagsByIp.get(ipAddr.getId());
+            responses.add(createIPAddressResponse(view, ipAddr, lookups, tags != null ? tags : new ArrayList<ResourceTag>()));
+        }
+        return responses;
+    }
+
+    private IPAddressResponse createIPAddressResponse(ResponseView view, IpAddress ipAddr, ResponseLookupCache lookups, List<? extends ResourceTag> tags) {
+        VlanVO vlan = lookups.find("vlan", ipAddr.getVlanId(), ApiDBUtils::findVlanById);
         boolean forVirtualNetworks = vlan.getVlanType().equals(VlanType.VirtualNetwork);
         long zoneId = ipAddr.getDataCenterId();
 
@@ -845,7 +876,7 @@ public class ApiResponseHelper implements ResponseGenerator {
         if (ipAddr.getAllocatedTime() != null) {
             ipResponse.setAllocated(ipAddr.getAllocatedTime());
         }
-        DataCenter zone = ApiDBUtils.findZoneById(ipAddr.getDataCenterId());
+        DataCenter zone = lookups.find("zone", ipAddr.getDataCenterId(), ApiDBUtils::findZoneById);
         if (zone != null) {
             ipResponse.setZoneId(zone.getUuid());
             ipResponse.setZoneName(zone.getName());
@@ -855,7 +886,7 @@ public class ApiResponseHelper implements ResponseGenerator {
 
         // get account information
         if (ipAddr.getAllocatedToAccountId() != null) {
-            populateOwner(ipResponse, ipAddr);
+            populateOwner(ipResponse, ipAddr, lookups);
         }
 
         ipResponse.setForVirtualNetwork(forVirtualNetworks);
@@ -878,7 +909,7 @@ public class ApiResponseHelper implements ResponseGenerator {
         }
 
         if (ipAddr.getAssociatedWithNetworkId() != null) {
-            Network ntwk = ApiDBUtils.findNetworkById(ipAddr.getAssociatedWithNetworkId());
+            Network ntwk = lookups.find("network", ipAddr.getAssociatedWithNetworkId(), ApiDBUtils::findNetworkById);
             if (ntwk != null) {
                 ipResponse.setAssociatedNetworkId(ntwk.getUuid());
                 ipResponse.setAssociatedNetworkName(ntwk.getName());
@@ -886,7 +917,7 @@ public class ApiResponseHelper implements ResponseGenerator {
         }
 
         if (ipAddr.getVpcId() != null) {
-            Vpc vpc = ApiDBUtils.findVpcById(ipAddr.getVpcId());
+            Vpc vpc = lookups.find("vpc", ipAddr.getVpcId(), ApiDBUtils::findVpcById);
             if (vpc != null) {
                 ipResponse.setVpcId(vpc.getUuid());
                 ipResponse.setVpcName(vpc.getName());
@@ -895,18 +926,18 @@ public class ApiResponseHelper implements ResponseGenerator {
 
         // Network id the ip is associated with (if associated networkId is
         // null, try to get this information from vlan)
-        Long vlanNetworkId = ApiDBUtils.getVlanNetworkId(ipAddr.getVlanId());
+        Long vlanNetworkId = vlan.getNetworkId();
 
         // Network id the ip belongs to
         Long networkId;
         if (vlanNetworkId != null) {
             networkId = vlanNetworkId;
         } else {
-            networkId = ApiDBUtils.getPublicNetworkIdByZone(zoneId);
+            networkId = lookups.find("publicNetwork", zoneId, ApiDBUtils::getPublicNetworkIdByZone);
         }
 
         if (networkId != null) {
-            NetworkVO nw = ApiDBUtils.findNetworkById(networkId);
+            Network nw = lookups.find("network", networkId, ApiDBUtils::findNetworkById);
             if (nw != null) {
                 ipResponse.setNetworkId(nw.getUuid());
                 ipResponse.setNetworkName(nw.getName());
@@ -915,7 +946,7 @@ public class ApiResponseHelper implements ResponseGenerator {
         ipResponse.setState(ipAddr.getState().toString());
 
         if (ipAddr.getPhysicalNetworkId() != null) {
-            PhysicalNetworkVO pnw = ApiDBUtils.findPhysicalNetworkById(ipAddr.getPhysicalNetworkId());
+            PhysicalNetworkVO pnw = lookups.find("physicalNetwork", ipAddr.getPhysicalNetworkId(), ApiDBUtils::findPhysicalNetworkById);
             if (pnw != null) {
                 ipResponse.setPhysicalNetworkId(pnw.getUuid());
             }
@@ -926,11 +957,8 @@ public class ApiResponseHelper implements ResponseGenerator {
 
         // show this info to full view only
         if (view == ResponseView.Full) {
-            VlanVO vl = ApiDBUtils.findVlanById(ipAddr.getVlanId());
-            if (vl != null) {
-                ipResponse.setVlanId(vl.getUuid());
-                ipResponse.setVlanName(vl.getVlanTag());
-            }
+            ipResponse.setVlanId(vlan.getUuid());
+            ipResponse.setVlanName(vlan.getVlanTag());
         }
 
         if (ipAddr.getSystem()) {
@@ -946,7 +974,6 @@ public class ApiResponseHelper implements ResponseGenerator {
         ipResponse.setPortable(ipAddr.isPortable());
 
         //set tag information
-        List<? extends ResourceTag> tags = ApiDBUtils.listByResourceTypeAndId(ResourceObjectType.PublicIpAddress, ipAddr.getId());
         List<ResourceTagResponse> tagResponses = new ArrayList<ResourceTagResponse>();
         for (ResourceTag tag : tags) {
             ResourceTagResponse tagResponse = createResourceTagResponse(tag, true);
@@ -2499,18 +2526,22 @@ public class ApiResponseHelper implements ResponseGenerator {
     // ControlledEntity id to uuid conversion are all done.
     // currently code is scattered in
     private void populateOwner(ControlledEntityResponse response, ControlledEntity object) {
-        Account account = ApiDBUtils.findAccountById(object.getAccountId());
+        populateOwner(response, object, new ResponseLookupCache());
+    }
+
+    private void populateOwner(ControlledEntityResponse response, ControlledEntity object, ResponseLookupCache lookups) {
+        Account account = lookups.find("account", object.getAccountId(), ApiDBUtils::findAccountById);
 
         if (account.getType() == Account.ACCOUNT_TYPE_PROJECT) {
             // find the project
-            Project project = ApiDBUtils.findProjectByProjectAccountId(account.getId());
+            Project project = lookups.find("projectAccount", account.getId(), ApiDBUtils::findProjectByProjectAccountId);
             response.setProjectId(project.getUuid());
             response.setProjectName(project.getName());
         } else {
             response.setAccountName(account.getAccountName());
         }
 
-        Domain domain = ApiDBUtils.findDomainById(object.getDomainId());
+        Domain domain = lookups.find("domain", object.getDomainId(), ApiDBUtils::findDomainById);
         response.setDomainId(domain.getUuid());
         response.setDomainName(domain.getName());
     }
@@ -4408,4 +4439,23 @@ public class ApiResponseHelper implements ResponseGenerator {
         response.setObjectName("rollingmaintenance");
         return response;
     }
+
+    /**
+     * Memoizes the lookups made while building the responses of one list call, so that objects referenced by many
+     * rows of a page, such as the zone, VLAN, network or owner, are loaded once per page rather than once per row.
+     */
+    private static class ResponseLookupCache {
+        private final Map<Pair<String, Long>, Object> _objects = new HashMap<Pair<String, Long>, Object>();
+
+        @SuppressWarnings("unchecked")
+        <T> T find(String type, Long id, Function<Long, T> loader) {
+            Pair<String, Long> key = new Pair<String, Long>(type, id);
+            if (_objects.containsKey(key)) {
+                return (T)_objects.get(key);
+            }
+            T object = loader.apply(id);
+            _objects.put(key, object);
+            return object;
+        }
+    }
 }
@@ -31,6 +31,7 @@ import java.security.SecureRandom;
 import java.security.Security;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
@@ -41,16 +42,20 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 import javax.inject.Inject;
+import javax.management.StandardMBean;
 import javax.naming.ConfigurationException;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
@@ -111,6 +116,7 @@ import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpServerConnection;
 import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.utils.URLEncodedUtils;
 import org.apache.http.entity.BasicHttpEntity;
@@ -118,6 +124,7 @@ import org.apache.http.impl.DefaultHttpResponseFactory;
 import org.apache.http.impl.DefaultHttpServerConnection;
 import org.apache.http.impl.NoConnectionReuseStrategy;
 import org.apache.http.impl.SocketHttpServerConnection;
+import org.apache.http.message.BasicHttpResponse;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.CoreConnectionPNames;
 import org.apache.http.params.CoreProtocolPNames;
@@ -179,6 +186,7 @@ import com.cloud.utils.db.TransactionLegacy;
 import com.cloud.utils.db.UUIDManager;
 import com.cloud.utils.exception.CloudRuntimeException;
 import com.cloud.utils.exception.ExceptionProxyObject;
+import com.cloud.utils.mgmt.JmxUtil;
 import com.cloud.utils.net.NetUtils;
 import com.google.gson.reflect.TypeToken;
 
@@ -224,9 +232,11 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
 
     private static int s_workerCount = 0;
     private static Map<String, List<Class<?>>> s_apiNameCmdClassMap = new HashMap<String, List<Class<?>>>();
+    // request parameters that differ between otherwise identical requests and do not change their result
+    private static final Set<String> s_coalescingIgnoredParams = new HashSet<String>(Arrays.asList(ApiConstants.SIGNATURE, ApiConstants.API_KEY,
+            ApiConstants.SESSIONKEY, ApiConstants.EXPIRES, ApiConstants.SIGNATURE_VERSION, "_"));
 
-    private static ExecutorService s_executor = new ThreadPoolExecutor(10, 150, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory(
-            "ApiServer"));
+    private final ApiRequestCoalescer<Pair<String, String>> listRequestCoalescer = new ApiRequestCoalescer<Pair<String, String>>();
 
     @Inject
     private MessageBus messageBus;
@@ -238,6 +248,34 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
             , "Integration (unauthenticated) API port. To disable set it to 0 or negative."
             , false
             , ConfigKey.Scope.Global);
+    private static final ConfigKey<Integer> IntegrationAPIWorkers = new ConfigKey<Integer>("Advanced"
+            , Integer.class
+            , "integration.api.workers"
+            , "10"
+            , "Number of threads serving requests received on the integration API port."
+            , false
+            , ConfigKey.Scope.Global);
+    private static final ConfigKey<Integer> IntegrationAPIQueueSize = new ConfigKey<Integer>("Advanced"
+            , Integer.class
+            , "integration.api.queue.size"
+            , "500"
+            , "Maximum number of connections on the integration API port waiting for a worker thread. Connections beyond it are answered with 503."
+            , false
+            , ConfigKey.Scope.Global);
+    private static final ConfigKey<Boolean> ListApiCoalescingEnabled = new ConfigKey<Boolean>("Advanced"
+            , Boolean.class
+            , "list.api.coalescing.enabled"
+            , "false"
+            , "If true, identical list API requests of the same user that run concurrently share a single execution and response."
+            , true
+            , ConfigKey.Scope.Global);
+    private static final ConfigKey<Integer> ListApiCoalescingReuseWindow = new ConfigKey<Integer>("Advanced"
+            , Integer.class
+            , "list.api.coalescing.reuse.window"
+            , "0"
+            , "Milliseconds during which the response of a coalesced list API request is reused for identical requests of the same user. 0 only shares in-flight requests."
+            , true
+            , ConfigKey.Scope.Global);
     private static final ConfigKey<Long> ConcurrentSnapshotsThresholdPerHost = new ConfigKey<Long>("Advanced"
             , Long.class
             , "concurrent.snapshots.threshold.perhost"
@@ -413,13 +451,27 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
         setEncodeApiResponse(EncodeApiResponse.value());
 
         if (apiPort != null) {
-            final ListenerThread listenerThread = new ListenerThread(this, apiPort);
+            final ListenerThread listenerThread = new ListenerThread(this, apiPort, getPositiveValue(IntegrationAPIWorkers), getPositiveValue(IntegrationAPIQueueSize));
             listenerThread.start();
         }
 
         return true;
     }
 
+    /**
+     * Returns the value of the key, or its default if the configured value is not a positive number, which the
+     * integration API listener's thread pool cannot be created with.
+     */
+    private static int getPositiveValue(final ConfigKey<Integer> key) {
+        final Integer value = key.value();
+        if (value == null || value <= 0) {
+            final int defaultValue = Integer.parseInt(key.defaultValue());
+            s_logger.warn("Invalid value " + value + " for " + key.key() + ", it must be greater than 0. Using the default of " + defaultValue + " instead.");
+            return defaultValue;
+        }
+        return value;
+    }
+
     // NOTE: handle() only handles over the wire (OTW) requests from integration.api.port 8096
     // If integration api port is not configured, actual OTW requests will be received by ApiServlet
     @SuppressWarnings({"unchecked", "rawtypes"})
@@ -760,25 +812,56 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
             log.append(response);
             return response;
 
+        } else if (cmdObj instanceof BaseListCmd && ListApiCoalescingEnabled.value()) {
+            final Pair<String, String> responseAndLog = listRequestCoalescer.execute(getCoalescingKey(cmdObj, params, callerUserId), ListApiCoalescingReuseWindow.value(),
+                    new Callable<Pair<String, String>>() {
+                        @Override
+                        public Pair<String, String> call() throws Exception {
+                            final StringBuilder sharedLog = new StringBuilder();
+                            final String response = dispatchCommand(cmdObj, params, caller, sharedLog);
+                            return new Pair<String, String>(response, sharedLog.toString());
+                        }
+                    });
+            log.append(responseAndLog.second());
+            return responseAndLog.first();
         } else {
-            dispatcher.dispatch(cmdObj, params, false);
-
-            // if the command is of the listXXXCommand, we will need to also return the
-            // the job id and status if possible
-            // For those listXXXCommand which we have already created DB views, this step is not needed since async job is joined in their db views.
-            if (cmdObj instanceof BaseListCmd && !(cmdObj instanceof ListVMsCmd) && !(cmdObj instanceof ListRoutersCmd)
-                    && !(cmdObj instanceof ListSecurityGroupsCmd) &&
-                    !(cmdObj instanceof ListTagsCmd) && !(cmdObj instanceof ListEventsCmd) && !(cmdObj instanceof ListVMGroupsCmd) && !(cmdObj instanceof ListProjectsCmd) &&
-                    !(cmdObj instanceof ListProjectAccountsCmd) && !(cmdObj instanceof ListProjectInvitationsCmd) && !(cmdObj instanceof ListHostsCmd) &&
-                    !(cmdObj instanceof ListVolumesCmd) && !(cmdObj instanceof ListUsersCmd) && !(cmdObj instanceof ListAccountsCmd)
-                    && !(cmdObj instanceof ListStoragePoolsCmd) && !(cmdObj instanceof ListDiskOfferingsCmd) && !(cmdObj instanceof ListServiceOfferingsCmd) &&
-                    !(cmdObj instanceof ListZonesCmd)) {
-                buildAsyncListResponse((BaseListCmd)cmdObj, caller);
+            return dispatchCommand(cmdObj, params, caller, log);
+        }
+    }
+
+    /**
+     * Identical requests are requests of the same user, for the same command, response type and parameters, apart from the
+     * parameters that only sign or authenticate the request.
+     */
+    private String getCoalescingKey(final BaseCmd cmdObj, final Map<String, String> params, final Long callerUserId) {
+        final StringBuilder key = new StringBuilder();
+        key.append(callerUserId).append('|').append(cmdObj.getClass().getName()).append('|').append(cmdObj.getResponseType());
+        for (final Map.Entry<String, String> param : new TreeMap<String, String>(params).entrySet()) {
+            if (!s_coalescingIgnoredParams.contains(param.getKey().toLowerCase())) {
+                key.append('|').append(param.getKey()).append('=').append(param.getValue());
             }
+        }
+        return key.toString();
+    }
 
-            SerializationContext.current().setUuidTranslation(true);
-            return ApiResponseSerializer.toSerializedStringWithSecureLogs((ResponseObject)cmdObj.getResponseObject(), cmdObj.getResponseType(), log);
+    private String dispatchCommand(final BaseCmd cmdObj, final Map<String, String> params, final Account caller, final StringBuilder log) throws Exception {
+        dispatcher.dispatch(cmdObj, params, false);
+
+        // if the command is of the listXXXCommand, we will need to also return the
+        // the job id and status if possible
+        // For those listXXXCommand which we have already created DB views, this step is not needed since async job is joined in their db views.
+        if (cmdObj instanceof BaseListCmd && !(cmdObj instanceof ListVMsCmd) && !(cmdObj instanceof ListRoutersCmd)
+                && !(cmdObj instanceof ListSecurityGroupsCmd) &&
+                !(cmdObj instanceof ListTagsCmd) && !(cmdObj instanceof ListEventsCmd) && !(cmdObj instanceof ListVMGroupsCmd) && !(cmdObj instanceof ListProjectsCmd) &&
+                !(cmdObj instanceof ListProjectAccountsCmd) && !(cmdObj instanceof ListProjectInvitationsCmd) && !(cmdObj instanceof ListHostsCmd) &&
+                !(cmdObj instanceof ListVolumesCmd) && !(cmdObj instanceof ListUsersCmd) && !(cmdObj instanceof ListAccountsCmd)
+                && !(cmdObj instanceof ListStoragePoolsCmd) && !(cmdObj instanceof ListDiskOfferingsCmd) && !(cmdObj instanceof ListServiceOfferingsCmd) &&
+                !(cmdObj instanceof ListZonesCmd)) {
+            buildAsyncListResponse((BaseListCmd)cmdObj, caller);
         }
+
+        SerializationContext.current().setUuidTranslation(true);
+        return ApiResponseSerializer.toSerializedStringWithSecureLogs((ResponseObject)cmdObj.getResponseObject(), cmdObj.getResponseType(), log);
     }
 
     @SuppressWarnings("unchecked")
@@ -1242,12 +1325,14 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
     // we have to cite a license if we are using this code directly, so we need to add the appropriate citation or
     // modify the
     // code to be very specific to our needs
-    static class ListenerThread extends Thread {
+    static class ListenerThread extends Thread implements IntegrationApiListenerMBean {
         private HttpService _httpService = null;
         private ServerSocket _serverSocket = null;
         private HttpParams _params = null;
+        private ThreadPoolExecutor _executor = null;
+        private final AtomicLong _rejectedCount = new AtomicLong();
 
-        public ListenerThread(final ApiServer requestHandler, final int port) {
+        public ListenerThread(final ApiServer requestHandler, final int port, final int workers, final int queueSize) {
             try {
                 _serverSocket = new ServerSocket(port);
             } catch (final IOException ioex) {
@@ -1255,6 +1340,16 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
                 return;
             }
 
+            // A bounded queue, so that a burst is answered with 503 instead of piling up connections that
+            // will have timed out on the client side by the time a worker gets to them.
+            _executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize), new NamedThreadFactory("ApiServer"));
+            _executor.allowCoreThreadTimeOut(true);
+            try {
+                JmxUtil.registerMBean("ApiServer", "IntegrationApiListener", new StandardMBean(this, IntegrationApiListenerMBean.class));
+            } catch (final Exception e) {
+                s_logger.warn("Unable to register mbean for the integration API listener", e);
+            }
+
             _params = new BasicHttpParams();
             _params.setIntParameter(CoreConnectionPNames.SO_TIMEOUT, 30000)
             .setIntParameter(CoreConnectionPNames.SOCKET_BUFFER_SIZE, 8 * 1024)
@@ -1290,7 +1385,11 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
                     conn.bind(socket, _params);
 
                     // Execute a new worker task to handle the request
-                    s_executor.execute(new WorkerTask(_httpService, conn, s_workerCount++));
+                    try {
+                        _executor.execute(new WorkerTask(_httpService, conn, s_workerCount++));
+                    } catch (final RejectedExecutionException e) {
+                        reject(conn);
+                    }
                 } catch (final InterruptedIOException ex) {
                     break;
                 } catch (final IOException e) {
@@ -1299,6 +1398,59 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
                 }
             }
         }
+
+        private void reject(final DefaultHttpServerConnection conn) {
+            if (_rejectedCount.incrementAndGet() % 100 == 1) {
+                s_logger.warn("ApiServer: all " + getWorkerCount() + " workers are busy and " + getQueuedRequestCount() + " connections are queued, rejected "
+                        + _rejectedCount.get() + " connections so far");
+            }
+            try {
+                final BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_SERVICE_UNAVAILABLE, "Service Unavailable");
+                response.setHeader("Connection", "close");
+                response.setHeader("Content-Length", "0");
+                conn.sendResponseHeader(response);
+                conn.flush();
+            } catch (final IOException | HttpException e) {
+                if (s_logger.isTraceEnabled()) {
+                    s_logger.trace("ApiServer: failed to reject connection - " + e);
+                }
+            } finally {
+                try {
+                    conn.shutdown();
+                } catch (final IOException ignore) {
+                }
+            }
+        }
+
+        @Override
+        public int getWorkerCount() {
+            return _executor.getMaximumPoolSize();
+        }
+
+        @Override
+        public int getQueueCapacity() {
+            return _executor.getQueue().size() + _executor.getQueue().remainingCapacity();
+        }
+
+        @Override
+        public int getActiveRequestCount() {
+            return _executor.getActiveCount();
+        }
+
+        @Override
+        public int getQueuedRequestCount() {
+            return _executor.getQueue().size();
+        }
+
+        @Override
+        public long getCompletedRequestCount() {
+            return _executor.getCompletedTaskCount();
+        }
+
+        @Override
+        public long getRejectedRequestCount() {
+            return _rejectedCount.get();
+        }
     }
 
     static class WorkerTask extends ManagedContextRunnable {
@@ -1449,6 +1601,10 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
     public ConfigKey<?>[] getConfigKeys() {
         return new ConfigKey<?>[] {
                 IntegrationAPIPort,
+                IntegrationAPIWorkers,
+                IntegrationAPIQueueSize,
+                ListApiCoalescingEnabled,
+                ListApiCoalescingReuseWindow,
                 ConcurrentSnapshotsThresholdPerHost,
                 EncodeApiResponse,
                 EnableSecureSessionCookie,
@@ -44,10 +44,11 @@ import org.apache.log4j.Logger;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -74,19 +75,45 @@ public class ApiResponseSerializer {
 
     private static final Pattern s_unicodeEscapePattern = Pattern.compile("\\\\u([0-9A-Fa-f]{4})");
 
+    /**
+     * Gson caches the type adapters it builds, and the exclusion strategies of the response builders decide which fields
+     * are serialized when an adapter is built, based on the type of the calling account. A Gson instance can therefore
+     * only be reused for callers of the same account type.
+     */
+    private static final Map<Short, Gson> s_responseGsons = new ConcurrentHashMap<Short, Gson>();
+    private static final Map<Short, Gson> s_logGsons = new ConcurrentHashMap<Short, Gson>();
+    private static final Map<Class<?>, Field[]> s_serializableFields = new ConcurrentHashMap<Class<?>, Field[]>();
+
     public static String unescape(String escaped) {
-        String str = escaped;
-        Matcher matcher = s_unicodeEscapePattern.matcher(str);
-        while (matcher.find()) {
-            str = str.replaceAll("\\" + matcher.group(0), Character.toString((char)Integer.parseInt(matcher.group(1), 16)));
+        Matcher matcher = s_unicodeEscapePattern.matcher(escaped);
+        if (!matcher.find()) {
+            return escaped;
         }
-        return str;
+        // a single pass over the string, large list responses hold thousands of escapes
+        StringBuilder sb = new StringBuilder(escaped.length());
+        int last = 0;
+        do {
+            sb.append(escaped, last, matcher.start()).append((char)Integer.parseInt(matcher.group(1), 16));
+            last = matcher.end();
+        } while (matcher.find());
+        sb.append(escaped, last, escaped.length());
+        return sb.toString();
+    }
+
+    private static Gson getResponseGson() {
+        return s_responseGsons.computeIfAbsent(CallContext.current().getCallingAccount().getType(),
+                accountType -> ApiResponseGsonHelper.getBuilder().excludeFieldsWithModifiers(Modifier.TRANSIENT).create());
+    }
+
+    private static Gson getLogGson() {
+        return s_logGsons.computeIfAbsent(CallContext.current().getCallingAccount().getType(),
+                accountType -> ApiResponseGsonHelper.getLogBuilder().excludeFieldsWithModifiers(Modifier.TRANSIENT).create());
     }
 
     public static String toJSONSerializedString(ResponseObject result, StringBuilder log) {
         if (result != null && log != null) {
-            Gson responseBuilder = ApiResponseGsonHelper.getBuilder().excludeFieldsWithModifiers(Modifier.TRANSIENT).create();
-            Gson logBuilder = ApiResponseGsonHelper.getLogBuilder().excludeFieldsWithModifiers(Modifier.TRANSIENT).create();
+            Gson responseBuilder = getResponseGson();
+            Gson logBuilder = getLogGson();
 
             StringBuilder sb = new StringBuilder();
 
@@ -214,13 +241,26 @@ public class ApiResponseSerializer {
         }
     }
 
-    private static Field[] getFlattenFields(Class<?> clz) {
-        List<Field> fields = new ArrayList<Field>();
-        fields.addAll(Arrays.asList(clz.getDeclaredFields()));
-        if (clz.getSuperclass() != null) {
-            fields.addAll(Arrays.asList(getFlattenFields(clz.getSuperclass())));
+    /**
+     * @return the fields of the class and its super classes that can be serialized: the non transient fields with a
+     * serialized name, already made accessible. Looked up once per class.
+     */
+    private static Field[] getSerializableFields(Class<?> clz) {
+        Field[] serializableFields = s_serializableFields.get(clz);
+        if (serializableFields == null) {
+            List<Field> fields = new ArrayList<Field>();
+            for (Class<?> c = clz; c != null; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if ((field.getModifiers() & Modifier.TRANSIENT) == 0 && field.getAnnotation(SerializedName.class) != null) {
+                        field.setAccessible(true);
+                        fields.add(field);
+                    }
+                }
+            }
+            serializableFields = fields.toArray(new Field[] {});
+            s_serializableFields.put(clz, serializableFields);
         }
-        return fields.toArray(new Field[] {});
+        return serializableFields;
     }
 
     private static void serializeResponseObjFieldsXML(StringBuilder sb, StringBuilder log, ResponseObject obj) {
@@ -228,16 +268,9 @@ public class ApiResponseSerializer {
         if (obj instanceof AsyncJobResponse)
             isAsync = true;
 
-        Field[] fields = getFlattenFields(obj.getClass());
+        Field[] fields = getSerializableFields(obj.getClass());
         for (Field field : fields) {
-            if ((field.getModifiers() & Modifier.TRANSIENT) != 0) {
-                continue; // skip transient fields
-            }
-
             SerializedName serializedName = field.getAnnotation(SerializedName.class);
-            if (serializedName == null) {
-                continue; // skip fields w/o serialized name
-            }
 
             boolean logField = true;
             Param param = field.getAnnotation(Param.class);
@@ -262,7 +295,6 @@ public class ApiResponseSerializer {
                 }
             }
 
-            field.setAccessible(true);
             Object fieldValue = null;
             try {
                 fieldValue = field.get(obj);
@@ -17,9 +17,12 @@
 package com.cloud.capacity;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Inject;
 import javax.naming.ConfigurationException;
@@ -45,6 +48,7 @@ import com.cloud.agent.api.Command;
 import com.cloud.agent.api.StartupCommand;
 import com.cloud.agent.api.StartupRoutingCommand;
 import com.cloud.capacity.dao.CapacityDao;
+import com.cloud.capacity.dao.CapacityDaoImpl.ClusterConsumption;
 import com.cloud.configuration.Config;
 import com.cloud.dc.ClusterDetailsDao;
 import com.cloud.dc.ClusterDetailsVO;
@@ -80,6 +84,7 @@ import com.cloud.utils.db.DB;
 import com.cloud.utils.db.SearchCriteria;
 import com.cloud.utils.db.Transaction;
 import com.cloud.utils.db.TransactionCallbackNoReturn;
+import com.cloud.utils.db.TransactionLegacy;
 import com.cloud.utils.db.TransactionStatus;
 import com.cloud.utils.exception.CloudRuntimeException;
 import com.cloud.utils.fsm.StateListener;
@@ -139,6 +144,10 @@ public class CapacityManagerImpl extends ManagerBase implements CapacityManager,
     private int _vmCapacityReleaseInterval;
     long _extraBytesPerVolume = 0;
 
+    // (zone id, capacity type) -> (time loaded, consumption of the clusters in the zone)
+    private final Map<Pair<Long, Short>, Pair<Long, List<ClusterConsumption>>> _clusterConsumptionSnapshots =
+            new ConcurrentHashMap<Pair<Long, Short>, Pair<Long, List<ClusterConsumption>>>();
+
     @Inject
     MessageBus _messageBus;
 
@@ -269,6 +278,7 @@ public class CapacityManagerImpl extends ManagerBase implements CapacityManager,
                     _capacityDao.update(capacityCpuCore.getId(), capacityCpuCore);
                 }
             });
+            capacityChanged(capacityCpu.getDataCenterId());
 
             return true;
         } catch (Exception e) {
@@ -398,6 +408,7 @@ public class CapacityManagerImpl extends ManagerBase implements CapacityManager,
                     _capacityDao.update(capacityCpuCore.getId(), capacityCpuCore);
                 }
             });
+            capacityChanged(host.getDataCenterId());
         } catch (Exception e) {
             s_logger.error("Exception allocating VM capacity", e);
             if (e instanceof CloudRuntimeException) {
@@ -1102,6 +1113,59 @@ public class CapacityManagerImpl extends ManagerBase implements CapacityManager,
 
     }
 
+    @Override
+    public List<Long> listClustersCrossingThreshold(short capacityType, long zoneId, long computeRequested) {
+        List<Long> clustersCrossingThreshold = new ArrayList<Long>();
+        for (ClusterConsumption consumption : getClusterConsumptionSnapshot(capacityType, zoneId)) {
+            if (consumption.crossesThreshold(computeRequested)) {
+                clustersCrossingThreshold.add(consumption.getClusterId());
+            }
+        }
+        return clustersCrossingThreshold;
+    }
+
+    protected List<ClusterConsumption> getClusterConsumptionSnapshot(short capacityType, long zoneId) {
+        long interval = ClusterCapacitySnapshotInterval.value() * 1000L;
+        long now = System.currentTimeMillis();
+        Pair<Long, Short> key = new Pair<Long, Short>(zoneId, capacityType);
+        if (interval > 0) {
+            Pair<Long, List<ClusterConsumption>> snapshot = _clusterConsumptionSnapshots.get(key);
+            if (snapshot != null && now - snapshot.first() < interval) {
+                return snapshot.second();
+            }
+        }
+
+        String configName = capacityType == Capacity.CAPACITY_TYPE_CPU ? DeploymentClusterPlanner.ClusterCPUCapacityDisableThreshold.key()
+                : DeploymentClusterPlanner.ClusterMemoryCapacityDisableThreshold.key();
+        List<ClusterConsumption> consumptions = _capacityDao.listClustersConsumptionAndThreshold(capacityType, zoneId, configName);
+        if (interval > 0) {
+            _clusterConsumptionSnapshots.put(key, new Pair<Long, List<ClusterConsumption>>(now, consumptions));
+        }
+        return consumptions;
+    }
+
+    /**
+     * Drops the cluster consumption cached for the zone once capacity has been allocated or released in it, and again
+     * once the outermost transaction is over, as snapshots taken by other threads before the commit hold the old capacity.
+     */
+    protected void capacityChanged(final Long zoneId) {
+        discardClusterConsumptionSnapshots(zoneId);
+        TransactionLegacy.currentTxn().afterCompletion(() -> discardClusterConsumptionSnapshots(zoneId));
+    }
+
+    protected void discardClusterConsumptionSnapshots(Long zoneId) {
+        if (zoneId == null) {
+            _clusterConsumptionSnapshots.clear();
+            return;
+        }
+        Iterator<Pair<Long, Short>> it = _clusterConsumptionSnapshots.keySet().iterator();
+        while (it.hasNext()) {
+            if (zoneId.equals(it.next().first())) {
+                it.remove();
+            }
+        }
+    }
+
     @Override
     public Pair<Boolean, Boolean> checkIfHostHasCpuCapabilityAndCapacity(Host host, ServiceOffering offering, boolean considerReservedCapacity) {
         int cpu_requested = offering.getCpu() * offering.getSpeed();
@@ -1249,6 +1313,6 @@ public class CapacityManagerImpl extends ManagerBase implements CapacityManager,
     @Override
     public ConfigKey<?>[] getConfigKeys() {
         return new ConfigKey<?>[] {CpuOverprovisioningFactor, MemOverprovisioningFactor, StorageCapacityDisableThreshold, StorageOverprovisioningFactor,
-            StorageAllocatedCapacityDisableThreshold, StorageOperationsExcludeCluster, VmwareCreateCloneFull, ImageStoreNFSVersion};
+            StorageAllocatedCapacityDisableThreshold, StorageOperationsExcludeCluster, VmwareCreateCloneFull, ImageStoreNFSVersion, ClusterCapacitySnapshotInterval};
     }
 }
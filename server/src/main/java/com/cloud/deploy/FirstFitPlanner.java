@@ -341,10 +341,12 @@ public class FirstFitPlanner extends AdapterBase implements DeploymentClusterPla
         // always check cluster threshold isn't crossed. However, the check may be skipped for
         // starting (not deploying) an instance.
         VirtualMachine vm = vmProfile.getVirtualMachine();
-        Map<String, String> details = vmDetailsDao.listDetailsKeyPairs(vm.getId());
         Boolean isThresholdEnabled = ClusterThresholdEnabled.value();
-        if (!(isThresholdEnabled || (details != null && details.containsKey("deployvm")))) {
-            return;
+        if (!isThresholdEnabled) {
+            Map<String, String> details = vmDetailsDao.listDetailsKeyPairs(vm.getId());
+            if (details == null || !details.containsKey("deployvm")) {
+                return;
+            }
         }
 
         List<Short> capacityList = getCapacitiesForCheckingThreshold();
@@ -363,11 +365,9 @@ public class FirstFitPlanner extends AdapterBase implements DeploymentClusterPla
             }
 
             if (capacity == Capacity.CAPACITY_TYPE_CPU) {
-                clustersCrossingThreshold =
-                        capacityDao.listClustersCrossingThreshold(capacity, plan.getDataCenterId(), ClusterCPUCapacityDisableThreshold.key(), cpu_requested);
+                clustersCrossingThreshold = capacityMgr.listClustersCrossingThreshold(capacity, plan.getDataCenterId(), cpu_requested);
             } else if (capacity == Capacity.CAPACITY_TYPE_MEMORY) {
-                clustersCrossingThreshold =
-                        capacityDao.listClustersCrossingThreshold(capacity, plan.getDataCenterId(), ClusterMemoryCapacityDisableThreshold.key(), ram_requested);
+                clustersCrossingThreshold = capacityMgr.listClustersCrossingThreshold(capacity, plan.getDataCenterId(), ram_requested);
             }
 
             if (clustersCrossingThreshold != null && clustersCrossingThreshold.size() != 0) {
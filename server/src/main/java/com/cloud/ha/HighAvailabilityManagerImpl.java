@@ -17,13 +17,25 @@
 package com.cloud.ha;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Inject;
 import javax.naming.ConfigurationException;
@@ -71,6 +83,7 @@ import com.cloud.storage.dao.GuestOSCategoryDao;
 import com.cloud.storage.dao.GuestOSDao;
 import com.cloud.storage.secondary.SecondaryStorageVmManager;
 import com.cloud.user.AccountManager;
+import com.cloud.utils.Pair;
 import com.cloud.utils.component.ManagerBase;
 import com.cloud.utils.concurrency.NamedThreadFactory;
 import com.cloud.utils.exception.CloudRuntimeException;
@@ -82,8 +95,8 @@ import com.cloud.vm.dao.VMInstanceDao;
 
 /**
  * HighAvailabilityManagerImpl coordinates the HA process. VMs are registered with the HA Manager for HA. The request is stored
- * within a database backed work queue. HAManager has a number of workers that pick up these work items to perform HA on the
- * VMs.
+ * within a database backed work queue. A dispatcher thread takes these work items from the queue in batches, orders them by
+ * priority (system VMs and HA restarts first) and hands them to a pool of workers that perform HA on the VMs concurrently.
  *
  * The HA process goes as follows: 1. Check with the list of Investigators to determine that the VM is no longer running. If a
  * Investigator finds the VM is still alive, the HA process is stopped and the state of the VM reverts back to its previous
@@ -112,8 +125,36 @@ public class HighAvailabilityManagerImpl extends ManagerBase implements Configur
             "Total number of attempts for trying migration of a VM.",
             true, ConfigKey.Scope.Global);
 
-    WorkerThread[] _workers;
-    boolean _stopped;
+    /**
+     * Orders HA work so that system VMs are handled before user VMs and VM restarts before
+     * migrations and stops, otherwise oldest first.
+     */
+    protected static final Comparator<HaWorkVO> HA_WORK_PRIORITY = new Comparator<HaWorkVO>() {
+        @Override
+        public int compare(HaWorkVO w1, HaWorkVO w2) {
+            int result = Boolean.compare(w1.getType() == VirtualMachine.Type.User, w2.getType() == VirtualMachine.Type.User);
+            if (result == 0) {
+                result = Boolean.compare(w1.getWorkType() != WorkType.HA, w2.getWorkType() != WorkType.HA);
+            }
+            if (result == 0) {
+                result = Long.compare(w1.getTimeToTry(), w2.getTimeToTry());
+            }
+            if (result == 0) {
+                result = Long.compare(w1.getId(), w2.getId());
+            }
+            return result;
+        }
+    };
+
+    WorkDispatcher _dispatcher;
+    ThreadPoolExecutor _workerExecutor;
+    ExecutorService _investigatorExecutor;
+    final AtomicInteger _workInProgress = new AtomicInteger();
+    // taken work that waits for its host or cluster to get under ha.workers.per.host or ha.workers.per.cluster, only used by the dispatcher
+    final List<HaWorkVO> _pendingWork = new ArrayList<HaWorkVO>();
+    final Map<Long, Integer> _workInProgressPerHost = new ConcurrentHashMap<Long, Integer>();
+    final Map<Long, Integer> _workInProgressPerCluster = new ConcurrentHashMap<Long, Integer>();
+    volatile boolean _stopped;
     long _timeToSleep;
     @Inject
     HighAvailabilityDao _haDao;
@@ -314,8 +355,8 @@ public class HighAvailabilityManagerImpl extends ManagerBase implements Configur
     }
 
     protected void wakeupWorkers() {
-        for (WorkerThread worker : _workers) {
-            worker.wakup();
+        if (_dispatcher != null) {
+            _dispatcher.wakeup();
         }
     }
 
@@ -424,6 +465,61 @@ public class HighAvailabilityManagerImpl extends ManagerBase implements Configur
 
     }
 
+    /**
+     * Asks all investigators in parallel whether the VM is alive. The answer of the first investigator, in the
+     * configured order, that knows about the VM wins. The answer of an investigator is only used once all the
+     * investigators before it reported that they don't know the VM, so when one of them doesn't answer within
+     * {@link HighAvailabilityManager#InvestigatorTimeout} the state of the VM is left undetermined.
+     *
+     * @return the investigator that determined the state and whether the VM is alive, or a pair of nulls
+     * if no investigator could determine it.
+     */
+    protected Pair<Investigator, Boolean> investigateVm(final VirtualMachine vm, final Host host) {
+        final List<Future<Boolean>> results = new ArrayList<Future<Boolean>>(investigators.size());
+        for (final Investigator investigator : investigators) {
+            results.add(_investigatorExecutor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return _managedContext.callWithContext(new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() throws UnknownVM {
+                            return investigator.isVmAlive(vm, host);
+                        }
+                    });
+                }
+            }));
+        }
+
+        final long deadline = System.currentTimeMillis() + InvestigatorTimeout.value() * SECONDS_TO_MILLISECONDS_FACTOR;
+        try {
+            for (int i = 0; i < investigators.size(); i++) {
+                final Investigator investigator = investigators.get(i);
+                try {
+                    final Boolean alive = results.get(i).get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+                    s_logger.info(investigator.getName() + " found " + vm + " to be alive? " + alive);
+                    return new Pair<Investigator, Boolean>(investigator, alive);
+                } catch (final ExecutionException e) {
+                    if (!(e.getCause() instanceof UnknownVM)) {
+                        throw new CloudRuntimeException(investigator.getName() + " failed to investigate " + vm, e.getCause());
+                    }
+                    s_logger.info(investigator.getName() + " could not find " + vm);
+                } catch (final TimeoutException e) {
+                    // a later investigator may be less accurate, so its answer isn't used in place of this one
+                    s_logger.warn(investigator.getName() + " did not determine the state of " + vm + " within " + InvestigatorTimeout.value() + " seconds");
+                    return new Pair<Investigator, Boolean>(null, null);
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CloudRuntimeException("Interrupted while investigating " + vm, e);
+        } finally {
+            for (final Future<Boolean> result : results) {
+                result.cancel(true);
+            }
+        }
+        return new Pair<Investigator, Boolean>(null, null);
+    }
+
     protected Long restart(final HaWorkVO work) {
         List<HaWorkVO> items = _haDao.listFutureHaWorkForVm(work.getInstanceId(), work.getId());
         if (items.size() > 0) {
@@ -493,18 +589,9 @@ public class HighAvailabilityManagerImpl extends ManagerBase implements Configur
                     return null;
                 }
 
-                Investigator investigator = null;
-                for (Investigator it : investigators) {
-                    investigator = it;
-                    try
-                    {
-                        alive = investigator.isVmAlive(vm, host);
-                        s_logger.info(investigator.getName() + " found " + vm + " to be alive? " + alive);
-                        break;
-                    } catch (UnknownVM e) {
-                        s_logger.info(investigator.getName() + " could not find " + vm);
-                    }
-                }
+                Pair<Investigator, Boolean> investigation = investigateVm(vm, host);
+                Investigator investigator = investigation.first();
+                alive = investigation.second();
 
                 boolean fenced = false;
                 if (alive == null) {
@@ -879,10 +966,14 @@ public class HighAvailabilityManagerImpl extends ManagerBase implements Configur
             xmlParams);
 
         final int count = HAWorkers.value();
-        _workers = new WorkerThread[count];
-        for (int i = 0; i < _workers.length; i++) {
-            _workers[i] = new WorkerThread("HA-Worker-" + i);
-        }
+        _workerExecutor = new ThreadPoolExecutor(count, count, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("HA-Worker"));
+        // investigators that are cancelled may stay blocked on the agents, so the pool is bounded rather than growing with them
+        final int investigatorThreads = count * Math.max(investigators == null ? 0 : investigators.size(), 1);
+        final ThreadPoolExecutor investigatorExecutor = new ThreadPoolExecutor(investigatorThreads, investigatorThreads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("HA-Investigator"));
+        investigatorExecutor.allowCoreThreadTimeOut(true);
+        _investigatorExecutor = investigatorExecutor;
+        _dispatcher = new WorkDispatcher("HA-Dispatcher");
 
         _timeToSleep = TimeToSleep.value() * SECONDS_TO_MILLISECONDS_FACTOR;
         _maxRetries = MigrationMaxRetries.value();
@@ -913,9 +1004,7 @@ public class HighAvailabilityManagerImpl extends ManagerBase implements Configur
     public boolean start() {
         _stopped = false;
 
-        for (final WorkerThread thread : _workers) {
-            thread.start();
-        }
+        _dispatcher.start();
 
         _executor.scheduleAtFixedRate(new CleanupTask(), _timeBetweenCleanups, _timeBetweenCleanups, TimeUnit.SECONDS);
 
@@ -928,6 +1017,8 @@ public class HighAvailabilityManagerImpl extends ManagerBase implements Configur
 
         wakeupWorkers();
 
+        _workerExecutor.shutdown();
+        _investigatorExecutor.shutdownNow();
         _executor.shutdown();
 
         return true;
@@ -946,8 +1037,14 @@ public class HighAvailabilityManagerImpl extends ManagerBase implements Configur
         }
     }
 
-    protected class WorkerThread extends Thread {
-        public WorkerThread(String name) {
+    /**
+     * Takes batches of HA work from the database, as long as there are idle workers, and hands them
+     * to the worker pool in priority order.
+     */
+    protected class WorkDispatcher extends Thread {
+        private boolean _wakeupRequested;
+
+        public WorkDispatcher(String name) {
             super(name);
         }
 
@@ -966,39 +1063,111 @@ public class HighAvailabilityManagerImpl extends ManagerBase implements Configur
         }
 
         private void runWithContext() {
-            HaWorkVO work = null;
             try {
-                s_logger.trace("Checking the database for work");
-                work = _haDao.take(_serverId);
-                if (work == null) {
-                    try {
-                        synchronized (this) {
-                            wait(_timeToSleep);
-                        }
-                        return;
-                    } catch (final InterruptedException e) {
-                        s_logger.info("Interrupted");
-                        return;
-                    }
+                final int idleWorkers = _workerExecutor.getMaximumPoolSize() - _workInProgress.get() - _pendingWork.size();
+                if (idleWorkers > 0) {
+                    s_logger.trace("Checking the database for work");
+                    _pendingWork.addAll(_haDao.take(_serverId, Math.min(idleWorkers, HAWorkBatchSize.value())));
                 }
-
-                NDC.push("work-" + work.getId());
-                s_logger.info("Processing work " + work);
-                processWork(work);
+                if (dispatchPendingWork() == 0) {
+                    waitForWork();
+                }
+            } catch (final InterruptedException e) {
+                s_logger.info("Interrupted");
             } catch (final Throwable th) {
                 s_logger.error("Caught this throwable, ", th);
-            } finally {
-                if (work != null) {
-                    NDC.pop();
-                }
             }
         }
 
-        public synchronized void wakup() {
+        private synchronized void waitForWork() throws InterruptedException {
+            if (!_wakeupRequested && !_stopped) {
+                wait(_timeToSleep);
+            }
+            _wakeupRequested = false;
+        }
+
+        public synchronized void wakeup() {
+            _wakeupRequested = true;
             notifyAll();
         }
     }
 
+    /**
+     * Hands the pending work to the worker pool in priority order, leaving behind the work of the hosts and
+     * clusters that already have ha.workers.per.host or ha.workers.per.cluster work items in progress.
+     * @return the number of work items handed to the worker pool
+     */
+    protected int dispatchPendingWork() {
+        if (_pendingWork.isEmpty()) {
+            return 0;
+        }
+
+        final int perHost = HAWorkersPerHost.value();
+        final int perCluster = HAWorkersPerCluster.value();
+        final Map<Long, Long> hostClusters = new HashMap<Long, Long>();
+        Collections.sort(_pendingWork, HA_WORK_PRIORITY);
+        int dispatched = 0;
+        for (Iterator<HaWorkVO> it = _pendingWork.iterator(); it.hasNext();) {
+            final HaWorkVO work = it.next();
+            if (perHost > 0 && _workInProgressPerHost.getOrDefault(work.getHostId(), 0) >= perHost) {
+                continue;
+            }
+            Long clusterId = null;
+            if (perCluster > 0) {
+                clusterId = hostClusters.computeIfAbsent(work.getHostId(), hostId -> {
+                    final HostVO host = _hostDao.findById(hostId);
+                    return host == null ? null : host.getClusterId();
+                });
+                if (clusterId != null && _workInProgressPerCluster.getOrDefault(clusterId, 0) >= perCluster) {
+                    continue;
+                }
+            }
+
+            it.remove();
+            _workInProgress.incrementAndGet();
+            _workInProgressPerHost.merge(work.getHostId(), 1, Integer::sum);
+            if (clusterId != null) {
+                _workInProgressPerCluster.merge(clusterId, 1, Integer::sum);
+            }
+            _workerExecutor.execute(new WorkerTask(work, clusterId));
+            dispatched++;
+        }
+        return dispatched;
+    }
+
+    private static void decrementWorkInProgress(Map<Long, Integer> workInProgress, Long id) {
+        if (id != null) {
+            workInProgress.computeIfPresent(id, (key, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    protected class WorkerTask extends ManagedContextRunnable {
+        private final HaWorkVO _work;
+        private final Long _clusterId;
+
+        public WorkerTask(HaWorkVO work, Long clusterId) {
+            _work = work;
+            _clusterId = clusterId;
+        }
+
+        @Override
+        protected void runInContext() {
+            NDC.push("work-" + _work.getId());
+            try {
+                s_logger.info("Processing work " + _work);
+                processWork(_work);
+            } catch (final Throwable th) {
+                s_logger.error("Caught this throwable, ", th);
+            } finally {
+                NDC.pop();
+                decrementWorkInProgress(_workInProgressPerHost, _work.getHostId());
+                decrementWorkInProgress(_workInProgressPerCluster, _clusterId);
+                _workInProgress.decrementAndGet();
+                wakeupWorkers();
+            }
+        }
+    }
+
     @Override
     public void onManagementNodeJoined(List<? extends ManagementServerHost> nodeList, long selfNodeId) {
     }
@@ -1061,6 +1230,6 @@ public class HighAvailabilityManagerImpl extends ManagerBase implements Configur
     public ConfigKey<?>[] getConfigKeys() {
         return new ConfigKey[] {TimeBetweenCleanup, MigrationMaxRetries, TimeToSleep, TimeBetweenFailures,
             StopRetryInterval, RestartRetryInterval, MigrateRetryInterval, InvestigateRetryInterval,
-            HAWorkers, ForceHA};
+            HAWorkers, ForceHA, HAWorkBatchSize, HAWorkersPerHost, HAWorkersPerCluster, InvestigatorTimeout};
     }
 }
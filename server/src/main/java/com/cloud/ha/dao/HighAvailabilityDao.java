@@ -32,6 +32,15 @@ public interface HighAvailabilityDao extends GenericDao<HaWorkVO, Long> {
      */
     HaWorkVO take(long serverId);
 
+    /**
+     * Takes up to batchSize available HA work items in a single transaction.
+     *
+     * @param serverId server that is taking these.
+     * @param batchSize maximum number of work items to take.
+     * @return list of WorkVO taken by this server or empty list.
+     */
+    List<HaWorkVO> take(long serverId, int batchSize);
+
     /**
      * Finds all the work items related to this instance.
      *
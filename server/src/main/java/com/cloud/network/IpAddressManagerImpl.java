@@ -304,6 +304,12 @@ public class IpAddressManagerImpl extends ManagerBase implements IpAddressManage
             Boolean.class, "system.vm.public.ip.reservation.mode.strictness", "false",
             "If enabled, the use of System VMs public IP reservation is strict, preferred if not.", false, ConfigKey.Scope.Global);
 
+    private static final ConfigKey<Integer> PublicIpAllocationCandidates = new ConfigKey<Integer>("Advanced",
+            Integer.class, "public.ip.allocation.candidates", "1",
+            "Number of free public IPs of the preferred range from which one is picked at random when acquiring a new public IP. The default of 1 always "
+                    + "picks the first free address; a larger value lets concurrent allocations spread over different addresses instead of all waiting "
+                    + "on the lock of the same one, at the cost of a random allocation order.", true, ConfigKey.Scope.Global);
+
     private Random rand = new Random(System.currentTimeMillis());
 
     @DB
@@ -885,17 +891,14 @@ public class IpAddressManagerImpl extends ManagerBase implements IpAddressManage
                 }
 
                 boolean ascOrder = ! forSystemVms;
-                Filter filter = new Filter(IPAddressVO.class, "forSystemVms", ascOrder, 0l, 1l);
                 if (SystemVmPublicIpReservationModeStrictness.value()) {
                     sc.setParameters("forSystemVms", forSystemVms);
                 }
 
-                filter.addOrderBy(IPAddressVO.class,"vlanId", true);
-
                 List<IPAddressVO> addrs;
 
                 if (lockOneRow) {
-                    addrs = _ipAddressDao.lockRows(sc, filter, true);
+                    addrs = lockAvailableAddress(sc, ascOrder);
                 } else {
                     addrs = new ArrayList<>(_ipAddressDao.search(sc, null));
                 }
@@ -909,7 +912,7 @@ public class IpAddressManagerImpl extends ManagerBase implements IpAddressManage
                         sc.setParameters("vlanId", nonDedicatedVlanDbIds.toArray());
                         errorMessage.append(", vlanId id=" + Arrays.toString(nonDedicatedVlanDbIds.toArray()));
                         if (lockOneRow) {
-                            addrs = _ipAddressDao.lockRows(sc, filter, true);
+                            addrs = lockAvailableAddress(sc, ascOrder);
                         } else {
                             addrs.addAll(_ipAddressDao.search(sc, null));
                         }
@@ -941,6 +944,48 @@ public class IpAddressManagerImpl extends ManagerBase implements IpAddressManage
         });
     }
 
+    /**
+     * Locks one free address matching the search criteria. A few candidates from the preferred range are read without
+     * locking and tried in random order, each re-checked once its row is locked, so that concurrent allocations spread
+     * over different rows instead of all waiting on the lock of the first free address.
+     *
+     * @return a list holding the locked address, or an empty list when no address is available
+     */
+    protected List<IPAddressVO> lockAvailableAddress(SearchCriteria<IPAddressVO> sc, boolean ascOrder) {
+        long candidateCount = Math.max(1, PublicIpAllocationCandidates.value());
+        Filter filter = new Filter(IPAddressVO.class, "forSystemVms", ascOrder, 0L, candidateCount);
+        filter.addOrderBy(IPAddressVO.class, "vlanId", true);
+
+        List<IPAddressVO> candidates = new ArrayList<>();
+        if (candidateCount > 1) {
+            // only pick among addresses that are as preferred as the first one
+            for (IPAddressVO candidate : _ipAddressDao.search(sc, filter)) {
+                IPAddressVO first = candidates.isEmpty() ? candidate : candidates.get(0);
+                if (candidate.isForSystemVms() == first.isForSystemVms() && candidate.getVlanId() == first.getVlanId()) {
+                    candidates.add(candidate);
+                }
+            }
+            Collections.shuffle(candidates, rand);
+        }
+
+        for (IPAddressVO candidate : candidates) {
+            IPAddressVO addr = _ipAddressDao.lockRow(candidate.getId(), true);
+            if (addr != null && addr.getAllocatedTime() == null) {
+                List<IPAddressVO> addrs = new ArrayList<>();
+                addrs.add(addr);
+                return addrs;
+            }
+            if (s_logger.isDebugEnabled()) {
+                s_logger.debug("Public IP " + candidate.getAddress() + " was taken by a concurrent allocation, trying the next candidate");
+            }
+        }
+
+        // all the candidates were taken concurrently, wait on the first free address instead
+        Filter firstFree = new Filter(IPAddressVO.class, "forSystemVms", ascOrder, 0L, 1L);
+        firstFree.addOrderBy(IPAddressVO.class, "vlanId", true);
+        return _ipAddressDao.lockRows(sc, firstFree, true);
+    }
+
     @DB
     @Override
     public void markPublicIpAsAllocated(final IPAddressVO addr) {
@@ -2259,7 +2304,8 @@ public class IpAddressManagerImpl extends ManagerBase implements IpAddressManage
 
     @Override
     public ConfigKey<?>[] getConfigKeys() {
-        return new ConfigKey<?>[] {UseSystemPublicIps, RulesContinueOnError, SystemVmPublicIpReservationModeStrictness, VrouterRedundantTiersPlacement};
+        return new ConfigKey<?>[] {UseSystemPublicIps, RulesContinueOnError, SystemVmPublicIpReservationModeStrictness, VrouterRedundantTiersPlacement,
+                PublicIpAllocationCandidates};
     }
 
     /**
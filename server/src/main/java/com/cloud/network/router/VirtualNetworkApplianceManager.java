@@ -68,6 +68,9 @@ public interface VirtualNetworkApplianceManager extends Manager, VirtualNetworkA
 
     static final ConfigKey<Integer> RouterAlertsCheckInterval = new ConfigKey<Integer>(Integer.class, RouterAlertsCheckIntervalCK, "Advanced", "1800",
             "Interval (in seconds) to check for alerts in Virtual Router.", false, ConfigKey.Scope.Global, null);
+    static final ConfigKey<Integer> RouterStatsWorkers = new ConfigKey<Integer>(Integer.class, "router.stats.workers", "Advanced", "10",
+            "Number of threads collecting network usage from the virtual routers. The routers running on the same host are collected one at a time.",
+            false, ConfigKey.Scope.Global, null);
     static final ConfigKey<Boolean> RouterVersionCheckEnabled = new ConfigKey<Boolean>("Advanced", Boolean.class, "router.version.check", "true",
             "If true, router minimum required version is checked before sending command", false);
     static final ConfigKey<Boolean> UseExternalDnsServers = new ConfigKey<Boolean>(Boolean.class, "use.external.dns", "Advanced", "false",
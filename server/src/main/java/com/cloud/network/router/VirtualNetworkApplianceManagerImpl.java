@@ -36,8 +36,10 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -383,6 +385,7 @@ Configurable, StateListener<VirtualMachine.State, VirtualMachine.Event, VirtualM
     private ScheduledExecutorService _executor;
     private ScheduledExecutorService _checkExecutor;
     private ScheduledExecutorService _networkStatsUpdateExecutor;
+    private ExecutorService _networkUsageExecutor;
     private ExecutorService _rvrStatusUpdateExecutor;
 
     private BlockingQueue<Long> _vrUpdateQueue;
@@ -544,6 +547,7 @@ Configurable, StateListener<VirtualMachine.State, VirtualMachine.Event, VirtualM
         _executor = Executors.newScheduledThreadPool(1, new NamedThreadFactory("RouterMonitor"));
         _checkExecutor = Executors.newScheduledThreadPool(1, new NamedThreadFactory("RouterStatusMonitor"));
         _networkStatsUpdateExecutor = Executors.newScheduledThreadPool(1, new NamedThreadFactory("NetworkStatsUpdater"));
+        _networkUsageExecutor = Executors.newFixedThreadPool(RouterStatsWorkers.value(), new NamedThreadFactory("RouterNetworkUsage"));
 
         VirtualMachine.State.getStateMachine().registerListener(this);
 
@@ -716,6 +720,7 @@ Configurable, StateListener<VirtualMachine.State, VirtualMachine.Event, VirtualM
 
     @Override
     public boolean stop() {
+        _networkUsageExecutor.shutdown();
         return true;
     }
 
@@ -723,6 +728,8 @@ Configurable, StateListener<VirtualMachine.State, VirtualMachine.Event, VirtualM
     }
 
     protected class NetworkUsageTask extends ManagedContextRunnable {
+        // the stats collection of each host, so that a host whose previous collection is still running is skipped
+        private final Map<Long, Future<?>> _hostCollections = new HashMap<Long, Future<?>>();
 
         public NetworkUsageTask() {
         }
@@ -733,8 +740,53 @@ Configurable, StateListener<VirtualMachine.State, VirtualMachine.Event, VirtualM
                 final List<DomainRouterVO> routers = _routerDao.listByStateAndNetworkType(VirtualMachine.State.Running, GuestType.Isolated, mgmtSrvrId);
                 s_logger.debug("Found " + routers.size() + " running routers. ");
 
+                // Routers of different hosts are collected in parallel, those of the same host one after the other,
+                // so that a single agent does not get a burst of requests.
+                final Map<Long, List<DomainRouterVO>> routersByHost = new HashMap<Long, List<DomainRouterVO>>();
                 for (final DomainRouterVO router : routers) {
-                    collectNetworkStatistics(router, null);
+                    List<DomainRouterVO> hostRouters = routersByHost.get(router.getHostId());
+                    if (hostRouters == null) {
+                        hostRouters = new ArrayList<DomainRouterVO>();
+                        routersByHost.put(router.getHostId(), hostRouters);
+                    }
+                    hostRouters.add(router);
+                }
+
+                _hostCollections.values().removeIf(Future::isDone);
+                final Map<Long, List<DomainRouterVO>> routersToCollect = new HashMap<Long, List<DomainRouterVO>>();
+                for (final Map.Entry<Long, List<DomainRouterVO>> entry : routersByHost.entrySet()) {
+                    if (_hostCollections.containsKey(entry.getKey())) {
+                        s_logger.warn("Network stats of the routers on host " + entry.getKey() + " are still being collected by the previous run, skipping the host");
+                    } else {
+                        routersToCollect.put(entry.getKey(), entry.getValue());
+                    }
+                }
+
+                final CountDownLatch done = new CountDownLatch(routersToCollect.size());
+                for (final Map.Entry<Long, List<DomainRouterVO>> entry : routersToCollect.entrySet()) {
+                    final List<DomainRouterVO> hostRouters = entry.getValue();
+                    final Future<?> collection = _networkUsageExecutor.submit(new ManagedContextRunnable() {
+                        @Override
+                        protected void runInContext() {
+                            try {
+                                for (final DomainRouterVO router : hostRouters) {
+                                    try {
+                                        collectNetworkStatistics(router, null);
+                                    } catch (final Exception e) {
+                                        s_logger.warn("Error while collecting network stats from router: " + router.getInstanceName(), e);
+                                    }
+                                }
+                            } finally {
+                                done.countDown();
+                            }
+                        }
+                    });
+                    _hostCollections.put(entry.getKey(), collection);
+                }
+                // collections still running after the interval keep going, their hosts are skipped by the next runs until they are done
+                if (!done.await(_routerStatsInterval, TimeUnit.SECONDS)) {
+                    s_logger.warn("Collecting network stats of the routers on " + done.getCount() + " of " + routersToCollect.size()
+                            + " hosts took more than router.stats.interval (" + _routerStatsInterval + "s), consider raising " + RouterStatsWorkers.key());
                 }
             } catch (final Exception e) {
                 s_logger.warn("Error while collecting network stats", e);
@@ -3261,7 +3313,8 @@ Configurable, StateListener<VirtualMachine.State, VirtualMachine.Event, VirtualM
                 RouterHealthChecksFreeDiskSpaceThreshold,
                 RouterHealthChecksMaxCpuUsageThreshold,
                 RouterHealthChecksMaxMemoryUsageThreshold,
-                ExposeDnsAndBootpServer
+                ExposeDnsAndBootpServer,
+                RouterStatsWorkers
         };
     }
 
@@ -165,6 +165,9 @@ public class ResourceLimitManagerImpl extends ManagerBase implements ResourceLim
 
     protected SearchBuilder<ResourceCountVO> ResourceCountSearch;
     ScheduledExecutorService _rcExecutor;
+    SearchBuilder<AccountVO> activeAccountsAfterIdSearch;
+    // id of the last account recalculated by the periodic task, only touched by the _rcExecutor thread
+    private long _lastCheckedAccountId = 0;
     long _resourceCountCheckInterval = 0;
     Map<ResourceType, Long> accountResourceLimitMap = new EnumMap<ResourceType, Long>(ResourceType.class);
     Map<ResourceType, Long> domainResourceLimitMap = new EnumMap<ResourceType, Long>(ResourceType.class);
@@ -210,6 +213,11 @@ public class ResourceLimitManagerImpl extends ManagerBase implements ResourceLim
         snapshotSizeSearch.join("snapshots", join2, snapshotSizeSearch.entity().getSnapshotId(), join2.entity().getId(), JoinBuilder.JoinType.INNER);
         snapshotSizeSearch.done();
 
+        activeAccountsAfterIdSearch = _accountDao.createSearchBuilder();
+        activeAccountsAfterIdSearch.and("id", activeAccountsAfterIdSearch.entity().getId(), Op.GT);
+        activeAccountsAfterIdSearch.and("removed", activeAccountsAfterIdSearch.entity().getRemoved(), Op.NULL);
+        activeAccountsAfterIdSearch.done();
+
         _resourceCountCheckInterval = ResourceCountCheckInterval.value();
         if (_resourceCountCheckInterval > 0) {
             _rcExecutor = Executors.newScheduledThreadPool(1, new NamedThreadFactory("ResourceCountChecker"));
@@ -849,39 +857,57 @@ public class ResourceLimitManagerImpl extends ManagerBase implements ResourceLim
 
     @DB
     protected long recalculateDomainResourceCount(final long domainId, final ResourceType type) {
+        return recalculateDomainResourceCount(domainId, type, true);
+    }
+
+    /**
+     * Recalculates the resource count of a domain bottom-up: the child domains and, if requested, the accounts of the domain
+     * are recalculated first, each in its own transaction, and the domain count is then summed up from their stored counts.
+     * The rows of the domain are only locked while that sum is taken, so resource count updates of the accounts in the
+     * subtree are not blocked for the length of the whole recalculation.
+     */
+    @DB
+    protected long recalculateDomainResourceCount(final long domainId, final ResourceType type, final boolean recalculateAccounts) {
+        final List<DomainVO> domainChildren = _domainDao.findImmediateChildrenForParent(domainId);
+        if (type.supportsOwner(ResourceOwnerType.Domain)) {
+            for (DomainVO childDomain : domainChildren) {
+                recalculateDomainResourceCount(childDomain.getId(), type, recalculateAccounts);
+            }
+        }
+
+        final List<AccountVO> accounts = type.supportsOwner(ResourceOwnerType.Account) ? _accountDao.findActiveAccountsForDomain(domainId) : new ArrayList<AccountVO>();
+        if (recalculateAccounts) {
+            for (AccountVO account : accounts) {
+                recalculateAccountResourceCount(account.getId(), type);
+            }
+        }
+
         return Transaction.execute(new TransactionCallback<Long>() {
             @Override
             public Long doInTransaction(TransactionStatus status) {
                 long newResourceCount = 0;
+                // the account and child domain counts can't change while the domain rows are locked, as every update locks them too
                 lockDomainRows(domainId, type);
                 ResourceCountVO domainRC = _resourceCountDao.findByOwnerAndType(domainId, ResourceOwnerType.Domain, type);
                 long oldResourceCount = domainRC.getCount();
 
-                List<DomainVO> domainChildren = _domainDao.findImmediateChildrenForParent(domainId);
-                // for each child domain update the resource count
                 if (type.supportsOwner(ResourceOwnerType.Domain)) {
-
                     // calculate project count here
                     if (type == ResourceType.project) {
                         newResourceCount += _projectDao.countProjectsForDomain(domainId);
                     }
 
                     for (DomainVO childDomain : domainChildren) {
-                        long childDomainResourceCount = recalculateDomainResourceCount(childDomain.getId(), type);
-                        newResourceCount += childDomainResourceCount; // add the child domain count to parent domain count
+                        newResourceCount += getStoredResourceCount(childDomain.getId(), ResourceOwnerType.Domain, type); // add the child domain count to parent domain count
                     }
                 }
 
-                if (type.supportsOwner(ResourceOwnerType.Account)) {
-                    List<AccountVO> accounts = _accountDao.findActiveAccountsForDomain(domainId);
-                    for (AccountVO account : accounts) {
-                        long accountResourceCount = recalculateAccountResourceCount(account.getId(), type);
-                        newResourceCount += accountResourceCount; // add account's resource count to parent domain count
-                    }
+                for (AccountVO account : accounts) {
+                    newResourceCount += getStoredResourceCount(account.getId(), ResourceOwnerType.Account, type); // add account's resource count to parent domain count
                 }
-                _resourceCountDao.setResourceCount(domainId, ResourceOwnerType.Domain, type, newResourceCount);
 
                 if (oldResourceCount != newResourceCount) {
+                    _resourceCountDao.setResourceCount(domainId, ResourceOwnerType.Domain, type, newResourceCount);
                     s_logger.warn("Discrepency in the resource count has been detected " + "(original count = " + oldResourceCount + " correct count = " + newResourceCount + ") for Type = " + type
                             + " for Domain ID = " + domainId + " is fixed during resource count recalculation.");
                 }
@@ -891,6 +917,11 @@ public class ResourceLimitManagerImpl extends ManagerBase implements ResourceLim
         });
     }
 
+    private long getStoredResourceCount(final long ownerId, final ResourceOwnerType ownerType, final ResourceType type) {
+        final ResourceCountVO resourceCount = _resourceCountDao.findByOwnerAndType(ownerId, ownerType, type);
+        return resourceCount == null ? 0 : resourceCount.getCount();
+    }
+
     @DB
     protected long recalculateAccountResourceCount(final long accountId, final ResourceType type) {
         final Long newCount;
@@ -1100,7 +1131,7 @@ public class ResourceLimitManagerImpl extends ManagerBase implements ResourceLim
 
     @Override
     public ConfigKey<?>[] getConfigKeys() {
-        return new ConfigKey<?>[] {ResourceCountCheckInterval};
+        return new ConfigKey<?>[] {ResourceCountCheckInterval, ResourceCountCheckBatchSize};
     }
 
     protected class ResourceCountCheckTask extends ManagedContextRunnable {
@@ -1111,27 +1142,47 @@ public class ResourceLimitManagerImpl extends ManagerBase implements ResourceLim
         @Override
         protected void runInContext() {
             s_logger.info("Started resource counters recalculation periodic task.");
-            List<DomainVO> domains = _domainDao.findImmediateChildrenForParent(Domain.ROOT_DOMAIN);
 
-            // recalculateDomainResourceCount will take care of re-calculation of resource counts for sub-domains
-            // and accounts of the sub-domains also. so just loop through immediate children of root domain
-            for (Domain domain : domains) {
+            // recalculate the accounts first, each one in its own short transaction, resuming where the previous run stopped
+            // when only a batch of them is checked per run
+            List<AccountVO> accounts = listAccountsToCheck(ResourceCountCheckBatchSize.value());
+            for (AccountVO account : accounts) {
                 for (ResourceType type : ResourceCount.ResourceType.values()) {
-                    if (type.supportsOwner(ResourceOwnerType.Domain)) {
-                        recalculateDomainResourceCount(domain.getId(), type);
+                    if (type.supportsOwner(ResourceOwnerType.Account)) {
+                        recalculateAccountResourceCount(account.getId(), type);
                     }
                 }
             }
 
-            // run through the accounts in the root domain
-            List<AccountVO> accounts = _accountDao.findActiveAccountsForDomain(Domain.ROOT_DOMAIN);
-            for (AccountVO account : accounts) {
+            // then roll the domain counts up from the stored account counts, so the domain rows are only locked
+            // one domain at a time. Loop through the immediate children of root domain, their sub-domains are covered
+            List<DomainVO> domains = _domainDao.findImmediateChildrenForParent(Domain.ROOT_DOMAIN);
+            for (Domain domain : domains) {
                 for (ResourceType type : ResourceCount.ResourceType.values()) {
-                    if (type.supportsOwner(ResourceOwnerType.Account)) {
-                        recalculateAccountResourceCount(account.getId(), type);
+                    if (type.supportsOwner(ResourceOwnerType.Domain)) {
+                        recalculateDomainResourceCount(domain.getId(), type, false);
                     }
                 }
             }
+            s_logger.info("Finished resource counters recalculation periodic task, recalculated " + accounts.size() + " accounts.");
+        }
+
+        protected List<AccountVO> listAccountsToCheck(Integer batchSize) {
+            SearchCriteria<AccountVO> sc = activeAccountsAfterIdSearch.create();
+            if (batchSize == null || batchSize <= 0) {
+                sc.setParameters("id", 0L);
+                return _accountDao.search(sc, null);
+            }
+
+            sc.setParameters("id", _lastCheckedAccountId);
+            List<AccountVO> accounts = _accountDao.search(sc, new Filter(AccountVO.class, "id", true, 0L, batchSize.longValue()));
+            if (accounts.size() < batchSize) {
+                // reached the last account, start over from the first one on the next run
+                _lastCheckedAccountId = 0;
+            } else {
+                _lastCheckedAccountId = accounts.get(accounts.size() - 1).getId();
+            }
+            return accounts;
         }
     }
 }
@@ -58,6 +58,10 @@ public interface SnapshotManager extends Configurable {
     public static final ConfigKey<Boolean> BackupSnapshotAfterTakingSnapshot = new ConfigKey<Boolean>(Boolean.class, "snapshot.backup.to.secondary",  "Snapshots", "true",
             "Indicates whether to always backup primary storage snapshot to secondary storage. Keeping snapshots only on Primary storage is applicable for KVM + Ceph only.", false, ConfigKey.Scope.Global, null);
 
+    public static final ConfigKey<Boolean> KvmIncrementalSnapshot = new ConfigKey<Boolean>(Boolean.class, "kvm.incremental.snapshot", "Snapshots", "false",
+            "Indicates whether snapshots of KVM volumes on Ceph RBD are backed up to NFS secondary storage incrementally, holding only the data changed since the previous snapshot. "
+                    + "A full backup is taken every snapshot.delta.max snapshots. Templates can't be created directly from incrementally backed up snapshots.", true, ConfigKey.Scope.Global, null);
+
     void deletePoliciesForVolume(Long volumeId);
 
     /**
@@ -28,6 +28,8 @@ import java.util.UUID;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import javax.inject.Inject;
@@ -117,10 +119,13 @@ import com.cloud.api.ApiDBUtils;
 import com.cloud.api.ApiResponseHelper;
 import com.cloud.api.query.dao.UserVmJoinDao;
 import com.cloud.api.query.vo.UserVmJoinVO;
+import com.cloud.capacity.CapacityManager;
 import com.cloud.configuration.Config;
 import com.cloud.configuration.Resource.ResourceType;
+import com.cloud.dc.ClusterVO;
 import com.cloud.dc.DataCenter;
 import com.cloud.dc.DataCenterVO;
+import com.cloud.dc.dao.ClusterDao;
 import com.cloud.dc.dao.DataCenterDao;
 import com.cloud.deploy.DeployDestination;
 import com.cloud.domain.Domain;
@@ -193,6 +198,7 @@ import com.cloud.utils.component.ManagerBase;
 import com.cloud.utils.concurrency.NamedThreadFactory;
 import com.cloud.utils.db.DB;
 import com.cloud.utils.db.EntityManager;
+import com.cloud.utils.db.GlobalLock;
 import com.cloud.utils.db.SearchCriteria;
 import com.cloud.utils.db.Transaction;
 import com.cloud.utils.db.TransactionCallbackNoReturn;
@@ -212,6 +218,7 @@ import com.google.gson.GsonBuilder;
 
 public class TemplateManagerImpl extends ManagerBase implements TemplateManager, TemplateApiService, Configurable {
     private final static Logger s_logger = Logger.getLogger(TemplateManagerImpl.class);
+    private static final int ACQUIRE_GLOBAL_LOCK_TIMEOUT_FOR_COOPERATION = 5; // 5 seconds
 
     @Inject
     private VMTemplateDao _tmpltDao;
@@ -289,11 +296,14 @@ public class TemplateManagerImpl extends ManagerBase implements TemplateManager,
     private VMTemplateDetailsDao _tmpltDetailsDao;
     @Inject
     private HypervisorGuruManager _hvGuruMgr;
+    @Inject
+    private ClusterDao _clusterDao;
 
     private boolean _disableExtraction = false;
     private List<TemplateAdapter> _adapters;
 
     ExecutorService _preloadExecutor;
+    ScheduledExecutorService _prefetchExecutor;
 
     @Inject
     private StorageCacheManager cacheMgr;
@@ -670,6 +680,101 @@ public class TemplateManagerImpl extends ManagerBase implements TemplateManager,
         }
     }
 
+    /**
+     * Preloads a template that is being deployed a lot into the pools of the zone that can use it but don't have it yet,
+     * so the deployments that land on those pools don't have to wait for the copy. The copies of the template that are
+     * already there are kept from being garbage collected as unused, the copies of the templates that are no longer
+     * deployed are left to the storage garbage collector.
+     */
+    protected void prefetchTemplate(long templateId, long zoneId) {
+        VMTemplateVO template = _tmpltDao.findById(templateId);
+        if (template == null || template.getFormat() == ImageFormat.ISO || template.isDeployAsIs()) {
+            return;
+        }
+
+        for (StoragePoolVO pool : _poolDao.listByStatus(StoragePoolStatus.Up)) {
+            if (pool.getDataCenterId() != zoneId || pool.isManaged() || pool.getPoolType() == Storage.StoragePoolType.DatastoreCluster
+                    || getPoolHypervisorType(pool) != template.getHypervisorType()) {
+                continue;
+            }
+
+            VMTemplateStoragePoolVO templateStoragePoolRef = _tmpltPoolDao.findByPoolTemplate(pool.getId(), templateId, null);
+            if (templateStoragePoolRef != null) {
+                if (templateStoragePoolRef.getMarkedForGC()) {
+                    templateStoragePoolRef.setMarkedForGC(false);
+                    _tmpltPoolDao.update(templateStoragePoolRef.getId(), templateStoragePoolRef);
+                }
+                continue;
+            }
+
+            long templateSize = template.getSize() == null ? 0 : template.getSize();
+            if (pool.getUsedBytes() + templateSize > pool.getCapacityBytes() * CapacityManager.StorageCapacityDisableThreshold.valueIn(zoneId)) {
+                s_logger.debug("Skip prefetching template " + templateId + " into primary storage " + pool.getId() + " as the pool doesn't have enough free space");
+                continue;
+            }
+
+            prepareTemplateInOneStoragePool(template, pool);
+        }
+    }
+
+    private HypervisorType getPoolHypervisorType(StoragePoolVO pool) {
+        if (pool.getClusterId() == null) {
+            return pool.getHypervisor();
+        }
+        ClusterVO cluster = _clusterDao.findById(pool.getClusterId());
+        return cluster == null ? null : cluster.getHypervisorType();
+    }
+
+    protected class TemplatePrefetchTask extends ManagedContextRunnable {
+        @Override
+        protected void runInContext() {
+            // the deployment history is the same for all the management servers, only one of them has to act on it
+            GlobalLock prefetchLock = GlobalLock.getInternLock("TemplatePrefetch");
+            try {
+                if (prefetchLock.lock(ACQUIRE_GLOBAL_LOCK_TIMEOUT_FOR_COOPERATION)) {
+                    try {
+                        prefetchTemplates();
+                    } finally {
+                        prefetchLock.unlock();
+                    }
+                } else {
+                    s_logger.debug("Templates are being prefetched by another management server, skipping this run");
+                }
+            } finally {
+                prefetchLock.releaseRef();
+            }
+        }
+    }
+
+    /**
+     * Prefetches the templates from which at least template.prefetch.threshold volumes have been created in a zone
+     * over the last template.prefetch.interval.
+     */
+    protected void prefetchTemplates() {
+        try {
+            Date since = new Date(System.currentTimeMillis() - TemplatePrefetchInterval.value() * 1000L);
+            for (DataCenterVO zone : _dcDao.listEnabledZones()) {
+                int threshold = TemplatePrefetchThreshold.valueIn(zone.getId());
+                if (threshold <= 0) {
+                    continue;
+                }
+
+                Map<Long, Integer> volumesPerTemplate = new HashMap<Long, Integer>();
+                for (Long templateId : _volumeDao.listTemplateIdsOfVolumesCreatedAfter(zone.getId(), since)) {
+                    volumesPerTemplate.merge(templateId, 1, Integer::sum);
+                }
+                for (Map.Entry<Long, Integer> entry : volumesPerTemplate.entrySet()) {
+                    if (entry.getValue() >= threshold) {
+                        s_logger.debug(entry.getValue() + " volumes have been created from template " + entry.getKey() + " in zone " + zone.getId() + ", prefetching it");
+                        prefetchTemplate(entry.getKey(), zone.getId());
+                    }
+                }
+            }
+        } catch (Throwable e) {
+            s_logger.warn("Unexpected exception while prefetching templates", e);
+        }
+    }
+
     @Override
     @DB
     public VMTemplateStoragePoolVO prepareTemplateForCreate(VMTemplateVO templ, StoragePool pool) {
@@ -1072,11 +1177,16 @@ public class TemplateManagerImpl extends ManagerBase implements TemplateManager,
 
     @Override
     public boolean start() {
+        int prefetchInterval = TemplatePrefetchInterval.value();
+        if (prefetchInterval > 0) {
+            _prefetchExecutor.scheduleWithFixedDelay(new TemplatePrefetchTask(), prefetchInterval, prefetchInterval, TimeUnit.SECONDS);
+        }
         return true;
     }
 
     @Override
     public boolean stop() {
+        _prefetchExecutor.shutdownNow();
         return true;
     }
 
@@ -1087,6 +1197,7 @@ public class TemplateManagerImpl extends ManagerBase implements TemplateManager,
         _disableExtraction = (disableExtraction == null) ? false : Boolean.parseBoolean(disableExtraction);
 
         _preloadExecutor = Executors.newFixedThreadPool(TemplatePreloaderPoolSize.value(), new NamedThreadFactory("Template-Preloader"));
+        _prefetchExecutor = Executors.newScheduledThreadPool(1, new NamedThreadFactory("Template-Prefetcher"));
 
         return true;
     }
@@ -2266,7 +2377,7 @@ public class TemplateManagerImpl extends ManagerBase implements TemplateManager,
 
     @Override
     public ConfigKey<?>[] getConfigKeys() {
-        return new ConfigKey<?>[] {AllowPublicUserTemplates, TemplatePreloaderPoolSize};
+        return new ConfigKey<?>[] {AllowPublicUserTemplates, TemplatePreloaderPoolSize, TemplatePrefetchThreshold, TemplatePrefetchInterval, TemplateSyncPageSize};
     }
 
     public List<TemplateAdapter> getTemplateAdapters() {
@@ -35,8 +35,10 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
@@ -308,6 +310,7 @@ import com.cloud.utils.Journal;
 import com.cloud.utils.NumbersUtil;
 import com.cloud.utils.Pair;
 import com.cloud.utils.component.ManagerBase;
+import com.cloud.utils.concurrency.FairShareJobExecutor;
 import com.cloud.utils.concurrency.NamedThreadFactory;
 import com.cloud.utils.crypt.DBEncryptionUtil;
 import com.cloud.utils.crypt.RSAHelper;
@@ -324,6 +327,7 @@ import com.cloud.utils.db.UUIDManager;
 import com.cloud.utils.exception.CloudRuntimeException;
 import com.cloud.utils.exception.ExecutionException;
 import com.cloud.utils.fsm.NoTransitionException;
+import com.cloud.utils.mgmt.JmxUtil;
 import com.cloud.utils.net.NetUtils;
 import com.cloud.vm.VirtualMachine.State;
 import com.cloud.vm.dao.DomainRouterDao;
@@ -520,6 +524,9 @@ public class UserVmManagerImpl extends ManagerBase implements UserVmManager, Vir
     private ServiceOfferingJoinDao serviceOfferingJoinDao;
 
     private ScheduledExecutorService _executor = null;
+    // expunges run in parallel, with one lane per host the VMs last ran on
+    private FairShareJobExecutor _expungeExecutor = null;
+    private static final int EXPUNGE_WAIT_INTERVAL_SECONDS = 10;
     private ScheduledExecutorService _vmIpFetchExecutor = null;
     private int _expungeInterval;
     private int _expungeDelay;
@@ -575,6 +582,9 @@ public class UserVmManagerImpl extends ManagerBase implements UserVmManager, Vir
     private static final ConfigKey<Boolean> VmDestroyForcestop = new ConfigKey<Boolean>("Advanced", Boolean.class, "vm.destroy.forcestop", "false",
             "On destroy, force-stop takes this value ", true);
 
+    private static final ConfigKey<Integer> ExpungeWorkersPerHost = new ConfigKey<Integer>("Advanced", Integer.class, "expunge.workers.per.host", "2",
+            "Maximum number of VMs last running on the same host that are expunged at the same time, 0 for no limit other than expunge.workers", true);
+
     @Override
     public UserVmVO getVirtualMachine(long vmId) {
         return _vmDao.findById(vmId);
@@ -2201,7 +2211,13 @@ public class UserVmManagerImpl extends ManagerBase implements UserVmManager, Vir
         time = configs.get("expunge.delay");
         _expungeDelay = NumbersUtil.parseInt(time, _expungeInterval);
 
-        _executor = Executors.newScheduledThreadPool(wrks, new NamedThreadFactory("UserVm-Scavenger"));
+        _executor = Executors.newScheduledThreadPool(1, new NamedThreadFactory("UserVm-Scavenger"));
+        _expungeExecutor = new FairShareJobExecutor(wrks, "UserVm-Expunge");
+        try {
+            JmxUtil.registerMBean("UserVmManager", "Expunge Executor", _expungeExecutor);
+        } catch (Exception e) {
+            s_logger.warn("Unable to register the expunge executor to JMX monitoring", e);
+        }
 
         String vmIpWorkers = configs.get(VmIpFetchTaskWorkers.value());
         int vmipwrks = NumbersUtil.parseInt(vmIpWorkers, 10);
@@ -2278,6 +2294,7 @@ public class UserVmManagerImpl extends ManagerBase implements UserVmManager, Vir
     @Override
     public boolean stop() {
         _executor.shutdown();
+        _expungeExecutor.shutdown();
         _vmIpFetchExecutor.shutdown();
         return true;
     }
@@ -2496,7 +2513,7 @@ public class UserVmManagerImpl extends ManagerBase implements UserVmManager, Vir
     }
 
 
-    private class ExpungeTask extends ManagedContextRunnable {
+    protected class ExpungeTask extends ManagedContextRunnable {
         public ExpungeTask() {
         }
 
@@ -2514,13 +2531,7 @@ public class UserVmManagerImpl extends ManagerBase implements UserVmManager, Vir
                                 s_logger.info("Found " + vms.size() + " vms to expunge.");
                             }
                         }
-                        for (UserVmVO vm : vms) {
-                            try {
-                                expungeVm(vm.getId());
-                            } catch (Exception e) {
-                                s_logger.warn("Unable to expunge " + vm, e);
-                            }
-                        }
+                        expungeVms(vms);
                     } catch (Exception e) {
                         s_logger.error("Caught the following Exception", e);
                     } finally {
@@ -2532,6 +2543,45 @@ public class UserVmManagerImpl extends ManagerBase implements UserVmManager, Vir
             }
         }
 
+        /**
+         * Expunges the VMs on the expunge workers and waits for all of them, so the scan lock stays held until the
+         * VMs are gone. Expunges of VMs that last ran on the same host are limited, as they wait on the same agent.
+         */
+        protected void expungeVms(List<UserVmVO> vms) throws InterruptedException {
+            _expungeExecutor.setLaneConcurrencyLimit(ExpungeWorkersPerHost.value());
+            final CountDownLatch done = new CountDownLatch(vms.size());
+            for (final UserVmVO vm : vms) {
+                final Long hostId = vm.getLastHostId() != null ? vm.getLastHostId() : vm.getHostId();
+                try {
+                    _expungeExecutor.submit(hostId != null ? hostId : 0L, new ManagedContextRunnable() {
+                        @Override
+                        protected void runInContext() {
+                            try {
+                                expungeVm(vm.getId());
+                            } catch (Exception e) {
+                                s_logger.warn("Unable to expunge " + vm, e);
+                            } finally {
+                                done.countDown();
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    s_logger.debug("Expunge workers have been shut down, not expunging " + vm);
+                    done.countDown();
+                }
+            }
+            // Queued expunges are dropped when the workers are shut down, so don't wait for them forever while holding the scan lock
+            while (!done.await(EXPUNGE_WAIT_INTERVAL_SECONDS, TimeUnit.SECONDS)) {
+                if (_expungeExecutor.isShutdown()) {
+                    s_logger.info("Expunge workers have been shut down, not waiting for the " + done.getCount() + " remaining VM expunges");
+                    return;
+                }
+            }
+            if (vms.size() > 0) {
+                s_logger.info("Expunge run done, " + _expungeExecutor.getCompletedCount() + " VM expunges so far, taking " + _expungeExecutor.getAverageExecutionTime()
+                        + " ms on average");
+            }
+        }
     }
 
     @Override
@@ -7356,7 +7406,7 @@ public class UserVmManagerImpl extends ManagerBase implements UserVmManager, Vir
     public ConfigKey<?>[] getConfigKeys() {
         return new ConfigKey<?>[] {EnableDynamicallyScaleVm, AllowUserExpungeRecoverVm, VmIpFetchWaitInterval, VmIpFetchTrialMax,
                 VmIpFetchThreadPoolMax, VmIpFetchTaskWorkers, AllowDeployVmIfGivenHostFails, EnableAdditionalVmConfig, DisplayVMOVFProperties,
-                KvmAdditionalConfigAllowList, XenServerAdditionalConfigAllowList, VmwareAdditionalConfigAllowList};
+                KvmAdditionalConfigAllowList, XenServerAdditionalConfigAllowList, VmwareAdditionalConfigAllowList, ExpungeWorkersPerHost};
     }
 
     @Override
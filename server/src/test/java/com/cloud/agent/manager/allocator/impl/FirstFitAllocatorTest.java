@@ -0,0 +1,123 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.agent.manager.allocator.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import com.cloud.host.Host;
+import com.cloud.host.dao.HostDetailsDao;
+import com.cloud.offering.ServiceOffering;
+import com.cloud.resource.ResourceManager;
+import com.cloud.service.dao.ServiceOfferingDetailsDao;
+import com.cloud.storage.GuestOSCategoryVO;
+import com.cloud.storage.GuestOSVO;
+import com.cloud.storage.VMTemplateVO;
+import com.cloud.storage.dao.GuestOSCategoryDao;
+import com.cloud.storage.dao.GuestOSDao;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FirstFitAllocatorTest {
+
+    @Mock
+    HostDetailsDao hostDetailsDao;
+    @Mock
+    GuestOSDao guestOSDao;
+    @Mock
+    GuestOSCategoryDao guestOSCategoryDao;
+    @Mock
+    ServiceOfferingDetailsDao serviceOfferingDetailsDao;
+    @Mock
+    ResourceManager resourceMgr;
+
+    @InjectMocks
+    FirstFitAllocator allocator = new FirstFitAllocator();
+
+    private final Host linuxHost = mockHost(1L);
+    private final Host windowsHost = mockHost(2L);
+    private final Host untaggedHost = mockHost(3L);
+    private final Host invalidTagHost = mockHost(4L);
+    private final List<Host> hosts = Arrays.asList(linuxHost, windowsHost, untaggedHost, invalidTagHost);
+    private final GuestOSCategoryVO linux = mockGuestOSCategory(10L, "Linux");
+    private final GuestOSCategoryVO windows = mockGuestOSCategory(20L, "Windows");
+
+    private static Host mockHost(long id) {
+        Host host = Mockito.mock(Host.class);
+        Mockito.when(host.getId()).thenReturn(id);
+        return host;
+    }
+
+    private static GuestOSCategoryVO mockGuestOSCategory(long id, String name) {
+        GuestOSCategoryVO guestOSCategory = Mockito.mock(GuestOSCategoryVO.class);
+        Mockito.when(guestOSCategory.getId()).thenReturn(id);
+        Mockito.when(guestOSCategory.getName()).thenReturn(name);
+        return guestOSCategory;
+    }
+
+    @Before
+    public void setUp() {
+        Mockito.when(guestOSCategoryDao.listAll()).thenReturn(Arrays.asList(linux, windows));
+
+        Map<Long, String> hostDetails = new HashMap<Long, String>();
+        hostDetails.put(1L, "10");
+        hostDetails.put(2L, "20");
+        hostDetails.put(4L, "not-a-category");
+        Mockito.when(hostDetailsDao.findDetailByHostIds("guest.os.category.id", Arrays.asList(1L, 2L, 3L, 4L))).thenReturn(hostDetails);
+    }
+
+    @Test
+    public void testGetHostGuestOSCategories() {
+        Map<Long, String> hostGuestOSCategories = allocator.getHostGuestOSCategories(hosts);
+
+        Map<Long, String> expected = new HashMap<Long, String>();
+        expected.put(1L, "Linux");
+        expected.put(2L, "Windows");
+        assertEquals(expected, hostGuestOSCategories);
+        Mockito.verify(hostDetailsDao, Mockito.never()).findDetail(Mockito.anyLong(), Mockito.anyString());
+        Mockito.verify(guestOSCategoryDao, Mockito.times(1)).listAll();
+    }
+
+    @Test
+    public void testPrioritizeHostsByGuestOSCategory() {
+        VMTemplateVO template = Mockito.mock(VMTemplateVO.class);
+        Mockito.when(template.getGuestOSId()).thenReturn(100L);
+        GuestOSVO guestOS = Mockito.mock(GuestOSVO.class);
+        Mockito.when(guestOS.getCategoryId()).thenReturn(10L);
+        Mockito.when(guestOSDao.findById(100L)).thenReturn(guestOS);
+        Mockito.when(guestOSCategoryDao.findById(10L)).thenReturn(linux);
+        ServiceOffering offering = Mockito.mock(ServiceOffering.class);
+        allocator._checkHvm = false;
+
+        List<? extends Host> prioritizedHosts = allocator.prioritizeHosts(template, offering, hosts);
+
+        // hosts of the template's category first, hosts of another category last
+        assertEquals(Arrays.asList(linuxHost, untaggedHost, invalidTagHost, windowsHost), prioritizedHosts);
+        Mockito.verify(hostDetailsDao, Mockito.times(1)).findDetailByHostIds(Mockito.anyString(), Mockito.anyList());
+    }
+}
@@ -0,0 +1,128 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.api;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ApiRequestCoalescerTest {
+
+    private final ApiRequestCoalescer<String> coalescer = new ApiRequestCoalescer<String>();
+    private final AtomicInteger executions = new AtomicInteger();
+
+    private Callable<String> countingCall(final String result) {
+        return new Callable<String>() {
+            @Override
+            public String call() {
+                executions.incrementAndGet();
+                return result;
+            }
+        };
+    }
+
+    @Test
+    public void concurrentIdenticalRequestsShareOneExecution() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<String> first = executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return coalescer.execute("key", 0, new Callable<String>() {
+                        @Override
+                        public String call() throws Exception {
+                            executions.incrementAndGet();
+                            started.countDown();
+                            release.await(10, TimeUnit.SECONDS);
+                            return "response";
+                        }
+                    });
+                }
+            });
+            Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+            Assert.assertEquals(1, coalescer.getInFlightCount());
+
+            final AtomicReference<Thread> secondThread = new AtomicReference<Thread>();
+            final Future<String> second = executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    secondThread.set(Thread.currentThread());
+                    return coalescer.execute("key", 0, countingCall("other response"));
+                }
+            });
+            // let the first execution complete only once the second request is waiting for it
+            while (secondThread.get() == null || secondThread.get().getState() != Thread.State.WAITING) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            Assert.assertEquals("response", first.get(10, TimeUnit.SECONDS));
+            Assert.assertEquals("response", second.get(10, TimeUnit.SECONDS));
+            Assert.assertEquals(1, executions.get());
+            Assert.assertEquals(0, coalescer.getInFlightCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void completedResponseIsReusedWithinWindow() throws Exception {
+        Assert.assertEquals("first", coalescer.execute("key", 60000, countingCall("first")));
+        Assert.assertEquals("first", coalescer.execute("key", 60000, countingCall("second")));
+        Assert.assertEquals(1, executions.get());
+    }
+
+    @Test
+    public void completedResponseIsNotReusedWithoutWindow() throws Exception {
+        Assert.assertEquals("first", coalescer.execute("key", 0, countingCall("first")));
+        Assert.assertEquals("second", coalescer.execute("key", 0, countingCall("second")));
+        Assert.assertEquals(2, executions.get());
+    }
+
+    @Test
+    public void differentKeysAreNotShared() throws Exception {
+        Assert.assertEquals("first", coalescer.execute("key1", 60000, countingCall("first")));
+        Assert.assertEquals("second", coalescer.execute("key2", 60000, countingCall("second")));
+        Assert.assertEquals(2, executions.get());
+    }
+
+    @Test
+    public void failureIsNotReused() throws Exception {
+        try {
+            coalescer.execute("key", 60000, new Callable<String>() {
+                @Override
+                public String call() {
+                    throw new IllegalArgumentException("failed");
+                }
+            });
+            Assert.fail("the failure of the execution should be thrown");
+        } catch (final IllegalArgumentException e) {
+            Assert.assertEquals("failed", e.getMessage());
+        }
+        Assert.assertEquals("response", coalescer.execute("key", 60000, countingCall("response")));
+    }
+}
@@ -24,10 +24,16 @@ import static org.mockito.Mockito.when;
 import java.lang.reflect.Field;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 import java.util.TimeZone;
 
+import org.apache.cloudstack.api.ResponseObject.ResponseView;
+import org.apache.cloudstack.api.response.IPAddressResponse;
 import org.apache.cloudstack.api.response.NicSecondaryIpResponse;
+import org.apache.cloudstack.api.response.ResourceTagResponse;
 import org.apache.cloudstack.api.response.UsageRecordResponse;
 import org.apache.cloudstack.usage.UsageService;
 import org.junit.Before;
@@ -38,10 +44,18 @@ import org.mockito.Mockito;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
 
+import com.cloud.api.query.vo.ResourceTagJoinVO;
+import com.cloud.dc.Vlan.VlanType;
+import com.cloud.dc.VlanVO;
 import com.cloud.domain.DomainVO;
+import com.cloud.network.IpAddress;
+import com.cloud.server.ResourceTag;
+import com.cloud.server.ResourceTag.ResourceObjectType;
 import com.cloud.usage.UsageVO;
 import com.cloud.user.AccountVO;
+import com.cloud.utils.net.Ip;
 import com.cloud.vm.NicSecondaryIp;
 
 @RunWith(PowerMockRunner.class)
@@ -53,6 +67,8 @@ public class ApiResponseHelperTest {
 
     ApiResponseHelper helper;
 
+    List<ResourceTag> tags = new ArrayList<ResourceTag>();
+
     SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd hh:mm:ss ZZZ");
 
     @Before
@@ -141,4 +157,54 @@ public class ApiResponseHelperTest {
         assertTrue(response.getIpAddr().equals("ipv6"));
     }
 
+    private IpAddress mockIpAddress(long id, String address) {
+        IpAddress ipAddr = Mockito.mock(IpAddress.class);
+        when(ipAddr.getId()).thenReturn(id);
+        when(ipAddr.getUuid()).thenReturn("ip-" + id);
+        when(ipAddr.getAddress()).thenReturn(new Ip(address));
+        when(ipAddr.getState()).thenReturn(IpAddress.State.Allocated);
+        return ipAddr;
+    }
+
+    private ResourceTagResponse mockTag(long resourceId) {
+        ResourceTag tag = Mockito.mock(ResourceTag.class);
+        when(tag.getResourceId()).thenReturn(resourceId);
+        ResourceTagJoinVO tagView = Mockito.mock(ResourceTagJoinVO.class);
+        ResourceTagResponse tagResponse = new ResourceTagResponse();
+        when(ApiDBUtils.newResourceTagView(tag)).thenReturn(tagView);
+        when(ApiDBUtils.newResourceTagResponse(tagView, true)).thenReturn(tagResponse);
+        tags.add(tag);
+        return tagResponse;
+    }
+
+    @Test
+    public void createIPAddressResponsesGroupsTheTagsByAddress() {
+        PowerMockito.mockStatic(ApiDBUtils.class);
+        VlanVO vlan = Mockito.mock(VlanVO.class);
+        when(vlan.getVlanType()).thenReturn(VlanType.VirtualNetwork);
+        when(ApiDBUtils.findVlanById(anyLong())).thenReturn(vlan);
+        when(ApiDBUtils.findAccountById(anyLong())).thenReturn(new AccountVO());
+        when(ApiDBUtils.findDomainById(anyLong())).thenReturn(new DomainVO());
+        IpAddress first = mockIpAddress(1L, "10.0.0.1");
+        IpAddress second = mockIpAddress(2L, "10.0.0.2");
+        IpAddress untagged = mockIpAddress(3L, "10.0.0.3");
+        ResourceTagResponse firstTag = mockTag(1L);
+        ResourceTagResponse secondTag = mockTag(2L);
+        ResourceTagResponse otherFirstTag = mockTag(1L);
+        PowerMockito.doReturn(tags).when(ApiDBUtils.class);
+        ApiDBUtils.listByResourceTypeAndIds(ResourceObjectType.PublicIpAddress, Arrays.asList(1L, 2L, 3L));
+
+        List<IPAddressResponse> responses = helper.createIPAddressResponses(ResponseView.Restricted, Arrays.asList(first, second, untagged));
+
+        assertEquals(3, responses.size());
+        assertEquals("ip-1", responses.get(0).getId());
+        assertEquals(Arrays.asList(firstTag, otherFirstTag), Whitebox.getInternalState(responses.get(0), "tags"));
+        assertEquals("ip-2", responses.get(1).getId());
+        assertEquals(Arrays.asList(secondTag), Whitebox.getInternalState(responses.get(1), "tags"));
+        assertEquals("ip-3", responses.get(2).getId());
+        assertTrue(((List<?>)Whitebox.getInternalState(responses.get(2), "tags")).isEmpty());
+        // the tags of all the addresses are read in a single query
+        PowerMockito.verifyStatic(ApiDBUtils.class, Mockito.never());
+        ApiDBUtils.listByResourceTypeAndId(Mockito.any(ResourceObjectType.class), anyLong());
+    }
 }
@@ -0,0 +1,110 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.api.response;
+
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.cloudstack.api.response.IPAddressResponse;
+import org.apache.cloudstack.context.CallContext;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.cloud.user.Account;
+import com.cloud.user.AccountVO;
+import com.cloud.user.User;
+import com.cloud.user.UserVO;
+
+public class ApiResponseSerializerTest {
+
+    @After
+    public void tearDown() {
+        CallContext.unregister();
+    }
+
+    /**
+     * The unescaping done before the single pass replacement, one replaceAll over the whole string per escape found.
+     */
+    private static String unescapeWithReplaceAll(String escaped) {
+        String str = escaped;
+        Matcher matcher = Pattern.compile("\\\\u([0-9A-Fa-f]{4})").matcher(str);
+        while (matcher.find()) {
+            str = str.replaceAll("\\" + matcher.group(0), Character.toString((char)Integer.parseInt(matcher.group(1), 16)));
+        }
+        return str;
+    }
+
+    @Test
+    public void unescapeMatchesTheReplaceAllBehaviour() {
+        String[] escapedStrings = {
+                "",
+                "no escapes at all",
+                "\\u003cb\\u003ebold\\u003c/b\\u003e",
+                "{\"name\":\"a \\u0026 b\",\"description\":\"\\u0027quoted\\u0027 \\u003d \\u00e9t\\u00E9\"}",
+                "\\u0041\\u0042\\u0043 repeated \\u0041\\u0042\\u0043",
+                "\\u00zz is not an escape, \\u12 is too short, \\U0041 is upper case",
+                "trailing escape \\u003e"
+        };
+        for (String escaped : escapedStrings) {
+            Assert.assertEquals(unescapeWithReplaceAll(escaped), ApiResponseSerializer.unescape(escaped));
+        }
+    }
+
+    @Test
+    public void unescapeWithoutEscapesReturnsTheSameString() {
+        String str = "{\"count\":1}";
+        Assert.assertSame(str, ApiResponseSerializer.unescape(str));
+    }
+
+    private static void registerCaller(short accountType) {
+        Account account = new AccountVO("testaccount", 1, "networkdomain", accountType, UUID.randomUUID().toString());
+        User user = new UserVO(1, "testuser", "password", "firstname", "lastName", "email", "timezone", UUID.randomUUID().toString(), User.Source.UNKNOWN);
+        CallContext.register(user, account);
+    }
+
+    private static String serializeIpAddressResponse(short callerAccountType) {
+        registerCaller(callerAccountType);
+        try {
+            IPAddressResponse response = new IPAddressResponse();
+            response.setResponseName("associateipaddressresponse");
+            response.setObjectName("ipaddress");
+            response.setIpAddress("10.0.0.1");
+            response.setForDisplay(true);
+            return ApiResponseSerializer.toJSONSerializedString(response, new StringBuilder());
+        } finally {
+            CallContext.unregister();
+        }
+    }
+
+    @Test
+    public void adminOnlyFieldsAreSerializedForAdminsOnly() {
+        // the serializers are cached per account type, alternate between the types to check they do not leak into each other
+        String userJson = serializeIpAddressResponse(Account.ACCOUNT_TYPE_NORMAL);
+        String adminJson = serializeIpAddressResponse(Account.ACCOUNT_TYPE_ADMIN);
+        String userJsonAgain = serializeIpAddressResponse(Account.ACCOUNT_TYPE_NORMAL);
+        String adminJsonAgain = serializeIpAddressResponse(Account.ACCOUNT_TYPE_ADMIN);
+
+        Assert.assertTrue(userJson.contains("\"ipaddress\":\"10.0.0.1\""));
+        Assert.assertFalse(userJson.contains("fordisplay"));
+        Assert.assertTrue(adminJson.contains("\"ipaddress\":\"10.0.0.1\""));
+        Assert.assertTrue(adminJson.contains("\"fordisplay\":true"));
+        Assert.assertEquals(userJson, userJsonAgain);
+        Assert.assertEquals(adminJson, adminJsonAgain);
+    }
+}
@@ -21,16 +21,24 @@ import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isA;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
+import java.util.Collections;
+
 import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.Mockito;
 
 import com.cloud.capacity.dao.CapacityDao;
+import com.cloud.capacity.dao.CapacityDaoImpl.ClusterConsumption;
 import com.cloud.dc.ClusterDetailsDao;
 import com.cloud.dc.ClusterDetailsVO;
 import com.cloud.service.ServiceOfferingVO;
 import com.cloud.service.dao.ServiceOfferingDao;
+import com.cloud.utils.db.TransactionLegacy;
 import com.cloud.vm.VirtualMachine;
 
 public class CapacityManagerTest {
@@ -76,4 +84,42 @@ public class CapacityManagerTest {
         Assert.assertTrue(hasCapacity);
 
     }
+
+    @Test
+    public void listClustersCrossingThresholdReusesSnapshot() {
+        capMgr = setUp();
+        when(CDao.listClustersConsumptionAndThreshold(eq(Capacity.CAPACITY_TYPE_CPU), eq(1l), Mockito.anyString())).thenReturn(Arrays.asList(
+                new ClusterConsumption(1l, 700, 1000, 0.85f), new ClusterConsumption(2l, 100, 1000, 0.85f), new ClusterConsumption(3l, 900, 1000, null)));
+
+        Assert.assertEquals(Collections.singletonList(1l), capMgr.listClustersCrossingThreshold(Capacity.CAPACITY_TYPE_CPU, 1l, 200));
+        Assert.assertEquals(Arrays.asList(1l, 2l), capMgr.listClustersCrossingThreshold(Capacity.CAPACITY_TYPE_CPU, 1l, 800));
+        verify(CDao, times(1)).listClustersConsumptionAndThreshold(eq(Capacity.CAPACITY_TYPE_CPU), eq(1l), Mockito.anyString());
+
+        capMgr.discardClusterConsumptionSnapshots(1l);
+        capMgr.listClustersCrossingThreshold(Capacity.CAPACITY_TYPE_CPU, 1l, 200);
+        verify(CDao, times(2)).listClustersConsumptionAndThreshold(eq(Capacity.CAPACITY_TYPE_CPU), eq(1l), Mockito.anyString());
+    }
+
+    @Test
+    public void capacityChangedDiscardsTheSnapshotAgainAfterTheTransaction() {
+        capMgr = setUp();
+        when(CDao.listClustersConsumptionAndThreshold(eq(Capacity.CAPACITY_TYPE_CPU), eq(1l), Mockito.anyString())).thenReturn(
+                Collections.singletonList(new ClusterConsumption(1l, 700, 1000, 0.85f)));
+
+        TransactionLegacy txn = TransactionLegacy.open("capacityChangedDiscardsTheSnapshotAgainAfterTheTransaction");
+        try {
+            txn.start();
+            capMgr.capacityChanged(1l);
+            // a deployment planned before the commit takes a snapshot of the capacity that is being changed
+            capMgr.listClustersCrossingThreshold(Capacity.CAPACITY_TYPE_CPU, 1l, 200);
+            capMgr.listClustersCrossingThreshold(Capacity.CAPACITY_TYPE_CPU, 1l, 200);
+            verify(CDao, times(1)).listClustersConsumptionAndThreshold(eq(Capacity.CAPACITY_TYPE_CPU), eq(1l), Mockito.anyString());
+            txn.commit();
+        } finally {
+            txn.close();
+        }
+
+        capMgr.listClustersCrossingThreshold(Capacity.CAPACITY_TYPE_CPU, 1l, 200);
+        verify(CDao, times(2)).listClustersConsumptionAndThreshold(eq(Capacity.CAPACITY_TYPE_CPU), eq(1l), Mockito.anyString());
+    }
 }
@@ -16,30 +16,41 @@
 // under the License.
 package com.cloud.ha;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
-import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import javax.inject.Inject;
 
 import org.apache.cloudstack.engine.orchestration.service.VolumeOrchestrationService;
+import org.apache.cloudstack.framework.config.ConfigKey;
 import org.apache.cloudstack.framework.config.dao.ConfigurationDao;
+import org.apache.cloudstack.framework.config.impl.ConfigDepotImpl;
+import org.apache.cloudstack.framework.config.impl.ConfigurationVO;
 import org.apache.cloudstack.managed.context.ManagedContext;
 import org.apache.log4j.Logger;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import com.cloud.agent.AgentManager;
@@ -67,6 +78,7 @@ import com.cloud.storage.dao.GuestOSCategoryDao;
 import com.cloud.storage.dao.GuestOSDao;
 import com.cloud.storage.secondary.SecondaryStorageVmManager;
 import com.cloud.user.AccountManager;
+import com.cloud.utils.Pair;
 import com.cloud.vm.VMInstanceVO;
 import com.cloud.vm.VirtualMachine;
 import com.cloud.vm.VirtualMachineManager;
@@ -142,14 +154,6 @@ public class HighAvailabilityManagerImplTest {
             if (injectField.isAnnotationPresent(Inject.class)) {
                 injectField.setAccessible(true);
                 injectField.set(highAvailabilityManager, this.getClass().getDeclaredField(injectField.getName()).get(this));
-            } else if (injectField.getName().equals("_workers")) {
-                injectField.setAccessible(true);
-                for (Class<?> clz : HighAvailabilityManagerImpl.class.getDeclaredClasses()) {
-                    if (clz.getName().equals("com.cloud.ha.HighAvailabilityManagerImpl$WorkerThread")) {
-                        Object obj = Array.newInstance(clz, 0);
-                        injectField.set(highAvailabilityManager, obj);
-                    }
-                }
             } else if (injectField.getName().equals("_maxRetries")) {
                 injectField.setAccessible(true);
                 injectField.set(highAvailabilityManager, 5);
@@ -259,4 +263,150 @@ public class HighAvailabilityManagerImplTest {
     public void processWorkWithRetryCountNotExceeded() {
         processWorkWithRetryCount(3, Step.Scheduled);
     }
+
+    @Test
+    public void haWorkPriorityOrdersSystemVmsAndRestartsFirst() {
+        HaWorkVO userMigration = new HaWorkVO(1l, VirtualMachine.Type.User, WorkType.Migration, Step.Scheduled, 1l, VirtualMachine.State.Running, 0, 1l);
+        HaWorkVO userRestart = new HaWorkVO(2l, VirtualMachine.Type.User, WorkType.HA, Step.Scheduled, 1l, VirtualMachine.State.Running, 0, 1l);
+        HaWorkVO routerRestart = new HaWorkVO(3l, VirtualMachine.Type.DomainRouter, WorkType.HA, Step.Scheduled, 1l, VirtualMachine.State.Running, 0, 1l);
+        List<HaWorkVO> works = new ArrayList<HaWorkVO>(Arrays.asList(userMigration, userRestart, routerRestart));
+
+        Collections.sort(works, HighAvailabilityManagerImpl.HA_WORK_PRIORITY);
+
+        assertEquals(Arrays.asList(routerRestart, userRestart, userMigration), works);
+    }
+
+    @Test
+    public void investigateVmSkipsInvestigatorsThatDoNotKnowTheVm() throws Exception {
+        VMInstanceVO vm = Mockito.mock(VMInstanceVO.class);
+        Investigator unknown = Mockito.mock(Investigator.class);
+        Mockito.when(unknown.isVmAlive(vm, hostVO)).thenThrow(new Investigator.UnknownVM());
+        Investigator knowing = Mockito.mock(Investigator.class);
+        Mockito.when(knowing.isVmAlive(vm, hostVO)).thenReturn(false);
+        highAvailabilityManager.setInvestigators(Arrays.asList(unknown, knowing));
+        Mockito.when(_managedContext.callWithContext(Mockito.any(Callable.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                return ((Callable<?>)invocation.getArguments()[0]).call();
+            }
+        });
+        highAvailabilityManager._investigatorExecutor = Executors.newCachedThreadPool();
+        try {
+            assertEquals(knowing, highAvailabilityManager.investigateVm(vm, hostVO).first());
+            assertEquals(false, highAvailabilityManager.investigateVm(vm, hostVO).second());
+        } finally {
+            highAvailabilityManager._investigatorExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void investigateVmDoesNotUseLaterInvestigatorsWhenOneTimesOut() throws Exception {
+        VMInstanceVO vm = Mockito.mock(VMInstanceVO.class);
+        final CountDownLatch release = new CountDownLatch(1);
+        Investigator slow = Mockito.mock(Investigator.class);
+        Mockito.when(slow.isVmAlive(vm, hostVO)).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                release.await();
+                return true;
+            }
+        });
+        Investigator knowing = Mockito.mock(Investigator.class);
+        Mockito.when(knowing.isVmAlive(vm, hostVO)).thenReturn(false);
+        highAvailabilityManager.setInvestigators(Arrays.asList(slow, knowing));
+        Mockito.when(_managedContext.callWithContext(Mockito.any(Callable.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                return ((Callable<?>)invocation.getArguments()[0]).call();
+            }
+        });
+
+        ConfigDepotImpl configDepot = Mockito.mock(ConfigDepotImpl.class);
+        ConfigurationDao configurationDao = Mockito.mock(ConfigurationDao.class);
+        ConfigurationVO timeout = Mockito.mock(ConfigurationVO.class);
+        Mockito.when(configDepot.global()).thenReturn(configurationDao);
+        Mockito.when(configurationDao.findById(HighAvailabilityManager.InvestigatorTimeout.key())).thenReturn(timeout);
+        Mockito.when(timeout.getValue()).thenReturn("1");
+        ConfigKey.init(configDepot);
+        highAvailabilityManager._investigatorExecutor = Executors.newCachedThreadPool();
+        try {
+            Pair<Investigator, Boolean> investigation = highAvailabilityManager.investigateVm(vm, hostVO);
+            assertNull(investigation.first());
+            assertNull(investigation.second());
+        } finally {
+            release.countDown();
+            ConfigKey.init(null);
+            highAvailabilityManager._investigatorExecutor.shutdownNow();
+        }
+    }
+
+    private void initHaWorkerLimits(String perHost, String perCluster) {
+        ConfigDepotImpl configDepot = Mockito.mock(ConfigDepotImpl.class);
+        ConfigurationDao configurationDao = Mockito.mock(ConfigurationDao.class);
+        Mockito.when(configDepot.global()).thenReturn(configurationDao);
+        ConfigurationVO perHostLimit = Mockito.mock(ConfigurationVO.class);
+        Mockito.when(perHostLimit.getValue()).thenReturn(perHost);
+        Mockito.when(configurationDao.findById(HighAvailabilityManager.HAWorkersPerHost.key())).thenReturn(perHostLimit);
+        ConfigurationVO perClusterLimit = Mockito.mock(ConfigurationVO.class);
+        Mockito.when(perClusterLimit.getValue()).thenReturn(perCluster);
+        Mockito.when(configurationDao.findById(HighAvailabilityManager.HAWorkersPerCluster.key())).thenReturn(perClusterLimit);
+        ConfigKey.init(configDepot);
+    }
+
+    private HaWorkVO haWork(long instanceId, long hostId) {
+        return new HaWorkVO(instanceId, VirtualMachine.Type.User, WorkType.HA, Step.Scheduled, hostId, VirtualMachine.State.Running, 0, 1l);
+    }
+
+    @Test
+    public void dispatchPendingWorkLimitsWorkPerHost() {
+        initHaWorkerLimits("1", "0");
+        ThreadPoolExecutor workerExecutor = Mockito.mock(ThreadPoolExecutor.class);
+        highAvailabilityManager._workerExecutor = workerExecutor;
+        HaWorkVO firstOnHost1 = haWork(1l, 1l);
+        HaWorkVO secondOnHost1 = haWork(2l, 1l);
+        HaWorkVO onHost2 = haWork(3l, 2l);
+        highAvailabilityManager._pendingWork.addAll(Arrays.asList(firstOnHost1, secondOnHost1, onHost2));
+        try {
+            assertEquals(2, highAvailabilityManager.dispatchPendingWork());
+            assertEquals(Collections.singletonList(secondOnHost1), highAvailabilityManager._pendingWork);
+            assertEquals(0, highAvailabilityManager.dispatchPendingWork());
+
+            // the work left behind is dispatched once the work in progress on its host is done
+            ArgumentCaptor<Runnable> workerTasks = ArgumentCaptor.forClass(Runnable.class);
+            Mockito.verify(workerExecutor, Mockito.times(2)).execute(workerTasks.capture());
+            ((HighAvailabilityManagerImpl.WorkerTask)workerTasks.getAllValues().get(0)).runInContext();
+            assertEquals(1, highAvailabilityManager.dispatchPendingWork());
+            assertTrue(highAvailabilityManager._pendingWork.isEmpty());
+        } finally {
+            ConfigKey.init(null);
+        }
+    }
+
+    @Test
+    public void dispatchPendingWorkLimitsWorkPerCluster() {
+        initHaWorkerLimits("0", "2");
+        highAvailabilityManager._workerExecutor = Mockito.mock(ThreadPoolExecutor.class);
+        HostVO host1 = Mockito.mock(HostVO.class);
+        Mockito.when(host1.getClusterId()).thenReturn(10l);
+        Mockito.when(_hostDao.findById(1l)).thenReturn(host1);
+        HostVO host2 = Mockito.mock(HostVO.class);
+        Mockito.when(host2.getClusterId()).thenReturn(10l);
+        Mockito.when(_hostDao.findById(2l)).thenReturn(host2);
+        HostVO host3 = Mockito.mock(HostVO.class);
+        Mockito.when(host3.getClusterId()).thenReturn(20l);
+        Mockito.when(_hostDao.findById(3l)).thenReturn(host3);
+        HaWorkVO onHost1 = haWork(1l, 1l);
+        HaWorkVO onHost2 = haWork(2l, 2l);
+        HaWorkVO secondOnHost2 = haWork(3l, 2l);
+        HaWorkVO onHost3 = haWork(4l, 3l);
+        highAvailabilityManager._pendingWork.addAll(Arrays.asList(onHost1, onHost2, secondOnHost2, onHost3));
+        try {
+            assertEquals(3, highAvailabilityManager.dispatchPendingWork());
+            assertEquals(Collections.singletonList(secondOnHost2), highAvailabilityManager._pendingWork);
+            assertEquals(Integer.valueOf(2), highAvailabilityManager._workInProgressPerCluster.get(10l));
+            assertEquals(Integer.valueOf(1), highAvailabilityManager._workInProgressPerCluster.get(20l));
+        } finally {
+            ConfigKey.init(null);
+        }
+    }
 }
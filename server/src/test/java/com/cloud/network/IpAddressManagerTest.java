@@ -26,13 +26,21 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 
+import org.apache.cloudstack.framework.config.ConfigKey;
+import org.apache.cloudstack.framework.config.dao.ConfigurationDao;
+import org.apache.cloudstack.framework.config.impl.ConfigDepotImpl;
+import org.apache.cloudstack.framework.config.impl.ConfigurationVO;
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -50,6 +58,8 @@ import com.cloud.network.rules.StaticNatImpl;
 import com.cloud.offerings.NetworkOfferingVO;
 import com.cloud.offerings.dao.NetworkOfferingDao;
 import com.cloud.user.AccountVO;
+import com.cloud.utils.db.Filter;
+import com.cloud.utils.db.SearchCriteria;
 import com.cloud.utils.net.Ip;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -90,6 +100,11 @@ public class IpAddressManagerTest {
         Mockito.when(networkOfferingDao.findById(Mockito.anyLong())).thenReturn(networkOfferingVO);
     }
 
+    @After
+    public void tearDown() {
+        ConfigKey.init(null);
+    }
+
     @Test
     public void testGetStaticNatSourceIps() {
         String publicIpAddress = "192.168.1.3";
@@ -229,4 +244,88 @@ public class IpAddressManagerTest {
         return network;
     }
 
-}
\ No newline at end of file
+    private void setPublicIpAllocationCandidates(String candidates) {
+        ConfigDepotImpl configDepot = mock(ConfigDepotImpl.class);
+        ConfigurationDao configurationDao = mock(ConfigurationDao.class);
+        ConfigurationVO configuration = mock(ConfigurationVO.class);
+        when(configDepot.global()).thenReturn(configurationDao);
+        when(configurationDao.findById("public.ip.allocation.candidates")).thenReturn(configuration);
+        when(configuration.getValue()).thenReturn(candidates);
+        ConfigKey.init(configDepot);
+    }
+
+    private IPAddressVO mockFreeAddress(long id, long vlanId, boolean taken) {
+        IPAddressVO address = mock(IPAddressVO.class);
+        when(address.getId()).thenReturn(id);
+        when(address.getVlanId()).thenReturn(vlanId);
+        when(address.getAllocatedTime()).thenReturn(taken ? new Date() : null);
+        return address;
+    }
+
+    @Test
+    public void lockAvailableAddressLocksTheFirstFreeAddressByDefault() {
+        SearchCriteria<IPAddressVO> sc = mock(SearchCriteria.class);
+        List<IPAddressVO> firstFree = Collections.singletonList(ipAddressVO);
+        when(ipAddressDao.lockRows(Mockito.eq(sc), Mockito.any(Filter.class), Mockito.eq(true))).thenReturn(firstFree);
+
+        Assert.assertEquals(firstFree, ipAddressManager.lockAvailableAddress(sc, true));
+
+        Mockito.verify(ipAddressDao, Mockito.never()).search(Mockito.eq(sc), Mockito.any(Filter.class));
+        Mockito.verify(ipAddressDao, Mockito.never()).lockRow(Mockito.anyLong(), Mockito.anyBoolean());
+    }
+
+    @Test
+    public void lockAvailableAddressSkipsCandidatesTakenConcurrently() {
+        setPublicIpAllocationCandidates("3");
+        SearchCriteria<IPAddressVO> sc = mock(SearchCriteria.class);
+        IPAddressVO first = mockFreeAddress(1L, 10L, false);
+        IPAddressVO second = mockFreeAddress(2L, 10L, false);
+        IPAddressVO third = mockFreeAddress(3L, 10L, false);
+        when(ipAddressDao.search(Mockito.eq(sc), Mockito.any(Filter.class))).thenReturn(Arrays.asList(first, second, third));
+        // the first two candidates were allocated by another request between the search and the lock
+        IPAddressVO lockedThird = mockFreeAddress(3L, 10L, false);
+        when(ipAddressDao.lockRow(1L, true)).thenReturn(mockFreeAddress(1L, 10L, true));
+        when(ipAddressDao.lockRow(2L, true)).thenReturn(null);
+        when(ipAddressDao.lockRow(3L, true)).thenReturn(lockedThird);
+
+        List<IPAddressVO> addrs = ipAddressManager.lockAvailableAddress(sc, true);
+
+        Assert.assertEquals(Collections.singletonList(lockedThird), addrs);
+        Mockito.verify(ipAddressDao).lockRow(3L, true);
+        Mockito.verify(ipAddressDao, Mockito.never()).lockRows(Mockito.eq(sc), Mockito.any(Filter.class), Mockito.anyBoolean());
+    }
+
+    @Test
+    public void lockAvailableAddressOnlyPicksCandidatesOfThePreferredRange() {
+        setPublicIpAllocationCandidates("2");
+        SearchCriteria<IPAddressVO> sc = mock(SearchCriteria.class);
+        IPAddressVO preferred = mockFreeAddress(1L, 10L, false);
+        IPAddressVO otherRange = mockFreeAddress(2L, 20L, false);
+        when(ipAddressDao.search(Mockito.eq(sc), Mockito.any(Filter.class))).thenReturn(Arrays.asList(preferred, otherRange));
+        when(ipAddressDao.lockRow(1L, true)).thenReturn(preferred);
+
+        Assert.assertEquals(Collections.singletonList(preferred), ipAddressManager.lockAvailableAddress(sc, true));
+
+        Mockito.verify(ipAddressDao, Mockito.never()).lockRow(2L, true);
+    }
+
+    @Test
+    public void lockAvailableAddressFallsBackToTheFirstFreeAddressWhenEveryCandidateIsTaken() {
+        setPublicIpAllocationCandidates("2");
+        SearchCriteria<IPAddressVO> sc = mock(SearchCriteria.class);
+        IPAddressVO first = mockFreeAddress(1L, 10L, false);
+        IPAddressVO second = mockFreeAddress(2L, 10L, false);
+        when(ipAddressDao.search(Mockito.eq(sc), Mockito.any(Filter.class))).thenReturn(Arrays.asList(first, second));
+        when(ipAddressDao.lockRow(1L, true)).thenReturn(mockFreeAddress(1L, 10L, true));
+        when(ipAddressDao.lockRow(2L, true)).thenReturn(mockFreeAddress(2L, 10L, true));
+        List<IPAddressVO> firstFree = Collections.singletonList(ipAddressVO);
+        ArgumentCaptor<Filter> filter = ArgumentCaptor.forClass(Filter.class);
+        when(ipAddressDao.lockRows(Mockito.eq(sc), filter.capture(), Mockito.eq(true))).thenReturn(firstFree);
+
+        Assert.assertEquals(firstFree, ipAddressManager.lockAvailableAddress(sc, true));
+
+        Mockito.verify(ipAddressDao).lockRow(1L, true);
+        Mockito.verify(ipAddressDao).lockRow(2L, true);
+        Assert.assertEquals(Long.valueOf(1L), filter.getValue().getLimit());
+    }
+}
@@ -26,8 +26,12 @@ import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.cloudstack.framework.config.dao.ConfigurationDao;
 import org.apache.cloudstack.utils.identity.ManagementServerNode;
@@ -35,7 +39,9 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.powermock.reflect.Whitebox;
 
 import com.cloud.agent.AgentManager;
 import com.cloud.agent.api.CheckS2SVpnConnectionsAnswer;
@@ -51,6 +57,7 @@ import com.cloud.host.HostVO;
 import com.cloud.host.Status;
 import com.cloud.host.dao.HostDao;
 import com.cloud.hypervisor.Hypervisor;
+import com.cloud.network.Network.GuestType;
 import com.cloud.network.Site2SiteVpnConnection;
 import com.cloud.network.dao.FirewallRulesDao;
 import com.cloud.network.dao.IPAddressDao;
@@ -306,6 +313,48 @@ public class VirtualNetworkApplianceManagerImplTest {
         }
     }
 
+    private DomainRouterVO mockRouterOnHost(long hostId) {
+        DomainRouterVO router = Mockito.mock(DomainRouterVO.class);
+        when(router.getHostId()).thenReturn(hostId);
+        return router;
+    }
 
-
+    @Test
+    public void testNetworkUsageTaskSkipsHostsStillBeingCollected() throws Exception {
+        VirtualNetworkApplianceManagerImpl manager = Mockito.spy(virtualNetworkApplianceManagerImpl);
+        ExecutorService networkUsageExecutor = Mockito.mock(ExecutorService.class);
+        Whitebox.setInternalState(manager, "_networkUsageExecutor", networkUsageExecutor);
+        Whitebox.setInternalState(manager, "_routerStatsInterval", 0);
+
+        DomainRouterVO slowHostRouter = mockRouterOnHost(1L);
+        DomainRouterVO otherHostRouter = mockRouterOnHost(2L);
+        when(_routerDao.listByStateAndNetworkType(Mockito.eq(VirtualMachine.State.Running), Mockito.eq(GuestType.Isolated), anyLong()))
+                .thenReturn(Arrays.asList(slowHostRouter, otherHostRouter));
+        final List<DomainRouterVO> collected = Collections.synchronizedList(new ArrayList<DomainRouterVO>());
+        Mockito.doAnswer(invocation -> collected.add(invocation.getArgument(0))).when(manager).collectNetworkStatistics(any(DomainRouterVO.class), Mockito.isNull());
+
+        // the collection of the first host is still running when the next runs start, the one of the second host is done right away
+        final Future<?> slowHostCollection = Mockito.mock(Future.class);
+        final Future<?> otherHostCollection = Mockito.mock(Future.class);
+        when(slowHostCollection.isDone()).thenReturn(false);
+        when(otherHostCollection.isDone()).thenReturn(true);
+        Mockito.doAnswer(invocation -> {
+            ((Runnable)invocation.getArgument(0)).run();
+            return collected.get(collected.size() - 1) == slowHostRouter ? slowHostCollection : otherHostCollection;
+        }).when(networkUsageExecutor).submit(any(Runnable.class));
+
+        VirtualNetworkApplianceManagerImpl.NetworkUsageTask task = manager.new NetworkUsageTask();
+        task.runInContext();
+        assertEquals(2, collected.size());
+
+        collected.clear();
+        task.runInContext();
+        assertEquals(Collections.singletonList(otherHostRouter), collected);
+
+        when(slowHostCollection.isDone()).thenReturn(true);
+        collected.clear();
+        task.runInContext();
+        assertEquals(2, collected.size());
+        Mockito.verify(networkUsageExecutor, Mockito.times(5)).submit(any(Runnable.class));
+    }
 }
@@ -16,30 +16,72 @@
 // under the License.
 package com.cloud.resourcelimit;
 
-import junit.framework.TestCase;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
-import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.powermock.reflect.Whitebox;
 
+import com.cloud.configuration.Resource.ResourceOwnerType;
+import com.cloud.configuration.Resource.ResourceType;
+import com.cloud.configuration.ResourceCountVO;
 import com.cloud.configuration.ResourceLimit;
+import com.cloud.configuration.dao.ResourceCountDao;
+import com.cloud.domain.DomainVO;
+import com.cloud.domain.dao.DomainDao;
+import com.cloud.user.AccountVO;
+import com.cloud.user.dao.AccountDao;
+import com.cloud.utils.db.Filter;
+import com.cloud.utils.db.SearchBuilder;
+import com.cloud.utils.db.SearchCriteria;
 import com.cloud.vpc.MockResourceLimitManagerImpl;
 
-public class ResourceLimitManagerImplTest extends TestCase {
+@RunWith(MockitoJUnitRunner.class)
+public class ResourceLimitManagerImplTest {
     private static final Logger s_logger = Logger.getLogger(ResourceLimitManagerImplTest.class);
 
     MockResourceLimitManagerImpl _resourceLimitService = new MockResourceLimitManagerImpl();
 
-    @Override
-    @Before
-    public void setUp() {
+    @Mock
+    DomainDao _domainDao;
+    @Mock
+    AccountDao _accountDao;
+    @Mock
+    ResourceCountDao _resourceCountDao;
+    @Mock
+    SearchBuilder<AccountVO> activeAccountsAfterIdSearch;
+    @Mock
+    SearchCriteria<AccountVO> activeAccountsAfterIdCriteria;
 
-    }
+    @Spy
+    @InjectMocks
+    ResourceLimitManagerImpl resourceLimitManager = new ResourceLimitManagerImpl();
+
+    // the stored resource counts, keyed by owner type and id
+    Map<String, Long> storedCounts = new HashMap<String, Long>();
 
-    @Override
-    @After
-    public void tearDown() throws Exception {
+    @Before
+    public void setUp() {
+        Whitebox.setInternalState(resourceLimitManager, "activeAccountsAfterIdSearch", activeAccountsAfterIdSearch);
     }
 
     @Test
@@ -100,4 +142,143 @@ public class ResourceLimitManagerImplTest extends TestCase {
             fail(msg);
         }
     }
-}
\ No newline at end of file
+
+    private DomainVO mockDomain(long id) {
+        DomainVO domain = Mockito.mock(DomainVO.class);
+        Mockito.when(domain.getId()).thenReturn(id);
+        return domain;
+    }
+
+    private AccountVO mockAccount(long id) {
+        AccountVO account = Mockito.mock(AccountVO.class);
+        Mockito.lenient().when(account.getId()).thenReturn(id);
+        return account;
+    }
+
+    private void mockStoredResourceCounts() {
+        SearchBuilder<ResourceCountVO> resourceCountSearch = Mockito.mock(SearchBuilder.class);
+        Mockito.when(resourceCountSearch.create()).thenReturn(Mockito.mock(SearchCriteria.class));
+        Whitebox.setInternalState(resourceLimitManager, "ResourceCountSearch", resourceCountSearch);
+        Mockito.doAnswer(invocation -> {
+            long ownerId = invocation.getArgument(0);
+            ResourceOwnerType ownerType = invocation.getArgument(1);
+            Long count = storedCounts.get(ownerType + "-" + ownerId);
+            return count == null ? null : new ResourceCountVO(invocation.getArgument(2), count, ownerId, ownerType);
+        }).when(_resourceCountDao).findByOwnerAndType(Mockito.anyLong(), Mockito.any(ResourceOwnerType.class), Mockito.any(ResourceType.class));
+        Mockito.doAnswer(invocation -> {
+            storedCounts.put(invocation.getArgument(1) + "-" + invocation.getArgument(0), invocation.getArgument(3));
+            return null;
+        }).when(_resourceCountDao).setResourceCount(Mockito.anyLong(), Mockito.any(ResourceOwnerType.class), Mockito.any(ResourceType.class), Mockito.anyLong());
+    }
+
+    @Test
+    public void recalculateDomainResourceCountRollsUpFromTheChildDomains() {
+        // domain 1 holds account 10 and the sub-domain 2, which holds account 20; both domain counts are stale
+        DomainVO subDomain = mockDomain(2L);
+        Mockito.when(_domainDao.findImmediateChildrenForParent(1L)).thenReturn(Arrays.asList(subDomain));
+        Mockito.when(_domainDao.findImmediateChildrenForParent(2L)).thenReturn(new ArrayList<DomainVO>());
+        Mockito.when(_accountDao.findActiveAccountsForDomain(1L)).thenReturn(Arrays.asList(mockAccount(10L)));
+        Mockito.when(_accountDao.findActiveAccountsForDomain(2L)).thenReturn(Arrays.asList(mockAccount(20L)));
+        Mockito.doReturn(3L).when(resourceLimitManager).recalculateAccountResourceCount(10L, ResourceType.user_vm);
+        Mockito.doReturn(5L).when(resourceLimitManager).recalculateAccountResourceCount(20L, ResourceType.user_vm);
+        Mockito.when(_resourceCountDao.listAllRowsToUpdate(Mockito.anyLong(), Mockito.eq(ResourceOwnerType.Domain), Mockito.eq(ResourceType.user_vm)))
+                .thenReturn(Collections.<Long>emptySet());
+        mockStoredResourceCounts();
+        storedCounts.put(ResourceOwnerType.Account + "-10", 3L);
+        storedCounts.put(ResourceOwnerType.Account + "-20", 5L);
+        storedCounts.put(ResourceOwnerType.Domain + "-1", 0L);
+        storedCounts.put(ResourceOwnerType.Domain + "-2", 0L);
+
+        assertEquals(8L, resourceLimitManager.recalculateDomainResourceCount(1L, ResourceType.user_vm, true));
+
+        // the sub-domain is fixed before its parent sums it up
+        assertEquals(Long.valueOf(5L), storedCounts.get(ResourceOwnerType.Domain + "-2"));
+        assertEquals(Long.valueOf(8L), storedCounts.get(ResourceOwnerType.Domain + "-1"));
+        Mockito.verify(resourceLimitManager).recalculateAccountResourceCount(10L, ResourceType.user_vm);
+        Mockito.verify(resourceLimitManager).recalculateAccountResourceCount(20L, ResourceType.user_vm);
+    }
+
+    @Test
+    public void recalculateDomainResourceCountFromTheStoredAccountCounts() {
+        Mockito.when(_domainDao.findImmediateChildrenForParent(1L)).thenReturn(new ArrayList<DomainVO>());
+        Mockito.when(_accountDao.findActiveAccountsForDomain(1L)).thenReturn(Arrays.asList(mockAccount(10L), mockAccount(11L)));
+        Mockito.when(_resourceCountDao.listAllRowsToUpdate(1L, ResourceOwnerType.Domain, ResourceType.volume)).thenReturn(Collections.<Long>emptySet());
+        mockStoredResourceCounts();
+        storedCounts.put(ResourceOwnerType.Account + "-10", 2L);
+        storedCounts.put(ResourceOwnerType.Account + "-11", 4L);
+        storedCounts.put(ResourceOwnerType.Domain + "-1", 6L);
+
+        assertEquals(6L, resourceLimitManager.recalculateDomainResourceCount(1L, ResourceType.volume, false));
+
+        Mockito.verify(resourceLimitManager, Mockito.never()).recalculateAccountResourceCount(Mockito.anyLong(), Mockito.any(ResourceType.class));
+        Mockito.verify(_resourceCountDao, Mockito.never()).setResourceCount(Mockito.anyLong(), Mockito.any(ResourceOwnerType.class), Mockito.any(ResourceType.class),
+                Mockito.anyLong());
+    }
+
+    private List<AccountVO> mockAccounts(long... ids) {
+        List<AccountVO> accounts = new ArrayList<AccountVO>();
+        for (long id : ids) {
+            accounts.add(mockAccount(id));
+        }
+        return accounts;
+    }
+
+    @Test
+    public void listAccountsToCheckResumesAfterTheLastBatchAndWrapsAround() {
+        Mockito.when(activeAccountsAfterIdSearch.create()).thenReturn(activeAccountsAfterIdCriteria);
+        List<AccountVO> firstBatch = mockAccounts(1L, 2L);
+        List<AccountVO> lastBatch = mockAccounts(3L);
+        Mockito.when(_accountDao.search(Mockito.eq(activeAccountsAfterIdCriteria), Mockito.any(Filter.class))).thenReturn(firstBatch, lastBatch, firstBatch);
+        ResourceLimitManagerImpl.ResourceCountCheckTask task = resourceLimitManager.new ResourceCountCheckTask();
+
+        assertEquals(firstBatch, task.listAccountsToCheck(2));
+        assertEquals(2L, (long)Whitebox.getInternalState(resourceLimitManager, "_lastCheckedAccountId"));
+
+        // a short batch holds the last accounts, the next run starts over from the first one
+        assertEquals(lastBatch, task.listAccountsToCheck(2));
+        assertEquals(0L, (long)Whitebox.getInternalState(resourceLimitManager, "_lastCheckedAccountId"));
+
+        assertEquals(firstBatch, task.listAccountsToCheck(2));
+
+        ArgumentCaptor<Filter> filter = ArgumentCaptor.forClass(Filter.class);
+        Mockito.verify(_accountDao, Mockito.times(3)).search(Mockito.eq(activeAccountsAfterIdCriteria), filter.capture());
+        for (Filter batchFilter : filter.getAllValues()) {
+            assertEquals(Long.valueOf(2L), batchFilter.getLimit());
+        }
+        Mockito.verify(activeAccountsAfterIdCriteria, Mockito.times(2)).setParameters("id", 0L);
+        Mockito.verify(activeAccountsAfterIdCriteria).setParameters("id", 2L);
+    }
+
+    @Test
+    public void listAccountsToCheckWithAFullLastBatch() {
+        Mockito.when(activeAccountsAfterIdSearch.create()).thenReturn(activeAccountsAfterIdCriteria);
+        List<AccountVO> firstBatch = mockAccounts(1L, 2L);
+        List<AccountVO> lastBatch = mockAccounts(3L, 4L);
+        Mockito.when(_accountDao.search(Mockito.eq(activeAccountsAfterIdCriteria), Mockito.any(Filter.class)))
+                .thenReturn(firstBatch, lastBatch, new ArrayList<AccountVO>());
+        ResourceLimitManagerImpl.ResourceCountCheckTask task = resourceLimitManager.new ResourceCountCheckTask();
+
+        assertEquals(firstBatch, task.listAccountsToCheck(2));
+        assertEquals(lastBatch, task.listAccountsToCheck(2));
+        assertEquals(4L, (long)Whitebox.getInternalState(resourceLimitManager, "_lastCheckedAccountId"));
+
+        // the accounts ran out exactly at the end of a batch, so the next run finds none and starts over
+        assertTrue(task.listAccountsToCheck(2).isEmpty());
+        assertEquals(0L, (long)Whitebox.getInternalState(resourceLimitManager, "_lastCheckedAccountId"));
+        Mockito.verify(activeAccountsAfterIdCriteria).setParameters("id", 4L);
+    }
+
+    @Test
+    public void listAccountsToCheckWithoutBatchSizeListsAllAccounts() {
+        Mockito.when(activeAccountsAfterIdSearch.create()).thenReturn(activeAccountsAfterIdCriteria);
+        List<AccountVO> accounts = mockAccounts(1L, 2L, 3L);
+        Mockito.when(_accountDao.search(activeAccountsAfterIdCriteria, null)).thenReturn(accounts);
+        Whitebox.setInternalState(resourceLimitManager, "_lastCheckedAccountId", 2L);
+        ResourceLimitManagerImpl.ResourceCountCheckTask task = resourceLimitManager.new ResourceCountCheckTask();
+
+        assertEquals(accounts, task.listAccountsToCheck(0));
+
+        Mockito.verify(activeAccountsAfterIdCriteria).setParameters("id", 0L);
+        assertEquals(2L, (long)Whitebox.getInternalState(resourceLimitManager, "_lastCheckedAccountId"));
+    }
+}
@@ -22,6 +22,9 @@ package com.cloud.template;
 import com.cloud.agent.AgentManager;
 import com.cloud.api.query.dao.UserVmJoinDao;
 import com.cloud.configuration.Resource;
+import com.cloud.dc.ClusterVO;
+import com.cloud.dc.DataCenterVO;
+import com.cloud.dc.dao.ClusterDao;
 import com.cloud.dc.dao.DataCenterDao;
 import com.cloud.domain.dao.DomainDao;
 import com.cloud.event.dao.UsageEventDao;
@@ -78,7 +81,10 @@ import org.apache.cloudstack.engine.subsystem.api.storage.StorageStrategyFactory
 import org.apache.cloudstack.engine.subsystem.api.storage.TemplateDataFactory;
 import org.apache.cloudstack.engine.subsystem.api.storage.TemplateService;
 import org.apache.cloudstack.engine.subsystem.api.storage.VolumeDataFactory;
+import org.apache.cloudstack.framework.config.ConfigKey;
+import org.apache.cloudstack.framework.config.ScopedConfigStorage;
 import org.apache.cloudstack.framework.config.dao.ConfigurationDao;
+import org.apache.cloudstack.framework.config.impl.ConfigDepotImpl;
 import org.apache.cloudstack.framework.messagebus.MessageBus;
 import org.apache.cloudstack.storage.datastore.db.ImageStoreDao;
 import org.apache.cloudstack.storage.datastore.db.ImageStoreVO;
@@ -109,6 +115,8 @@ import org.springframework.test.context.support.AnnotationConfigContextLoader;
 import javax.inject.Inject;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
@@ -126,6 +134,8 @@ import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.eq;
 
@@ -184,6 +194,15 @@ public class TemplateManagerImplTest {
     @Inject
     HypervisorGuruManager _hvGuruMgr;
 
+    @Inject
+    DataCenterDao dcDao;
+
+    @Inject
+    VolumeDao volumeDao;
+
+    @Inject
+    ClusterDao clusterDao;
+
     public class CustomThreadPoolExecutor extends ThreadPoolExecutor {
         AtomicInteger ai = new AtomicInteger(0);
         public CustomThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
@@ -504,6 +523,90 @@ public class TemplateManagerImplTest {
         assertTrue("Template in a region store should have cross zones set", template.isCrossZones());
     }
 
+    @Test
+    public void testPrefetchTemplatesDeployedAtLeastThresholdTimes() {
+        ConfigDepotImpl configDepot = mock(ConfigDepotImpl.class);
+        ScopedConfigStorage zoneConfig = mock(ScopedConfigStorage.class);
+        when(configDepot.global()).thenReturn(mock(ConfigurationDao.class));
+        when(configDepot.findScopedConfigStorage(TemplateManager.TemplatePrefetchThreshold)).thenReturn(zoneConfig);
+        when(zoneConfig.getConfigValue(5L, TemplateManager.TemplatePrefetchThreshold)).thenReturn("2");
+        ConfigKey.init(configDepot);
+        try {
+            DataCenterVO zone = mock(DataCenterVO.class);
+            when(zone.getId()).thenReturn(5L);
+            when(dcDao.listEnabledZones()).thenReturn(Arrays.asList(zone));
+            when(volumeDao.listTemplateIdsOfVolumesCreatedAfter(eq(5L), any(Date.class))).thenReturn(Arrays.asList(301L, 302L, 301L));
+            when(vmTemplateDao.findById(301L)).thenReturn(null);
+
+            templateManager.prefetchTemplates();
+
+            verify(vmTemplateDao).findById(301L);
+            verify(vmTemplateDao, never()).findById(302L);
+        } finally {
+            ConfigKey.init(null);
+        }
+    }
+
+    private StoragePoolVO mockPrefetchPool(long id, long zoneId, Long clusterId, long usedBytes) {
+        StoragePoolVO pool = mock(StoragePoolVO.class);
+        when(pool.getId()).thenReturn(id);
+        when(pool.getDataCenterId()).thenReturn(zoneId);
+        when(pool.getClusterId()).thenReturn(clusterId);
+        when(pool.getPoolType()).thenReturn(Storage.StoragePoolType.NetworkFilesystem);
+        when(pool.getUsedBytes()).thenReturn(usedBytes);
+        when(pool.getCapacityBytes()).thenReturn(1000L);
+        return pool;
+    }
+
+    @Test
+    public void testPrefetchTemplateIntoPoolsThatCanUseIt() {
+        VMTemplateVO template = mock(VMTemplateVO.class);
+        when(template.getId()).thenReturn(401L);
+        when(template.getFormat()).thenReturn(Storage.ImageFormat.QCOW2);
+        when(template.getHypervisorType()).thenReturn(Hypervisor.HypervisorType.KVM);
+        when(template.getSize()).thenReturn(100L);
+        when(vmTemplateDao.findById(401L)).thenReturn(template);
+
+        ClusterVO kvmCluster = mock(ClusterVO.class);
+        when(kvmCluster.getHypervisorType()).thenReturn(Hypervisor.HypervisorType.KVM);
+        when(clusterDao.findById(10L)).thenReturn(kvmCluster);
+        ClusterVO vmwareCluster = mock(ClusterVO.class);
+        when(vmwareCluster.getHypervisorType()).thenReturn(Hypervisor.HypervisorType.VMware);
+        when(clusterDao.findById(11L)).thenReturn(vmwareCluster);
+
+        StoragePoolVO clusterPool = mockPrefetchPool(501L, 5L, 10L, 0L);
+        StoragePoolVO otherZonePool = mockPrefetchPool(502L, 6L, 10L, 0L);
+        StoragePoolVO managedPool = mockPrefetchPool(503L, 5L, 10L, 0L);
+        when(managedPool.isManaged()).thenReturn(true);
+        StoragePoolVO datastoreCluster = mockPrefetchPool(504L, 5L, 10L, 0L);
+        when(datastoreCluster.getPoolType()).thenReturn(Storage.StoragePoolType.DatastoreCluster);
+        StoragePoolVO otherHypervisorPool = mockPrefetchPool(505L, 5L, 11L, 0L);
+        // 800 used + 100 for the template is past the default disable threshold of 0.85
+        StoragePoolVO fullPool = mockPrefetchPool(506L, 5L, 10L, 800L);
+        StoragePoolVO poolWithTemplate = mockPrefetchPool(507L, 5L, 10L, 0L);
+        StoragePoolVO zoneWidePool = mockPrefetchPool(508L, 5L, null, 0L);
+        when(zoneWidePool.getHypervisor()).thenReturn(Hypervisor.HypervisorType.KVM);
+        when(primaryDataStoreDao.listByStatus(StoragePoolStatus.Up)).thenReturn(Arrays.asList(clusterPool, otherZonePool, managedPool, datastoreCluster,
+                otherHypervisorPool, fullPool, poolWithTemplate, zoneWidePool));
+
+        VMTemplateStoragePoolVO templateOnPool = mock(VMTemplateStoragePoolVO.class);
+        when(templateOnPool.getId()).thenReturn(7001L);
+        when(templateOnPool.getMarkedForGC()).thenReturn(true);
+        when(vmTemplatePoolDao.findByPoolTemplate(anyLong(), eq(401L), nullable(String.class))).thenReturn(null);
+        when(vmTemplatePoolDao.findByPoolTemplate(eq(507L), eq(401L), nullable(String.class))).thenReturn(templateOnPool);
+
+        ExecutorService preloadExecutor = new CustomThreadPoolExecutor(8, 8, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue(),
+                new NamedThreadFactory("Template-Preloader"));
+        templateManager._preloadExecutor = preloadExecutor;
+
+        templateManager.prefetchTemplate(401L, 5L);
+
+        assertTrue("Template is only prefetched into the cluster and zone wide KVM pools with room for it", ((CustomThreadPoolExecutor)preloadExecutor).getCount() == 2);
+        // the copy already on a pool is kept from being garbage collected
+        verify(templateOnPool).setMarkedForGC(false);
+        verify(vmTemplatePoolDao).update(7001L, templateOnPool);
+    }
+
     @Configuration
     @ComponentScan(basePackageClasses = {TemplateManagerImpl.class},
             includeFilters = {@ComponentScan.Filter(value = TestConfiguration.Library.class, type = FilterType.CUSTOM)},
@@ -705,6 +808,11 @@ public class TemplateManagerImplTest {
             return Mockito.mock(HypervisorGuruManager.class);
         }
 
+        @Bean
+        public ClusterDao clusterDao() {
+            return Mockito.mock(ClusterDao.class);
+        }
+
         public static class Library implements TypeFilter {
             @Override
             public boolean match(MetadataReader mdr, MetadataReaderFactory arg1) throws IOException {
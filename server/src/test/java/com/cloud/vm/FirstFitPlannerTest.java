@@ -118,6 +118,8 @@ public class FirstFitPlannerTest {
     @Inject
     CapacityDao capacityDao;
     @Inject
+    CapacityManager capacityMgr;
+    @Inject
     AccountManager accountMgr;
     @Inject
     ServiceOfferingDao serviceOfferingDao;
@@ -246,8 +248,8 @@ public class FirstFitPlannerTest {
 
         List<Long> clustersCrossingThreshold = new ArrayList<Long>();
         clustersCrossingThreshold.add(3L);
-        when(capacityDao.listClustersCrossingThreshold(
-                Mockito.anyShort(), Mockito.anyLong(), Mockito.anyString(), Mockito.anyLong())).thenReturn(clustersCrossingThreshold);
+        when(capacityMgr.listClustersCrossingThreshold(
+                Mockito.anyShort(), Mockito.anyLong(), Mockito.anyLong())).thenReturn(clustersCrossingThreshold);
 
         return clustersCrossingThreshold;
     }
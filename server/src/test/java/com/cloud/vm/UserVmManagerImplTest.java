@@ -28,9 +28,11 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.cloud.hypervisor.Hypervisor;
 import com.cloud.storage.DiskOfferingVO;
@@ -54,6 +56,7 @@ import org.mockito.Mockito;
 import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.reflect.Whitebox;
 
 import com.cloud.dc.DataCenterVO;
 import com.cloud.dc.dao.DataCenterDao;
@@ -75,6 +78,8 @@ import com.cloud.user.AccountManager;
 import com.cloud.user.AccountVO;
 import com.cloud.user.UserVO;
 import com.cloud.uservm.UserVm;
+import com.cloud.utils.concurrency.FairShareJobExecutor;
+import com.cloud.utils.exception.CloudRuntimeException;
 import com.cloud.vm.dao.NicDao;
 import com.cloud.vm.dao.UserVmDao;
 import com.cloud.vm.dao.UserVmDetailsDao;
@@ -558,4 +563,60 @@ public class UserVmManagerImplTest {
         Mockito.when(newRootDiskOffering.getName()).thenReturn("OfferingName");
         return newRootDiskOffering;
     }
+
+    private UserVmVO mockVmLastOnHost(long id, long lastHostId) {
+        UserVmVO vm = mock(UserVmVO.class);
+        when(vm.getId()).thenReturn(id);
+        when(vm.getLastHostId()).thenReturn(lastHostId);
+        return vm;
+    }
+
+    @Test
+    public void expungeVmsExpungesTheOtherVmsWhenOneFails() throws Exception {
+        FairShareJobExecutor expungeExecutor = new FairShareJobExecutor(2, "Test-UserVm-Expunge");
+        Whitebox.setInternalState(userVmManagerImpl, "_expungeExecutor", expungeExecutor);
+        try {
+            List<UserVmVO> vms = Arrays.asList(mockVmLastOnHost(1L, 10L), mockVmLastOnHost(2L, 10L), mockVmLastOnHost(3L, 20L));
+            Mockito.doReturn(userVmVoMock).when(userVmManagerImpl).expungeVm(1L);
+            Mockito.doThrow(new CloudRuntimeException("Unable to expunge")).when(userVmManagerImpl).expungeVm(2L);
+            Mockito.doReturn(userVmVoMock).when(userVmManagerImpl).expungeVm(3L);
+
+            userVmManagerImpl.new ExpungeTask().expungeVms(vms);
+
+            Mockito.verify(userVmManagerImpl).expungeVm(1L);
+            Mockito.verify(userVmManagerImpl).expungeVm(2L);
+            Mockito.verify(userVmManagerImpl).expungeVm(3L);
+        } finally {
+            expungeExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void expungeVmsLimitsTheExpungesPerHost() throws Exception {
+        FairShareJobExecutor expungeExecutor = new FairShareJobExecutor(4, "Test-UserVm-Expunge");
+        Whitebox.setInternalState(userVmManagerImpl, "_expungeExecutor", expungeExecutor);
+        try {
+            final AtomicInteger running = new AtomicInteger();
+            final AtomicInteger maxRunning = new AtomicInteger();
+            Mockito.doAnswer(invocation -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(100);
+                running.decrementAndGet();
+                return userVmVoMock;
+            }).when(userVmManagerImpl).expungeVm(anyLong());
+            List<UserVmVO> vms = new ArrayList<>();
+            for (long id = 1; id <= 5; id++) {
+                vms.add(mockVmLastOnHost(id, 10L));
+            }
+
+            userVmManagerImpl.new ExpungeTask().expungeVms(vms);
+
+            // expunge.workers.per.host defaults to 2, the other expunge workers stay idle
+            assertEquals(2, maxRunning.get());
+            assertEquals(2, expungeExecutor.getLaneConcurrencyLimit());
+            Mockito.verify(userVmManagerImpl, Mockito.times(5)).expungeVm(anyLong());
+        } finally {
+            expungeExecutor.shutdown();
+        }
+    }
 }
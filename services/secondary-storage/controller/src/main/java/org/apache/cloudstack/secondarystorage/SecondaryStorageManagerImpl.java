@@ -266,6 +266,12 @@ public class SecondaryStorageManagerImpl extends ManagerBase implements Secondar
     static final ConfigKey<Integer> MaxNumberOfSsvmsForMigration = new ConfigKey<Integer>("Advanced", Integer.class, "max.ssvm.count", "5",
             "Number of additional SSVMs to handle migration of data objects concurrently", true, ConfigKey.Scope.Global);
 
+    static final ConfigKey<Integer> SecStorageCopyThreads = new ConfigKey<Integer>("Advanced", Integer.class, "secstorage.copy.threads", "4",
+            "Number of chunks of files that a Secondary storage VM copies at once between NFS image stores", false, ConfigKey.Scope.Global);
+
+    static final ConfigKey<Integer> SecStorageCopyMaxRate = new ConfigKey<Integer>("Advanced", Integer.class, "secstorage.copy.max.rate", "0",
+            "Maximum rate (in MB/s) at which a Secondary storage VM copies files between NFS image stores. Setting this to 0 doesn't limit the rate", false, ConfigKey.Scope.Global);
+
     public SecondaryStorageManagerImpl() {
     }
 
@@ -1154,6 +1160,8 @@ public class SecondaryStorageManagerImpl extends ManagerBase implements Secondar
         }
         String nfsVersion = imageStoreDetailsUtil != null ? imageStoreDetailsUtil.getNfsVersion(secStore.getId()) : null;
         buf.append(" nfsVersion=").append(nfsVersion);
+        buf.append(" copy.threads=").append(SecStorageCopyThreads.value());
+        buf.append(" copy.max.rate=").append(SecStorageCopyMaxRate.value());
 
         String bootArgs = buf.toString();
         if (s_logger.isDebugEnabled()) {
@@ -1420,7 +1428,7 @@ public class SecondaryStorageManagerImpl extends ManagerBase implements Secondar
 
     @Override
     public ConfigKey<?>[] getConfigKeys() {
-        return new ConfigKey<?>[] {NTPServerConfig, MaxNumberOfSsvmsForMigration};
+        return new ConfigKey<?>[] {NTPServerConfig, MaxNumberOfSsvmsForMigration, SecStorageCopyThreads, SecStorageCopyMaxRate};
     }
 
 }
@@ -0,0 +1,253 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.storage.resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.cloud.utils.concurrency.NamedThreadFactory;
+
+/**
+ * Copies files and directories between the NFS stores mounted in the secondary storage VM.
+ * Files are split in chunks that are copied by several threads at once, each with positional transfers between
+ * its own file channels, and the copy can be throttled to a maximum rate. The chunks that were copied are recorded
+ * next to the destination file, so a copy that was interrupted resumes where it stopped when it is retried, unless
+ * the size or the modification time of the source changed meanwhile.
+ */
+public class NfsFileCopier {
+    private static final Logger s_logger = Logger.getLogger(NfsFileCopier.class);
+
+    /* the source and the chunks of the destination file that were copied, the file is removed once the copy is complete */
+    static final String PROGRESS_FILE_SUFFIX = ".copying";
+    /* the bytes transferred, and throttled, at a time */
+    private static final long TRANSFER_SIZE = 8L * 1024 * 1024;
+
+    private final ExecutorService _executor;
+    private final long _chunkSize;
+    private final long _maxBytesPerSecond;
+    private long _nextTransferTime = System.nanoTime();
+
+    /**
+     * @param threads the number of chunks that are copied at once, over all the copies
+     * @param chunkSize the size of the chunks, in bytes
+     * @param maxBytesPerSecond the maximum rate of all the copies together, or 0 to not throttle them
+     */
+    public NfsFileCopier(int threads, long chunkSize, long maxBytesPerSecond) {
+        _executor = Executors.newFixedThreadPool(threads, new NamedThreadFactory("NfsFileCopier"));
+        _chunkSize = chunkSize;
+        _maxBytesPerSecond = maxBytesPerSecond;
+    }
+
+    public void copyFile(File srcFile, File destFile) throws IOException {
+        Files.createDirectories(destFile.getParentFile().toPath());
+        copy(Collections.singletonList(new FileCopy(srcFile, destFile)));
+    }
+
+    /**
+     * Copies the content of the source directory into the destination directory, the files of all the
+     * subdirectories are copied at once.
+     */
+    public void copyDirectory(File srcDir, File destDir) throws IOException {
+        List<FileCopy> copies = new ArrayList<FileCopy>();
+        listFileCopies(srcDir, destDir, copies);
+        copy(copies);
+    }
+
+    public void shutdown() {
+        _executor.shutdownNow();
+    }
+
+    private void listFileCopies(File srcDir, File destDir, List<FileCopy> copies) throws IOException {
+        File[] files = srcDir.listFiles();
+        if (files == null) {
+            throw new IOException("Unable to list the files of " + srcDir);
+        }
+        Files.createDirectories(destDir.toPath());
+        for (File file : files) {
+            if (file.getName().endsWith(PROGRESS_FILE_SUFFIX)) {
+                continue;
+            }
+            File destFile = new File(destDir, file.getName());
+            if (file.isDirectory()) {
+                // the destination may be inside the source, it isn't copied into itself
+                if (!file.getCanonicalFile().equals(destDir.getCanonicalFile())) {
+                    listFileCopies(file, destFile, copies);
+                }
+            } else {
+                copies.add(new FileCopy(file, destFile));
+            }
+        }
+    }
+
+    private void copy(List<FileCopy> copies) throws IOException {
+        List<Future<Void>> chunks = new ArrayList<Future<Void>>();
+        try {
+            for (final FileCopy copy : copies) {
+                for (final long chunk : copy.start()) {
+                    chunks.add(_executor.submit(() -> {
+                        copy.copyChunk(chunk);
+                        return null;
+                    }));
+                }
+            }
+            for (Future<Void> chunk : chunks) {
+                chunk.get();
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while copying " + copies.size() + " files");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException)e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            for (Future<Void> chunk : chunks) {
+                chunk.cancel(true);
+            }
+        }
+
+        for (FileCopy copy : copies) {
+            copy.finish();
+        }
+    }
+
+    /**
+     * Waits until the bytes can be transferred without going over the maximum rate.
+     */
+    private void throttle(long bytes) throws IOException {
+        if (_maxBytesPerSecond <= 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long start = Math.max(_nextTransferTime, now);
+            _nextTransferTime = start + bytes * TimeUnit.SECONDS.toNanos(1) / _maxBytesPerSecond;
+            waitNanos = start - now;
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while throttling the copy");
+            }
+        }
+    }
+
+    private class FileCopy {
+        private final File _srcFile;
+        private final File _destFile;
+        private final File _progressFile;
+        private long _size;
+
+        FileCopy(File srcFile, File destFile) {
+            _srcFile = srcFile;
+            _destFile = destFile;
+            _progressFile = new File(destFile.getPath() + PROGRESS_FILE_SUFFIX);
+        }
+
+        /**
+         * @return the chunks that are left to copy
+         */
+        List<Long> start() throws IOException {
+            _size = _srcFile.length();
+            // the progress file starts with the source it was copying, its chunks are only kept while that source is unchanged
+            String source = _size + " " + _srcFile.lastModified();
+            Set<Long> copiedChunks = new HashSet<Long>();
+            if (_progressFile.exists()) {
+                List<String> lines = Files.readAllLines(_progressFile.toPath(), StandardCharsets.US_ASCII);
+                if (!lines.isEmpty() && lines.get(0).equals(source) && _destFile.length() == _size) {
+                    for (String chunk : lines.subList(1, lines.size())) {
+                        if (!chunk.isEmpty()) {
+                            copiedChunks.add(Long.parseLong(chunk));
+                        }
+                    }
+                    s_logger.debug("Resuming the copy of " + _srcFile + " to " + _destFile + ", " + copiedChunks.size() + " chunks were already copied");
+                } else {
+                    s_logger.debug(_srcFile + " changed since it was partially copied to " + _destFile + ", copying it again");
+                    Files.write(_progressFile.toPath(), (source + "\n").getBytes(StandardCharsets.US_ASCII));
+                }
+            } else if (_destFile.isFile() && _destFile.length() == _size && _destFile.lastModified() == _srcFile.lastModified()) {
+                s_logger.debug(_destFile + " was already copied from " + _srcFile);
+                return Collections.emptyList();
+            } else {
+                Files.write(_progressFile.toPath(), (source + "\n").getBytes(StandardCharsets.US_ASCII), StandardOpenOption.CREATE_NEW);
+            }
+
+            try (RandomAccessFile destFile = new RandomAccessFile(_destFile, "rw")) {
+                destFile.setLength(_size);
+            }
+
+            List<Long> chunks = new ArrayList<Long>();
+            for (long chunk = 0; chunk * _chunkSize < _size; chunk++) {
+                if (!copiedChunks.contains(chunk)) {
+                    chunks.add(chunk);
+                }
+            }
+            return chunks;
+        }
+
+        void copyChunk(long chunk) throws IOException {
+            long position = chunk * _chunkSize;
+            long end = Math.min(position + _chunkSize, _size);
+            try (FileChannel src = FileChannel.open(_srcFile.toPath(), StandardOpenOption.READ);
+                 FileChannel dest = FileChannel.open(_destFile.toPath(), StandardOpenOption.WRITE)) {
+                while (position < end) {
+                    long count = Math.min(TRANSFER_SIZE, end - position);
+                    throttle(count);
+                    long transferred = src.transferTo(position, count, dest.position(position));
+                    if (transferred <= 0) {
+                        throw new IOException(_srcFile + " was truncated while it was copied");
+                    }
+                    position += transferred;
+                }
+                // the chunk is only recorded as copied once it is on the storage
+                dest.force(false);
+            }
+            recordChunk(chunk);
+        }
+
+        private synchronized void recordChunk(long chunk) throws IOException {
+            Files.write(_progressFile.toPath(), (chunk + "\n").getBytes(StandardCharsets.US_ASCII), StandardOpenOption.APPEND);
+        }
+
+        void finish() throws IOException {
+            if (!_destFile.setLastModified(_srcFile.lastModified())) {
+                s_logger.warn("Unable to set the modification time of " + _destFile);
+            }
+            Files.deleteIfExists(_progressFile.toPath());
+        }
+    }
+}
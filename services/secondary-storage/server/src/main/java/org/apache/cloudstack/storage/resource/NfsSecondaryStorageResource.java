@@ -51,6 +51,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.naming.ConfigurationException;
 
@@ -155,6 +156,7 @@ import com.cloud.storage.template.RawImageProcessor;
 import com.cloud.storage.template.TARProcessor;
 import com.cloud.storage.template.TemplateConstants;
 import com.cloud.storage.template.TemplateLocation;
+import com.cloud.storage.template.TemplateManifest;
 import com.cloud.storage.template.TemplateProp;
 import com.cloud.storage.template.VhdProcessor;
 import com.cloud.storage.template.VmdkProcessor;
@@ -194,6 +196,8 @@ public class NfsSecondaryStorageResource extends ServerResourceBase implements S
     private static final String VOLUME_ROOT_DIR = "volumes";
     private static final String POST_UPLOAD_KEY_LOCATION = "/etc/cloudstack/agent/ms-psk";
     private static final String ORIGINAL_FILE_EXTENSION = ".orig";
+    private static final int DEFAULT_COPY_THREADS = 4;
+    private static final long DEFAULT_COPY_CHUNK_SIZE_MB = 128;
 
     private static final Map<String, String> updatableConfigData = Maps.newHashMap();
     static {
@@ -224,6 +228,9 @@ public class NfsSecondaryStorageResource extends ServerResourceBase implements S
     boolean _sslCopy = false;
 
     protected DownloadManager _dlMgr;
+    protected NfsFileCopier _fileCopier;
+    /* the templates of each NFS store as of the last listing, by the url of the store */
+    private final Map<String, TemplateManifest> _templateManifests = new ConcurrentHashMap<String, TemplateManifest>();
     protected UploadManager _upldMgr;
     private String _configSslScr;
     private String _configAuthScr;
@@ -879,6 +886,10 @@ public class NfsSecondaryStorageResource extends ServerResourceBase implements S
         if (srcData.getHypervisorType() == HypervisorType.XenServer) {
             return copySnapshotToTemplateFromNfsToNfsXenserver(cmd, srcData, srcDataStore, destData, destDataStore);
         } else if (srcData.getHypervisorType() == HypervisorType.KVM) {
+            if (srcData.getParentSnapshotPath() != null) {
+                // an incremental backup only holds the changes since its parent, copying it alone would give an incomplete template
+                return new CopyCmdAnswer("Creating a template from an incrementally backed up KVM snapshot is not supported, create a volume from the snapshot first");
+            }
             File srcFile = getFile(srcData.getPath(), srcDataStore.getUrl(), _nfsVersion);
             File destFile = getFile(destData.getPath(), destDataStore.getUrl(), _nfsVersion);
 
@@ -1324,7 +1335,7 @@ public class NfsSecondaryStorageResource extends ServerResourceBase implements S
                     destDir = new File(destFile.getParent());
                 }
                 try {
-                    FileUtils.copyDirectory((srcDir == null ? srcFile : srcDir), (destDir == null? destFile : destDir));
+                    getFileCopier().copyDirectory((srcDir == null ? srcFile : srcDir), (destDir == null? destFile : destDir));
                 } catch (IOException e) {
                     String msg = "Failed to copy file to destination";
                     s_logger.info(msg);
@@ -1334,11 +1345,11 @@ public class NfsSecondaryStorageResource extends ServerResourceBase implements S
                 destFile = new File(destFile, srcFile.getName());
                 try {
                 if (srcFile.isFile()) {
-                    FileUtils.copyFile(srcFile, destFile);
+                    getFileCopier().copyFile(srcFile, destFile);
                 } else {
                     // for vmware
                     srcFile = new File(srcFile.getParent());
-                    FileUtils.copyDirectory(srcFile, destFile);
+                    getFileCopier().copyDirectory(srcFile, destFile);
                 }
                 } catch (IOException e) {
                     String msg = "Failed to copy file to destination";
@@ -2143,9 +2154,13 @@ public class NfsSecondaryStorageResource extends ServerResourceBase implements S
         if (store instanceof NfsTO) {
             NfsTO nfs = (NfsTO)store;
             String secUrl = nfs.getUrl();
-            String root = getRootDir(secUrl, cmd.getNfsVersion());
-            Map<String, TemplateProp> templateInfos = _dlMgr.gatherTemplateInfo(root);
-            return new ListTemplateAnswer(secUrl, templateInfos);
+            TemplateManifest manifest = _templateManifests.computeIfAbsent(secUrl, url -> new TemplateManifest());
+            // the following pages of a full listing are served from the manifest, so the store is walked once per listing
+            if (cmd.getStartAfter() == null) {
+                String root = getRootDir(secUrl, cmd.getNfsVersion());
+                manifest.update(_dlMgr.gatherTemplateInfo(root));
+            }
+            return listTemplateManifest(cmd, secUrl, manifest);
         } else if (store instanceof SwiftTO) {
             SwiftTO swift = (SwiftTO)store;
             Map<String, TemplateProp> templateInfos = swiftListTemplate(swift);
@@ -2159,6 +2174,29 @@ public class NfsSecondaryStorageResource extends ServerResourceBase implements S
         }
     }
 
+    private ListTemplateAnswer listTemplateManifest(ListTemplateCommand cmd, String secUrl, TemplateManifest manifest) {
+        // the sequence is taken first, so a change recorded meanwhile is at worst listed twice
+        long sequence = manifest.getSequence();
+        ListTemplateAnswer answer;
+        if (manifest.getId().equals(cmd.getManifestId()) && manifest.hasChangesSince(cmd.getSinceSequence())) {
+            answer = new ListTemplateAnswer(secUrl, manifest.getChangedTemplates(cmd.getSinceSequence()));
+            answer.setIncremental(true);
+            answer.setRemovedTemplates(manifest.getRemovedTemplates(cmd.getSinceSequence()));
+        } else {
+            Map<String, TemplateProp> templateInfos = manifest.getTemplates(cmd.getStartAfter(), cmd.getPageSize());
+            answer = new ListTemplateAnswer(secUrl, templateInfos);
+            String lastTemplateName = null;
+            for (String templateName : templateInfos.keySet()) {
+                lastTemplateName = templateName;
+            }
+            if (lastTemplateName != null && manifest.hasTemplatesAfter(lastTemplateName)) {
+                answer.setLastTemplateName(lastTemplateName);
+            }
+        }
+        answer.setManifest(manifest.getId(), sequence);
+        return answer;
+    }
+
     private Answer execute(ListVolumeCommand cmd) {
         if (!_inSystemVM) {
             return new ListVolumeAnswer(cmd.getSecUrl(), null);
@@ -2649,6 +2687,11 @@ public class NfsSecondaryStorageResource extends ServerResourceBase implements S
         String value = (String)params.get("scripts.timeout");
         _timeout = NumbersUtil.parseInt(value, 1440) * 1000;
 
+        int copyThreads = (int)getCopyParam(params, "copy.threads", DEFAULT_COPY_THREADS, 1);
+        long copyChunkSize = getCopyParam(params, "copy.chunk.size", DEFAULT_COPY_CHUNK_SIZE_MB, 1) * 1024 * 1024;
+        long copyMaxRate = getCopyParam(params, "copy.max.rate", 0, 0) * 1024 * 1024;
+        _fileCopier = new NfsFileCopier(copyThreads, copyChunkSize, copyMaxRate);
+
         _storage = (StorageLayer)params.get(StorageLayer.InstanceConfigKey);
         configureStorageLayerClass(params);
 
@@ -3059,6 +3102,29 @@ public class NfsSecondaryStorageResource extends ServerResourceBase implements S
         return nfsHostIp;
     }
 
+    /**
+     * Returns the value of the copy parameter, or its default if the configured value is below the minimum, as
+     * the file copier cannot work with no threads or empty chunks.
+     */
+    private static long getCopyParam(Map<String, Object> params, String name, long defaultValue, long minValue) {
+        long value = NumbersUtil.parseLong((String)params.get(name), defaultValue);
+        if (value < minValue) {
+            s_logger.warn("Invalid value " + value + " for " + name + ", it must be at least " + minValue + ". Using the default of " + defaultValue + " instead.");
+            return defaultValue;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the file copier, which is created with the default parameters when the resource was not configured.
+     */
+    protected synchronized NfsFileCopier getFileCopier() {
+        if (_fileCopier == null) {
+            _fileCopier = new NfsFileCopier(DEFAULT_COPY_THREADS, DEFAULT_COPY_CHUNK_SIZE_MB * 1024 * 1024, 0);
+        }
+        return _fileCopier;
+    }
+
     @Override
     public boolean start() {
         return true;
@@ -3066,6 +3132,9 @@ public class NfsSecondaryStorageResource extends ServerResourceBase implements S
 
     @Override
     public boolean stop() {
+        if (_fileCopier != null) {
+            _fileCopier.shutdown();
+        }
         return true;
     }
 
@@ -0,0 +1,159 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.storage.resource;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class NfsFileCopierTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final NfsFileCopier copier = new NfsFileCopier(3, 1000, 0);
+
+    @After
+    public void tearDown() {
+        copier.shutdown();
+    }
+
+    private File createFile(File dir, String name, int size) throws IOException {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        File file = new File(dir, name);
+        Files.createDirectories(dir.toPath());
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
+    @Test
+    public void testCopyFileInChunks() throws IOException {
+        File srcFile = createFile(folder.newFolder("src"), "template.qcow2", 10500);
+        File destFile = new File(folder.getRoot(), "dest/template.qcow2");
+
+        copier.copyFile(srcFile, destFile);
+
+        assertArrayEquals(Files.readAllBytes(srcFile.toPath()), Files.readAllBytes(destFile.toPath()));
+        assertEquals(srcFile.lastModified(), destFile.lastModified());
+        assertFalse(new File(destFile.getPath() + NfsFileCopier.PROGRESS_FILE_SUFFIX).exists());
+    }
+
+    @Test
+    public void testCopyDirectory() throws IOException {
+        File srcDir = folder.newFolder("src");
+        File srcFile = createFile(srcDir, "volume.ova", 2500);
+        File srcSubFile = createFile(new File(srcDir, "disks"), "disk1.vmdk", 999);
+        createFile(srcDir, "empty.properties", 0);
+        File destDir = new File(folder.getRoot(), "dest");
+
+        copier.copyDirectory(srcDir, destDir);
+
+        assertArrayEquals(Files.readAllBytes(srcFile.toPath()), Files.readAllBytes(new File(destDir, "volume.ova").toPath()));
+        assertArrayEquals(Files.readAllBytes(srcSubFile.toPath()), Files.readAllBytes(new File(destDir, "disks/disk1.vmdk").toPath()));
+        assertEquals(0, new File(destDir, "empty.properties").length());
+    }
+
+    /**
+     * Leaves the state of an interrupted copy of the source that only copied its second chunk, with other bytes
+     * than the source's in that chunk to tell whether it is copied again.
+     */
+    private File interruptCopy(File srcFile, File destFile) throws IOException {
+        byte[] partial = new byte[(int)srcFile.length()];
+        Arrays.fill(partial, 1000, 2000, (byte)7);
+        Files.write(destFile.toPath(), partial);
+        File progressFile = new File(destFile.getPath() + NfsFileCopier.PROGRESS_FILE_SUFFIX);
+        Files.write(progressFile.toPath(), (srcFile.length() + " " + srcFile.lastModified() + "\n1\n").getBytes(StandardCharsets.US_ASCII));
+        return progressFile;
+    }
+
+    @Test
+    public void testResumeCopy() throws IOException {
+        File srcFile = createFile(folder.newFolder("src"), "template.qcow2", 3000);
+        File destFile = new File(folder.newFolder("dest"), "template.qcow2");
+        File progressFile = interruptCopy(srcFile, destFile);
+
+        copier.copyFile(srcFile, destFile);
+
+        byte[] expected = Files.readAllBytes(srcFile.toPath());
+        Arrays.fill(expected, 1000, 2000, (byte)7);
+        assertArrayEquals(expected, Files.readAllBytes(destFile.toPath()));
+        assertFalse(progressFile.exists());
+    }
+
+    @Test
+    public void testRestartCopyWhenTheSourceChanged() throws IOException {
+        File srcFile = createFile(folder.newFolder("src"), "template.qcow2", 3000);
+        File destFile = new File(folder.newFolder("dest"), "template.qcow2");
+        File progressFile = interruptCopy(srcFile, destFile);
+        // the source is replaced by another one of the same size
+        long lastModified = srcFile.lastModified();
+        byte[] changed = Files.readAllBytes(srcFile.toPath());
+        changed[1500] = (byte)~changed[1500];
+        Files.write(srcFile.toPath(), changed);
+        assertTrue(srcFile.setLastModified(lastModified + 2000));
+
+        copier.copyFile(srcFile, destFile);
+
+        assertArrayEquals(changed, Files.readAllBytes(destFile.toPath()));
+        assertFalse(progressFile.exists());
+    }
+
+    @Test
+    public void testRestartCopyWithoutTheSourceInTheProgressFile() throws IOException {
+        File srcFile = createFile(folder.newFolder("src"), "template.qcow2", 3000);
+        File destFile = new File(folder.newFolder("dest"), "template.qcow2");
+        File progressFile = interruptCopy(srcFile, destFile);
+        Files.write(progressFile.toPath(), "1\n".getBytes(StandardCharsets.US_ASCII));
+
+        copier.copyFile(srcFile, destFile);
+
+        assertArrayEquals(Files.readAllBytes(srcFile.toPath()), Files.readAllBytes(destFile.toPath()));
+        assertFalse(progressFile.exists());
+    }
+
+    @Test
+    public void testThrottledCopy() throws IOException {
+        NfsFileCopier throttledCopier = new NfsFileCopier(2, 1000, 10000);
+        try {
+            File srcFile = createFile(folder.newFolder("src"), "snapshot", 5000);
+            File destFile = new File(folder.getRoot(), "dest/snapshot");
+
+            long start = System.nanoTime();
+            throttledCopier.copyFile(srcFile, destFile);
+
+            // the first 1000 bytes go at once, the other 4000 take 400 ms at 10000 bytes/s
+            assertTrue(System.nanoTime() - start >= 350_000_000L);
+            assertArrayEquals(Files.readAllBytes(srcFile.toPath()), Files.readAllBytes(destFile.toPath()));
+        } finally {
+            throttledCopier.shutdown();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.concurrency;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.StandardMBean;
+
+/**
+ * Runs jobs on a fixed number of threads, giving every lane (e.g. an account) a fair share of them. Jobs of a lane run
+ * in submission order, and free threads are handed out to the lanes that have jobs waiting in round robin, so a lane
+ * with thousands of queued jobs cannot keep the jobs of other lanes waiting behind them. Optionally, the number of
+ * jobs of a single lane running at the same time can be capped.
+ */
+public class FairShareJobExecutor extends StandardMBean implements FairShareJobExecutorMBean {
+
+    private static class Lane {
+        final Object key;
+        final ArrayDeque<Task> tasks = new ArrayDeque<Task>();
+        int running;
+        boolean ready;
+
+        Lane(Object key) {
+            this.key = key;
+        }
+    }
+
+    private static class Task {
+        final Runnable runnable;
+        final long submittedAt = System.currentTimeMillis();
+
+        Task(Runnable runnable) {
+            this.runnable = runnable;
+        }
+    }
+
+    private final ExecutorService _executor;
+    private final int _poolSize;
+    private volatile int _laneConcurrencyLimit;
+
+    // guarded by this
+    private final Map<Object, Lane> _lanes = new HashMap<Object, Lane>();
+    private final ArrayDeque<Lane> _readyLanes = new ArrayDeque<Lane>();
+    private int _running;
+    private int _queued;
+    private boolean _shutdown;
+
+    private final AtomicLong _completedCount = new AtomicLong();
+    private final AtomicLong _totalWaitTime = new AtomicLong();
+    private final AtomicLong _totalExecutionTime = new AtomicLong();
+
+    public FairShareJobExecutor(int poolSize, String threadNamePrefix) {
+        super(FairShareJobExecutorMBean.class, false);
+        _poolSize = poolSize;
+        _executor = Executors.newFixedThreadPool(poolSize, new NamedThreadFactory(threadNamePrefix));
+    }
+
+    /**
+     * @param limit maximum number of jobs of a single lane that run at the same time, 0 or less for no limit other than the pool size
+     */
+    public void setLaneConcurrencyLimit(int limit) {
+        if (limit != _laneConcurrencyLimit) {
+            _laneConcurrencyLimit = limit;
+            synchronized (this) {
+                if (_shutdown) {
+                    return;
+                }
+                // lanes held back by a lower limit may be allowed to run more jobs now
+                for (Lane lane : _lanes.values()) {
+                    markReadyIfRunnable(lane);
+                }
+                dispatch();
+            }
+        }
+    }
+
+    public synchronized void submit(Object laneKey, Runnable runnable) {
+        if (_shutdown) {
+            throw new RejectedExecutionException("Executor has been shut down");
+        }
+        Lane lane = _lanes.get(laneKey);
+        if (lane == null) {
+            lane = new Lane(laneKey);
+            _lanes.put(laneKey, lane);
+        }
+        lane.tasks.add(new Task(runnable));
+        _queued++;
+        markReadyIfRunnable(lane);
+        dispatch();
+    }
+
+    /**
+     * Stops accepting jobs. Running jobs finish, but queued jobs that have not started yet are never run.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            _shutdown = true;
+        }
+        _executor.shutdown();
+    }
+
+    public synchronized boolean isShutdown() {
+        return _shutdown;
+    }
+
+    private boolean isBelowLimit(Lane lane) {
+        int limit = _laneConcurrencyLimit;
+        return limit <= 0 || lane.running < limit;
+    }
+
+    private void markReadyIfRunnable(Lane lane) {
+        if (!lane.ready && !lane.tasks.isEmpty() && isBelowLimit(lane)) {
+            lane.ready = true;
+            _readyLanes.add(lane);
+        }
+    }
+
+    private void dispatch() {
+        while (_running < _poolSize && !_readyLanes.isEmpty()) {
+            final Lane lane = _readyLanes.poll();
+            lane.ready = false;
+            final Task task = lane.tasks.poll();
+            lane.running++;
+            _running++;
+            _queued--;
+            // back of the line, so the other lanes with waiting jobs get a thread first
+            markReadyIfRunnable(lane);
+            _executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final long startedAt = System.currentTimeMillis();
+                    try {
+                        task.runnable.run();
+                    } finally {
+                        final long executionTime = System.currentTimeMillis() - startedAt;
+                        completed(lane);
+                        _totalWaitTime.addAndGet(startedAt - task.submittedAt);
+                        _totalExecutionTime.addAndGet(executionTime);
+                        _completedCount.incrementAndGet();
+                    }
+                }
+            });
+        }
+    }
+
+    private synchronized void completed(Lane lane) {
+        lane.running--;
+        _running--;
+        if (lane.running == 0 && lane.tasks.isEmpty()) {
+            _lanes.remove(lane.key);
+        } else {
+            markReadyIfRunnable(lane);
+        }
+        if (!_shutdown) {
+            dispatch();
+        }
+    }
+
+    @Override
+    public int getPoolSize() {
+        return _poolSize;
+    }
+
+    @Override
+    public synchronized int getActiveCount() {
+        return _running;
+    }
+
+    @Override
+    public synchronized int getQueuedCount() {
+        return _queued;
+    }
+
+    @Override
+    public synchronized int getLaneCount() {
+        return _lanes.size();
+    }
+
+    @Override
+    public int getLaneConcurrencyLimit() {
+        return _laneConcurrencyLimit;
+    }
+
+    @Override
+    public long getCompletedCount() {
+        return _completedCount.get();
+    }
+
+    @Override
+    public long getAverageWaitTime() {
+        long completed = _completedCount.get();
+        return completed == 0 ? 0 : _totalWaitTime.get() / completed;
+    }
+
+    @Override
+    public long getAverageExecutionTime() {
+        long completed = _completedCount.get();
+        return completed == 0 ? 0 : _totalExecutionTime.get() / completed;
+    }
+}
@@ -0,0 +1,167 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.concurrency;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FairShareJobExecutorTest {
+
+    private FairShareJobExecutor executor;
+
+    @After
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private Runnable blockingJob(final CountDownLatch started, final CountDownLatch release) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    private Runnable recordingJob(final List<String> order, final String name, final CountDownLatch done) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                order.add(name);
+                done.countDown();
+            }
+        };
+    }
+
+    @Test
+    public void lanesAreServedInRoundRobin() throws Exception {
+        executor = new FairShareJobExecutor(1, "Test-Job-Executor");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit(1L, blockingJob(started, release));
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch done = new CountDownLatch(4);
+        executor.submit(1L, recordingJob(order, "a1", done));
+        executor.submit(1L, recordingJob(order, "a2", done));
+        executor.submit(1L, recordingJob(order, "a3", done));
+        executor.submit(2L, recordingJob(order, "b1", done));
+        Assert.assertEquals(4, executor.getQueuedCount());
+        Assert.assertEquals(2, executor.getLaneCount());
+
+        release.countDown();
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        // the job of the second lane does not wait behind all the queued jobs of the first one
+        Assert.assertEquals(Arrays.asList("a1", "b1", "a2", "a3"), order);
+    }
+
+    @Test
+    public void laneConcurrencyIsCapped() throws Exception {
+        executor = new FairShareJobExecutor(4, "Test-Job-Executor");
+        executor.setLaneConcurrencyLimit(1);
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit(1L, blockingJob(started, release));
+        executor.submit(1L, blockingJob(started, release));
+        Assert.assertFalse(started.await(200, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(1, executor.getActiveCount());
+        Assert.assertEquals(1, executor.getQueuedCount());
+
+        // raising the limit lets the queued job of the lane start right away
+        executor.setLaneConcurrencyLimit(0);
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(2, executor.getActiveCount());
+        release.countDown();
+    }
+
+    @Test
+    public void statisticsAreCollected() throws Exception {
+        executor = new FairShareJobExecutor(2, "Test-Job-Executor");
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch done = new CountDownLatch(2);
+        executor.submit(1L, recordingJob(order, "a1", done));
+        executor.submit(2L, recordingJob(order, "b1", done));
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (executor.getCompletedCount() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(2, executor.getCompletedCount());
+        Assert.assertEquals(0, executor.getActiveCount());
+        Assert.assertEquals(0, executor.getLaneCount());
+    }
+
+    @Test
+    public void queuedJobsAreDroppedOnShutdown() throws Exception {
+        executor = new FairShareJobExecutor(1, "Test-Job-Executor");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit(1L, blockingJob(started, release));
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch done = new CountDownLatch(1);
+        executor.submit(1L, recordingJob(order, "a1", done));
+        executor.shutdown();
+        Assert.assertTrue(executor.isShutdown());
+
+        release.countDown();
+        Assert.assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(order.isEmpty());
+    }
+
+    @Test
+    public void changingTheLimitAfterShutdownDoesNotStartQueuedJobs() throws Exception {
+        executor = new FairShareJobExecutor(2, "Test-Job-Executor");
+        executor.setLaneConcurrencyLimit(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit(1L, blockingJob(started, release));
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch done = new CountDownLatch(1);
+        executor.submit(1L, recordingJob(order, "a1", done));
+        executor.shutdown();
+
+        // would otherwise hand the job held back by the lane limit to the stopped thread pool
+        executor.setLaneConcurrencyLimit(0);
+        Assert.assertEquals(1, executor.getActiveCount());
+        Assert.assertEquals(1, executor.getQueuedCount());
+
+        release.countDown();
+        Assert.assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(order.isEmpty());
+    }
+}